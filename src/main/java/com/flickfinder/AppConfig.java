@@ -1,11 +1,31 @@
 package com.flickfinder;
 
-import com.flickfinder.controller.MovieController;
-import com.flickfinder.controller.PersonController;
-import com.flickfinder.dao.MovieDAO;
-import com.flickfinder.dao.PersonDAO;
+import com.flickfinder.Generation.Lane;
+import com.flickfinder.controller.AdminController;
+import com.flickfinder.controller.AdmissionController;
+import com.flickfinder.controller.BulkheadController;
+import com.flickfinder.controller.DeadlineController;
+import com.flickfinder.controller.RecordingController;
+import com.flickfinder.controller.TraceController;
+import com.flickfinder.json.ModelJsonMapper;
+import com.flickfinder.peer.PeerCache;
+import com.flickfinder.peer.PeerGroup;
+import com.flickfinder.snapshot.Snapshot;
+import com.flickfinder.trace.Tracer;
+import com.flickfinder.tuning.PoolTuner;
+import com.flickfinder.tuning.ServerTuning;
+import com.flickfinder.tuning.TimedThreadPool;
+import com.flickfinder.util.AdaptiveLimit;
+import com.flickfinder.util.AdaptiveLimit.Priority;
+import com.flickfinder.util.Database;
+import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Metrics;
 import io.javalin.Javalin;
 import io.javalin.http.staticfiles.Location;
+import io.javalin.util.JavalinLogger;
+
+import java.io.IOException;
+import java.sql.SQLException;
 
 /**
  * This class is used to configure the Javalin web server.
@@ -25,25 +45,193 @@ public class AppConfig {
      * @return The Javalin object that represents the running server.
      */
     public static Javalin startServer(int port) {
+        return startServer(port, (Snapshot) null, 0, false);
+    }
+
+    /**
+     * Sets up the routes and the static files location, serving the data from a
+     * memory-mapped snapshot when one is given and from the database otherwise.
+     * <p>
+     * The server starts listening straight away, but {@code /ready} only reports
+     * it ready once the warm-up has run in the background. The data can be
+     * swapped for a fresh copy of the same file at any time through
+     * {@code POST /admin/reload}, or automatically when watching is turned on.
+     *
+     * @param port         The port that the server should run on.
+     * @param snapshot     The snapshot to serve from, or null to use the database.
+     * @param warmUpRounds How many times to replay the warm-up request mix; 0 skips warm-up.
+     * @param watch        Whether to reload the data whenever its file changes.
+     * @return The Javalin object that represents the running server.
+     */
+    public static Javalin startServer(int port, Snapshot snapshot, int warmUpRounds, boolean watch) {
+        Generation initial;
+        try {
+            initial = snapshot != null ? Generation.of(1, snapshot)
+                    : Generation.of(1, Database.getInstance().getConnection());
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not open the database", e);
+        }
+        return startServer(port, initial, warmUpRounds, watch);
+    }
+
+    /**
+     * Sets up the routes and the static files location, serving the data of a
+     * generation that has already been loaded. This is how several servers are
+     * started in one process, for example one per shard.
+     *
+     * @param port         The port that the server should run on.
+     * @param initial      The data to serve first.
+     * @param warmUpRounds How many times to replay the warm-up request mix; 0 skips warm-up.
+     * @param watch        Whether to reload the data whenever its file changes.
+     * @return The Javalin object that represents the running server.
+     */
+    public static Javalin startServer(int port, Generation initial, int warmUpRounds, boolean watch) {
+        return startServer(port, initial, warmUpRounds, watch, new ServerTuning());
+    }
+
+    /**
+     * Sets up the routes and the static files location, serving the data of a
+     * generation that has already been loaded on a Jetty server with the given
+     * settings. In adaptive mode the worker pool is resized while the server
+     * runs, and the decisions are reported on {@code /admin/tuning}.
+     *
+     * @param port         The port that the server should run on.
+     * @param initial      The data to serve first.
+     * @param warmUpRounds How many times to replay the warm-up request mix; 0 skips warm-up.
+     * @param watch        Whether to reload the data whenever its file changes.
+     * @param tuning       The settings of the Jetty server.
+     * @return The Javalin object that represents the running server.
+     */
+    public static Javalin startServer(int port, Generation initial, int warmUpRounds, boolean watch,
+                                      ServerTuning tuning) {
+        AdaptiveLimit admissionLimit = new AdaptiveLimit("admission", Defaults.ADMISSION_INITIAL_LIMIT,
+                Defaults.ADMISSION_MIN_LIMIT, Defaults.ADMISSION_MAX_LIMIT, Defaults.ADMISSION_EXPENSIVE_SHARE);
+        TimedThreadPool pool = tuning.threadPool();
+        // the admission limit tracks how much concurrency the database can take
+        PoolTuner tuner = new PoolTuner(pool, tuning,
+                () -> Math.min(1.0, admissionLimit.getInflight() / (double) admissionLimit.getLimit()));
+
+        Reloader data = new Reloader(initial);
+        // each lane runs on its own threads and connection, so a slow lane only queues behind itself
+        BulkheadController lanes = new BulkheadController(data);
+        RecordingController recordings = new RecordingController();
+        TraceController traces = new TraceController(
+                new Tracer(Defaults.TRACE_SAMPLE_RATE, Defaults.TRACE_SLOW_MILLIS, Defaults.TRACE_RING_SIZE));
+
         Javalin app = Javalin.create(config -> {
             config.staticFiles.add("/public", Location.CLASSPATH);
+            config.jsonMapper(new ModelJsonMapper());
+            tuning.apply(config, port, pool);
+            config.events(events -> {
+                events.serverStopped(tuner::stop);
+                events.serverStopped(lanes::close);
+                events.serverStopped(recordings::close);
+            });
         }).start(port);
+        tuner.start();
+
+        if (watch) {
+            try {
+                data.watch();
+            } catch (IOException e) {
+                JavalinLogger.error("Could not watch the data file; reload through /admin/reload instead", e);
+            }
+        }
+
+        AdmissionController admission = new AdmissionController(admissionLimit)
+                .classify("/movies/{id}", Priority.CHEAP)
+                .classify("/movies/{id}/stars", Priority.CHEAP)
+                .classify("/people/{id}", Priority.CHEAP)
+                .classify("/people/{id}/movies", Priority.CHEAP)
+                .classify("/movies", Priority.EXPENSIVE)
+                .classify("/people", Priority.EXPENSIVE)
+                .classify("/movies/ratings", Priority.EXPENSIVE)
+                .classify("/movies/ratings/{year}", Priority.EXPENSIVE)
+                .classify("/movies/{id}/similar", Priority.EXPENSIVE);
+        DeadlineController deadlines = new DeadlineController()
+                .route("/movies/{id}", Defaults.DEADLINE_LOOKUP_MILLIS)
+                .route("/movies/{id}/stars", Defaults.DEADLINE_LOOKUP_MILLIS)
+                .route("/people/{id}", Defaults.DEADLINE_LOOKUP_MILLIS)
+                .route("/people/{id}/movies", Defaults.DEADLINE_LOOKUP_MILLIS)
+                .route("/movies", Defaults.DEADLINE_MILLIS)
+                .route("/people", Defaults.DEADLINE_MILLIS)
+                .route("/movies/{id}/similar", Defaults.DEADLINE_MILLIS)
+                .route("/movies/ratings", Defaults.DEADLINE_RATINGS_MILLIS)
+                .route("/movies/ratings/{year}", Defaults.DEADLINE_RATINGS_MILLIS);
+
+        // time each request from first to last, so that its event covers shedding and deadlines too
+        app.beforeMatched(recordings::begin);
+        app.beforeMatched(traces::start);
+
+        // shed first, so that shed requests never start a deadline; finish deadlines
+        // first, so that admission control sees the 504s
+        app.beforeMatched(admission::admit);
+        app.beforeMatched(deadlines::start);
+        app.after(deadlines::finish);
+        app.after(admission::complete);
+
+        // every request runs to the end on the generation it started on
+        app.beforeMatched(data::pin);
+        app.after(data::unpin);
+        app.after(traces::finish);
+        app.after(recordings::commit);
+
+        app.get("/movies/ratings", lanes.on(Lane.RATINGS, (ctx, c) -> c.movies().getRatingsByYearRange(ctx)));
+        app.get("/movies/ratings/{year}", lanes.on(Lane.RATINGS, (ctx, c) -> c.movies().getRatingsByYear(ctx)));
+        app.get("/movies", lanes.on(Lane.LIST, (ctx, c) -> c.movies().getAllMovies(ctx)));
+        app.get("/movies/{id}", lanes.on(Lane.LOOKUP, (ctx, c) -> c.movies().getMovieById(ctx)));
+        app.get("/movies/{id}/stars", lanes.on(Lane.LOOKUP, (ctx, c) -> c.movies().getPeopleByMovieId(ctx)));
+        app.get("/movies/{id}/similar", lanes.on(Lane.LIST, (ctx, c) -> c.movies().getSimilarMovies(ctx)));
+
+        app.get("/people", lanes.on(Lane.LIST, (ctx, c) -> c.people().getAllPeople(ctx)));
+        app.get("/people/{id}", lanes.on(Lane.LOOKUP, (ctx, c) -> c.people().getPersonById(ctx)));
+        app.get("/people/{id}/movies", lanes.on(Lane.LOOKUP, (ctx, c) -> c.people().getMoviesStarringPerson(ctx)));
+
+        app.get("/export/movies", ctx -> data.pinned(ctx).exports().exportMovies(ctx));
+        app.get("/export/people", ctx -> data.pinned(ctx).exports().exportPeople(ctx));
+        app.get("/export/stars", ctx -> data.pinned(ctx).exports().exportStars(ctx));
+        app.get("/export/ratings", ctx -> data.pinned(ctx).exports().exportRatings(ctx));
 
-        MovieDAO movieDao = new MovieDAO();
-        MovieController movieController = new MovieController(movieDao);
+        app.get("/metrics", ctx -> ctx.json(Metrics.snapshot()));
+        app.get("/shard", ctx -> ctx.json(data.pinned(ctx).getPartition()));
+        app.get(PeerGroup.PATH + "{group}/{key}", ctx -> {
+            PeerCache cache = data.pinned(ctx).getPeerCache();
+            if (cache == null) {
+                ctx.status(404);
+                ctx.result("This server does not share its cache");
+                return;
+            }
+            cache.handle(ctx);
+        });
 
-        PersonDAO personDao = new PersonDAO();
-        PersonController personController = new PersonController(personDao);
+        // the admin endpoints change state and expose other clients' requests
+        AdminController admin = new AdminController(System.getenv(AdminController.TOKEN_VARIABLE));
+        app.beforeMatched("/admin/*", admin::check);
+        app.post("/admin/reload", data::handleReload);
+        app.get("/admin/generation", data::handleStatus);
+        app.get("/admin/tuning", tuner::handleStatus);
+        app.get("/admin/bulkheads", lanes::handleStatus);
+        app.get("/admin/recording", recordings::handleStatus);
+        app.post("/admin/recording/start", recordings::handleStart);
+        app.post("/admin/recording/stop", recordings::handleStop);
+        app.get("/admin/recording/dump", recordings::handleDump);
+        app.get("/admin/traces", traces::handleList);
+        app.get("/admin/traces/export", traces::handleExport);
+        app.get("/admin/traces/{traceId}", traces::handleTrace);
 
-        app.get("/movies/ratings/{year}", movieController::getRatingsByYear);
-        app.get("/movies", movieController::getAllMovies);
-        app.get("/movies/{id}", movieController::getMovieById);
-        app.get("/movies/{id}/stars", movieController::getPeopleByMovieId);
+        WarmUp warmUp = new WarmUp(app.port(), initial, warmUpRounds);
+        app.get("/ready", ctx -> {
+            if (!warmUp.isReady()) {
+                ctx.status(503);
+                ctx.header("Retry-After", "5");
+            }
+            ctx.json(warmUp.status());
+        });
 
-        app.get("/people", personController::getAllPeople);
-        app.get("/people/{id}", personController::getPersonById);
-        app.get("/people/{id}/movies", personController::getMoviesStarringPerson);
+        Thread warmUpThread = new Thread(warmUp, "warm-up");
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
 
         return app;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,614 @@
+package com.flickfinder;
+
+import com.flickfinder.controller.ExportController;
+import com.flickfinder.controller.MovieController;
+import com.flickfinder.controller.PersonController;
+import com.flickfinder.dao.KnownIds;
+import com.flickfinder.dao.MovieDAO;
+import com.flickfinder.dao.PeerMovieDAO;
+import com.flickfinder.dao.PeerPersonDAO;
+import com.flickfinder.dao.PersonDAO;
+import com.flickfinder.dao.SnapshotMovieDAO;
+import com.flickfinder.dao.SnapshotPersonDAO;
+import com.flickfinder.include.Expander;
+import com.flickfinder.index.MinHashIndex;
+import com.flickfinder.peer.PeerCache;
+import com.flickfinder.peer.PeerGroup;
+import com.flickfinder.shard.Partition;
+import com.flickfinder.snapshot.Snapshot;
+import com.flickfinder.util.Defaults;
+import io.javalin.util.JavalinLogger;
+import org.sqlite.SQLiteConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * One loaded copy of the data, with everything derived from it.
+ * <p>
+ * A generation owns its database connection or snapshot, the DAOs reading
+ * from it, the similarity index built from it and the controllers serving it.
+ * Nothing is shared between generations, so replacing the current generation
+ * also discards every cache and index built from the old data.
+ * <p>
+ * The API is served in separate lanes, one per class of endpoint. A generation
+ * read from a database file gives each lane its own read-only connection, so
+ * that a slow query in one lane, or its cancellation, never holds up the
+ * others; SQLite runs one statement at a time on a connection. A database in
+ * memory, or a snapshot, is shared by all the lanes.
+ * <p>
+ * Each request holds the generation it started on until it finishes. A
+ * generation that has been replaced is closed once its last request is done.
+ */
+public class Generation {
+
+    /**
+     * A class of endpoints served apart from the others.
+     */
+    public enum Lane {
+        /**
+         * Lookups by id, which take milliseconds.
+         */
+        LOOKUP,
+        /**
+         * Lists and similar movies.
+         */
+        LIST,
+        /**
+         * Ratings, which scan and sort the most rows.
+         */
+        RATINGS
+    }
+
+    /**
+     * The controllers serving one lane.
+     *
+     * @param movies the movie controller
+     * @param people the person controller
+     */
+    public record Controllers(MovieController movies, PersonController people) {
+    }
+
+    /**
+     * The DAOs reading from one connection.
+     */
+    private record Daos(MovieDAO movies, PersonDAO people) {
+    }
+
+    /**
+     * The tables a database must have to be served.
+     */
+    private static final String[] TABLES = {"movies", "people", "ratings", "stars", "directors"};
+
+    private final long number;
+    private final Path source;
+    private final Instant loadedAt = Instant.now();
+    private final Closeable resource;
+    private final Snapshot snapshot;
+    private final Partition partition;
+    private final PeerGroup peers;
+    private final PeerCache peerCache;
+    private final MovieDAO movieDao;
+    private final PersonDAO personDao;
+    private final MovieController movieController;
+    private final PersonController personController;
+    private final ExportController exportController;
+    private final Map<Lane, Controllers> lanes = new EnumMap<>(Lane.class);
+
+    /**
+     * Guards the building of the similarity index.
+     */
+    private final Object similarityLock = new Object();
+
+    /**
+     * The similarity index, or null until it is first used.
+     */
+    private volatile MinHashIndex similarity;
+
+    /**
+     * The requests using this generation, plus one while it is current.
+     */
+    private final AtomicInteger users = new AtomicInteger(1);
+
+    /**
+     * Whether the generation has been replaced.
+     */
+    private volatile boolean retired;
+
+    private Generation(long number, Path source, Closeable resource, Snapshot snapshot, Partition partition,
+                       PeerGroup peers, PeerCache peerCache, MovieDAO movieDao, PersonDAO personDao,
+                       Map<Lane, Daos> laneDaos) {
+        this.number = number;
+        this.source = source;
+        this.resource = resource;
+        this.snapshot = snapshot;
+        this.partition = partition;
+        this.peers = peers;
+        this.peerCache = peerCache;
+        this.movieDao = movieDao;
+        this.personDao = personDao;
+        // built on first use, so that opening a snapshot does not read every credit
+        Supplier<MinHashIndex> similarity = this::getSimilarityIndex;
+        Expander expander = new Expander(movieDao, personDao);
+        this.movieController = new MovieController(movieDao, similarity, expander);
+        this.personController = new PersonController(personDao, expander);
+        this.exportController = new ExportController(movieDao, personDao);
+
+        Map<Daos, Controllers> built = new IdentityHashMap<>();
+        for (Lane lane : Lane.values()) {
+            Daos daos = laneDaos.get(lane);
+            this.lanes.put(lane, daos == null ? new Controllers(this.movieController, this.personController)
+                    : built.computeIfAbsent(daos, d -> {
+                        Expander laneExpander = new Expander(d.movies(), d.people());
+                        return new Controllers(new MovieController(d.movies(), similarity, laneExpander),
+                                new PersonController(d.people(), laneExpander));
+                    }));
+        }
+    }
+
+    /**
+     * Creates a generation over an open database connection.
+     *
+     * @param number     the generation number
+     * @param source     the database file, or null if it has none
+     * @param connection the connection to the database
+     * @return the generation
+     */
+    public static Generation of(long number, Path source, Connection connection) {
+        return of(number, source, connection, null);
+    }
+
+    /**
+     * Creates a generation over an open database connection whose lookups by id
+     * are cached together with other replicas.
+     *
+     * @param number     the generation number
+     * @param source     the database file, or null if it has none
+     * @param connection the connection to the database
+     * @param peers      the replicas sharing the cache, or null to cache nothing
+     * @return the generation
+     */
+    public static Generation of(long number, Path source, Connection connection, PeerGroup peers) {
+        List<Connection> connections = new ArrayList<>(List.of(connection));
+        Closeable close = () -> {
+            SQLException failure = null;
+            for (Connection open : connections) {
+                try {
+                    open.close();
+                } catch (SQLException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw new IOException(failure);
+            }
+        };
+        PeerCache cache = peers == null ? null : new PeerCache(peers);
+        KnownIds known = loadKnownIds(connection);
+        Map<Lane, Daos> laneDaos = new EnumMap<>(Lane.class);
+        for (Lane lane : Lane.values()) {
+            Connection laneConnection = openLane(source, lane);
+            if (laneConnection != null) {
+                connections.add(laneConnection);
+            } else if (lane != Lane.LOOKUP || cache == null) {
+                continue;
+            }
+            Connection reader = laneConnection != null ? laneConnection : connection;
+            // only lookups by id are shared between replicas
+            laneDaos.put(lane, lane == Lane.LOOKUP && cache != null
+                    ? new Daos(new PeerMovieDAO(reader, cache, known), new PeerPersonDAO(reader, cache, known))
+                    : new Daos(new MovieDAO(reader, known), new PersonDAO(reader, known)));
+        }
+        return new Generation(number, source, close, null, readPartition(connection), peers, cache,
+                new MovieDAO(connection, known), new PersonDAO(connection, known), laneDaos);
+    }
+
+    /**
+     * Opens a lane's own read-only connection to a database file. A database
+     * that has no file cannot be opened twice, and a lane whose connection fails
+     * to open shares the generation's connection instead.
+     */
+    private static Connection openLane(Path source, Lane lane) {
+        if (source == null || !Files.isRegularFile(source)) {
+            return null;
+        }
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        try {
+            return config.createConnection("jdbc:sqlite:" + source);
+        } catch (SQLException e) {
+            JavalinLogger.error("Could not open a connection for the " + lane.name().toLowerCase()
+                    + " lane; sharing the main one", e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates a generation over an open database connection, taking the
+     * database file from the connection's URL.
+     *
+     * @param number     the generation number
+     * @param connection the connection to the database
+     * @return the generation
+     * @throws SQLException if the connection's URL cannot be read
+     */
+    public static Generation of(long number, Connection connection) throws SQLException {
+        String url = connection.getMetaData().getURL();
+        Path source = null;
+        if (!url.contains(":memory:")) {
+            source = Path.of(url.substring(url.indexOf(':', "jdbc:".length()) + 1));
+        }
+        return of(number, source, connection);
+    }
+
+    /**
+     * Creates a generation over an open snapshot.
+     *
+     * @param number   the generation number
+     * @param snapshot the snapshot
+     * @return the generation
+     */
+    public static Generation of(long number, Snapshot snapshot) {
+        return new Generation(number, snapshot.getPath(), snapshot, snapshot, Partition.ALL, null, null,
+                new SnapshotMovieDAO(snapshot), new SnapshotPersonDAO(snapshot), Map.of());
+    }
+
+    /**
+     * Opens and validates a database or snapshot file as a new generation. The
+     * file is a snapshot if it starts with the snapshot magic bytes.
+     *
+     * @param number the generation number
+     * @param file   the file to load
+     * @return the generation
+     * @throws SQLException if the database cannot be opened or fails validation
+     * @throws IOException  if the file cannot be read or fails validation
+     */
+    public static Generation load(long number, Path file) throws SQLException, IOException {
+        return load(number, file, null);
+    }
+
+    /**
+     * Opens and validates a database or snapshot file as a new generation whose
+     * lookups by id are cached together with other replicas. A snapshot is read
+     * straight from memory and is never cached.
+     *
+     * @param number the generation number
+     * @param file   the file to load
+     * @param peers  the replicas sharing the cache, or null to cache nothing
+     * @return the generation
+     * @throws SQLException if the database cannot be opened or fails validation
+     * @throws IOException  if the file cannot be read or fails validation
+     */
+    public static Generation load(long number, Path file, PeerGroup peers) throws SQLException, IOException {
+        if (Snapshot.isSnapshot(file)) {
+            Snapshot snapshot = Snapshot.open(file);
+            if (snapshot.movieCount() == 0 || snapshot.personCount() == 0) {
+                snapshot.close();
+                throw new IOException("Snapshot has no movies or no people: " + file);
+            }
+            return of(number, snapshot);
+        }
+
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("No such database: " + file);
+        }
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file);
+        try {
+            validate(connection);
+            return of(number, file, connection, peers);
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks that a database is intact and has data in every table.
+     */
+    private static void validate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            ResultSet check = statement.executeQuery("PRAGMA quick_check");
+            String result = check.next() ? check.getString(1) : "no result";
+            if (!"ok".equals(result)) {
+                throw new SQLException("Database failed integrity check: " + result);
+            }
+            for (String table : TABLES) {
+                if (!statement.executeQuery("SELECT 1 FROM " + table + " LIMIT 1").next()) {
+                    throw new SQLException("Database has no rows in " + table);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the id range a shard database owns. A database that was not written
+     * by the shard splitter holds all the data.
+     */
+    private static Partition readPartition(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            if (!statement.executeQuery("SELECT 1 FROM sqlite_master WHERE name = 'shard_partition'").next()) {
+                return Partition.ALL;
+            }
+            ResultSet rs = statement.executeQuery("SELECT first_id, last_id FROM shard_partition");
+            return rs.next() ? new Partition(rs.getInt("first_id"), rs.getInt("last_id")) : Partition.ALL;
+        } catch (SQLException e) {
+            JavalinLogger.error("Could not read the shard partition; serving as a single shard", e);
+            return Partition.ALL;
+        }
+    }
+
+    /**
+     * Reads the ids of the movies and people and which of them have stars,
+     * ratings and films, so that lookups of ids the database does not hold, and
+     * joins that would find nothing, never reach it. If the ids cannot be read,
+     * every lookup queries the database as before.
+     */
+    private static KnownIds loadKnownIds(Connection connection) {
+        try {
+            long started = System.nanoTime();
+            KnownIds known = KnownIds.load(connection);
+            JavalinLogger.info(String.format("Built id filters (movies: %s, %d KiB; people: %s, %d KiB)"
+                            + " and relationship bitmaps (%s, %d KiB) in %d ms",
+                    known.getMovies().kind(), known.getMovies().sizeInBytes() / 1024,
+                    known.getPeople().kind(), known.getPeople().sizeInBytes() / 1024,
+                    known.getRelations().describe(), known.getRelations().sizeInBytes() / 1024,
+                    (System.nanoTime() - started) / 1_000_000));
+            return known;
+        } catch (SQLException e) {
+            JavalinLogger.error("Could not read the ids; lookups of missing ids will query the database", e);
+            return KnownIds.ALL;
+        }
+    }
+
+    /**
+     * Returns the MinHash index behind the similar movies endpoint, building it
+     * the first time it is asked for. Opening a generation therefore does not
+     * depend on the number of credits; the warm-up, or a reload before it
+     * switches, asks for the index before the generation takes traffic.
+     *
+     * @return the similarity index
+     */
+    public MinHashIndex getSimilarityIndex() {
+        MinHashIndex index = this.similarity;
+        if (index == null) {
+            synchronized (this.similarityLock) {
+                index = this.similarity;
+                if (index == null) {
+                    index = buildSimilarityIndex(this.movieDao);
+                    this.similarity = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns whether the similarity index has been built.
+     */
+    boolean isSimilarityIndexBuilt() {
+        return this.similarity != null;
+    }
+
+    /**
+     * Builds the MinHash index behind the similar movies endpoint.
+     * The signatures are computed in parallel. If the credits cannot be read,
+     * the endpoint is still served but finds nothing.
+     */
+    private static MinHashIndex buildSimilarityIndex(MovieDAO movieDao) {
+        try {
+            long started = System.nanoTime();
+            MinHashIndex index = MinHashIndex.build(movieDao.getCredits(), Defaults.SIMILARITY_BANDS,
+                    Defaults.SIMILARITY_ROWS, Defaults.SIMILARITY_MEMORY_BUDGET);
+            JavalinLogger.info(String.format("Built similarity index with %d bands (%d KiB) in %d ms",
+                    index.getBands(), index.sizeInBytes() / 1024, (System.nanoTime() - started) / 1_000_000));
+            return index;
+        } catch (SQLException e) {
+            JavalinLogger.error("Could not build similarity index", e);
+            return MinHashIndex.EMPTY;
+        }
+    }
+
+    /**
+     * Reads the generation's file through once so that its pages are in the page
+     * cache. Does nothing for a database that has no file.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public void touch() throws IOException {
+        if (this.snapshot != null) {
+            this.snapshot.touch();
+            return;
+        }
+        if (this.source == null || !Files.isRegularFile(this.source)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(this.source, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            while (channel.read(buffer) > 0) {
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Takes a reference for a request.
+     *
+     * @return false if the generation has already been closed
+     */
+    boolean acquire() {
+        while (true) {
+            int current = this.users.get();
+            if (current == 0) {
+                return false;
+            }
+            if (this.users.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Marks the generation as replaced and drops the reference held while it was current.
+     */
+    void retire() {
+        this.retired = true;
+        release();
+    }
+
+    /**
+     * Drops a reference, closing the generation when the last one goes.
+     */
+    void release() {
+        if (this.users.decrementAndGet() == 0) {
+            try {
+                this.resource.close();
+                JavalinLogger.info("Closed data generation " + this.number);
+            } catch (IOException e) {
+                JavalinLogger.error("Could not close data generation " + this.number, e);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the generation has been replaced and all its requests have finished.
+     *
+     * @return true once the generation is closed
+     */
+    boolean isClosed() {
+        return this.users.get() == 0;
+    }
+
+    /**
+     * Returns the generation number; each reload takes the next one.
+     *
+     * @return the generation number
+     */
+    public long getNumber() {
+        return this.number;
+    }
+
+    /**
+     * Returns the file the generation was loaded from.
+     *
+     * @return the file, or null if it is not known
+     */
+    public Path getSource() {
+        return this.source;
+    }
+
+    /**
+     * Returns the range of ids this generation's data owns.
+     *
+     * @return the partition, or {@link Partition#ALL} if the data is not sharded
+     */
+    public Partition getPartition() {
+        return this.partition;
+    }
+
+    /**
+     * Returns the replicas this generation shares its cache with.
+     *
+     * @return the peers, or null if the cache is not shared
+     */
+    public PeerGroup getPeers() {
+        return this.peers;
+    }
+
+    /**
+     * Returns the cache this generation shares with other replicas.
+     *
+     * @return the cache, or null if the cache is not shared
+     */
+    public PeerCache getPeerCache() {
+        return this.peerCache;
+    }
+
+    /**
+     * Returns the movie DAO of this generation.
+     *
+     * @return the movie DAO
+     */
+    public MovieDAO getMovieDao() {
+        return this.movieDao;
+    }
+
+    /**
+     * Returns the person DAO of this generation.
+     *
+     * @return the person DAO
+     */
+    public PersonDAO getPersonDao() {
+        return this.personDao;
+    }
+
+    /**
+     * Returns the movie controller of this generation.
+     *
+     * @return the movie controller
+     */
+    public MovieController movies() {
+        return this.movieController;
+    }
+
+    /**
+     * Returns the person controller of this generation.
+     *
+     * @return the person controller
+     */
+    public PersonController people() {
+        return this.personController;
+    }
+
+    /**
+     * Returns the controllers serving a lane, which read from the lane's own
+     * connection when it has one.
+     *
+     * @param lane the lane
+     * @return the lane's controllers
+     */
+    public Controllers lane(Lane lane) {
+        return this.lanes.get(lane);
+    }
+
+    /**
+     * Returns the export controller of this generation.
+     *
+     * @return the export controller
+     */
+    public ExportController exports() {
+        return this.exportController;
+    }
+
+    /**
+     * Describes the generation for the admin endpoint.
+     *
+     * @return the number, source, load time and requests in flight
+     */
+    public Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("generation", this.number);
+        description.put("source", this.source == null ? null : this.source.toString());
+        description.put("loadedAt", this.loadedAt.toString());
+        description.put("inFlight", Math.max(0, this.users.get() - (this.retired ? 0 : 1)));
+        return description;
+    }
+}
@@ -1,6 +1,17 @@
 package com.flickfinder;
 
+import com.flickfinder.peer.PeerGroup;
+import com.flickfinder.shard.ShardRouter;
+import com.flickfinder.snapshot.Snapshot;
+import com.flickfinder.tuning.ServerTuning;
 import com.flickfinder.util.Database;
+import com.flickfinder.util.Defaults;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Entry point of the application.
@@ -14,13 +25,78 @@ public class Main {
 
     /**
      * Set up a Javalin server and the database.
+     * Passing {@code --snapshot=<file>} serves the data from a snapshot written
+     * by {@link com.flickfinder.snapshot.SnapshotCompiler} instead of the database,
+     * and {@code --warmup=<rounds>} sets how long the server warms up before
+     * reporting ready on {@code /ready}; 0 skips warm-up. {@code --watch} reloads
+     * the data whenever its file is replaced.
+     * <p>
+     * {@code --db=<file>} serves another database, such as a shard written by
+     * {@link com.flickfinder.shard.ShardSplitter}, and {@code --port=<port>}
+     * listens on another port. {@code --router=<url>,<url>,...} starts a
+     * {@link ShardRouter} in front of the shard servers at those addresses
+     * instead of a server.
+     * <p>
+     * {@code --peers=<url>,<url>,...} shares a cache of lookups by id with the
+     * replicas at those addresses; {@code --self=<url>} is the address the peers
+     * reach this replica at, {@code http://localhost:<port>} by default.
+     * <p>
+     * The Jetty server is set up with {@code --max-threads=}, {@code --min-threads=},
+     * {@code --accept-queue=} and {@code --idle-timeout=<millis>}; {@code --h2c}
+     * also serves HTTP/2 cleartext and {@code --adaptive-threads} resizes the
+     * worker pool as the server runs. See {@link ServerTuning}.
      *
      * @param args The command line arguments.
+     * @throws IOException          if the snapshot cannot be opened or a shard cannot be reached.
+     * @throws InterruptedException if interrupted while asking the shards for their partitions.
      */
-    public static void main(String[] args) {
-        final String dbPath = "src/main/resources/movies.db";
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String dbPath = "src/main/resources/movies.db";
+
+        List<URI> shards = new ArrayList<>();
+        List<URI> peers = new ArrayList<>();
+        URI self = null;
+        Snapshot snapshot = null;
+        int warmUpRounds = Defaults.WARMUP_ROUNDS;
+        boolean watch = false;
+        for (String arg : args) {
+            if (arg.startsWith("--snapshot=")) {
+                snapshot = Snapshot.open(Path.of(arg.substring("--snapshot=".length())));
+            } else if (arg.startsWith("--warmup=")) {
+                warmUpRounds = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else if (arg.equals("--watch")) {
+                watch = true;
+            } else if (arg.startsWith("--db=")) {
+                dbPath = arg.substring("--db=".length());
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--peers=")) {
+                for (String peer : arg.substring("--peers=".length()).split(",")) {
+                    peers.add(URI.create(peer.trim()));
+                }
+            } else if (arg.startsWith("--self=")) {
+                self = URI.create(arg.substring("--self=".length()));
+            } else if (arg.startsWith("--router=")) {
+                for (String shard : arg.substring("--router=".length()).split(",")) {
+                    shards.add(URI.create(shard.trim()));
+                }
+            }
+        }
+
+        if (!shards.isEmpty()) {
+            ShardRouter.discover(shards).start(port);
+            return;
+        }
 
-        Database.getInstance("jdbc:sqlite:" + dbPath);
-        AppConfig.startServer(port);
+        Generation initial;
+        if (snapshot != null) {
+            initial = Generation.of(1, snapshot);
+        } else {
+            PeerGroup group = peers.isEmpty() ? null
+                    : new PeerGroup(self != null ? self : URI.create("http://localhost:" + port), peers);
+            Database.getInstance("jdbc:sqlite:" + dbPath);
+            initial = Generation.of(1, Path.of(dbPath), Database.getInstance().getConnection(), group);
+        }
+        AppConfig.startServer(port, initial, warmUpRounds, watch, ServerTuning.parse(args));
     }
-}
\ No newline at end of file
+}
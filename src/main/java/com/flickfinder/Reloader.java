@@ -0,0 +1,296 @@
+package com.flickfinder;
+
+import com.flickfinder.util.Metrics;
+import io.javalin.http.Context;
+import io.javalin.util.JavalinLogger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Swaps the data the server is serving without a restart.
+ * <p>
+ * A reload opens and validates the new file and builds its indexes in the
+ * background while the current generation keeps serving. Only once the new
+ * generation is complete is it switched in, in a single atomic step. Requests
+ * already running keep the generation they started on, and the old generation
+ * is closed when the last of them finishes. If the new file fails to load, the
+ * current generation is left in place and the error is reported.
+ * <p>
+ * A reload of the file being served can be asked for through
+ * {@code POST /admin/reload}, or triggered by a change to the file when
+ * watching is turned on. The nightly refresh replaces the file and then
+ * either calls the endpoint or lets the watcher notice.
+ */
+public class Reloader {
+
+    /**
+     * The context attribute holding the generation a request runs on.
+     */
+    private static final String GENERATION = "data.generation";
+
+    /**
+     * How long the file must stay unchanged before a watched change is loaded,
+     * so that a file still being copied is not loaded half-written.
+     */
+    private static final long QUIET_MILLIS = 2000;
+
+    /**
+     * The generation new requests start on.
+     */
+    private final AtomicReference<Generation> current;
+
+    /**
+     * Replaced generations that still have requests running.
+     */
+    private final Set<Generation> draining = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Runs reloads one at a time, off the request threads.
+     */
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reloader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private volatile String lastError;
+
+    /**
+     * Constructs a Reloader serving an initial generation.
+     *
+     * @param initial the generation to serve first
+     */
+    public Reloader(Generation initial) {
+        this.current = new AtomicReference<>(initial);
+        Metrics.gauge("data.generation", () -> this.current.get().getNumber());
+        Metrics.gauge("data.draining", this.draining::size);
+    }
+
+    /**
+     * Returns the generation new requests start on.
+     *
+     * @return the current generation
+     */
+    public Generation current() {
+        return this.current.get();
+    }
+
+    /**
+     * Pins the current generation to a request before its handler runs, and
+     * names it in the X-Data-Generation response header.
+     *
+     * @param ctx the Javalin context
+     */
+    public void pin(Context ctx) {
+        Generation generation;
+        do {
+            generation = this.current.get();
+        } while (!generation.acquire());
+        ctx.attribute(GENERATION, generation);
+        ctx.header("X-Data-Generation", Long.toString(generation.getNumber()));
+    }
+
+    /**
+     * Releases the generation pinned to a request once it has finished.
+     *
+     * @param ctx the Javalin context
+     */
+    public void unpin(Context ctx) {
+        Generation generation = ctx.attribute(GENERATION);
+        if (generation != null) {
+            ctx.attribute(GENERATION, null);
+            generation.release();
+            if (generation.isClosed()) {
+                this.draining.remove(generation);
+            }
+        }
+    }
+
+    /**
+     * Returns the generation pinned to a request.
+     *
+     * @param ctx the Javalin context
+     * @return the generation the request runs on
+     */
+    public Generation pinned(Context ctx) {
+        Generation generation = ctx.attribute(GENERATION);
+        return generation != null ? generation : this.current.get();
+    }
+
+    /**
+     * Loads a file as the next generation and switches to it. Runs on the
+     * calling thread; concurrent reloads wait for each other.
+     *
+     * @param file the database or snapshot file to load
+     * @return the new generation
+     * @throws SQLException if the database cannot be opened or fails validation
+     * @throws IOException  if the file cannot be read or fails validation
+     */
+    public synchronized Generation reload(Path file) throws SQLException, IOException {
+        long started = System.nanoTime();
+        Generation next;
+        try {
+            Generation serving = this.current.get();
+            next = Generation.load(serving.getNumber() + 1, file, serving.getPeers());
+            next.getSimilarityIndex();
+        } catch (SQLException | IOException | RuntimeException e) {
+            this.lastError = e.getMessage();
+            Metrics.counter("data.reload.failed").increment();
+            throw e;
+        }
+
+        Generation previous = this.current.getAndSet(next);
+        this.lastError = null;
+        this.draining.add(previous);
+        previous.retire();
+        this.draining.removeIf(Generation::isClosed);
+        Metrics.counter("data.reload.succeeded").increment();
+        JavalinLogger.info(String.format("Switched from data generation %d to %d (%s) in %d ms",
+                previous.getNumber(), next.getNumber(), file, (System.nanoTime() - started) / 1_000_000));
+        return next;
+    }
+
+    /**
+     * Starts a reload of the file currently served in the background, unless
+     * one is already running.
+     *
+     * @return false if a reload was already running
+     */
+    public boolean reloadInBackground() {
+        Path target = this.current.get().getSource();
+        if (target == null || !this.reloading.compareAndSet(false, true)) {
+            return false;
+        }
+        this.loader.execute(() -> {
+            try {
+                reload(target);
+            } catch (SQLException | IOException | RuntimeException e) {
+                JavalinLogger.error("Reload of " + target + " failed; still serving generation "
+                        + this.current.get().getNumber(), e);
+            } finally {
+                this.reloading.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Watches the file currently served and reloads it whenever it changes and
+     * then stays unchanged for a short while. Replacing the file by renaming a
+     * new copy over it is the safest way to update it.
+     *
+     * @throws IOException if the file's directory cannot be watched
+     */
+    public void watch() throws IOException {
+        Path source = this.current.get().getSource();
+        if (source == null) {
+            throw new IOException("The data being served has no file to watch");
+        }
+        Path absolute = source.toAbsolutePath();
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        absolute.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    if (!changed(watcher.take(), absolute)) {
+                        continue;
+                    }
+                    // wait for the writes to settle before loading
+                    WatchKey key;
+                    while ((key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                        changed(key, absolute);
+                    }
+                    JavalinLogger.info("Detected a change to " + absolute + "; reloading");
+                    reloadInBackground();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // stopped
+            }
+        }, "reload-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Drains a watch key and returns whether any of its events were for the file.
+     */
+    private static boolean changed(WatchKey key, Path file) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path name && file.getFileName().equals(name)) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Handles a request to reload the file currently served.
+     *
+     * @param ctx the Javalin context
+     */
+    public void handleReload(Context ctx) {
+        if (this.current.get().getSource() == null) {
+            ctx.status(400);
+            ctx.result("The data being served has no file to reload");
+            return;
+        }
+        if (!reloadInBackground()) {
+            ctx.status(409);
+            ctx.result("A reload is already in progress");
+            return;
+        }
+        ctx.status(202);
+        ctx.json(status());
+    }
+
+    /**
+     * Handles a request for the state of the generations.
+     *
+     * @param ctx the Javalin context
+     */
+    public void handleStatus(Context ctx) {
+        ctx.json(status());
+    }
+
+    /**
+     * Returns the current generation, the generations still draining and the
+     * state of the last reload.
+     *
+     * @return the state of the generations
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>(this.current.get().describe());
+        List<Map<String, Object>> draining = new ArrayList<>();
+        for (Generation generation : this.draining) {
+            draining.add(generation.describe());
+        }
+        status.put("draining", draining);
+        status.put("reloading", this.reloading.get());
+        status.put("lastError", this.lastError);
+        return status;
+    }
+}
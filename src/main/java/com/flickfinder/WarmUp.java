@@ -0,0 +1,185 @@
+package com.flickfinder;
+
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.Person;
+import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Metrics;
+import io.javalin.util.JavalinLogger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms the server up before it reports itself ready for traffic.
+ * <p>
+ * A freshly started server runs interpreted code against a cold page cache.
+ * Warm-up first reads the data files through once, so that their pages are in
+ * memory, and then replays a representative mix of requests against the
+ * server's own port for a number of rounds. The replay goes through Jetty, the
+ * controllers, the DAOs and the JSON mapper exactly as real traffic would, so
+ * the JIT compiles the hot paths before the load balancer sends any.
+ * <p>
+ * Progress is published as metrics and through {@link #status()}, which backs
+ * the {@code /ready} endpoint.
+ */
+public class WarmUp implements Runnable {
+
+    /**
+     * The phases warm-up goes through, in order.
+     */
+    public enum Phase {
+        PENDING, TOUCHING, REPLAYING, READY
+    }
+
+    /**
+     * The address of the server being warmed up.
+     */
+    private final String baseUrl;
+
+    /**
+     * The generation being served, which the request mix is sampled from.
+     */
+    private final Generation generation;
+
+    /**
+     * How many times the request mix is replayed.
+     */
+    private final int rounds;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final AtomicInteger completed = new AtomicInteger();
+    private volatile int planned;
+    private volatile Phase phase = Phase.PENDING;
+
+    /**
+     * Constructs a WarmUp for a server on the local host.
+     *
+     * @param port       the port the server listens on
+     * @param generation the generation being served
+     * @param rounds     how many times to replay the request mix; 0 skips warm-up
+     */
+    public WarmUp(int port, Generation generation, int rounds) {
+        this.baseUrl = "http://localhost:" + port;
+        this.generation = generation;
+        this.rounds = rounds;
+        Metrics.gauge("warmup.progress", this::getProgress);
+        Metrics.gauge("warmup.ready", () -> isReady() ? 1 : 0);
+    }
+
+    /**
+     * Runs the warm-up. Warm-up is best effort: if any step fails the failure is
+     * logged and the server is reported ready regardless.
+     */
+    @Override
+    public void run() {
+        long started = System.nanoTime();
+        try {
+            if (this.rounds > 0) {
+                this.phase = Phase.TOUCHING;
+                this.generation.touch();
+
+                this.phase = Phase.REPLAYING;
+                List<String> mix = requestMix();
+                this.planned = mix.size() * this.rounds;
+                for (int round = 0; round < this.rounds; round++) {
+                    for (String path : mix) {
+                        replay(path);
+                    }
+                }
+            }
+        } catch (SQLException | IOException e) {
+            JavalinLogger.error("Warm-up failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.phase = Phase.READY;
+            JavalinLogger.info(String.format("Warm-up finished after %d requests in %d ms; ready for traffic",
+                    this.completed.get(), (System.nanoTime() - started) / 1_000_000));
+        }
+    }
+
+    /**
+     * Returns whether warm-up has finished and the server can take traffic.
+     *
+     * @return true once warm-up has finished
+     */
+    public boolean isReady() {
+        return this.phase == Phase.READY;
+    }
+
+    /**
+     * Returns the fraction of the warm-up that has been done.
+     *
+     * @return a number from 0 to 1
+     */
+    public double getProgress() {
+        if (this.phase == Phase.READY) {
+            return 1;
+        }
+        int planned = this.planned;
+        return planned == 0 ? 0 : (double) this.completed.get() / planned;
+    }
+
+    /**
+     * Returns the state of the warm-up, as served by the readiness endpoint.
+     *
+     * @return the phase, progress and number of requests replayed
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("ready", isReady());
+        status.put("phase", this.phase.name().toLowerCase());
+        status.put("progress", getProgress());
+        status.put("requests", this.completed.get());
+        return status;
+    }
+
+    /**
+     * Builds the request mix from a sample of the movies and people, covering
+     * every read endpoint.
+     */
+    private List<String> requestMix() throws SQLException {
+        List<Movie> movies = this.generation.getMovieDao().getAllMovies(Defaults.WARMUP_SAMPLE);
+        List<Person> people = this.generation.getPersonDao().getAllPeople(Defaults.WARMUP_SAMPLE);
+
+        List<String> mix = new ArrayList<>();
+        mix.add("/movies");
+        mix.add("/people");
+        mix.add("/movies?limit=10");
+        for (Movie movie : movies) {
+            mix.add("/movies/" + movie.getId());
+            mix.add("/movies/" + movie.getId() + "/stars");
+            mix.add("/movies/" + movie.getId() + "/similar");
+            mix.add("/movies/ratings/" + movie.getYear());
+            mix.add("/movies/ratings?from=" + (movie.getYear() - 10) + "&to=" + movie.getYear());
+        }
+        for (Person person : people) {
+            mix.add("/people/" + person.getId());
+            mix.add("/people/" + person.getId() + "/movies");
+        }
+        return mix;
+    }
+
+    /**
+     * Sends one request and discards the response. Errors are counted and
+     * otherwise ignored, since a 404 is as good a warm-up as a 200.
+     */
+    private void replay(String path) throws InterruptedException {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(this.baseUrl + path)).GET().build();
+            this.client.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            Metrics.counter("warmup.failures").increment();
+        }
+        this.completed.incrementAndGet();
+    }
+}
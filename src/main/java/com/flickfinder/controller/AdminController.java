@@ -0,0 +1,76 @@
+package com.flickfinder.controller;
+
+import io.javalin.http.Context;
+import io.javalin.http.ForbiddenResponse;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Guards the admin endpoints, which reload the data, control the flight
+ * recording and hand out traces and recordings of other clients' requests.
+ * <p>
+ * When the server has been given an admin token, every admin request must
+ * carry it in the {@value #TOKEN_HEADER} header. Without a token, the admin
+ * endpoints are only served to clients on the same machine. Any other request
+ * gets a 403 before its handler runs.
+ */
+public class AdminController {
+
+    /**
+     * The environment variable the admin token is read from.
+     */
+    public static final String TOKEN_VARIABLE = "FLICKFINDER_ADMIN_TOKEN";
+
+    /**
+     * The header an admin request carries the token in.
+     */
+    public static final String TOKEN_HEADER = "X-Admin-Token";
+
+    /**
+     * The token admin requests must carry, or null to serve only local clients.
+     */
+    private final byte[] token;
+
+    /**
+     * Constructs an AdminController object.
+     *
+     * @param token the token admin requests must carry, or null or empty to
+     *              serve only local clients
+     */
+    public AdminController(String token) {
+        this.token = token == null || token.isEmpty() ? null : token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Refuses an admin request that does not carry the token or, if there is
+     * no token, that does not come from this machine.
+     *
+     * @param ctx the Javalin context
+     */
+    public void check(Context ctx) {
+        if (this.token != null) {
+            String given = ctx.header(TOKEN_HEADER);
+            // compare in constant time, so that the token cannot be guessed a byte at a time
+            if (given == null || !MessageDigest.isEqual(this.token, given.getBytes(StandardCharsets.UTF_8))) {
+                throw new ForbiddenResponse("Missing or wrong " + TOKEN_HEADER);
+            }
+        } else if (!isLoopback(ctx.req().getRemoteAddr())) {
+            throw new ForbiddenResponse("Admin endpoints are only served to local clients");
+        }
+    }
+
+    /**
+     * Returns whether an address is a loopback address. The address is the
+     * literal IP of the connection, so it is never looked up.
+     */
+    private static boolean isLoopback(String address) {
+        try {
+            return address != null && InetAddress.getByName(address).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.flickfinder.controller;
+
+import com.flickfinder.util.AdaptiveLimit;
+import com.flickfinder.util.AdaptiveLimit.Priority;
+import com.flickfinder.util.Metrics;
+import io.javalin.http.Context;
+import io.javalin.http.ServiceUnavailableResponse;
+
+/**
+ * Admission control for the API routes.
+ * <p>
+ * Every request to a classified route must be admitted by an
+ * {@link AdaptiveLimit} before its handler runs. Requests over the limit are
+ * answered straight away with a 503 and a Retry-After header, instead of
+ * queueing behind the database until every client times out. Routes that are
+ * not classified, such as the readiness and metrics endpoints, are never shed.
+ */
+public class AdmissionController {
+
+    /**
+     * The context attribute holding the time an admitted request started.
+     */
+    private static final String STARTED = "admission.started";
+
+    /**
+     * The limit requests are admitted against.
+     */
+    private final AdaptiveLimit limit;
+
+    /**
+     * The priority of each route, by its path pattern.
+     */
+    private final RouteTable<Priority> priorities = new RouteTable<>();
+
+    /**
+     * Constructs an AdmissionController object.
+     *
+     * @param limit the limit to admit requests against
+     */
+    public AdmissionController(AdaptiveLimit limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Subjects a route to admission control.
+     *
+     * @param path     the path pattern the route is registered with
+     * @param priority the priority of its requests
+     * @return this controller
+     */
+    public AdmissionController classify(String path, Priority priority) {
+        this.priorities.put(path, priority);
+        return this;
+    }
+
+    /**
+     * Admits or sheds a request before its handler runs. A shed request skips
+     * its handler, but still goes through the after hooks.
+     *
+     * @param ctx the Javalin context
+     */
+    public void admit(Context ctx) {
+        Priority priority = this.priorities.get(ctx);
+        if (priority == null) {
+            return;
+        }
+        if (!this.limit.tryAcquire(priority)) {
+            Metrics.counter("admission.rejected." + priority.name().toLowerCase()).increment();
+            ctx.header("Retry-After", "1");
+            // thrown rather than skipping the remaining handlers, which would skip
+            // the after hooks too and leave the request's trace and event open
+            throw new ServiceUnavailableResponse("Server busy");
+        }
+        ctx.attribute(STARTED, System.nanoTime());
+    }
+
+    /**
+     * Releases an admitted request once its response is done, feeding its
+     * latency back into the limit.
+     *
+     * @param ctx the Javalin context
+     */
+    public void complete(Context ctx) {
+        Long started = ctx.attribute(STARTED);
+        if (started == null) {
+            return;
+        }
+        ctx.attribute(STARTED, null);
+        this.limit.release(System.nanoTime() - started, ctx.statusCode() >= 500);
+    }
+}
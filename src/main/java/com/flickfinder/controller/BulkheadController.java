@@ -0,0 +1,119 @@
+package com.flickfinder.controller;
+
+import com.flickfinder.Generation;
+import com.flickfinder.Generation.Lane;
+import com.flickfinder.Reloader;
+import com.flickfinder.trace.Span;
+import com.flickfinder.trace.Trace;
+import com.flickfinder.util.Bulkhead;
+import com.flickfinder.util.Defaults;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the API handlers on a bulkhead per lane.
+ * <p>
+ * A handler is handed from the server's thread to its lane's bulkhead and the
+ * request completes asynchronously once the handler has run, reading from the
+ * lane's own connection. A lane that falls behind fills only its own queue:
+ * once that is full its requests are answered with a 503 and a Retry-After
+ * header while the other lanes carry on.
+ */
+public class BulkheadController {
+
+    /**
+     * A handler run on a lane.
+     */
+    @FunctionalInterface
+    public interface LaneHandler {
+        /**
+         * Handles a request.
+         *
+         * @param ctx         the Javalin context
+         * @param controllers the controllers of the request's lane
+         * @throws Exception if the handler fails
+         */
+        void handle(Context ctx, Generation.Controllers controllers) throws Exception;
+    }
+
+    private final Reloader data;
+    private final Map<Lane, Bulkhead> bulkheads = new EnumMap<>(Lane.class);
+
+    /**
+     * Constructs a BulkheadController with a bulkhead for each lane.
+     *
+     * @param data the data the handlers serve
+     */
+    public BulkheadController(Reloader data) {
+        this.data = data;
+        this.bulkheads.put(Lane.LOOKUP, new Bulkhead("lookup", Defaults.BULKHEAD_LOOKUP_THREADS,
+                Defaults.BULKHEAD_LOOKUP_QUEUE));
+        this.bulkheads.put(Lane.LIST, new Bulkhead("list", Defaults.BULKHEAD_LIST_THREADS,
+                Defaults.BULKHEAD_LIST_QUEUE));
+        this.bulkheads.put(Lane.RATINGS, new Bulkhead("ratings", Defaults.BULKHEAD_RATINGS_THREADS,
+                Defaults.BULKHEAD_RATINGS_QUEUE));
+    }
+
+    /**
+     * Returns a route handler that runs a handler on a lane.
+     *
+     * @param lane    the lane
+     * @param handler the handler
+     * @return the route handler
+     */
+    public Handler on(Lane lane, LaneHandler handler) {
+        Bulkhead bulkhead = this.bulkheads.get(lane);
+        return ctx -> {
+            Generation.Controllers controllers = this.data.pinned(ctx).lane(lane);
+            CompletableFuture<Void> done;
+            try {
+                done = bulkhead.submit(() -> {
+                    try (Span span = Trace.span("controller")) {
+                        span.attribute("lane", lane.name().toLowerCase());
+                        handler.handle(ctx, controllers);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                ctx.status(503);
+                ctx.header("Retry-After", "1");
+                ctx.result("Server busy");
+                return;
+            }
+            ctx.future(() -> done);
+        };
+    }
+
+    /**
+     * Returns the bulkhead of a lane.
+     *
+     * @param lane the lane
+     * @return the bulkhead
+     */
+    public Bulkhead getBulkhead(Lane lane) {
+        return this.bulkheads.get(lane);
+    }
+
+    /**
+     * Handles a request for the state of the bulkheads.
+     *
+     * @param ctx the Javalin context
+     */
+    public void handleStatus(Context ctx) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        this.bulkheads.forEach((lane, bulkhead) -> status.put(lane.name().toLowerCase(), bulkhead.describe()));
+        ctx.json(status);
+    }
+
+    /**
+     * Stops taking work on every lane.
+     */
+    public void close() {
+        this.bulkheads.values().forEach(Bulkhead::close);
+    }
+}
@@ -0,0 +1,174 @@
+package com.flickfinder.controller;
+
+import com.flickfinder.util.Deadline;
+import com.flickfinder.util.Metrics;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import org.eclipse.jetty.io.AbstractEndPoint;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.HttpConnection;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Gives each request to a registered route a deadline.
+ * <p>
+ * The deadline is started before the handler runs and is carried into the
+ * DAOs on the thread that runs the handler, where it cancels the SQLite query that is
+ * running when it passes or when the client hangs up. A request that ran out
+ * of time is answered with a 504 whatever its handler made of the failed query.
+ * <p>
+ * Jetty does not read from a connection while its request is handled, so a
+ * client hanging up would go unnoticed until the response is written. For an
+ * HTTP/1 request without a body, the connection is therefore watched for
+ * reads while the deadline runs: the end of the stream means the client has
+ * gone. Anything else read from it is the start of a pipelined request, which
+ * cannot be handed back to Jetty, so that connection is closed after the
+ * response and the client sends the request again.
+ */
+public class DeadlineController {
+
+    /**
+     * The context attribute holding the deadline of a request, which may be
+     * finished on another thread than the one it was started on.
+     */
+    private static final String DEADLINE = "deadline";
+
+    /**
+     * The context attribute holding the watch on a request's connection.
+     */
+    private static final String WATCH = "deadline.watch";
+
+    /**
+     * How long requests to each route may take, in milliseconds, by path pattern.
+     */
+    private final RouteTable<Long> deadlines = new RouteTable<>();
+
+    /**
+     * Gives a route a deadline.
+     *
+     * @param path   the path pattern the route is registered with
+     * @param millis how long its requests may take, in milliseconds
+     * @return this controller
+     */
+    public DeadlineController route(String path, long millis) {
+        this.deadlines.put(path, millis);
+        return this;
+    }
+
+    /**
+     * Starts the deadline of a request before its handler runs.
+     *
+     * @param ctx the Javalin context
+     */
+    public void start(Context ctx) {
+        Long millis = this.deadlines.get(ctx);
+        if (millis != null) {
+            Deadline deadline = Deadline.start(millis);
+            ctx.attribute(DEADLINE, deadline);
+            if (ctx.req() instanceof Request request && request.getHttpChannel().getConnection() instanceof HttpConnection
+                    && ctx.req().getContentLengthLong() <= 0 && ctx.header(Header.TRANSFER_ENCODING) == null) {
+                Watch watch = new Watch(request.getHttpChannel().getEndPoint(), deadline);
+                ctx.attribute(WATCH, watch);
+                watch.start();
+            }
+        }
+    }
+
+    /**
+     * Ends the deadline of a request once its handler is done, turning a
+     * timed-out request into a 504.
+     *
+     * @param ctx the Javalin context
+     */
+    public void finish(Context ctx) {
+        Watch watch = ctx.attribute(WATCH);
+        if (watch != null && watch.stop()) {
+            ctx.header(Header.CONNECTION, "close");
+        }
+        Deadline deadline = ctx.attribute(DEADLINE);
+        Deadline.Outcome outcome = deadline != null ? deadline.finish() : Deadline.end();
+        if (outcome == Deadline.Outcome.TIMED_OUT) {
+            Metrics.counter("requests.timedOut").increment();
+            ctx.status(504);
+            ctx.result("Request timed out");
+        } else if (outcome == Deadline.Outcome.CANCELLED) {
+            Metrics.counter("requests.cancelled").increment();
+        }
+    }
+
+    /**
+     * Watches the connection of one request for its client hanging up.
+     */
+    private static final class Watch implements Callback {
+
+        private final EndPoint endPoint;
+        private final Deadline deadline;
+
+        /**
+         * Whether the request has finished; guarded by this.
+         */
+        private boolean stopped;
+
+        /**
+         * Whether bytes of a pipelined request were read; guarded by this.
+         */
+        private boolean pipelined;
+
+        Watch(EndPoint endPoint, Deadline deadline) {
+            this.endPoint = endPoint;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Asks to be called back when the connection can be read. Jetty is not
+         * reading it while the request is handled, so nothing else is waiting.
+         */
+        synchronized void start() {
+            this.endPoint.tryFillInterested(this);
+        }
+
+        /**
+         * Stops watching, before Jetty goes back to reading the connection.
+         *
+         * @return whether the connection has to be closed after the response
+         */
+        synchronized boolean stop() {
+            this.stopped = true;
+            if (this.endPoint instanceof AbstractEndPoint watched && watched.isFillInterested()) {
+                watched.getFillInterest().onFail(new CancellationException());
+            }
+            return this.pipelined;
+        }
+
+        @Override
+        public synchronized void succeeded() {
+            if (this.stopped) {
+                return;
+            }
+            try {
+                int read = this.endPoint.fill(BufferUtil.allocate(1));
+                if (read < 0) {
+                    this.deadline.clientGone();
+                } else if (read == 0) {
+                    this.endPoint.tryFillInterested(this);
+                } else {
+                    this.pipelined = true;
+                }
+            } catch (IOException e) {
+                this.deadline.clientGone();
+            }
+        }
+
+        @Override
+        public synchronized void failed(Throwable x) {
+            if (!this.stopped && !this.endPoint.isOpen()) {
+                this.deadline.clientGone();
+            }
+        }
+    }
+}
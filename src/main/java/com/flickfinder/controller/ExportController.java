@@ -0,0 +1,223 @@
+package com.flickfinder.controller;
+
+import com.flickfinder.dao.MovieDAO;
+import com.flickfinder.dao.PersonDAO;
+import com.flickfinder.dao.RowSink;
+import com.flickfinder.json.Fields;
+import com.flickfinder.json.ModelJsonMapper;
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.MovieRating;
+import com.flickfinder.model.Person;
+import com.flickfinder.model.Star;
+import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Metrics;
+import com.flickfinder.util.RateLimiter;
+import io.javalin.http.Context;
+import io.javalin.util.JavalinLogger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The controller for the bulk export endpoints.
+ * <p>
+ * Each export streams a whole table as newline-delimited JSON, one object per
+ * line, straight from a forward-only cursor. Nothing is collected in memory:
+ * rows are written to the socket as they are read and flushed in chunks, and a
+ * client that reads slowly blocks the writes, which in turn holds back the
+ * cursor.
+ * <p>
+ * Exports are throttled so that they cannot starve interactive traffic: only a
+ * few may run at once, and together they may only read a fixed number of rows
+ * per second.
+ */
+public class ExportController {
+
+    /**
+     * The media type of newline-delimited JSON.
+     */
+    static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * A source of rows for an export.
+     *
+     * @param <T> the type of row
+     */
+    @FunctionalInterface
+    private interface Export<T> {
+        int run(RowSink<T> sink, Fields fields) throws SQLException, IOException;
+    }
+
+    /**
+     * Writes some fields of a row as JSON.
+     *
+     * @param <T> the type of row
+     */
+    @FunctionalInterface
+    private interface RowWriter<T> {
+        void write(StringBuilder out, T row, Fields fields);
+    }
+
+    /**
+     * The movie data access object.
+     */
+    private final MovieDAO movieDAO;
+
+    /**
+     * The person data access object.
+     */
+    private final PersonDAO personDAO;
+
+    /**
+     * Limits how many exports can run at once, across every copy of the data.
+     */
+    private static final Semaphore running = new Semaphore(Defaults.EXPORT_CONCURRENCY);
+
+    /**
+     * Paces the rows read by all exports together.
+     */
+    private static final RateLimiter rowRate = new RateLimiter(Defaults.EXPORT_ROWS_PER_SECOND);
+
+    /**
+     * Constructs an ExportController object and initializes the DAOs.
+     */
+    public ExportController(MovieDAO movieDAO, PersonDAO personDAO) {
+        this.movieDAO = movieDAO;
+        this.personDAO = personDAO;
+        Metrics.gauge("export.active", () -> Defaults.EXPORT_CONCURRENCY - running.availablePermits());
+    }
+
+    /**
+     * Streams every movie.
+     *
+     * @param ctx the Javalin context
+     */
+    public void exportMovies(Context ctx) {
+        export(ctx, Movie.class, movieDAO::exportMovies, ModelJsonMapper::writeMovie);
+    }
+
+    /**
+     * Streams every person.
+     *
+     * @param ctx the Javalin context
+     */
+    public void exportPeople(Context ctx) {
+        export(ctx, Person.class, personDAO::exportPeople, ModelJsonMapper::writePerson);
+    }
+
+    /**
+     * Streams every (movie, person) star pair.
+     *
+     * @param ctx the Javalin context
+     */
+    public void exportStars(Context ctx) {
+        export(ctx, Star.class, movieDAO::exportStars, ModelJsonMapper::writeStar);
+    }
+
+    /**
+     * Streams every rated movie with its rating and votes.
+     *
+     * @param ctx the Javalin context
+     */
+    public void exportRatings(Context ctx) {
+        export(ctx, MovieRating.class, movieDAO::exportRatings, ModelJsonMapper::writeMovieRating);
+    }
+
+    /**
+     * Runs an export, writing each row as one line of JSON with the fields the
+     * client asked for. The body is gzip compressed when the client accepts it.
+     */
+    private <T> void export(Context ctx, Class<T> model, Export<T> export, RowWriter<T> writer) {
+        Params params = new Params(ctx);
+        Fields fields = params.fields(model);
+        if (params.rejected()) {
+            return;
+        }
+        if (!running.tryAcquire()) {
+            Metrics.counter("export.rejected").increment();
+            ctx.status(503);
+            ctx.header("Retry-After", "30");
+            ctx.result("Too many exports in progress");
+            return;
+        }
+        try {
+            boolean gzip = acceptsGzip(ctx.header("Accept-Encoding"));
+            ctx.status(200);
+            ctx.contentType(NDJSON);
+            ctx.header("Vary", "Accept-Encoding");
+            if (gzip) {
+                ctx.header("Content-Encoding", "gzip");
+            }
+
+            OutputStream out = ctx.res().getOutputStream();
+            GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, 8192, true) : null;
+            Writer body = new OutputStreamWriter(compressed != null ? compressed : out, StandardCharsets.UTF_8);
+            StringBuilder line = new StringBuilder(256);
+            int[] pending = {0};
+
+            int rows = export.run(row -> {
+                line.setLength(0);
+                writer.write(line, row, fields);
+                body.append(line).append('\n');
+                if (++pending[0] == Defaults.EXPORT_FLUSH_ROWS) {
+                    body.flush();
+                    throttle(pending[0]);
+                    pending[0] = 0;
+                }
+            }, fields);
+
+            body.flush();
+            if (compressed != null) {
+                compressed.finish();
+            }
+            Metrics.counter("export.rows").add(rows);
+        } catch (SQLException e) {
+            if (!ctx.res().isCommitted()) {
+                ctx.res().reset();
+                ctx.status(500);
+                ctx.result("Database error");
+            }
+            JavalinLogger.error("Database error", e);
+        } catch (IOException e) {
+            Metrics.counter("export.aborted").increment();
+            JavalinLogger.info("Export aborted: " + e.getMessage());
+        } finally {
+            running.release();
+        }
+    }
+
+    /**
+     * Waits until the rows just written fit within the shared row rate.
+     */
+    private void throttle(int rows) throws InterruptedIOException {
+        try {
+            rowRate.acquire(rows);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export interrupted");
+        }
+    }
+
+    /**
+     * Returns whether an Accept-Encoding header allows gzip.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+}
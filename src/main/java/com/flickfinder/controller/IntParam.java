@@ -0,0 +1,124 @@
+package com.flickfinder.controller;
+
+/**
+ * An int parameter of a route: where it is read from, its default and the
+ * range it must be in.
+ * <p>
+ * Parameters are declared once, as constants of the controller that reads
+ * them, and bound to each request through {@link Params}. For example:
+ * <pre>{@code
+ * static final IntParam LIMIT = IntParam.query("limit", Defaults.LIMIT).min(1);
+ * }</pre>
+ */
+public final class IntParam {
+
+    /**
+     * The name of the parameter.
+     */
+    private final String name;
+
+    /**
+     * Whether the parameter is part of the path rather than the query string.
+     */
+    private final boolean path;
+
+    /**
+     * Whether a request without the parameter is rejected.
+     */
+    private final boolean required;
+
+    /**
+     * The value of the parameter when it is not given.
+     */
+    private final int defaultValue;
+
+    private final int min;
+    private final int max;
+
+    private IntParam(String name, boolean path, boolean required, int defaultValue, int min, int max) {
+        this.name = name;
+        this.path = path;
+        this.required = required;
+        this.defaultValue = defaultValue;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Declares a parameter taken from the path, such as the {@code {id}} of
+     * {@code /movies/{id}}.
+     *
+     * @param name the name of the path parameter
+     * @return the parameter
+     */
+    public static IntParam path(String name) {
+        return new IntParam(name, true, true, 0, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Declares a query parameter that must be given.
+     *
+     * @param name the name of the query parameter
+     * @return the parameter
+     */
+    public static IntParam query(String name) {
+        return new IntParam(name, false, true, 0, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Declares a query parameter that may be left out. The default is used as
+     * it is, without checking it against the range.
+     *
+     * @param name         the name of the query parameter
+     * @param defaultValue the value when it is left out
+     * @return the parameter
+     */
+    public static IntParam query(String name, int defaultValue) {
+        return new IntParam(name, false, false, defaultValue, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Sets the smallest value the parameter may have.
+     *
+     * @param min the smallest value, inclusive
+     * @return a copy of the parameter with the bound
+     */
+    public IntParam min(int min) {
+        return new IntParam(this.name, this.path, this.required, this.defaultValue, min, this.max);
+    }
+
+    /**
+     * Sets the largest value the parameter may have.
+     *
+     * @param max the largest value, inclusive
+     * @return a copy of the parameter with the bound
+     */
+    public IntParam max(int max) {
+        return new IntParam(this.name, this.path, this.required, this.defaultValue, this.min, max);
+    }
+
+    /**
+     * Returns the name of the parameter.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    boolean isPath() {
+        return this.path;
+    }
+
+    boolean isRequired() {
+        return this.required;
+    }
+
+    int getDefaultValue() {
+        return this.defaultValue;
+    }
+
+    boolean inRange(long value) {
+        return value >= this.min && value <= this.max;
+    }
+}
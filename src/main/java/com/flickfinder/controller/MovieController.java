@@ -1,17 +1,20 @@
 package com.flickfinder.controller;
 
 import com.flickfinder.dao.MovieDAO;
+import com.flickfinder.include.Expander;
+import com.flickfinder.include.Include;
+import com.flickfinder.index.MinHashIndex;
+import com.flickfinder.json.Fields;
 import com.flickfinder.model.Movie;
 import com.flickfinder.model.MovieRating;
 import com.flickfinder.model.Person;
 import com.flickfinder.util.Defaults;
+import com.flickfinder.util.ErrorLog;
 import io.javalin.http.Context;
-import io.javalin.util.JavalinLogger;
 
 import java.sql.SQLException;
 import java.util.List;
-
-import static com.flickfinder.util.Utils.coalesce;
+import java.util.function.Supplier;
 
 /**
  * The controller for the movie endpoints.
@@ -32,16 +35,65 @@ import static com.flickfinder.util.Utils.coalesce;
 
 public class MovieController {
 
+    /**
+     * The parameters of the movie endpoints.
+     */
+    static final IntParam ID = IntParam.path("id");
+    static final IntParam YEAR = IntParam.path("year");
+    static final IntParam FROM = IntParam.query("from");
+    static final IntParam TO = IntParam.query("to");
+    static final IntParam LIMIT = IntParam.query("limit", Defaults.LIMIT).min(1);
+    static final IntParam VOTES = IntParam.query("votes", Defaults.VOTES).min(0);
+    static final IntParam SIMILAR_LIMIT = IntParam.query("limit", Defaults.SIMILAR_LIMIT).min(1).max(Defaults.LIMIT);
+
     /**
      * The movie data access object.
      */
     private final MovieDAO movieDAO;
 
+    /**
+     * Supplies the index used to find movies with overlapping cast and directors.
+     */
+    private final Supplier<MinHashIndex> similarityIndex;
+
+    /**
+     * Includes related rows in the responses.
+     */
+    private final Expander expander;
+
     /**
      * Constructs a MovieController object and initializes the movieDAO.
+     * Similar movie lookups will find nothing until an index is supplied.
      */
     public MovieController(MovieDAO movieDAO) {
+        this(movieDAO, MinHashIndex.EMPTY);
+    }
+
+    /**
+     * Constructs a MovieController object with the movieDAO and a prebuilt similarity index.
+     * Requests that include related rows are refused until an expander is supplied.
+     */
+    public MovieController(MovieDAO movieDAO, MinHashIndex similarityIndex) {
+        this(movieDAO, similarityIndex, Expander.NONE);
+    }
+
+    /**
+     * Constructs a MovieController object with the movieDAO, a prebuilt similarity
+     * index and the expander that includes related rows.
+     */
+    public MovieController(MovieDAO movieDAO, MinHashIndex similarityIndex, Expander expander) {
+        this(movieDAO, () -> similarityIndex, expander);
+    }
+
+    /**
+     * Constructs a MovieController object with the movieDAO, the expander that
+     * includes related rows and a supplier of the similarity index, which is
+     * only asked for the index when similar movies are first looked up.
+     */
+    public MovieController(MovieDAO movieDAO, Supplier<MinHashIndex> similarityIndex, Expander expander) {
         this.movieDAO = movieDAO;
+        this.similarityIndex = similarityIndex;
+        this.expander = expander;
     }
 
     /**
@@ -50,22 +102,19 @@ public class MovieController {
      * @param ctx the Javalin context
      */
     public void getAllMovies(Context ctx) {
+        Params params = new Params(ctx);
+        int limit = params.get(LIMIT);
+        Fields fields = params.fields(Movie.class);
+        Include include = params.include(Movie.class);
+        if (params.rejected()) {
+            return;
+        }
         try {
-            int limit = Integer.parseInt(coalesce(ctx.queryParam("limit"), Integer.toString(Defaults.LIMIT)));
-            if (limit <= 0) {
-                ctx.status(400);
-                ctx.result("Invalid limit parameter");
-                return;
-            }
-            ctx.json(movieDAO.getAllMovies(limit));
+            expander.send(ctx, movieDAO.getAllMovies(limit), fields, include);
         } catch (SQLException e) {
             ctx.status(500);
             ctx.result("Database error");
-            JavalinLogger.error("Database error", e);
-        } catch (NumberFormatException e) {
-            ctx.status(400);
-            ctx.result("Invalid limit parameter");
-            JavalinLogger.error("Non numeric limit parameter", e);
+            ErrorLog.error("Database error", e);
         }
     }
 
@@ -75,24 +124,25 @@ public class MovieController {
      * @param ctx the Javalin context
      */
     public void getMovieById(Context ctx) {
+        Params params = new Params(ctx);
+        int id = params.get(ID);
+        Fields fields = params.fields(Movie.class);
+        Include include = params.include(Movie.class);
+        if (params.rejected()) {
+            return;
+        }
         try {
-            int id = Integer.parseInt(ctx.pathParam("id"));
-
             Movie movie = movieDAO.getMovieById(id);
             if (movie == null) {
                 ctx.status(404);
                 ctx.result("Movie not found");
                 return;
             }
-            ctx.json(movie);
+            expander.send(ctx, movie, fields, include);
         } catch (SQLException e) {
             ctx.status(500);
             ctx.result("Database error");
-            JavalinLogger.error("Database error", e);
-        } catch (NumberFormatException e) {
-            ctx.status(400);
-            ctx.result("Invalid id parameter");
-            JavalinLogger.error("Non numeric id parameter", e);
+            ErrorLog.error("Database error", e);
         }
     }
 
@@ -102,37 +152,63 @@ public class MovieController {
      * @param ctx the Javalin context
      */
     public void getRatingsByYear(Context ctx) {
+        Params params = new Params(ctx);
+        int year = params.get(YEAR);
+        int limit = params.get(LIMIT);
+        int votes = params.get(VOTES);
+        Fields fields = params.fields(MovieRating.class);
+        Include include = params.include(MovieRating.class);
+        if (params.rejected()) {
+            return;
+        }
         try {
-            int year = Integer.parseInt(ctx.pathParam("year"));
-            int limit = Integer.parseInt(coalesce(ctx.queryParam("limit"), Integer.toString(Defaults.LIMIT)));
-            if (limit <= 0) {
-                ctx.status(400);
-                ctx.result("Invalid limit parameter");
-                return;
-            }
-            int votes = Integer.parseInt(coalesce(ctx.queryParam("votes"), Integer.toString(Defaults.VOTES)));
-            if (votes < 0) {
-                ctx.status(400);
-                ctx.result("Invalid votes parameter");
+            List<MovieRating> ratings = movieDAO.getRatingsByYear(limit, votes, year);
+            if (ratings.isEmpty()) {
+                ctx.status(404);
+                ctx.result("No movies found");
                 return;
             }
 
-            List<MovieRating> ratings = movieDAO.getRatingsByYear(limit, votes, year);
+            expander.send(ctx, ratings, fields, include);
+        } catch (SQLException e) {
+            ctx.status(500);
+            ctx.result("Database error");
+            ErrorLog.error("Database error", e);
+        }
+    }
+
+    /**
+     * Returns the highest rated movies released between the from and to years (inclusive).
+     *
+     * @param ctx the Javalin context
+     */
+    public void getRatingsByYearRange(Context ctx) {
+        Params params = new Params(ctx);
+        int from = params.get(FROM);
+        int to = params.get(TO);
+        if (!params.rejected() && (from > to || (long) to - from >= Defaults.MAX_YEAR_SPAN)) {
+            params.reject("Invalid year range");
+        }
+        int limit = params.get(LIMIT);
+        int votes = params.get(VOTES);
+        Fields fields = params.fields(MovieRating.class);
+        Include include = params.include(MovieRating.class);
+        if (params.rejected()) {
+            return;
+        }
+        try {
+            List<MovieRating> ratings = movieDAO.getRatingsByYearRange(limit, votes, from, to);
             if (ratings.isEmpty()) {
                 ctx.status(404);
                 ctx.result("No movies found");
                 return;
             }
 
-            ctx.json(ratings);
+            expander.send(ctx, ratings, fields, include);
         } catch (SQLException e) {
             ctx.status(500);
             ctx.result("Database error");
-            JavalinLogger.error("Database error", e);
-        } catch (NumberFormatException e) {
-            ctx.status(400);
-            ctx.result("Invalid parameter(s)");
-            JavalinLogger.error("Non numeric parameter(s)", e);
+            ErrorLog.error("Database error", e);
         }
     }
 
@@ -142,9 +218,14 @@ public class MovieController {
      * @param ctx the Javalin context
      */
     public void getPeopleByMovieId(Context ctx) {
+        Params params = new Params(ctx);
+        int id = params.get(ID);
+        Fields fields = params.fields(Person.class);
+        Include include = params.include(Person.class);
+        if (params.rejected()) {
+            return;
+        }
         try {
-            int id = Integer.parseInt(ctx.pathParam("id"));
-
             List<Person> people = movieDAO.getPeopleByMovieId(id);
             if (people.isEmpty()) {
                 ctx.status(404);
@@ -152,15 +233,41 @@ public class MovieController {
                 return;
             }
 
-            ctx.json(people);
+            expander.send(ctx, people, fields, include);
+        } catch (SQLException e) {
+            ctx.status(500);
+            ctx.result("Database error");
+            ErrorLog.error("Database error", e);
+        }
+    }
+
+    /**
+     * Returns the movies sharing the most cast and directors with the movie with the specified id.
+     *
+     * @param ctx the Javalin context
+     */
+    public void getSimilarMovies(Context ctx) {
+        Params params = new Params(ctx);
+        int id = params.get(ID);
+        int limit = params.get(SIMILAR_LIMIT);
+        Fields fields = params.fields(Movie.class);
+        Include include = params.include(Movie.class);
+        if (params.rejected()) {
+            return;
+        }
+        try {
+            List<Movie> movies = movieDAO.getMoviesByIds(similarityIndex.get().similar(id, limit));
+            if (movies.isEmpty()) {
+                ctx.status(404);
+                ctx.result("No similar movies found");
+                return;
+            }
+
+            expander.send(ctx, movies, fields, include);
         } catch (SQLException e) {
             ctx.status(500);
             ctx.result("Database error");
-            JavalinLogger.error("Database error", e);
-        } catch (NumberFormatException e) {
-            ctx.status(400);
-            ctx.result("Invalid id parameter");
-            JavalinLogger.error("Non numeric id parameter", e);
+            ErrorLog.error("Database error", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,144 @@
+package com.flickfinder.controller;
+
+import com.flickfinder.include.Include;
+import com.flickfinder.json.Fields;
+import com.flickfinder.util.ErrorLog;
+import io.javalin.http.Context;
+
+import static com.flickfinder.util.Utils.NOT_AN_INT;
+import static com.flickfinder.util.Utils.parseInt;
+
+/**
+ * Binds the parameters of one request to their declared {@link IntParam}s.
+ * <p>
+ * Each value is parsed straight from the text of the request without throwing,
+ * so a malformed parameter costs no more than a valid one. The first parameter
+ * that is missing, malformed or out of range rejects the request with a 400 and
+ * a message naming it; the values read after that are 0 and should not be used.
+ * A handler reads all of its parameters and then checks {@link #rejected()} once:
+ * <pre>{@code
+ * Params params = new Params(ctx);
+ * int id = params.get(ID);
+ * int limit = params.get(LIMIT);
+ * if (params.rejected()) {
+ *     return;
+ * }
+ * }</pre>
+ */
+public final class Params {
+
+    /**
+     * The request the parameters are read from.
+     */
+    private final Context ctx;
+
+    /**
+     * Whether the request has been rejected.
+     */
+    private boolean rejected;
+
+    /**
+     * Constructs a Params object for a request.
+     *
+     * @param ctx the Javalin context
+     */
+    public Params(Context ctx) {
+        this.ctx = ctx;
+    }
+
+    /**
+     * Returns the value of a parameter, rejecting the request if it is missing,
+     * malformed or out of range.
+     *
+     * @param param the parameter
+     * @return the value, or 0 if the request has been rejected
+     */
+    public int get(IntParam param) {
+        if (this.rejected) {
+            return 0;
+        }
+        String name = param.getName();
+        String raw = param.isPath() ? this.ctx.pathParam(name) : this.ctx.queryParam(name);
+        if (raw == null) {
+            if (param.isRequired()) {
+                reject("Missing " + name + " parameter");
+                return 0;
+            }
+            return param.getDefaultValue();
+        }
+        long value = parseInt(raw, 0);
+        if (value == NOT_AN_INT) {
+            reject("Invalid " + name + " parameter");
+            ErrorLog.error("Non numeric " + name + " parameter");
+            return 0;
+        }
+        if (!param.inRange(value)) {
+            reject("Invalid " + name + " parameter");
+            return 0;
+        }
+        return (int) value;
+    }
+
+    /**
+     * Returns the fields of a model the response is narrowed to by the
+     * {@code fields} parameter, rejecting the request if one is not a field of
+     * the model.
+     *
+     * @param model the model class the response is made of
+     * @return the fields, all of them if the parameter is left out or the request has been rejected
+     */
+    public Fields fields(Class<?> model) {
+        if (this.rejected) {
+            return Fields.all(model);
+        }
+        Fields fields = Fields.parse(model, this.ctx.queryParam("fields"));
+        if (fields == null) {
+            reject("Invalid fields parameter");
+            return Fields.all(model);
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the related rows the {@code include} parameter asks to include in
+     * each row, rejecting the request if one is not a relation of the model.
+     *
+     * @param model the model class the response is made of
+     * @return the include, none if the parameter is left out or the request has been rejected
+     */
+    public Include include(Class<?> model) {
+        if (this.rejected) {
+            return Include.NONE;
+        }
+        Include include = Include.parse(model, this.ctx.queryParam("include"));
+        if (include == null) {
+            reject("Invalid include parameter");
+            return Include.NONE;
+        }
+        return include;
+    }
+
+    /**
+     * Rejects the request with a 400, for checks that span parameters. Only the
+     * first rejection is sent.
+     *
+     * @param message the reason given to the client
+     */
+    public void reject(String message) {
+        if (this.rejected) {
+            return;
+        }
+        this.rejected = true;
+        this.ctx.status(400);
+        this.ctx.result(message);
+    }
+
+    /**
+     * Returns whether the request has been rejected.
+     *
+     * @return true if a 400 has been sent
+     */
+    public boolean rejected() {
+        return this.rejected;
+    }
+}
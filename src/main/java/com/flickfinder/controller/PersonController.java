@@ -1,17 +1,18 @@
 package com.flickfinder.controller;
 
 import com.flickfinder.dao.PersonDAO;
+import com.flickfinder.include.Expander;
+import com.flickfinder.include.Include;
+import com.flickfinder.json.Fields;
 import com.flickfinder.model.Movie;
 import com.flickfinder.model.Person;
 import com.flickfinder.util.Defaults;
+import com.flickfinder.util.ErrorLog;
 import io.javalin.http.Context;
-import io.javalin.util.JavalinLogger;
 
 import java.sql.SQLException;
 import java.util.List;
 
-import static com.flickfinder.util.Utils.coalesce;
-
 /**
  * The controller for the people endpoints.
  * <p>
@@ -30,16 +31,37 @@ import static com.flickfinder.util.Utils.coalesce;
  */
 public class PersonController {
 
+    /**
+     * The parameters of the people endpoints.
+     */
+    static final IntParam ID = IntParam.path("id");
+    static final IntParam LIMIT = IntParam.query("limit", Defaults.LIMIT).min(1);
+
     /**
      * The person data access object.
      */
     private final PersonDAO personDAO;
 
+    /**
+     * Includes related rows in the responses.
+     */
+    private final Expander expander;
+
     /**
      * Constructs a PersonController object and initializes the personDAO.
+     * Requests that include related rows are refused until an expander is supplied.
      */
     public PersonController(PersonDAO personDAO) {
+        this(personDAO, Expander.NONE);
+    }
+
+    /**
+     * Constructs a PersonController object with the personDAO and the expander
+     * that includes related rows.
+     */
+    public PersonController(PersonDAO personDAO, Expander expander) {
         this.personDAO = personDAO;
+        this.expander = expander;
     }
 
     /**
@@ -48,22 +70,19 @@ public class PersonController {
      * @param ctx the Javalin context
      */
     public void getAllPeople(Context ctx) {
+        Params params = new Params(ctx);
+        int limit = params.get(LIMIT);
+        Fields fields = params.fields(Person.class);
+        Include include = params.include(Person.class);
+        if (params.rejected()) {
+            return;
+        }
         try {
-            int limit = Integer.parseInt(coalesce(ctx.queryParam("limit"), Integer.toString(Defaults.LIMIT)));
-            if (limit <= 0) {
-                ctx.status(400);
-                ctx.result("Invalid limit parameter");
-                return;
-            }
-            ctx.json(personDAO.getAllPeople(limit));
+            expander.send(ctx, personDAO.getAllPeople(limit), fields, include);
         } catch (SQLException e) {
             ctx.status(500);
             ctx.result("Database error");
-            JavalinLogger.error("Database error", e);
-        } catch (NumberFormatException e) {
-            ctx.status(400);
-            ctx.result("Invalid limit parameter");
-            JavalinLogger.error("Non numeric limit parameter", e);
+            ErrorLog.error("Database error", e);
         }
     }
 
@@ -73,9 +92,14 @@ public class PersonController {
      * @param ctx the Javalin context
      */
     public void getPersonById(Context ctx) {
+        Params params = new Params(ctx);
+        int id = params.get(ID);
+        Fields fields = params.fields(Person.class);
+        Include include = params.include(Person.class);
+        if (params.rejected()) {
+            return;
+        }
         try {
-            int id = Integer.parseInt(ctx.pathParam("id"));
-
             Person person = personDAO.getPersonById(id);
             if (person == null) {
                 ctx.status(404);
@@ -83,15 +107,11 @@ public class PersonController {
                 return;
             }
 
-            ctx.json(person);
+            expander.send(ctx, person, fields, include);
         } catch (SQLException e) {
             ctx.status(500);
             ctx.result("Database error");
-            JavalinLogger.error("Database error", e);
-        } catch (NumberFormatException e) {
-            ctx.status(400);
-            ctx.result("Invalid id parameter");
-            JavalinLogger.error("Non numeric id parameter", e);
+            ErrorLog.error("Database error", e);
         }
     }
 
@@ -101,24 +121,25 @@ public class PersonController {
      * @param ctx the Javalin context
      */
     public void getMoviesStarringPerson(Context ctx) {
+        Params params = new Params(ctx);
+        int id = params.get(ID);
+        Fields fields = params.fields(Movie.class);
+        Include include = params.include(Movie.class);
+        if (params.rejected()) {
+            return;
+        }
         try {
-            int id = Integer.parseInt(ctx.pathParam("id"));
-
             List<Movie> movies = personDAO.getMoviesByPersonId(id);
             if (movies.isEmpty()) {
                 ctx.status(404);
                 ctx.result("Movies not found");
                 return;
             }
-            ctx.json(movies);
+            expander.send(ctx, movies, fields, include);
         } catch (SQLException e) {
             ctx.status(500);
             ctx.result("Database error");
-            JavalinLogger.error("Database error", e);
-        } catch (NumberFormatException e) {
-            ctx.status(400);
-            ctx.result("Invalid id parameter");
-            JavalinLogger.error("Non numeric id parameter", e);
+            ErrorLog.error("Database error", e);
         }
     }
-}
\ No newline at end of file
+}
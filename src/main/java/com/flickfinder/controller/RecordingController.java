@@ -0,0 +1,228 @@
+package com.flickfinder.controller;
+
+import com.flickfinder.jfr.CacheEvent;
+import com.flickfinder.jfr.QueryEvent;
+import com.flickfinder.jfr.RequestEvent;
+import com.flickfinder.util.Defaults;
+import io.javalin.http.Context;
+import io.javalin.util.JavalinLogger;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records requests as flight recorder events and controls a flight recording
+ * through the admin endpoints.
+ * <p>
+ * Each request is timed as a {@link RequestEvent}, and the DAOs and the shared
+ * cache emit {@link QueryEvent}s and {@link CacheEvent}s of their own. None of
+ * them costs more than a check while no recording has them enabled. Once one
+ * does, only the events slower than their thresholds are written, so a
+ * recording left running in production shows which routes and queries caused a
+ * latency spike without holding every request.
+ * <p>
+ * A recording started here runs until it is stopped, and keeps the last
+ * {@value com.flickfinder.util.Defaults#JFR_MAX_AGE_MINUTES} minutes of events.
+ * It can be dumped while it runs or after it has stopped.
+ */
+public class RecordingController {
+
+    /**
+     * The attribute under which a request's event is kept until it completes.
+     */
+    private static final String EVENT = "jfr.request";
+
+    /**
+     * The threshold of this server's events, in milliseconds; -1 keeps their own.
+     */
+    static final IntParam THRESHOLD = IntParam.query("threshold", -1).min(0);
+
+    /**
+     * The recording started through the admin endpoints, or null if there is none.
+     */
+    private Recording recording;
+
+    /**
+     * Starts timing a request, if request events are being recorded.
+     *
+     * @param ctx the Javalin context
+     */
+    public void begin(Context ctx) {
+        RequestEvent event = new RequestEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.begin();
+        ctx.attribute(EVENT, event);
+    }
+
+    /**
+     * Finishes timing a request and records it if it was slower than the threshold.
+     *
+     * @param ctx the Javalin context
+     */
+    public void commit(Context ctx) {
+        RequestEvent event = ctx.attribute(EVENT);
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.method = ctx.method().name();
+            event.route = ctx.endpointHandlerPath();
+            event.path = ctx.path();
+            event.status = ctx.statusCode();
+            event.commit();
+        }
+    }
+
+    /**
+     * Handles a request to start a recording. The {@code settings} parameter
+     * names the JDK settings to record with, {@code default} unless given, and
+     * {@code threshold} overrides the threshold of this server's own events, in
+     * milliseconds.
+     *
+     * @param ctx the Javalin context
+     */
+    public synchronized void handleStart(Context ctx) {
+        if (this.recording != null && this.recording.getState() == RecordingState.RUNNING) {
+            ctx.status(409);
+            ctx.result("A recording is already running");
+            return;
+        }
+        Configuration configuration;
+        try {
+            String settings = ctx.queryParam("settings");
+            configuration = Configuration.getConfiguration(settings == null ? "default" : settings);
+        } catch (IOException | ParseException e) {
+            ctx.status(400);
+            ctx.result("Invalid settings parameter");
+            return;
+        }
+        Params params = new Params(ctx);
+        int threshold = params.get(THRESHOLD);
+        if (params.rejected()) {
+            return;
+        }
+
+        if (this.recording != null) {
+            this.recording.close();
+        }
+        this.recording = start(configuration, threshold < 0 ? null : Duration.ofMillis(threshold));
+        JavalinLogger.info("Started flight recording " + this.recording.getId());
+        ctx.status(201);
+        ctx.json(status());
+    }
+
+    /**
+     * Starts a recording with the given settings, enabling this server's events
+     * at their own thresholds or the given one.
+     *
+     * @param configuration the settings of the JDK's events
+     * @param threshold     the threshold of this server's events, or null to keep their own
+     * @return the running recording
+     */
+    static Recording start(Configuration configuration, Duration threshold) {
+        Recording recording = new Recording(configuration);
+        recording.setName("flickfinder");
+        recording.setToDisk(true);
+        recording.setMaxAge(Duration.ofMinutes(Defaults.JFR_MAX_AGE_MINUTES));
+        if (threshold != null) {
+            recording.enable(RequestEvent.class).withThreshold(threshold);
+            recording.enable(QueryEvent.class).withThreshold(threshold);
+            recording.enable(CacheEvent.class).withThreshold(threshold);
+        }
+        recording.start();
+        return recording;
+    }
+
+    /**
+     * Handles a request to stop the running recording. The recording is kept
+     * until the next one starts, so it can still be dumped.
+     *
+     * @param ctx the Javalin context
+     */
+    public synchronized void handleStop(Context ctx) {
+        if (this.recording == null || this.recording.getState() != RecordingState.RUNNING) {
+            ctx.status(404);
+            ctx.result("No recording is running");
+            return;
+        }
+        this.recording.stop();
+        JavalinLogger.info("Stopped flight recording " + this.recording.getId());
+        ctx.json(status());
+    }
+
+    /**
+     * Handles a request to download the recording as a {@code .jfr} file.
+     *
+     * @param ctx the Javalin context
+     */
+    public synchronized void handleDump(Context ctx) {
+        if (this.recording == null) {
+            ctx.status(404);
+            ctx.result("No recording has been started");
+            return;
+        }
+        try {
+            Path file = Files.createTempFile("flickfinder-", ".jfr");
+            this.recording.dump(file);
+            ctx.contentType("application/octet-stream");
+            ctx.header("Content-Disposition", "attachment; filename=\"flickfinder.jfr\"");
+            // the file goes away once the response has been written
+            ctx.result(Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE));
+        } catch (IOException e) {
+            ctx.status(500);
+            ctx.result("Could not dump the recording");
+            JavalinLogger.error("Could not dump the recording", e);
+        }
+    }
+
+    /**
+     * Handles a request for the state of the recording.
+     *
+     * @param ctx the Javalin context
+     */
+    public synchronized void handleStatus(Context ctx) {
+        ctx.json(status());
+    }
+
+    /**
+     * Describes the recording for the admin endpoints.
+     *
+     * @return the state, start time, duration and size of the recording
+     */
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        if (this.recording == null) {
+            status.put("state", "NONE");
+            return status;
+        }
+        status.put("id", this.recording.getId());
+        status.put("state", this.recording.getState().name());
+        status.put("startedAt", String.valueOf(this.recording.getStartTime()));
+        status.put("stoppedAt", this.recording.getStopTime() == null ? null : this.recording.getStopTime().toString());
+        status.put("sizeInBytes", this.recording.getSize());
+        status.put("maxAgeMinutes", Defaults.JFR_MAX_AGE_MINUTES);
+        return status;
+    }
+
+    /**
+     * Closes the recording, discarding its data.
+     */
+    public synchronized void close() {
+        if (this.recording != null) {
+            this.recording.close();
+            this.recording = null;
+        }
+    }
+}
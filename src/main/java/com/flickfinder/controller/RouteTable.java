@@ -0,0 +1,112 @@
+package com.flickfinder.controller;
+
+import io.javalin.http.Context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings of the API routes, looked up by the route a request is for.
+ * <p>
+ * Javalin only tells a handler which route matched once the endpoint has run:
+ * in a before-matched hook, {@link Context#endpointHandlerPath()} is the
+ * hook's own {@code *}. A request seen before its handler is therefore matched
+ * against the registered path patterns here, segment by segment, with a
+ * {@code {param}} segment matching any one segment. Where two patterns match,
+ * the one with more literal segments wins, so {@code /movies/ratings} is not
+ * taken for {@code /movies/{id}}.
+ *
+ * @param <V> the type of the settings
+ */
+class RouteTable<V> {
+
+    /**
+     * The settings by path pattern.
+     */
+    private final Map<String, V> byPattern = new HashMap<>();
+
+    /**
+     * The split patterns, most literal segments first.
+     */
+    private final List<String[]> patterns = new ArrayList<>();
+
+    /**
+     * Sets the settings of a route.
+     *
+     * @param pattern the path pattern the route is registered with
+     * @param value   the settings
+     */
+    void put(String pattern, V value) {
+        if (this.byPattern.put(pattern, value) == null) {
+            this.patterns.add(split(pattern));
+            this.patterns.sort((a, b) -> Integer.compare(literals(b), literals(a)));
+        }
+    }
+
+    /**
+     * Returns the settings of the route a request is for.
+     *
+     * @param ctx the Javalin context
+     * @return the settings, or null if the route has none
+     */
+    V get(Context ctx) {
+        V value = this.byPattern.get(ctx.endpointHandlerPath());
+        if (value != null) {
+            return value;
+        }
+        String path = ctx.path();
+        if (path == null) {
+            return null;
+        }
+        // Javalin ignores a trailing slash when it matches routes
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        String[] segments = split(path);
+        for (String[] pattern : this.patterns) {
+            if (matches(pattern, segments)) {
+                return this.byPattern.get(String.join("/", pattern));
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String[] pattern, String[] segments) {
+        if (pattern.length != segments.length) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            if (!isParam(pattern[i]) && !pattern[i].equals(segments[i])) {
+                return false;
+            }
+            if (isParam(pattern[i]) && segments[i].isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int literals(String[] pattern) {
+        int literals = 0;
+        for (String segment : pattern) {
+            if (!isParam(segment)) {
+                literals++;
+            }
+        }
+        return literals;
+    }
+
+    private static boolean isParam(String segment) {
+        return segment.startsWith("{") && segment.endsWith("}");
+    }
+
+    /**
+     * Splits a path into its segments; the leading empty segment keeps the
+     * joined pattern equal to the one registered.
+     */
+    private static String[] split(String path) {
+        return path.split("/", -1);
+    }
+}
@@ -0,0 +1,124 @@
+package com.flickfinder.controller;
+
+import com.flickfinder.trace.Trace;
+import com.flickfinder.trace.Tracer;
+import io.javalin.http.Context;
+import io.javalin.util.JavalinLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Traces each request and serves the kept traces on the admin endpoints.
+ * <p>
+ * A trace is started as soon as a request is matched to a route and finished
+ * once its response is complete. The route is only known to Javalin by then,
+ * so the trace is named after the path at first and after the route at the end. Its id is returned on every response in the
+ * {@code X-Trace-Id} header, and as a W3C {@code traceparent} header, so that a
+ * slow response can be looked up on {@code /admin/traces/{traceId}}.
+ */
+public class TraceController {
+
+    /**
+     * The context attribute holding the trace of a request.
+     */
+    private static final String TRACE = "trace";
+
+    private final Tracer tracer;
+
+    /**
+     * Constructs a TraceController that keeps traces in the given tracer.
+     *
+     * @param tracer the tracer
+     */
+    public TraceController(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Starts the trace of a request and names it in the response headers.
+     *
+     * @param ctx the Javalin context
+     */
+    public void start(Context ctx) {
+        Trace trace = this.tracer.start(ctx.method().name() + " " + ctx.path(), ctx.header("traceparent"));
+        trace.getRoot()
+                .attribute("http.method", ctx.method().name())
+                .attribute("http.target", ctx.path());
+        ctx.attribute(TRACE, trace);
+        ctx.header("X-Trace-Id", trace.getTraceId());
+        ctx.header("traceparent", trace.traceparent());
+    }
+
+    /**
+     * Finishes the trace of a request, keeping it if it is sampled, slow or failed.
+     *
+     * @param ctx the Javalin context
+     */
+    public void finish(Context ctx) {
+        Trace trace = ctx.attribute(TRACE);
+        if (trace != null) {
+            trace.getRoot()
+                    .rename(ctx.method().name() + " " + ctx.endpointHandlerPath())
+                    .attribute("http.route", ctx.endpointHandlerPath());
+            this.tracer.finish(trace, ctx.statusCode());
+        }
+    }
+
+    /**
+     * Handles a request for a summary of the kept traces.
+     *
+     * @param ctx the Javalin context
+     */
+    public void handleList(Context ctx) {
+        ctx.json(this.tracer.describe());
+    }
+
+    /**
+     * Handles a request for one kept trace as OTLP JSON.
+     *
+     * @param ctx the Javalin context
+     */
+    public void handleTrace(Context ctx) {
+        Trace trace = this.tracer.find(ctx.pathParam("traceId"));
+        if (trace == null) {
+            ctx.status(404);
+            ctx.result("Trace not found");
+            return;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Tracer.writeOtlp(List.of(trace), out);
+            ctx.contentType("application/json");
+            ctx.result(out.toByteArray());
+        } catch (IOException e) {
+            ctx.status(500);
+            ctx.result("Could not export the trace");
+            JavalinLogger.error("Could not export the trace", e);
+        }
+    }
+
+    /**
+     * Handles a request to download every kept trace as an OTLP JSON file.
+     *
+     * @param ctx the Javalin context
+     */
+    public void handleExport(Context ctx) {
+        try {
+            Path file = Files.createTempFile("flickfinder-traces-", ".json");
+            this.tracer.export(file);
+            ctx.contentType("application/json");
+            ctx.header("Content-Disposition", "attachment; filename=\"traces.json\"");
+            // the file goes away once the response has been written
+            ctx.result(Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE));
+        } catch (IOException e) {
+            ctx.status(500);
+            ctx.result("Could not export the traces");
+            JavalinLogger.error("Could not export the traces", e);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.flickfinder.dao;
+
+import com.flickfinder.index.IdFilter;
+import com.flickfinder.util.Deadline;
+import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The movie and person ids a copy of the database holds, so that lookups of
+ * ids that do not exist never reach it.
+ * <p>
+ * Each table's ids are kept in an {@link IdFilter}. An id the filter rejects is
+ * answered as missing straight away. An id the filter lets through but the
+ * database then does not have, which only happens with a Bloom filter, is
+ * remembered in a small negative cache so that asking again does not run the
+ * query again. Both belong to one copy of the data and are discarded with it.
+ * <p>
+ * The {@link Relations} of the ids answer the same way for joins: the stars of
+ * a movie nobody is credited on, or the movies of a person who starred in
+ * none, are known to be empty without a query.
+ */
+public class KnownIds {
+
+    /**
+     * Lets every id through, for DAOs whose ids have not been read.
+     */
+    public static final KnownIds ALL = new KnownIds(IdFilter.ALL, IdFilter.ALL);
+
+    private final IdFilter movies;
+    private final IdFilter people;
+    private final Relations relations;
+
+    /**
+     * The ids of movies and people found missing despite the filter; each guarded by itself.
+     */
+    private final Map<Integer, Boolean> missingMovies = lru(Defaults.NEGATIVE_CACHE_ENTRIES);
+    private final Map<Integer, Boolean> missingPeople = lru(Defaults.NEGATIVE_CACHE_ENTRIES);
+
+    /**
+     * Constructs a KnownIds object from the filters of both tables.
+     *
+     * @param movies the filter of movie ids
+     * @param people the filter of person ids
+     */
+    public KnownIds(IdFilter movies, IdFilter people) {
+        this(movies, people, Relations.UNKNOWN);
+    }
+
+    /**
+     * Constructs a KnownIds object from the filters of both tables and the
+     * relationships of their ids.
+     *
+     * @param movies    the filter of movie ids
+     * @param people    the filter of person ids
+     * @param relations the relationships of the ids
+     */
+    public KnownIds(IdFilter movies, IdFilter people, Relations relations) {
+        this.movies = movies;
+        this.people = people;
+        this.relations = relations;
+    }
+
+    /**
+     * Reads the ids of both tables and their relationships, and builds their filters.
+     *
+     * @param connection the connection to the database
+     * @return the known ids
+     * @throws SQLException if a database error occurs
+     */
+    public static KnownIds load(Connection connection) throws SQLException {
+        return new KnownIds(filter(connection, "movies"), filter(connection, "people"), Relations.load(connection));
+    }
+
+    /**
+     * Builds the filter of one table's ids.
+     */
+    private static IdFilter filter(Connection connection, String table) throws SQLException {
+        int[] ids = new int[1024];
+        int count = 0;
+        try (PreparedStatement ps = connection.prepareStatement("SELECT id FROM " + table)) {
+            Deadline.watch(ps);
+            ps.setFetchSize(Defaults.EXPORT_FLUSH_ROWS);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = rs.getInt(1);
+            }
+        }
+        return IdFilter.build(ids, count, Defaults.ID_FILTER_MAX_DENSE_BITS, Defaults.ID_FILTER_BLOOM_BITS);
+    }
+
+    /**
+     * Returns whether a movie id may exist.
+     *
+     * @param id the id of the movie
+     * @return false if the movie certainly does not exist
+     */
+    public boolean mayHaveMovie(int id) {
+        return mayHave(this.movies, this.missingMovies, id);
+    }
+
+    /**
+     * Returns whether a person id may exist.
+     *
+     * @param id the id of the person
+     * @return false if the person certainly does not exist
+     */
+    public boolean mayHavePerson(int id) {
+        return mayHave(this.people, this.missingPeople, id);
+    }
+
+    /**
+     * Returns whether a movie may exist and have stars.
+     *
+     * @param id the id of the movie
+     * @return false if the movie certainly has no stars
+     */
+    public boolean mayHaveStars(int id) {
+        if (!this.relations.hasStars(id)) {
+            Metrics.counter("ids.emptyJoins").increment();
+            return false;
+        }
+        return mayHaveMovie(id);
+    }
+
+    /**
+     * Returns whether a person may exist and have starred in a movie.
+     *
+     * @param id the id of the person
+     * @return false if the person certainly starred in no movie
+     */
+    public boolean mayHaveStarred(int id) {
+        if (!this.relations.hasStarred(id)) {
+            Metrics.counter("ids.emptyJoins").increment();
+            return false;
+        }
+        return mayHavePerson(id);
+    }
+
+    /**
+     * Remembers that the database has no movie with an id.
+     *
+     * @param id the id of the movie
+     */
+    public void movieMissing(int id) {
+        remember(this.missingMovies, id);
+    }
+
+    /**
+     * Remembers that the database has no person with an id.
+     *
+     * @param id the id of the person
+     */
+    public void personMissing(int id) {
+        remember(this.missingPeople, id);
+    }
+
+    /**
+     * Returns the filter of movie ids.
+     *
+     * @return the filter
+     */
+    public IdFilter getMovies() {
+        return this.movies;
+    }
+
+    /**
+     * Returns the filter of person ids.
+     *
+     * @return the filter
+     */
+    public IdFilter getPeople() {
+        return this.people;
+    }
+
+    /**
+     * Returns the relationships of the ids.
+     *
+     * @return the relations, or {@link Relations#UNKNOWN} if they have not been read
+     */
+    public Relations getRelations() {
+        return this.relations;
+    }
+
+    private static boolean mayHave(IdFilter filter, Map<Integer, Boolean> missing, int id) {
+        if (!filter.mightContain(id)) {
+            Metrics.counter("ids.filtered").increment();
+            return false;
+        }
+        synchronized (missing) {
+            if (missing.containsKey(id)) {
+                Metrics.counter("ids.negativeHits").increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void remember(Map<Integer, Boolean> missing, int id) {
+        // with nothing to filter on, every id is a candidate; caching them would only churn
+        if (this == ALL) {
+            return;
+        }
+        synchronized (missing) {
+            missing.put(id, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * A map with a bounded number of entries that drops the least recently used.
+     */
+    private static <K, V> Map<K, V> lru(int capacity) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+}
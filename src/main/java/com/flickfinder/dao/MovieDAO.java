@@ -1,17 +1,33 @@
 package com.flickfinder.dao;
 
+import com.flickfinder.index.Credits;
+import com.flickfinder.jfr.QueryEvent;
+import com.flickfinder.json.Fields;
 import com.flickfinder.model.Movie;
 import com.flickfinder.model.MovieRating;
 import com.flickfinder.model.Person;
+import com.flickfinder.model.Star;
 import com.flickfinder.util.Database;
+import com.flickfinder.util.Deadline;
 import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Metrics;
+import com.flickfinder.util.SingleFlight;
+import com.flickfinder.util.Utils;
+import com.flickfinder.util.KWayMerge;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * The Data Access Object for the Movie table.
@@ -21,16 +37,67 @@ import java.util.List;
  */
 public class MovieDAO {
 
+    /**
+     * The best rated movies of one year with more than a number of votes.
+     */
+    private static final String RATINGS_BY_YEAR = "SELECT " + RowMapper.MOVIE_RATING.columns()
+            + " FROM movies, ratings WHERE movies.year = ? AND movies.id = ratings.movie_id AND ratings.votes > ?"
+            + " ORDER BY ratings.rating DESC LIMIT ?";
+
+    /**
+     * Coalesces identical queries that run at the same time, so that a burst of
+     * requests for the same page runs its SQL once. Kept per DAO, so that a query
+     * is never shared between two copies of the database.
+     */
+    private final SingleFlight flights = new SingleFlight("dao.movies");
+
     /**
      * The connection to the database.
      */
     private final Connection connection;
 
+    /**
+     * The ids the database holds, so that lookups of other ids skip it.
+     */
+    private final KnownIds knownIds;
+
     /**
      * Constructs a SQLiteMovieDAO object and gets the database connection.
      */
     public MovieDAO() {
-        this.connection = Database.getInstance().getConnection();
+        this(Database.getInstance().getConnection());
+    }
+
+    /**
+     * Constructs a MovieDAO object over the given connection, such as one
+     * opened on a newly loaded copy of the database.
+     * Subclasses that serve their data from elsewhere pass null.
+     *
+     * @param connection the connection to the database
+     */
+    public MovieDAO(Connection connection) {
+        this(connection, KnownIds.ALL);
+    }
+
+    /**
+     * Constructs a MovieDAO object over the given connection that answers
+     * lookups of ids the database does not hold without querying it.
+     *
+     * @param connection the connection to the database
+     * @param knownIds   the ids the database holds
+     */
+    public MovieDAO(Connection connection, KnownIds knownIds) {
+        this.connection = connection;
+        this.knownIds = knownIds;
+    }
+
+    /**
+     * Returns the ids the database holds.
+     *
+     * @return the known ids
+     */
+    protected KnownIds getKnownIds() {
+        return this.knownIds;
     }
 
     /**
@@ -51,18 +118,16 @@ public class MovieDAO {
      * @throws SQLException if a database error occurs
      */
     public List<Movie> getAllMovies(int limit) throws SQLException {
-        List<Movie> movies = new ArrayList<>(limit);
-
-        PreparedStatement ps = connection.prepareStatement("SELECT * FROM movies LIMIT ?");
-        ps.setInt(1, limit);
+        return flights.execute(List.of("getAllMovies", limit), () -> {
+            String sql = "SELECT " + RowMapper.MOVIE.columns() + " FROM movies ORDER BY id LIMIT ?";
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                Deadline.watch(ps);
+                ps.setInt(1, limit);
 
-        ResultSet rs = ps.executeQuery();
-
-        while (rs.next()) {
-            movies.add(new Movie(rs.getInt("id"), rs.getString("title"), rs.getInt("year")));
-        }
-
-        return movies;
+                return QueryEvent.time("MovieDAO.getAllMovies", sql,
+                        () -> RowMapper.MOVIE.list(ps.executeQuery(), limit));
+            }
+        });
     }
 
     /**
@@ -73,16 +138,77 @@ public class MovieDAO {
      * @throws SQLException if a database error occurs
      */
     public Movie getMovieById(int id) throws SQLException {
-        PreparedStatement ps = connection.prepareStatement("SELECT * FROM movies WHERE id = ?");
-        ps.setInt(1, id);
-
-        ResultSet rs = ps.executeQuery();
+        if (!knownIds.mayHaveMovie(id)) {
+            return null;
+        }
+        Movie movie = flights.execute(List.of("getMovieById", id), () -> {
+            String sql = "SELECT " + RowMapper.MOVIE.columns() + " FROM movies WHERE id = ?";
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                Deadline.watch(ps);
+                ps.setInt(1, id);
 
-        if (rs.next()) {
-            return new Movie(rs.getInt("id"), rs.getString("title"), rs.getInt("year"));
+                return QueryEvent.time("MovieDAO.getMovieById", sql, () -> RowMapper.MOVIE.first(ps.executeQuery()));
+            }
+        });
+        if (movie == null) {
+            knownIds.movieMissing(id);
         }
+        return movie;
+    }
 
-        return null;
+    /**
+     * Returns the movies with the specified ids, in the order the ids are given.
+     * Ids that do not match a movie are skipped.
+     *
+     * @param ids the ids of the movies
+     * @return the movies with the specified ids
+     * @throws SQLException if a database error occurs
+     */
+    public List<Movie> getMoviesByIds(List<Integer> ids) throws SQLException {
+        return flights.execute(List.of("getMoviesByIds", List.copyOf(ids)), () -> {
+            if (ids.isEmpty()) {
+                return new ArrayList<>();
+            }
+            String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+            Map<Integer, Movie> found = new HashMap<>(ids.size() * 2);
+            String sql = "SELECT " + RowMapper.MOVIE.columns() + " FROM movies WHERE id IN (" + placeholders + ")";
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                Deadline.watch(ps);
+                for (int i = 0; i < ids.size(); i++) {
+                    ps.setInt(i + 1, ids.get(i));
+                }
+
+                QueryEvent.time("MovieDAO.getMoviesByIds", sql,
+                        () -> RowMapper.MOVIE.bind(ps.executeQuery()).forEach(movie -> found.put(movie.getId(), movie)));
+            }
+
+            List<Movie> movies = new ArrayList<>(found.size());
+            for (int id : ids) {
+                Movie movie = found.get(id);
+                if (movie != null) {
+                    movies.add(movie);
+                }
+            }
+            return movies;
+        });
+    }
+
+    /**
+     * Returns every person credited on every movie, as a star or a director.
+     *
+     * @return the credits of all movies
+     * @throws SQLException if a database error occurs
+     */
+    public Credits getCredits() throws SQLException {
+        Credits.Builder credits = new Credits.Builder();
+        String sql = "SELECT movie_id, person_id FROM stars" +
+                " UNION SELECT movie_id, person_id FROM directors ORDER BY movie_id, person_id";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            Deadline.watch(ps);
+            QueryEvent.time("MovieDAO.getCredits", sql, () -> RowMapper.STAR.bind(ps.executeQuery())
+                    .forEach(star -> credits.add(star.getMovieId(), star.getPersonId())));
+        }
+        return credits.build();
     }
 
     /**
@@ -95,19 +221,17 @@ public class MovieDAO {
      * @throws SQLException if a database error occurs
      */
     public List<MovieRating> getRatingsByYear(int limit, int votes, int year) throws SQLException {
-        List<MovieRating> movies = new ArrayList<>(limit);
-        PreparedStatement ps = connection.prepareStatement("SELECT * FROM movies, ratings WHERE movies.year = ?" +
-                " AND movies.id = ratings.movie_id AND ratings.votes > ? ORDER BY ratings.rating DESC LIMIT ?");
-        ps.setInt(1, year);
-        ps.setInt(2, votes);
-        ps.setInt(3, limit);
-
-        ResultSet rs = ps.executeQuery();
-        while (rs.next()) {
-            movies.add(new MovieRating(rs.getInt("id"), rs.getString("title"),
-                    rs.getInt("year"), rs.getDouble("rating"), rs.getInt("votes")));
-        }
-        return movies;
+        return flights.execute(List.of("getRatingsByYear", limit, votes, year), () -> {
+            try (PreparedStatement ps = connection.prepareStatement(RATINGS_BY_YEAR)) {
+                Deadline.watch(ps);
+                ps.setInt(1, year);
+                ps.setInt(2, votes);
+                ps.setInt(3, limit);
+
+                return QueryEvent.time("MovieDAO.getRatingsByYear", RATINGS_BY_YEAR,
+                        () -> RowMapper.MOVIE_RATING.list(ps.executeQuery(), limit));
+            }
+        });
     }
 
     /**
@@ -133,6 +257,47 @@ public class MovieDAO {
         return this.getRatingsByYear(Defaults.LIMIT, Defaults.VOTES, year);
     }
 
+    /**
+     * Returns the highest rated movies released between two years (inclusive), with minimum number of votes.
+     * <p>
+     * Each year is read as its own run, already sorted by rating, and the runs are
+     * merged through a bounded heap that stops after limit movies. No run is read
+     * further than the merge needs, so the whole range is never sorted.
+     *
+     * @param limit the maximum number of movies to return
+     * @param votes the minimum number of votes a movie must have to be included
+     * @param from  the first year of the range
+     * @param to    the last year of the range
+     * @return the highest rated movies in the range, best first
+     * @throws SQLException if a database error occurs
+     */
+    public List<MovieRating> getRatingsByYearRange(int limit, int votes, int from, int to) throws SQLException {
+        return flights.execute(List.of("getRatingsByYearRange", limit, votes, from, to), () -> {
+            List<PreparedStatement> statements = new ArrayList<>(to - from + 1);
+            List<KWayMerge.Run<MovieRating>> runs = new ArrayList<>(to - from + 1);
+            try {
+                // one event for the whole merge, since the runs are read interleaved
+                return QueryEvent.time("MovieDAO.getRatingsByYearRange", RATINGS_BY_YEAR, () -> {
+                    for (int year = from; year <= to; year++) {
+                        PreparedStatement ps = connection.prepareStatement(RATINGS_BY_YEAR);
+                        statements.add(ps);
+                        Deadline.watch(ps);
+                        ps.setInt(1, year);
+                        ps.setInt(2, votes);
+                        ps.setInt(3, limit);
+
+                        runs.add(RowMapper.MOVIE_RATING.bind(ps.executeQuery()));
+                    }
+                    return KWayMerge.merge(runs, Comparator.comparingDouble(MovieRating::getRating).reversed(), limit);
+                });
+            } finally {
+                for (PreparedStatement ps : statements) {
+                    ps.close();
+                }
+            }
+        });
+    }
+
     /**
      * Returns a list of people who worked on the movie with the specified id.
      *
@@ -141,16 +306,169 @@ public class MovieDAO {
      * @throws SQLException if a database error occurs
      */
     public List<Person> getPeopleByMovieId(int id) throws SQLException {
-        List<Person> people = new ArrayList<>(20);
-        PreparedStatement ps = connection.prepareStatement("SELECT * FROM people, stars WHERE stars.movie_id = ? AND people.id = stars.person_id");
-        ps.setInt(1, id);
+        if (!knownIds.mayHaveStars(id)) {
+            return new ArrayList<>();
+        }
+        return flights.execute(List.of("getPeopleByMovieId", id), () -> {
+            String sql = "SELECT " + RowMapper.PERSON.columns()
+                    + " FROM people, stars WHERE stars.movie_id = ? AND people.id = stars.person_id";
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                Deadline.watch(ps);
+                ps.setInt(1, id);
 
-        ResultSet rs = ps.executeQuery();
-        while (rs.next()) {
-            people.add(new Person(rs.getInt("id"), rs.getString("name"), rs.getInt("birth")));
+                return QueryEvent.time("MovieDAO.getPeopleByMovieId", sql,
+                        () -> RowMapper.PERSON.list(ps.executeQuery(), 20));
+            }
+        });
+    }
+
+    /**
+     * Returns the people starring in each of several movies, read with one
+     * query for every {@value com.flickfinder.util.Defaults#INCLUDE_MAX_ROWS}
+     * movies rather than one per movie.
+     *
+     * @param ids the ids of the movies
+     * @return the stars of each movie, by movie id; movies without stars are left out
+     * @throws SQLException if a database error occurs
+     */
+    public Map<Integer, List<Person>> getPeopleByMovieIds(Collection<Integer> ids) throws SQLException {
+        return getPeopleByMovieIds(ids, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the people starring in each of several movies, like
+     * {@link #getPeopleByMovieIds(Collection)}, but stops reading once more than
+     * the given number of stars have been read. The stars of the movies not
+     * read by then are left out.
+     *
+     * @param ids     the ids of the movies
+     * @param maxRows the most stars wanted
+     * @return the stars of each movie read, by movie id
+     * @throws SQLException if a database error occurs
+     */
+    public Map<Integer, List<Person>> getPeopleByMovieIds(Collection<Integer> ids, int maxRows) throws SQLException {
+        Set<Integer> starred = new LinkedHashSet<>(ids.size() * 2);
+        for (int id : ids) {
+            if (knownIds.mayHaveStars(id)) {
+                starred.add(id);
+            }
         }
+        Map<Integer, List<Person>> people = new HashMap<>(starred.size() * 2);
+        int read = 0;
+        // SQLite caps the parameters of a statement, so a long list is read in batches
+        for (List<Integer> batch : Utils.batches(starred, Defaults.INCLUDE_MAX_ROWS)) {
+            String sql = "SELECT " + RowMapper.PERSON_BY_MOVIE.columns() + " FROM people, stars WHERE stars.movie_id IN ("
+                    + String.join(",", Collections.nCopies(batch.size(), "?")) + ") AND people.id = stars.person_id";
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                Deadline.watch(ps);
+                for (int i = 0; i < batch.size(); i++) {
+                    ps.setInt(i + 1, batch.get(i));
+                }
 
+                Metrics.counter("include.queries").increment();
+                read += QueryEvent.time("MovieDAO.getPeopleByMovieIds", sql, () -> RowMapper.PERSON_BY_MOVIE.bind(ps.executeQuery())
+                        .forEach(star -> people.computeIfAbsent(star.key(), k -> new ArrayList<>()).add(star.value())));
+            }
+            if (read > maxRows) {
+                break;
+            }
+        }
         return people;
     }
-}
 
+    /**
+     * Returns the rating of each of several movies, read with one query for every
+     * {@value com.flickfinder.util.Defaults#INCLUDE_MAX_ROWS} movies.
+     *
+     * @param ids the ids of the movies
+     * @return the rating of each movie, by movie id; movies without a rating are left out
+     * @throws SQLException if a database error occurs
+     */
+    public Map<Integer, MovieRating> getRatingsByMovieIds(Collection<Integer> ids) throws SQLException {
+        Set<Integer> rated = new LinkedHashSet<>(ids.size() * 2);
+        for (int id : ids) {
+            if (knownIds.getRelations().isRated(id)) {
+                rated.add(id);
+            }
+        }
+        Map<Integer, MovieRating> ratings = new HashMap<>(rated.size() * 2);
+        for (List<Integer> batch : Utils.batches(rated, Defaults.INCLUDE_MAX_ROWS)) {
+            String sql = "SELECT " + RowMapper.MOVIE_RATING.columns() + " FROM movies, ratings WHERE ratings.movie_id IN ("
+                    + String.join(",", Collections.nCopies(batch.size(), "?")) + ") AND movies.id = ratings.movie_id";
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                Deadline.watch(ps);
+                for (int i = 0; i < batch.size(); i++) {
+                    ps.setInt(i + 1, batch.get(i));
+                }
+
+                Metrics.counter("include.queries").increment();
+                QueryEvent.time("MovieDAO.getRatingsByMovieIds", sql, () -> RowMapper.MOVIE_RATING.bind(ps.executeQuery())
+                        .forEach(rating -> ratings.put(rating.getId(), rating)));
+            }
+        }
+        return ratings;
+    }
+
+    /**
+     * Streams every movie, in id order, to the sink.
+     * The rows are read from a forward-only cursor, so memory use does not grow
+     * with the size of the table.
+     *
+     * @param sink   receives each movie as it is read
+     * @param fields the fields of each row to read; the others are left unread
+     * @return the number of movies streamed
+     * @throws SQLException if a database error occurs
+     * @throws IOException  if the sink fails
+     */
+    public int exportMovies(RowSink<Movie> sink, Fields fields) throws SQLException, IOException {
+        RowMapper<Movie> mapper = RowMapper.STREAMED_MOVIE.narrow(fields);
+        String sql = "SELECT " + mapper.columns() + " FROM movies ORDER BY id";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            Deadline.watch(ps);
+            ps.setFetchSize(Defaults.EXPORT_FLUSH_ROWS);
+            return QueryEvent.time("MovieDAO.exportMovies", sql,
+                    () -> mapper.bind(ps.executeQuery()).forEach(sink::accept));
+        }
+    }
+
+    /**
+     * Streams every rated movie, in id order, to the sink.
+     *
+     * @param sink   receives each movie rating as it is read
+     * @param fields the fields of each row to read; the others are left unread
+     * @return the number of movie ratings streamed
+     * @throws SQLException if a database error occurs
+     * @throws IOException  if the sink fails
+     */
+    public int exportRatings(RowSink<MovieRating> sink, Fields fields) throws SQLException, IOException {
+        RowMapper<MovieRating> mapper = RowMapper.STREAMED_MOVIE_RATING.narrow(fields);
+        String sql = "SELECT " + mapper.columns()
+                + " FROM movies, ratings WHERE movies.id = ratings.movie_id ORDER BY movies.id";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            Deadline.watch(ps);
+            ps.setFetchSize(Defaults.EXPORT_FLUSH_ROWS);
+            return QueryEvent.time("MovieDAO.exportRatings", sql,
+                    () -> mapper.bind(ps.executeQuery()).forEach(sink::accept));
+        }
+    }
+
+    /**
+     * Streams every (movie, person) star pair to the sink.
+     *
+     * @param sink   receives each star as it is read
+     * @param fields the fields of each row to read; the others are left unread
+     * @return the number of stars streamed
+     * @throws SQLException if a database error occurs
+     * @throws IOException  if the sink fails
+     */
+    public int exportStars(RowSink<Star> sink, Fields fields) throws SQLException, IOException {
+        RowMapper<Star> mapper = RowMapper.STAR.narrow(fields);
+        String sql = "SELECT " + mapper.columns() + " FROM stars";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            Deadline.watch(ps);
+            ps.setFetchSize(Defaults.EXPORT_FLUSH_ROWS);
+            return QueryEvent.time("MovieDAO.exportStars", sql,
+                    () -> mapper.bind(ps.executeQuery()).forEach(sink::accept));
+        }
+    }
+}
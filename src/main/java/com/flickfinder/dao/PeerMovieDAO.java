@@ -0,0 +1,61 @@
+package com.flickfinder.dao;
+
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.Person;
+import com.flickfinder.peer.Codec;
+import com.flickfinder.peer.PeerCache;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MovieDAO whose lookups by id go through a {@link PeerCache} shared with the
+ * other replicas before reaching the local database.
+ */
+public class PeerMovieDAO extends MovieDAO {
+
+    private final PeerCache.Group<Movie> movies;
+    private final PeerCache.Group<List<Person>> stars;
+
+    /**
+     * Constructs a PeerMovieDAO object over a connection and a peer cache.
+     *
+     * @param connection the connection to the local database
+     * @param cache      the cache shared with the other replicas
+     */
+    public PeerMovieDAO(Connection connection, PeerCache cache) {
+        this(connection, cache, KnownIds.ALL);
+    }
+
+    /**
+     * Constructs a PeerMovieDAO object over a connection and a peer cache that
+     * answers lookups of ids the database does not hold without asking anyone.
+     *
+     * @param connection the connection to the local database
+     * @param cache      the cache shared with the other replicas
+     * @param knownIds   the ids the database holds
+     */
+    public PeerMovieDAO(Connection connection, PeerCache cache, KnownIds knownIds) {
+        super(connection, knownIds);
+        this.movies = cache.group("movie", Codec.MOVIE, key -> super.getMovieById(Integer.parseInt(key)));
+        this.stars = cache.group("movie-stars", Codec.PEOPLE, key -> super.getPeopleByMovieId(Integer.parseInt(key)));
+    }
+
+    @Override
+    public Movie getMovieById(int id) throws SQLException {
+        if (!getKnownIds().mayHaveMovie(id)) {
+            return null;
+        }
+        return this.movies.get(Integer.toString(id));
+    }
+
+    @Override
+    public List<Person> getPeopleByMovieId(int id) throws SQLException {
+        if (!getKnownIds().mayHaveStars(id)) {
+            return new ArrayList<>();
+        }
+        return this.stars.get(Integer.toString(id));
+    }
+}
@@ -0,0 +1,61 @@
+package com.flickfinder.dao;
+
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.Person;
+import com.flickfinder.peer.Codec;
+import com.flickfinder.peer.PeerCache;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A PersonDAO whose lookups by id go through a {@link PeerCache} shared with the
+ * other replicas before reaching the local database.
+ */
+public class PeerPersonDAO extends PersonDAO {
+
+    private final PeerCache.Group<Person> people;
+    private final PeerCache.Group<List<Movie>> movies;
+
+    /**
+     * Constructs a PeerPersonDAO object over a connection and a peer cache.
+     *
+     * @param connection the connection to the local database
+     * @param cache      the cache shared with the other replicas
+     */
+    public PeerPersonDAO(Connection connection, PeerCache cache) {
+        this(connection, cache, KnownIds.ALL);
+    }
+
+    /**
+     * Constructs a PeerPersonDAO object over a connection and a peer cache that
+     * answers lookups of ids the database does not hold without asking anyone.
+     *
+     * @param connection the connection to the local database
+     * @param cache      the cache shared with the other replicas
+     * @param knownIds   the ids the database holds
+     */
+    public PeerPersonDAO(Connection connection, PeerCache cache, KnownIds knownIds) {
+        super(connection, knownIds);
+        this.people = cache.group("person", Codec.PERSON, key -> super.getPersonById(Integer.parseInt(key)));
+        this.movies = cache.group("person-movies", Codec.MOVIES, key -> super.getMoviesByPersonId(Integer.parseInt(key)));
+    }
+
+    @Override
+    public Person getPersonById(int id) throws SQLException {
+        if (!getKnownIds().mayHavePerson(id)) {
+            return null;
+        }
+        return this.people.get(Integer.toString(id));
+    }
+
+    @Override
+    public List<Movie> getMoviesByPersonId(int id) throws SQLException {
+        if (!getKnownIds().mayHaveStarred(id)) {
+            return new ArrayList<>();
+        }
+        return this.movies.get(Integer.toString(id));
+    }
+}
@@ -1,28 +1,84 @@
 package com.flickfinder.dao;
 
+import com.flickfinder.jfr.QueryEvent;
+import com.flickfinder.json.Fields;
 import com.flickfinder.model.Movie;
 import com.flickfinder.model.Person;
 import com.flickfinder.util.Database;
+import com.flickfinder.util.Deadline;
 import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Metrics;
+import com.flickfinder.util.SingleFlight;
+import com.flickfinder.util.Utils;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class PersonDAO {
+    /**
+     * Coalesces identical queries that run at the same time, so that a burst of
+     * requests for the same page runs its SQL once. Kept per DAO, so that a query
+     * is never shared between two copies of the database.
+     */
+    private final SingleFlight flights = new SingleFlight("dao.people");
+
     /**
      * The connection to the database.
      */
     private final Connection connection;
 
+    /**
+     * The ids the database holds, so that lookups of other ids skip it.
+     */
+    private final KnownIds knownIds;
+
     /**
      * Constructs a SQLitePersonDAO object and gets the database connection.
      */
     public PersonDAO() {
-        this.connection = Database.getInstance().getConnection();
+        this(Database.getInstance().getConnection());
+    }
+
+    /**
+     * Constructs a PersonDAO object over the given connection, such as one
+     * opened on a newly loaded copy of the database.
+     * Subclasses that serve their data from elsewhere pass null.
+     *
+     * @param connection the connection to the database
+     */
+    public PersonDAO(Connection connection) {
+        this(connection, KnownIds.ALL);
+    }
+
+    /**
+     * Constructs a PersonDAO object over the given connection that answers
+     * lookups of ids the database does not hold without querying it.
+     *
+     * @param connection the connection to the database
+     * @param knownIds   the ids the database holds
+     */
+    public PersonDAO(Connection connection, KnownIds knownIds) {
+        this.connection = connection;
+        this.knownIds = knownIds;
+    }
+
+    /**
+     * Returns the ids the database holds.
+     *
+     * @return the known ids
+     */
+    protected KnownIds getKnownIds() {
+        return this.knownIds;
     }
 
     /**
@@ -43,18 +99,16 @@ public class PersonDAO {
      * @throws SQLException if a database error occurs
      */
     public List<Person> getAllPeople(int limit) throws SQLException {
-        List<Person> people = new ArrayList<>(limit);
-
-        PreparedStatement ps = connection.prepareStatement("SELECT * FROM people LIMIT ?");
-        ps.setInt(1, limit);
-
-        ResultSet rs = ps.executeQuery();
-
-        while (rs.next()) {
-            people.add(new Person(rs.getInt("id"), rs.getString("name"), rs.getInt("birth")));
-        }
-
-        return people;
+        return flights.execute(List.of("getAllPeople", limit), () -> {
+            String sql = "SELECT " + RowMapper.PERSON.columns() + " FROM people ORDER BY id LIMIT ?";
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                Deadline.watch(ps);
+                ps.setInt(1, limit);
+
+                return QueryEvent.time("PersonDAO.getAllPeople", sql,
+                        () -> RowMapper.PERSON.list(ps.executeQuery(), limit));
+            }
+        });
     }
 
     /**
@@ -65,35 +119,123 @@ public class PersonDAO {
      * @throws SQLException if a database error occurs
      */
     public Person getPersonById(int id) throws SQLException {
-        PreparedStatement ps = connection.prepareStatement("SELECT * FROM people WHERE id = ?");
-        ps.setInt(1, id);
-
-        ResultSet rs = ps.executeQuery();
-
-        if (rs.next()) {
-            return new Person(rs.getInt("id"), rs.getString("name"), rs.getInt("birth"));
+        if (!knownIds.mayHavePerson(id)) {
+            return null;
         }
-
-        return null;
+        Person person = flights.execute(List.of("getPersonById", id), () -> {
+            String sql = "SELECT " + RowMapper.PERSON.columns() + " FROM people WHERE id = ?";
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                Deadline.watch(ps);
+                ps.setInt(1, id);
+
+                return QueryEvent.time("PersonDAO.getPersonById", sql, () -> RowMapper.PERSON.first(ps.executeQuery()));
+            }
+        });
+        if (person == null) {
+            knownIds.personMissing(id);
+        }
+        return person;
     }
 
     /**
-     * Returns a list of all movies starring the person with the specified id.
+     * Returns a list of all movies starring the person with the specified id, in
+     * id order, so that the lists of several shards can be merged.
      *
      * @param id the unique identifier of the person
      * @return a list of all movies starring the person with the specified id
      * @throws SQLException if a database error occurs
      */
     public List<Movie> getMoviesByPersonId(int id) throws SQLException {
-        List<Movie> movies = new ArrayList<>(20);
-        PreparedStatement ps = connection.prepareStatement("SELECT * FROM movies, stars WHERE stars.person_id = ? AND movies.id = stars.movie_id");
-        ps.setInt(1, id);
-
-        ResultSet rs = ps.executeQuery();
-        while (rs.next()) {
-            movies.add(new Movie(rs.getInt("id"), rs.getString("title"), rs.getInt("year")));
+        if (!knownIds.mayHaveStarred(id)) {
+            return new ArrayList<>();
         }
+        return flights.execute(List.of("getMoviesByPersonId", id), () -> {
+            String sql = "SELECT " + RowMapper.MOVIE.columns()
+                    + " FROM movies, stars WHERE stars.person_id = ? AND movies.id = stars.movie_id ORDER BY movies.id";
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                Deadline.watch(ps);
+                ps.setInt(1, id);
+
+                return QueryEvent.time("PersonDAO.getMoviesByPersonId", sql,
+                        () -> RowMapper.MOVIE.list(ps.executeQuery(), 20));
+            }
+        });
+    }
 
+    /**
+     * Returns the movies each of several people starred in, read with one query
+     * for every {@value com.flickfinder.util.Defaults#INCLUDE_MAX_ROWS} people
+     * rather than one per person.
+     *
+     * @param ids the ids of the people
+     * @return the movies of each person, by person id; people who starred in nothing are left out
+     * @throws SQLException if a database error occurs
+     */
+    public Map<Integer, List<Movie>> getMoviesByPersonIds(Collection<Integer> ids) throws SQLException {
+        return getMoviesByPersonIds(ids, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the movies each of several people starred in, like
+     * {@link #getMoviesByPersonIds(Collection)}, but stops reading once more
+     * than the given number of movies have been read. The movies of the people
+     * not read by then are left out.
+     *
+     * @param ids     the ids of the people
+     * @param maxRows the most movies wanted
+     * @return the movies of each person read, by person id
+     * @throws SQLException if a database error occurs
+     */
+    public Map<Integer, List<Movie>> getMoviesByPersonIds(Collection<Integer> ids, int maxRows) throws SQLException {
+        Set<Integer> starred = new LinkedHashSet<>(ids.size() * 2);
+        for (int id : ids) {
+            if (knownIds.mayHaveStarred(id)) {
+                starred.add(id);
+            }
+        }
+        Map<Integer, List<Movie>> movies = new HashMap<>(starred.size() * 2);
+        int read = 0;
+        // SQLite caps the parameters of a statement, so a long list is read in batches
+        for (List<Integer> batch : Utils.batches(starred, Defaults.INCLUDE_MAX_ROWS)) {
+            String sql = "SELECT " + RowMapper.MOVIE_BY_PERSON.columns() + " FROM movies, stars WHERE stars.person_id IN ("
+                    + String.join(",", Collections.nCopies(batch.size(), "?")) + ") AND movies.id = stars.movie_id"
+                    + " ORDER BY movies.id";
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                Deadline.watch(ps);
+                for (int i = 0; i < batch.size(); i++) {
+                    ps.setInt(i + 1, batch.get(i));
+                }
+
+                Metrics.counter("include.queries").increment();
+                read += QueryEvent.time("PersonDAO.getMoviesByPersonIds", sql, () -> RowMapper.MOVIE_BY_PERSON.bind(ps.executeQuery())
+                        .forEach(star -> movies.computeIfAbsent(star.key(), k -> new ArrayList<>()).add(star.value())));
+            }
+            if (read > maxRows) {
+                break;
+            }
+        }
         return movies;
     }
+
+    /**
+     * Streams every person, in id order, to the sink.
+     * The rows are read from a forward-only cursor, so memory use does not grow
+     * with the size of the table.
+     *
+     * @param sink   receives each person as it is read
+     * @param fields the fields of each row to read; the others are left unread
+     * @return the number of people streamed
+     * @throws SQLException if a database error occurs
+     * @throws IOException  if the sink fails
+     */
+    public int exportPeople(RowSink<Person> sink, Fields fields) throws SQLException, IOException {
+        RowMapper<Person> mapper = RowMapper.STREAMED_PERSON.narrow(fields);
+        String sql = "SELECT " + mapper.columns() + " FROM people ORDER BY id";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            Deadline.watch(ps);
+            ps.setFetchSize(Defaults.EXPORT_FLUSH_ROWS);
+            return QueryEvent.time("PersonDAO.exportPeople", sql,
+                    () -> mapper.bind(ps.executeQuery()).forEach(sink::accept));
+        }
+    }
 }
@@ -0,0 +1,195 @@
+package com.flickfinder.dao;
+
+import com.flickfinder.index.IdBitmap;
+import com.flickfinder.util.Deadline;
+import com.flickfinder.util.Defaults;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Which movies and people take part in each relationship of a copy of the
+ * database: the movies that have ratings, the movies that have stars, the
+ * people who have starred in a movie and the people who have directed one.
+ * <p>
+ * Each is held exactly in an {@link IdBitmap}, so a join that would come back
+ * empty, such as the stars of a movie nobody is credited on, is answered
+ * without running it. The bitmaps can also be used as predicates over the ids
+ * of a listing. They belong to one copy of the data and are discarded with it.
+ */
+public final class Relations {
+
+    /**
+     * Relations that have not been read, under which every id may take part in
+     * every relationship.
+     */
+    public static final Relations UNKNOWN = new Relations(null, null, null, null);
+
+    private final IdBitmap ratedMovies;
+    private final IdBitmap starredMovies;
+    private final IdBitmap actors;
+    private final IdBitmap directors;
+
+    /**
+     * Constructs a Relations object from its bitmaps.
+     *
+     * @param ratedMovies   the movies that have ratings
+     * @param starredMovies the movies that have stars
+     * @param actors        the people who have starred in a movie
+     * @param directors     the people who have directed a movie
+     */
+    public Relations(IdBitmap ratedMovies, IdBitmap starredMovies, IdBitmap actors, IdBitmap directors) {
+        this.ratedMovies = ratedMovies;
+        this.starredMovies = starredMovies;
+        this.actors = actors;
+        this.directors = directors;
+    }
+
+    /**
+     * Reads the relationships of every movie and person.
+     *
+     * @param connection the connection to the database
+     * @return the relations
+     * @throws SQLException if a database error occurs
+     */
+    public static Relations load(Connection connection) throws SQLException {
+        return new Relations(bitmap(connection, "SELECT movie_id FROM ratings"),
+                bitmap(connection, "SELECT DISTINCT movie_id FROM stars"),
+                bitmap(connection, "SELECT DISTINCT person_id FROM stars"),
+                bitmap(connection, "SELECT DISTINCT person_id FROM directors"));
+    }
+
+    /**
+     * Builds the bitmap of the ids a query returns.
+     */
+    private static IdBitmap bitmap(Connection connection, String sql) throws SQLException {
+        int[] ids = new int[1024];
+        int count = 0;
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            Deadline.watch(ps);
+            ps.setFetchSize(Defaults.EXPORT_FLUSH_ROWS);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = rs.getInt(1);
+            }
+        }
+        return IdBitmap.of(ids, count);
+    }
+
+    /**
+     * Returns whether a movie may have a rating.
+     *
+     * @param movieId the id of the movie
+     * @return false if the movie certainly has no rating
+     */
+    public boolean isRated(int movieId) {
+        return test(this.ratedMovies, movieId);
+    }
+
+    /**
+     * Returns whether a movie may have stars.
+     *
+     * @param movieId the id of the movie
+     * @return false if nobody is credited as a star of the movie
+     */
+    public boolean hasStars(int movieId) {
+        return test(this.starredMovies, movieId);
+    }
+
+    /**
+     * Returns whether a person may have starred in a movie.
+     *
+     * @param personId the id of the person
+     * @return false if the person has starred in no movie
+     */
+    public boolean hasStarred(int personId) {
+        return test(this.actors, personId);
+    }
+
+    /**
+     * Returns whether a person may have directed a movie.
+     *
+     * @param personId the id of the person
+     * @return false if the person has directed no movie
+     */
+    public boolean hasDirected(int personId) {
+        return test(this.directors, personId);
+    }
+
+    /**
+     * Returns the movies that have ratings.
+     *
+     * @return the bitmap, or null if the relations have not been read
+     */
+    public IdBitmap getRatedMovies() {
+        return this.ratedMovies;
+    }
+
+    /**
+     * Returns the movies that have stars.
+     *
+     * @return the bitmap, or null if the relations have not been read
+     */
+    public IdBitmap getStarredMovies() {
+        return this.starredMovies;
+    }
+
+    /**
+     * Returns the people who have starred in a movie.
+     *
+     * @return the bitmap, or null if the relations have not been read
+     */
+    public IdBitmap getActors() {
+        return this.actors;
+    }
+
+    /**
+     * Returns the people who have directed a movie.
+     *
+     * @return the bitmap, or null if the relations have not been read
+     */
+    public IdBitmap getDirectors() {
+        return this.directors;
+    }
+
+    /**
+     * Describes the size of each bitmap, for the logs.
+     *
+     * @return the number of ids in each relationship
+     */
+    public Map<String, Integer> describe() {
+        Map<String, Integer> description = new LinkedHashMap<>();
+        if (this.ratedMovies != null) {
+            description.put("ratedMovies", this.ratedMovies.cardinality());
+            description.put("starredMovies", this.starredMovies.cardinality());
+            description.put("actors", this.actors.cardinality());
+            description.put("directors", this.directors.cardinality());
+        }
+        return description;
+    }
+
+    /**
+     * Returns the size of the bitmaps.
+     *
+     * @return the size in bytes
+     */
+    public long sizeInBytes() {
+        if (this.ratedMovies == null) {
+            return 0;
+        }
+        return this.ratedMovies.sizeInBytes() + this.starredMovies.sizeInBytes()
+                + this.actors.sizeInBytes() + this.directors.sizeInBytes();
+    }
+
+    private static boolean test(IdBitmap bitmap, int id) {
+        return bitmap == null || bitmap.contains(id);
+    }
+}
@@ -0,0 +1,296 @@
+package com.flickfinder.dao;
+
+import com.flickfinder.json.Fields;
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.MovieRating;
+import com.flickfinder.model.ModelPool;
+import com.flickfinder.model.Person;
+import com.flickfinder.model.Star;
+import com.flickfinder.trace.Span;
+import com.flickfinder.trace.Trace;
+import com.flickfinder.util.KWayMerge;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the rows of a query to a model.
+ * <p>
+ * A mapper knows the columns it reads, so a query selects exactly those
+ * columns through {@link #columns()} instead of {@code SELECT *}. Looking a
+ * column up by name searches the result's columns, so the DAOs never do it per
+ * row: the positions of the columns are found once per statement, when the
+ * result is bound to a {@link Cursor}, and each row is then read by position.
+ *
+ * @param <T> the type each row is mapped to
+ */
+public final class RowMapper<T> {
+
+    /**
+     * Reads one row by the positions of the mapper's columns.
+     *
+     * @param <T> the type the row is mapped to
+     */
+    @FunctionalInterface
+    private interface Reader<T> {
+        T read(ResultSet rs, int[] at) throws SQLException;
+    }
+
+    /**
+     * Receives the mapped rows of a query.
+     *
+     * @param <T> the type of row
+     * @param <E> the exception the receiver may throw
+     */
+    @FunctionalInterface
+    public interface Each<T, E extends Exception> {
+        /**
+         * Accepts the next row.
+         *
+         * @param row the row
+         * @throws E if the row cannot be handled
+         */
+        void accept(T row) throws E;
+    }
+
+    /**
+     * A row of a join, with the id of the row it was joined to, such as a star
+     * with the id of their movie.
+     *
+     * @param key   the id the row was joined to
+     * @param value the row
+     * @param <T>   the type of the row
+     */
+    public record Keyed<T>(int key, T value) {
+    }
+
+    /**
+     * Maps the columns of the movies table to the shared movies.
+     */
+    public static final RowMapper<Movie> MOVIE = new RowMapper<>(
+            new String[]{"movies.id", "movies.title", "movies.year"},
+            (rs, at) -> ModelPool.movie(rs.getInt(at[0]), rs.getString(at[1]), rs.getInt(at[2])));
+
+    /**
+     * Maps a movie joined with its rating, rating the shared movie.
+     */
+    public static final RowMapper<MovieRating> MOVIE_RATING = new RowMapper<>(
+            new String[]{"movies.id", "movies.title", "movies.year", "ratings.rating", "ratings.votes"},
+            (rs, at) -> new MovieRating(rs.getInt(at[0]), rs.getString(at[1]), rs.getInt(at[2]),
+                    rs.getDouble(at[3]), rs.getInt(at[4])));
+
+    /**
+     * Maps the columns of the people table to the shared people.
+     */
+    public static final RowMapper<Person> PERSON = new RowMapper<>(
+            new String[]{"people.id", "people.name", "people.birth"},
+            (rs, at) -> ModelPool.person(rs.getInt(at[0]), rs.getString(at[1]), rs.getInt(at[2])));
+
+    /**
+     * Maps the shared people starring in a movie, keyed by the movie.
+     */
+    public static final RowMapper<Keyed<Person>> PERSON_BY_MOVIE = new RowMapper<>(
+            new String[]{"stars.movie_id", "people.id", "people.name", "people.birth"},
+            (rs, at) -> new Keyed<>(rs.getInt(at[0]),
+                    ModelPool.person(rs.getInt(at[1]), rs.getString(at[2]), rs.getInt(at[3]))));
+
+    /**
+     * Maps the shared movies a person starred in, keyed by the person.
+     */
+    public static final RowMapper<Keyed<Movie>> MOVIE_BY_PERSON = new RowMapper<>(
+            new String[]{"stars.person_id", "movies.id", "movies.title", "movies.year"},
+            (rs, at) -> new Keyed<>(rs.getInt(at[0]),
+                    ModelPool.movie(rs.getInt(at[1]), rs.getString(at[2]), rs.getInt(at[3]))));
+
+    /**
+     * Maps the columns of the movies table without pooling, for streaming a
+     * whole table without the pool growing with it.
+     */
+    public static final RowMapper<Movie> STREAMED_MOVIE = new RowMapper<>(MOVIE.qualified,
+            (rs, at) -> new Movie(rs.getInt(at[0]), rs.getString(at[1]), rs.getInt(at[2])));
+
+    /**
+     * Maps a movie joined with its rating without pooling, for streaming.
+     */
+    public static final RowMapper<MovieRating> STREAMED_MOVIE_RATING = new RowMapper<>(MOVIE_RATING.qualified,
+            (rs, at) -> new MovieRating(new Movie(rs.getInt(at[0]), rs.getString(at[1]), rs.getInt(at[2])),
+                    rs.getDouble(at[3]), rs.getInt(at[4])));
+
+    /**
+     * Maps the columns of the people table without pooling, for streaming.
+     */
+    public static final RowMapper<Person> STREAMED_PERSON = new RowMapper<>(PERSON.qualified,
+            (rs, at) -> new Person(rs.getInt(at[0]), rs.getString(at[1]), rs.getInt(at[2])));
+
+    /**
+     * Maps the columns of the stars table, or of any credit with the same columns.
+     */
+    public static final RowMapper<Star> STAR = new RowMapper<>(
+            new String[]{"stars.movie_id", "stars.person_id"},
+            (rs, at) -> new Star(rs.getInt(at[0]), rs.getInt(at[1])));
+
+    /**
+     * The qualified columns, such as {@code movies.id}.
+     */
+    private final String[] qualified;
+
+    /**
+     * The labels the columns have in a result, such as {@code id}.
+     */
+    private final String[] labels;
+
+    private final String columns;
+    private final Reader<T> reader;
+
+    private RowMapper(String[] qualified, Reader<T> reader) {
+        this.qualified = qualified;
+        this.labels = new String[qualified.length];
+        for (int i = 0; i < qualified.length; i++) {
+            this.labels[i] = qualified[i].substring(qualified[i].indexOf('.') + 1);
+        }
+        this.columns = String.join(", ", qualified);
+        this.reader = reader;
+    }
+
+    private RowMapper(RowMapper<T> mapper, String columns) {
+        this.qualified = mapper.qualified;
+        this.labels = mapper.labels;
+        this.columns = columns;
+        this.reader = mapper.reader;
+    }
+
+    /**
+     * Returns a mapper that reads only the columns of some of the model's
+     * fields, whose columns are in the same order as the fields. The other
+     * columns are selected as NULL, so SQLite never reads them and they map to
+     * zero or null. Only for rows that are not shared, such as streamed ones,
+     * since the fields left out are missing from them.
+     *
+     * @param fields the fields to read
+     * @return the mapper, or this one if every field is read
+     */
+    public RowMapper<T> narrow(Fields fields) {
+        if (fields.isAll()) {
+            return this;
+        }
+        String[] columns = new String[this.qualified.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = fields.has(i) ? this.qualified[i] : "NULL AS " + this.labels[i];
+        }
+        return new RowMapper<>(this, String.join(", ", columns));
+    }
+
+    /**
+     * Returns the columns the mapper reads, qualified by their table, for the
+     * select list of a query.
+     *
+     * @return the columns, separated by commas
+     */
+    public String columns() {
+        return this.columns;
+    }
+
+    /**
+     * Binds the mapper to a result, finding the positions of its columns.
+     *
+     * @param rs the result of a query selecting the mapper's columns
+     * @return a cursor over the mapped rows
+     * @throws SQLException if the result lacks one of the columns
+     */
+    public Cursor<T> bind(ResultSet rs) throws SQLException {
+        int[] at = new int[this.labels.length];
+        for (int i = 0; i < at.length; i++) {
+            at[i] = rs.findColumn(this.labels[i]);
+        }
+        return new Cursor<>(rs, at, this.reader);
+    }
+
+    /**
+     * Maps every row of a result.
+     *
+     * @param rs       the result
+     * @param expected how many rows to make room for
+     * @return the mapped rows
+     * @throws SQLException if a database error occurs
+     */
+    public List<T> list(ResultSet rs, int expected) throws SQLException {
+        List<T> rows = new ArrayList<>(expected);
+        bind(rs).forEach(rows::add);
+        return rows;
+    }
+
+    /**
+     * Maps the first row of a result.
+     *
+     * @param rs the result
+     * @return the mapped row, or null if there is none
+     * @throws SQLException if a database error occurs
+     */
+    public T first(ResultSet rs) throws SQLException {
+        try (Span span = Trace.span("map rows")) {
+            T row = bind(rs).next();
+            span.attribute("rows", row != null ? 1 : 0);
+            return row;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RowMapper" + List.of(this.qualified);
+    }
+
+    /**
+     * The rows of one result, mapped as they are read.
+     *
+     * @param <T> the type each row is mapped to
+     */
+    public static final class Cursor<T> implements KWayMerge.Run<T> {
+
+        private final ResultSet rs;
+        private final int[] at;
+        private final Reader<T> reader;
+
+        private Cursor(ResultSet rs, int[] at, Reader<T> reader) {
+            this.rs = rs;
+            this.at = at;
+            this.reader = reader;
+        }
+
+        /**
+         * Reads and maps the next row.
+         *
+         * @return the mapped row, or null once the result is exhausted
+         * @throws SQLException if a database error occurs
+         */
+        @Override
+        public T next() throws SQLException {
+            return this.rs.next() ? this.reader.read(this.rs, this.at) : null;
+        }
+
+        /**
+         * Reads, maps and hands on every remaining row, such as to a
+         * {@link RowSink} while streaming a table. The time taken is traced as
+         * a span of its own; SQLite finds each row as it is read, so the span
+         * also covers the part of the query after its first row.
+         *
+         * @param each receives each mapped row
+         * @param <E>  the exception the receiver may throw
+         * @return the number of rows read
+         * @throws SQLException if a database error occurs
+         * @throws E            if the receiver fails
+         */
+        public <E extends Exception> int forEach(Each<? super T, E> each) throws SQLException, E {
+            try (Span span = Trace.span("map rows")) {
+                int rows = 0;
+                for (T row = next(); row != null; row = next()) {
+                    each.accept(row);
+                    rows++;
+                }
+                span.attribute("rows", rows);
+                return rows;
+            }
+        }
+    }
+}
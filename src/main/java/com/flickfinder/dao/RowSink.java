@@ -0,0 +1,23 @@
+package com.flickfinder.dao;
+
+import java.io.IOException;
+
+/**
+ * Receives rows one at a time as a DAO reads them from a forward-only cursor.
+ * <p>
+ * This lets a caller stream a whole table without the DAO ever holding more
+ * than the current row in memory.
+ *
+ * @param <T> the type of row
+ */
+@FunctionalInterface
+public interface RowSink<T> {
+
+    /**
+     * Accepts the next row.
+     *
+     * @param row the row
+     * @throws IOException if the row cannot be written onwards
+     */
+    void accept(T row) throws IOException;
+}
@@ -0,0 +1,255 @@
+package com.flickfinder.dao;
+
+import com.flickfinder.index.Credits;
+import com.flickfinder.json.Fields;
+import com.flickfinder.model.ModelPool;
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.MovieRating;
+import com.flickfinder.model.Person;
+import com.flickfinder.model.Star;
+import com.flickfinder.snapshot.Snapshot;
+import com.flickfinder.util.KWayMerge;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A MovieDAO that reads from a memory-mapped {@link Snapshot} instead of SQLite.
+ * <p>
+ * Lookups are binary searches over the mapped records and joins are walks of
+ * the precomputed adjacency lists, so no query touches the database.
+ */
+public class SnapshotMovieDAO extends MovieDAO {
+
+    /**
+     * The snapshot the movies are read from.
+     */
+    private final Snapshot snapshot;
+
+    /**
+     * Constructs a SnapshotMovieDAO object over a snapshot.
+     *
+     * @param snapshot the snapshot to read from
+     */
+    public SnapshotMovieDAO(Snapshot snapshot) {
+        super(null);
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public List<Movie> getAllMovies(int limit) {
+        int count = Math.min(limit, snapshot.movieCount());
+        List<Movie> movies = new ArrayList<>(Math.max(count, 0));
+        for (int i = 0; i < count; i++) {
+            movies.add(movie(i));
+        }
+        return movies;
+    }
+
+    @Override
+    public Movie getMovieById(int id) {
+        int position = snapshot.findMovie(id);
+        return position < 0 ? null : movie(position);
+    }
+
+    @Override
+    public List<Movie> getMoviesByIds(List<Integer> ids) {
+        List<Movie> movies = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            int position = snapshot.findMovie(id);
+            if (position >= 0) {
+                movies.add(movie(position));
+            }
+        }
+        return movies;
+    }
+
+    @Override
+    public Credits getCredits() {
+        Snapshot.Adjacency stars = snapshot.starsByMovie();
+        Snapshot.Adjacency directors = snapshot.directorsByMovie();
+        Credits.Builder credits = new Credits.Builder();
+        int[] people = new int[64];
+        for (int movie = 0; movie < snapshot.movieCount(); movie++) {
+            int count = (stars.end(movie) - stars.start(movie)) + (directors.end(movie) - directors.start(movie));
+            if (count > people.length) {
+                people = new int[Integer.highestOneBit(count) << 1];
+            }
+            int n = 0;
+            for (int i = stars.start(movie); i < stars.end(movie); i++) {
+                people[n++] = snapshot.personId(stars.value(i));
+            }
+            for (int i = directors.start(movie); i < directors.end(movie); i++) {
+                people[n++] = snapshot.personId(directors.value(i));
+            }
+            Arrays.sort(people, 0, n);
+            for (int i = 0; i < n; i++) {
+                credits.add(snapshot.movieId(movie), people[i]);
+            }
+        }
+        return credits.build();
+    }
+
+    @Override
+    public List<MovieRating> getRatingsByYear(int limit, int votes, int year) {
+        List<MovieRating> movies = new ArrayList<>(Math.min(limit, 64));
+        YearRun run = new YearRun(year, votes);
+        MovieRating rating;
+        while (movies.size() < limit && (rating = run.next()) != null) {
+            movies.add(rating);
+        }
+        return movies;
+    }
+
+    @Override
+    public List<MovieRating> getRatingsByYearRange(int limit, int votes, int from, int to) throws SQLException {
+        List<YearRun> runs = new ArrayList<>(to - from + 1);
+        for (int year = from; year <= to; year++) {
+            runs.add(new YearRun(year, votes));
+        }
+        return KWayMerge.merge(runs, Comparator.comparingDouble(MovieRating::getRating).reversed(), limit);
+    }
+
+    @Override
+    public List<Person> getPeopleByMovieId(int id) {
+        int movie = snapshot.findMovie(id);
+        if (movie < 0) {
+            return new ArrayList<>();
+        }
+        Snapshot.Adjacency stars = snapshot.starsByMovie();
+        List<Person> people = new ArrayList<>(stars.end(movie) - stars.start(movie));
+        for (int i = stars.start(movie); i < stars.end(movie); i++) {
+            int person = stars.value(i);
+            people.add(ModelPool.person(snapshot.personId(person), snapshot.personName(person), snapshot.personBirth(person)));
+        }
+        return people;
+    }
+
+    @Override
+    public Map<Integer, List<Person>> getPeopleByMovieIds(Collection<Integer> ids, int maxRows) {
+        Map<Integer, List<Person>> people = new HashMap<>(ids.size() * 2);
+        int read = 0;
+        for (int id : ids) {
+            List<Person> stars = getPeopleByMovieId(id);
+            if (!stars.isEmpty()) {
+                people.put(id, stars);
+                read += stars.size();
+                if (read > maxRows) {
+                    break;
+                }
+            }
+        }
+        return people;
+    }
+
+    @Override
+    public Map<Integer, MovieRating> getRatingsByMovieIds(Collection<Integer> ids) {
+        Map<Integer, MovieRating> ratings = new HashMap<>(ids.size() * 2);
+        for (int id : ids) {
+            int movie = snapshot.findMovie(id);
+            if (movie < 0) {
+                continue;
+            }
+            // ratings are stored by year, so the movie's rating is among those of its year
+            int year = snapshot.movieYear(movie);
+            for (int position = snapshot.firstRatingOfYear(year);
+                 position < snapshot.ratingCount() && snapshot.ratingYear(position) == year; position++) {
+                if (snapshot.ratingMovie(position) == movie) {
+                    ratings.put(id, rating(position));
+                    break;
+                }
+            }
+        }
+        return ratings;
+    }
+
+    @Override
+    public int exportMovies(RowSink<Movie> sink, Fields fields) throws IOException {
+        int count = snapshot.movieCount();
+        for (int i = 0; i < count; i++) {
+            // streamed movies are not pooled, so that exporting does not fill the pool
+            sink.accept(new Movie(snapshot.movieId(i), snapshot.movieTitle(i), snapshot.movieYear(i)));
+        }
+        return count;
+    }
+
+    @Override
+    public int exportRatings(RowSink<MovieRating> sink, Fields fields) throws IOException {
+        // ratings are stored by year; sort (movie, rating) pairs to export them in movie id order
+        long[] order = new long[snapshot.ratingCount()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = (long) snapshot.ratingMovie(i) << 32 | i;
+        }
+        Arrays.sort(order);
+        for (long entry : order) {
+            int rating = (int) entry;
+            int movie = snapshot.ratingMovie(rating);
+            sink.accept(new MovieRating(new Movie(snapshot.movieId(movie), snapshot.movieTitle(movie),
+                    snapshot.movieYear(movie)), snapshot.ratingValue(rating), snapshot.ratingVotes(rating)));
+        }
+        return order.length;
+    }
+
+    @Override
+    public int exportStars(RowSink<Star> sink, Fields fields) throws IOException {
+        Snapshot.Adjacency stars = snapshot.starsByMovie();
+        int rows = 0;
+        for (int movie = 0; movie < snapshot.movieCount(); movie++) {
+            for (int i = stars.start(movie); i < stars.end(movie); i++) {
+                sink.accept(new Star(snapshot.movieId(movie), snapshot.personId(stars.value(i))));
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Reads the movie at a position.
+     */
+    private Movie movie(int position) {
+        return ModelPool.movie(snapshot.movieId(position), snapshot.movieTitle(position), snapshot.movieYear(position));
+    }
+
+    /**
+     * Reads the movie rating at a position.
+     */
+    private MovieRating rating(int position) {
+        int movie = snapshot.ratingMovie(position);
+        return new MovieRating(snapshot.movieId(movie), snapshot.movieTitle(movie), snapshot.movieYear(movie),
+                snapshot.ratingValue(position), snapshot.ratingVotes(position));
+    }
+
+    /**
+     * Walks the ratings of one year, best first, skipping those with too few votes.
+     */
+    private class YearRun implements KWayMerge.Run<MovieRating> {
+
+        private final int year;
+        private final int votes;
+        private int position;
+
+        YearRun(int year, int votes) {
+            this.year = year;
+            this.votes = votes;
+            this.position = snapshot.firstRatingOfYear(year);
+        }
+
+        @Override
+        public MovieRating next() {
+            while (position < snapshot.ratingCount() && snapshot.ratingYear(position) == year) {
+                int current = position++;
+                if (snapshot.ratingVotes(current) > votes) {
+                    return rating(current);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.flickfinder.dao;
+
+import com.flickfinder.json.Fields;
+import com.flickfinder.model.ModelPool;
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.Person;
+import com.flickfinder.snapshot.Snapshot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A PersonDAO that reads from a memory-mapped {@link Snapshot} instead of SQLite.
+ */
+public class SnapshotPersonDAO extends PersonDAO {
+
+    /**
+     * The snapshot the people are read from.
+     */
+    private final Snapshot snapshot;
+
+    /**
+     * Constructs a SnapshotPersonDAO object over a snapshot.
+     *
+     * @param snapshot the snapshot to read from
+     */
+    public SnapshotPersonDAO(Snapshot snapshot) {
+        super(null);
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public List<Person> getAllPeople(int limit) {
+        int count = Math.min(limit, snapshot.personCount());
+        List<Person> people = new ArrayList<>(Math.max(count, 0));
+        for (int i = 0; i < count; i++) {
+            people.add(person(i));
+        }
+        return people;
+    }
+
+    @Override
+    public Person getPersonById(int id) {
+        int position = snapshot.findPerson(id);
+        return position < 0 ? null : person(position);
+    }
+
+    @Override
+    public List<Movie> getMoviesByPersonId(int id) {
+        int person = snapshot.findPerson(id);
+        if (person < 0) {
+            return new ArrayList<>();
+        }
+        Snapshot.Adjacency stars = snapshot.starsByPerson();
+        List<Movie> movies = new ArrayList<>(stars.end(person) - stars.start(person));
+        for (int i = stars.start(person); i < stars.end(person); i++) {
+            int movie = stars.value(i);
+            movies.add(ModelPool.movie(snapshot.movieId(movie), snapshot.movieTitle(movie), snapshot.movieYear(movie)));
+        }
+        return movies;
+    }
+
+    @Override
+    public Map<Integer, List<Movie>> getMoviesByPersonIds(Collection<Integer> ids, int maxRows) {
+        Map<Integer, List<Movie>> movies = new HashMap<>(ids.size() * 2);
+        int read = 0;
+        for (int id : ids) {
+            List<Movie> starred = getMoviesByPersonId(id);
+            if (!starred.isEmpty()) {
+                movies.put(id, starred);
+                read += starred.size();
+                if (read > maxRows) {
+                    break;
+                }
+            }
+        }
+        return movies;
+    }
+
+    @Override
+    public int exportPeople(RowSink<Person> sink, Fields fields) throws IOException {
+        int count = snapshot.personCount();
+        for (int i = 0; i < count; i++) {
+            // streamed people are not pooled, so that exporting does not fill the pool
+            sink.accept(new Person(snapshot.personId(i), snapshot.personName(i), snapshot.personBirth(i)));
+        }
+        return count;
+    }
+
+    /**
+     * Reads the person at a position.
+     */
+    private Person person(int position) {
+        return ModelPool.person(snapshot.personId(position), snapshot.personName(position), snapshot.personBirth(position));
+    }
+}
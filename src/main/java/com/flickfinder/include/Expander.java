@@ -0,0 +1,272 @@
+package com.flickfinder.include;
+
+import com.flickfinder.dao.MovieDAO;
+import com.flickfinder.dao.PersonDAO;
+import com.flickfinder.json.Expanded;
+import com.flickfinder.json.Fields;
+import com.flickfinder.json.ResponseFormat;
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.MovieRating;
+import com.flickfinder.model.Person;
+import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Metrics;
+import io.javalin.http.Context;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Includes related rows in the rows of a response, such as the stars of each
+ * movie in a page of movies.
+ * <p>
+ * Looking the relation up for each row would cost one query per row. Instead
+ * the ids of every row on a level are collected first and each relation is read
+ * for all of them with one {@code IN (...)} query, or one per batch of
+ * {@value com.flickfinder.util.Defaults#INCLUDE_MAX_ROWS} ids for a long list;
+ * the rows it returns are then collected in turn for the next level. The
+ * relations read are kept for the rest of the request, so an id that comes up
+ * again is not read twice, and the results are stitched back into the rows in
+ * their original order.
+ * <p>
+ * A response may include at most {@value com.flickfinder.util.Defaults#INCLUDE_MAX_ROWS}
+ * rows in all; past that the request is refused with a 400 rather than built.
+ * A rating counts as one row whether or not there is one, so ratings over the
+ * bound are refused before they are read. Stars and movies are read with the
+ * rows left under the bound, which the DAOs stop reading at, and nothing more
+ * is read for a request once it is over the bound.
+ */
+public class Expander {
+
+    /**
+     * An expander with no data, which refuses every include.
+     */
+    public static final Expander NONE = new Expander(null, null);
+
+    /**
+     * The fields of a movie rating included as the rating of a movie.
+     */
+    private static final Fields RATING_FIELDS = Fields.parse(MovieRating.class, "rating,votes");
+
+    private final MovieDAO movieDAO;
+    private final PersonDAO personDAO;
+
+    /**
+     * The most rows a response may include.
+     */
+    private final int maxRows;
+
+    /**
+     * Constructs an Expander over the DAOs the related rows are read from.
+     *
+     * @param movieDAO  the movie data access object
+     * @param personDAO the person data access object
+     */
+    public Expander(MovieDAO movieDAO, PersonDAO personDAO) {
+        this(movieDAO, personDAO, Defaults.INCLUDE_MAX_ROWS);
+    }
+
+    /**
+     * Constructs an Expander that includes at most the given number of rows.
+     */
+    Expander(MovieDAO movieDAO, PersonDAO personDAO, int maxRows) {
+        this.movieDAO = movieDAO;
+        this.personDAO = personDAO;
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Sends a payload with the given fields of each row, and the related rows the
+     * include asks for included in it.
+     *
+     * @param ctx     the Javalin context
+     * @param payload the model, or list of models, to send
+     * @param fields  the fields of each row to send
+     * @param include the relations to include in each row
+     * @throws SQLException if a database error occurs
+     */
+    public void send(Context ctx, Object payload, Fields fields, Include include) throws SQLException {
+        if (include.isEmpty()) {
+            ResponseFormat.send(ctx, payload, fields);
+            return;
+        }
+        if (this.movieDAO == null) {
+            ctx.status(400);
+            ctx.result("Invalid include parameter");
+            return;
+        }
+        Loader loader = new Loader();
+        Object expanded = payload instanceof List<?> list ? loader.expand(list, include, fields)
+                : loader.expand(List.of(payload), include, fields).get(0);
+        if (loader.isOverBound()) {
+            Metrics.counter("include.refused").increment();
+            ctx.status(400);
+            ctx.result("Too many rows included; lower the limit or include less");
+            return;
+        }
+        ResponseFormat.send(ctx, expanded);
+    }
+
+    /**
+     * Reads the relations of one request, keeping what it has read.
+     */
+    private final class Loader {
+
+        private final Map<Integer, List<Person>> stars = new HashMap<>();
+        private final Map<Integer, List<Movie>> movies = new HashMap<>();
+        private final Map<Integer, MovieRating> ratings = new HashMap<>();
+
+        /**
+         * The rows included so far.
+         */
+        private int rows;
+
+        /**
+         * Includes the relations in each of a level's rows.
+         */
+        List<Object> expand(List<?> level, Include include, Fields fields) throws SQLException {
+            Set<Integer> ids = new LinkedHashSet<>(level.size() * 2);
+            for (Object row : level) {
+                ids.add(idOf(row));
+            }
+
+            List<Include.Child> children = include.children();
+            List<Map<Integer, ?>> related = new ArrayList<>(children.size());
+            for (Include.Child child : children) {
+                if (isOverBound()) {
+                    // the response will be refused; read nothing more for it
+                    related.add(Map.of());
+                    continue;
+                }
+                if (child.relation() == Include.Relation.RATING) {
+                    // every row includes one rating, so the rows are known before reading them
+                    this.rows += level.size();
+                    if (isOverBound()) {
+                        related.add(Map.of());
+                        continue;
+                    }
+                }
+                Map<Integer, ?> byId = load(child.relation(), ids);
+                if (child.relation() != Include.Relation.RATING) {
+                    for (Object row : level) {
+                        Object value = byId.get(idOf(row));
+                        this.rows += value == null ? 0 : ((List<?>) value).size();
+                    }
+                }
+                if (!child.include().isEmpty() && !isOverBound()) {
+                    byId = expandNext(byId, child);
+                }
+                related.add(byId);
+            }
+
+            List<Object> expanded = new ArrayList<>(level.size());
+            for (Object row : level) {
+                int id = idOf(row);
+                Map<String, Object> included = new LinkedHashMap<>();
+                for (int i = 0; i < children.size(); i++) {
+                    Object value = related.get(i).get(id);
+                    if (children.get(i).relation() == Include.Relation.RATING) {
+                        included.put(children.get(i).name(),
+                                value == null ? null : new Expanded(value, RATING_FIELDS, Map.of()));
+                    } else {
+                        included.put(children.get(i).name(), value == null ? List.of() : value);
+                    }
+                }
+                expanded.add(new Expanded(row, fields, included));
+            }
+            return expanded;
+        }
+
+        /**
+         * Returns whether more rows have been included than a response may hold.
+         */
+        boolean isOverBound() {
+            return this.rows > maxRows;
+        }
+
+        /**
+         * Includes the next level of relations in the rows of a relation, reading
+         * each row once however many rows it was included in.
+         */
+        private Map<Integer, List<Object>> expandNext(Map<Integer, ?> byId, Include.Child child) throws SQLException {
+            Map<Integer, Object> distinct = new LinkedHashMap<>();
+            for (Object list : byId.values()) {
+                for (Object row : (List<?>) list) {
+                    distinct.putIfAbsent(idOf(row), row);
+                }
+            }
+            List<Object> next = expand(new ArrayList<>(distinct.values()), child.include(),
+                    Fields.all(child.relation() == Include.Relation.STARS ? Person.class : Movie.class));
+            Map<Integer, Object> expandedById = new HashMap<>(next.size() * 2);
+            for (Object row : next) {
+                expandedById.put(idOf(((Expanded) row).model()), row);
+            }
+
+            Map<Integer, List<Object>> expanded = new HashMap<>(byId.size() * 2);
+            byId.forEach((id, list) -> {
+                List<Object> rows = new ArrayList<>(((List<?>) list).size());
+                for (Object row : (List<?>) list) {
+                    rows.add(expandedById.get(idOf(row)));
+                }
+                expanded.put(id, rows);
+            });
+            return expanded;
+        }
+
+        /**
+         * Reads a relation for the ids that have not been read yet, with one query
+         * per batch of ids. Stars and movies are read only up to the rows left
+         * under the bound.
+         */
+        private Map<Integer, ?> load(Include.Relation relation, Collection<Integer> ids) throws SQLException {
+            Map<Integer, ?> cache = switch (relation) {
+                case STARS -> this.stars;
+                case RATING -> this.ratings;
+                case MOVIES -> this.movies;
+            };
+            List<Integer> missing = new ArrayList<>(ids.size());
+            for (int id : ids) {
+                if (!cache.containsKey(id)) {
+                    missing.add(id);
+                }
+            }
+            if (!missing.isEmpty()) {
+                int left = maxRows - this.rows;
+                switch (relation) {
+                    case STARS -> fill(this.stars, missing, movieDAO.getPeopleByMovieIds(missing, left), List.of());
+                    case RATING -> fill(this.ratings, missing, movieDAO.getRatingsByMovieIds(missing), null);
+                    case MOVIES -> fill(this.movies, missing, personDAO.getMoviesByPersonIds(missing, left), List.of());
+                }
+            }
+            return cache;
+        }
+
+        /**
+         * Keeps what was read for each id, and that nothing was for the others.
+         */
+        private <V> void fill(Map<Integer, V> cache, List<Integer> ids, Map<Integer, V> read, V none) {
+            for (int id : ids) {
+                cache.put(id, read.getOrDefault(id, none));
+            }
+        }
+    }
+
+    /**
+     * Returns the id of a row.
+     */
+    private static int idOf(Object row) {
+        if (row instanceof Movie movie) {
+            return movie.getId();
+        }
+        if (row instanceof MovieRating rating) {
+            return rating.getId();
+        }
+        return ((Person) row).getId();
+    }
+}
@@ -0,0 +1,156 @@
+package com.flickfinder.include;
+
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.MovieRating;
+import com.flickfinder.model.Person;
+import com.flickfinder.util.Defaults;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The related rows a response includes in each of its rows, as asked for by the
+ * {@code include} query parameter, such as {@code include=stars,rating} on
+ * movies or {@code include=movies.stars} on people.
+ * <p>
+ * Each name is a relation of the rows it is included in, and a dotted name
+ * includes a relation of the included rows in turn, up to
+ * {@value com.flickfinder.util.Defaults#INCLUDE_MAX_DEPTH} levels deep.
+ */
+public final class Include {
+
+    /**
+     * The relations rows can include.
+     */
+    enum Relation {
+
+        /**
+         * The people starring in a movie.
+         */
+        STARS(Person.class),
+
+        /**
+         * The rating and votes of a movie.
+         */
+        RATING(null),
+
+        /**
+         * The movies a person starred in.
+         */
+        MOVIES(Movie.class);
+
+        /**
+         * The model of the included rows, or null if they cannot include anything.
+         */
+        private final Class<?> model;
+
+        Relation(Class<?> model) {
+            this.model = model;
+        }
+    }
+
+    /**
+     * The relations of each model, by name.
+     */
+    private static final Map<Class<?>, Map<String, Relation>> RELATIONS = Map.of(
+            Movie.class, Map.of("stars", Relation.STARS, "rating", Relation.RATING),
+            MovieRating.class, Map.of("stars", Relation.STARS),
+            Person.class, Map.of("movies", Relation.MOVIES));
+
+    /**
+     * An include of nothing.
+     */
+    public static final Include NONE = new Include();
+
+    /**
+     * A relation included in each row, with what its rows include in turn.
+     *
+     * @param name     the name the rows are included under
+     * @param relation the relation
+     * @param include  what the included rows include
+     */
+    record Child(String name, Relation relation, Include include) {
+    }
+
+    /**
+     * The relations included in each row, in the order they were asked for.
+     */
+    private final List<Child> children = new ArrayList<>(2);
+
+    private Include() {
+    }
+
+    /**
+     * Parses a comma-separated list of relations, each possibly dotted.
+     *
+     * @param model the model of the rows the relations are included in
+     * @param value the relations, or null for none
+     * @return the include, or null if a name is not a relation of the rows it is included in or goes too deep
+     */
+    public static Include parse(Class<?> model, String value) {
+        if (value == null) {
+            return NONE;
+        }
+        Include root = new Include();
+        for (String path : value.split(",", -1)) {
+            String[] names = path.split("\\.", -1);
+            if (names.length > Defaults.INCLUDE_MAX_DEPTH || !root.add(model, names, 0)) {
+                return null;
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Adds a dotted path of relations below this include.
+     */
+    private boolean add(Class<?> model, String[] names, int depth) {
+        Relation relation = model == null ? null : RELATIONS.getOrDefault(model, Map.of()).get(names[depth]);
+        if (relation == null) {
+            return false;
+        }
+        Child child = null;
+        for (Child existing : this.children) {
+            if (existing.relation() == relation) {
+                child = existing;
+            }
+        }
+        if (child == null) {
+            child = new Child(names[depth], relation, new Include());
+            this.children.add(child);
+        }
+        return depth + 1 == names.length || child.include().add(relation.model, names, depth + 1);
+    }
+
+    /**
+     * Returns whether nothing is included.
+     *
+     * @return true if the rows are sent as they are
+     */
+    public boolean isEmpty() {
+        return this.children.isEmpty();
+    }
+
+    /**
+     * Returns the relations included in each row.
+     *
+     * @return the relations, in the order they were asked for
+     */
+    List<Child> children() {
+        return this.children;
+    }
+
+    /**
+     * Returns the names the relations are included under.
+     *
+     * @return the names
+     */
+    public List<String> names() {
+        List<String> names = new ArrayList<>(this.children.size());
+        for (Child child : this.children) {
+            names.add(child.name());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,203 @@
+package com.flickfinder.index;
+
+import java.util.Arrays;
+
+/**
+ * The people credited on each movie, as either a star or a director, held in a
+ * compressed sparse row layout.
+ * <p>
+ * Movies are kept in ascending id order and each movie's people are a sorted,
+ * de-duplicated slice of one shared array. This keeps millions of credits in a
+ * handful of primitive arrays instead of one object per row.
+ */
+public class Credits {
+
+    /**
+     * Credits with no movies in them.
+     */
+    public static final Credits EMPTY = new Credits(new int[0], new int[]{0}, new int[0]);
+
+    /**
+     * The movie ids, in ascending order.
+     */
+    private final int[] movieIds;
+
+    /**
+     * The start of each movie's slice in people; movie i owns [offsets[i], offsets[i + 1]).
+     */
+    private final int[] offsets;
+
+    /**
+     * The person ids of every movie, one sorted slice after another.
+     */
+    private final int[] people;
+
+    private Credits(int[] movieIds, int[] offsets, int[] people) {
+        this.movieIds = movieIds;
+        this.offsets = offsets;
+        this.people = people;
+    }
+
+    /**
+     * Returns the number of movies with at least one credit.
+     *
+     * @return the number of movies
+     */
+    public int size() {
+        return this.movieIds.length;
+    }
+
+    /**
+     * Returns the id of the movie at the given position.
+     *
+     * @param index the position of the movie
+     * @return the id of the movie
+     */
+    public int movieId(int index) {
+        return this.movieIds[index];
+    }
+
+    /**
+     * Returns the position of the movie with the given id.
+     *
+     * @param movieId the id of the movie
+     * @return the position of the movie, or a negative number if it has no credits
+     */
+    public int indexOf(int movieId) {
+        return Arrays.binarySearch(this.movieIds, movieId);
+    }
+
+    /**
+     * Returns the start of the movie's slice of people.
+     *
+     * @param index the position of the movie
+     * @return the first position of the movie's people
+     */
+    int start(int index) {
+        return this.offsets[index];
+    }
+
+    /**
+     * Returns the end (exclusive) of the movie's slice of people.
+     *
+     * @param index the position of the movie
+     * @return the position after the movie's last person
+     */
+    int end(int index) {
+        return this.offsets[index + 1];
+    }
+
+    /**
+     * Returns the person at the given position of the shared people array.
+     *
+     * @param position the position in the people array
+     * @return the id of the person
+     */
+    int person(int position) {
+        return this.people[position];
+    }
+
+    /**
+     * Returns the number of people credited on the movie.
+     *
+     * @param index the position of the movie
+     * @return the number of people credited
+     */
+    public int count(int index) {
+        return end(index) - start(index);
+    }
+
+    /**
+     * Returns the number of people credited on both movies.
+     *
+     * @param a the position of the first movie
+     * @param b the position of the second movie
+     * @return the size of the intersection of their people
+     */
+    public int overlap(int a, int b) {
+        int i = start(a);
+        int iEnd = end(a);
+        int j = start(b);
+        int jEnd = end(b);
+        int shared = 0;
+        while (i < iEnd && j < jEnd) {
+            int x = this.people[i];
+            int y = this.people[j];
+            if (x == y) {
+                shared++;
+                i++;
+                j++;
+            } else if (x < y) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the approximate heap size of the credits, in bytes.
+     *
+     * @return the approximate size in bytes
+     */
+    public long sizeInBytes() {
+        return 4L * (this.movieIds.length + this.offsets.length + this.people.length);
+    }
+
+    /**
+     * Collects credits one (movie, person) pair at a time.
+     * <p>
+     * Pairs must be added in ascending order of movie id and then person id, which
+     * is how the DAO reads them; duplicates are dropped.
+     */
+    public static class Builder {
+
+        private int[] movieIds = new int[1024];
+        private int[] offsets = new int[1025];
+        private int[] people = new int[4096];
+        private int movies;
+        private int credits;
+
+        /**
+         * Adds a credit.
+         *
+         * @param movieId  the id of the movie
+         * @param personId the id of the person credited on the movie
+         * @return this builder
+         */
+        public Builder add(int movieId, int personId) {
+            if (this.movies == 0 || this.movieIds[this.movies - 1] != movieId) {
+                if (this.movies > 0 && movieId < this.movieIds[this.movies - 1]) {
+                    throw new IllegalArgumentException("Credits must be added in movie id order");
+                }
+                if (this.movies == this.movieIds.length) {
+                    this.movieIds = Arrays.copyOf(this.movieIds, this.movies * 2);
+                    this.offsets = Arrays.copyOf(this.offsets, this.movies * 2 + 1);
+                }
+                this.movieIds[this.movies] = movieId;
+                this.offsets[this.movies] = this.credits;
+                this.movies++;
+            } else if (this.people[this.credits - 1] == personId) {
+                return this;
+            }
+            if (this.credits == this.people.length) {
+                this.people = Arrays.copyOf(this.people, this.credits * 2);
+            }
+            this.people[this.credits++] = personId;
+            return this;
+        }
+
+        /**
+         * Builds the credits.
+         *
+         * @return the credits added so far
+         */
+        public Credits build() {
+            int[] ends = Arrays.copyOf(this.offsets, this.movies + 1);
+            ends[this.movies] = this.credits;
+            return new Credits(Arrays.copyOf(this.movieIds, this.movies), ends,
+                    Arrays.copyOf(this.people, this.credits));
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.flickfinder.index;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * An exact, immutable set of ids in the layout of a roaring bitmap.
+ * <p>
+ * The ids are split into chunks of 65536 by their high 16 bits, and each chunk
+ * that holds any ids is kept in whichever container is smaller for it: a
+ * sorted array of the low 16 bits while the chunk holds at most
+ * {@value #ARRAY_LIMIT} ids, or a bitmap of all 65536 bits once it holds
+ * more. A set of a few scattered ids then takes a few bytes each, while a
+ * dense range takes one bit per id, and either answers {@link #contains(int)}
+ * with a binary search over the chunks and one probe into a container.
+ * <p>
+ * Unlike an {@link IdFilter}, a bitmap never answers "maybe": it is meant for
+ * sets that are small enough to hold exactly, such as the movies that have
+ * ratings, and it can be iterated and intersected.
+ */
+public final class IdBitmap {
+
+    /**
+     * The most ids a chunk holds as an array; 4096 two-byte values take as
+     * much memory as the 8 KiB bitmap of a chunk.
+     */
+    static final int ARRAY_LIMIT = 4096;
+
+    /**
+     * A bitmap with no ids in it.
+     */
+    public static final IdBitmap EMPTY = new IdBitmap(new int[0], new Container[0]);
+
+    /**
+     * The high 16 bits of each chunk, in ascending unsigned order.
+     */
+    private final int[] keys;
+
+    /**
+     * The container of each chunk.
+     */
+    private final Container[] containers;
+
+    private final int cardinality;
+
+    private IdBitmap(int[] keys, Container[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+        int count = 0;
+        for (Container container : containers) {
+            count += container.cardinality();
+        }
+        this.cardinality = count;
+    }
+
+    /**
+     * Builds a bitmap over a set of ids.
+     *
+     * @param ids   the ids, in any order and possibly repeated; only the first count are read
+     * @param count how many ids there are
+     * @return the bitmap
+     */
+    public static IdBitmap of(int[] ids, int count) {
+        int[] sorted = Arrays.copyOf(ids, count);
+        // flip the sign bit so that the signed sort puts the ids in unsigned order, the order of the chunks
+        for (int i = 0; i < count; i++) {
+            sorted[i] ^= Integer.MIN_VALUE;
+        }
+        Arrays.sort(sorted);
+        for (int i = 0; i < count; i++) {
+            sorted[i] ^= Integer.MIN_VALUE;
+        }
+
+        int[] keys = new int[count];
+        Container[] containers = new Container[count];
+        int chunks = 0;
+        for (int start = 0; start < count; ) {
+            int key = sorted[start] >>> 16;
+            int end = start;
+            while (end < count && sorted[end] >>> 16 == key) {
+                end++;
+            }
+            keys[chunks] = key;
+            containers[chunks++] = Container.of(sorted, start, end);
+            start = end;
+        }
+        return new IdBitmap(Arrays.copyOf(keys, chunks), Arrays.copyOf(containers, chunks));
+    }
+
+    /**
+     * Returns whether an id is in the set.
+     *
+     * @param id the id
+     * @return true if the id is in the set
+     */
+    public boolean contains(int id) {
+        int chunk = find(id >>> 16);
+        return chunk >= 0 && this.containers[chunk].contains((char) id);
+    }
+
+    /**
+     * Returns the number of ids in the set.
+     *
+     * @return the number of ids
+     */
+    public int cardinality() {
+        return this.cardinality;
+    }
+
+    /**
+     * Returns roughly how much memory the bitmap takes.
+     *
+     * @return the size in bytes
+     */
+    public long sizeInBytes() {
+        long size = this.keys.length * 4L;
+        for (Container container : this.containers) {
+            size += container.sizeInBytes();
+        }
+        return size;
+    }
+
+    /**
+     * Hands every id in the set, in ascending unsigned order, to a consumer.
+     *
+     * @param each receives each id
+     */
+    public void forEach(IntConsumer each) {
+        for (int i = 0; i < this.keys.length; i++) {
+            this.containers[i].forEach(this.keys[i] << 16, each);
+        }
+    }
+
+    /**
+     * Returns the ids that are in both this set and another, such as the
+     * directors who have also starred.
+     *
+     * @param other the other set
+     * @return the intersection
+     */
+    public IdBitmap and(IdBitmap other) {
+        int[] keys = new int[Math.min(this.keys.length, other.keys.length)];
+        Container[] containers = new Container[keys.length];
+        int chunks = 0;
+        for (int i = 0, j = 0; i < this.keys.length && j < other.keys.length; ) {
+            int compare = Integer.compareUnsigned(this.keys[i], other.keys[j]);
+            if (compare < 0) {
+                i++;
+            } else if (compare > 0) {
+                j++;
+            } else {
+                Container both = this.containers[i].and(other.containers[j]);
+                if (both.cardinality() > 0) {
+                    keys[chunks] = this.keys[i];
+                    containers[chunks++] = both;
+                }
+                i++;
+                j++;
+            }
+        }
+        return new IdBitmap(Arrays.copyOf(keys, chunks), Arrays.copyOf(containers, chunks));
+    }
+
+    /**
+     * Finds the chunk with the given high bits.
+     */
+    private int find(int key) {
+        int low = 0;
+        int high = this.keys.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = Integer.compareUnsigned(this.keys[mid], key);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The low 16 bits of the ids in one chunk.
+     */
+    private abstract static class Container {
+
+        /**
+         * Builds the smaller container for a run of sorted ids sharing their high bits.
+         */
+        static Container of(int[] sorted, int start, int end) {
+            char[] values = new char[end - start];
+            int count = 0;
+            for (int i = start; i < end; i++) {
+                char value = (char) sorted[i];
+                if (count == 0 || values[count - 1] != value) {
+                    values[count++] = value;
+                }
+            }
+            return of(values, count);
+        }
+
+        /**
+         * Builds the smaller container for sorted, distinct low bits.
+         */
+        static Container of(char[] values, int count) {
+            if (count <= ARRAY_LIMIT) {
+                return new Array(Arrays.copyOf(values, count));
+            }
+            long[] words = new long[1024];
+            for (int i = 0; i < count; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return new Bitmap(words, count);
+        }
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract long sizeInBytes();
+
+        abstract void forEach(int high, IntConsumer each);
+
+        /**
+         * Returns the values in both containers, which is never larger than the smaller one.
+         */
+        Container and(Container other) {
+            Container small = cardinality() <= other.cardinality() ? this : other;
+            Container large = small == this ? other : this;
+            char[] values = new char[small.cardinality()];
+            int[] count = {0};
+            small.forEach(0, value -> {
+                if (large.contains((char) value)) {
+                    values[count[0]++] = (char) value;
+                }
+            });
+            return of(values, count[0]);
+        }
+    }
+
+    /**
+     * A sorted array of the low bits, for a chunk with few ids.
+     */
+    private static final class Array extends Container {
+
+        private final char[] values;
+
+        Array(char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(this.values, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return this.values.length;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return this.values.length * 2L;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer each) {
+            for (char value : this.values) {
+                each.accept(high | value);
+            }
+        }
+    }
+
+    /**
+     * A bitmap of all 65536 low bits, for a chunk with many ids.
+     */
+    private static final class Bitmap extends Container {
+
+        private final long[] words;
+        private final int cardinality;
+
+        Bitmap(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (this.words[value >>> 6] & 1L << value) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return this.cardinality;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return this.words.length * 8L;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer each) {
+            for (int w = 0; w < this.words.length; w++) {
+                for (long word = this.words[w]; word != 0; word &= word - 1) {
+                    each.accept(high | w << 6 | Long.numberOfTrailingZeros(word));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.flickfinder.index;
+
+import java.util.BitSet;
+
+/**
+ * A compact set of ids that answers whether an id may exist.
+ * <p>
+ * Ids that are mostly dense, as table ids usually are, are held exactly in a
+ * bitset over the range from the smallest to the largest id. Ids spread too
+ * thinly for that are held in a Bloom filter instead, which answers "maybe"
+ * for a small share of the ids that do not exist but never "no" for one that
+ * does. Either way an id the filter rejects certainly does not exist.
+ */
+public abstract class IdFilter {
+
+    /**
+     * A filter that lets every id through, for data that has not been filtered.
+     */
+    public static final IdFilter ALL = new IdFilter() {
+        @Override
+        public boolean mightContain(int id) {
+            return true;
+        }
+
+        @Override
+        public long sizeInBytes() {
+            return 0;
+        }
+
+        @Override
+        public String kind() {
+            return "none";
+        }
+    };
+
+    /**
+     * Returns whether an id may be in the set.
+     *
+     * @param id the id
+     * @return false if the id is certainly not in the set
+     */
+    public abstract boolean mightContain(int id);
+
+    /**
+     * Returns roughly how much memory the filter takes.
+     *
+     * @return the size in bytes
+     */
+    public abstract long sizeInBytes();
+
+    /**
+     * Returns the kind of filter, for the logs.
+     *
+     * @return "bitset" or "bloom"
+     */
+    public abstract String kind();
+
+    /**
+     * Builds a filter over a set of ids.
+     *
+     * @param ids            the ids, in any order; only the first count are read
+     * @param count          how many ids there are
+     * @param maxBitsPerId   the most bits per id a bitset may take before a Bloom filter is used instead
+     * @param bloomBitsPerId the bits per id of a Bloom filter
+     * @return the filter
+     */
+    public static IdFilter build(int[] ids, int count, int maxBitsPerId, int bloomBitsPerId) {
+        if (count == 0) {
+            return new Dense(0, new BitSet());
+        }
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, ids[i]);
+            max = Math.max(max, ids[i]);
+        }
+        long span = (long) max - min + 1;
+        if (span <= (long) count * maxBitsPerId && span <= Integer.MAX_VALUE) {
+            BitSet bits = new BitSet((int) span);
+            for (int i = 0; i < count; i++) {
+                bits.set(ids[i] - min);
+            }
+            return new Dense(min, bits);
+        }
+        Bloom bloom = new Bloom(Math.max(64L, (long) count * bloomBitsPerId), bloomBitsPerId);
+        for (int i = 0; i < count; i++) {
+            bloom.add(ids[i]);
+        }
+        return bloom;
+    }
+
+    /**
+     * An exact bitset over the range of the ids.
+     */
+    private static final class Dense extends IdFilter {
+
+        private final int min;
+        private final BitSet bits;
+
+        private Dense(int min, BitSet bits) {
+            this.min = min;
+            this.bits = bits;
+        }
+
+        @Override
+        public boolean mightContain(int id) {
+            long offset = (long) id - this.min;
+            return offset >= 0 && offset < this.bits.length() && this.bits.get((int) offset);
+        }
+
+        @Override
+        public long sizeInBytes() {
+            return this.bits.size() / 8;
+        }
+
+        @Override
+        public String kind() {
+            return "bitset";
+        }
+    }
+
+    /**
+     * A Bloom filter over the ids, probed by double hashing.
+     */
+    private static final class Bloom extends IdFilter {
+
+        private final long[] words;
+        private final long bits;
+        private final int hashes;
+
+        private Bloom(long bits, int bitsPerId) {
+            this.words = new long[(int) ((bits + 63) / 64)];
+            this.bits = (long) this.words.length * 64;
+            // the number of hashes that gives the fewest false positives at this size
+            this.hashes = Math.max(1, (int) Math.round(bitsPerId * Math.log(2)));
+        }
+
+        private void add(int id) {
+            long hash = mix(id);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < this.hashes; i++) {
+                long bit = Integer.toUnsignedLong(h1 + i * h2) % this.bits;
+                this.words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        @Override
+        public boolean mightContain(int id) {
+            long hash = mix(id);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < this.hashes; i++) {
+                long bit = Integer.toUnsignedLong(h1 + i * h2) % this.bits;
+                if ((this.words[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public long sizeInBytes() {
+            return this.words.length * 8L;
+        }
+
+        @Override
+        public String kind() {
+            return "bloom";
+        }
+
+        /**
+         * Spreads the bits of an id over a long (the finaliser of SplitMix64).
+         */
+        private static long mix(int id) {
+            long z = id * 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
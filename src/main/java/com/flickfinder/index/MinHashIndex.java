@@ -0,0 +1,228 @@
+package com.flickfinder.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Finds movies that share cast and directors with a given movie.
+ * <p>
+ * Every movie's set of credited people is reduced to a MinHash signature, and
+ * the signature is split into bands. Two movies whose signatures agree on any
+ * whole band become candidates (locality sensitive hashing), and candidates are
+ * then re-ranked by their exact number of shared people.
+ * <p>
+ * Each band is stored as one sorted array of {@code (band hash, movie)} pairs,
+ * so the signature table is a flat 8 bytes per movie per band. The number of
+ * bands is reduced until the table fits in the configured memory budget.
+ */
+public class MinHashIndex {
+
+    /**
+     * An index with nothing in it, used when the credits could not be loaded.
+     */
+    public static final MinHashIndex EMPTY = new MinHashIndex(Credits.EMPTY, 0, 1, new long[0][]);
+
+    /**
+     * The largest number of candidates re-ranked for a single query. Bands for
+     * very prolific people can be huge, and this keeps the query latency bounded.
+     */
+    static final int MAX_CANDIDATES = 20_000;
+
+    /**
+     * The people credited on each movie, used for exact re-ranking.
+     */
+    private final Credits credits;
+
+    /**
+     * The number of bands in each signature.
+     */
+    private final int bands;
+
+    /**
+     * The number of MinHash values in each band.
+     */
+    private final int rows;
+
+    /**
+     * One sorted table per band; each entry is the band hash in the high 32 bits and
+     * the position of the movie in the low 32 bits.
+     */
+    private final long[][] bandTables;
+
+    private MinHashIndex(Credits credits, int bands, int rows, long[][] bandTables) {
+        this.credits = credits;
+        this.bands = bands;
+        this.rows = rows;
+        this.bandTables = bandTables;
+    }
+
+    /**
+     * Builds the index, computing the signatures of all movies in parallel.
+     *
+     * @param credits      the people credited on each movie
+     * @param bands        the preferred number of bands
+     * @param rows         the number of MinHash values per band
+     * @param memoryBudget the most memory, in bytes, the band tables may use
+     * @return the index
+     */
+    public static MinHashIndex build(Credits credits, int bands, int rows, long memoryBudget) {
+        int movies = credits.size();
+        if (movies == 0) {
+            return new MinHashIndex(credits, 0, rows, new long[0][]);
+        }
+        int affordable = (int) Math.min(Integer.MAX_VALUE, memoryBudget / (8L * movies));
+        int usedBands = Math.max(1, Math.min(bands, affordable));
+
+        long[][] tables = new long[usedBands][movies];
+        IntStream.range(0, movies).parallel().forEach(index -> {
+            int[] signature = signature(credits, index, usedBands * rows);
+            for (int band = 0; band < usedBands; band++) {
+                tables[band][index] = ((long) bandHash(signature, band, rows) << 32) | index;
+            }
+        });
+        for (long[] table : tables) {
+            Arrays.parallelSort(table);
+        }
+        return new MinHashIndex(credits, usedBands, rows, tables);
+    }
+
+    /**
+     * Returns the ids of the movies sharing the most people with the given movie,
+     * most shared first. The movie itself is never included.
+     *
+     * @param movieId the id of the movie
+     * @param limit   the maximum number of movie ids to return
+     * @return the ids of similar movies, possibly empty
+     */
+    public List<Integer> similar(int movieId, int limit) {
+        int index = this.credits.indexOf(movieId);
+        if (index < 0 || this.bands == 0 || limit <= 0) {
+            return List.of();
+        }
+
+        int[] signature = signature(this.credits, index, this.bands * this.rows);
+        BitSet seen = new BitSet(this.credits.size());
+        seen.set(index);
+        int candidates = 0;
+
+        PriorityQueue<int[]> best = new PriorityQueue<>(limit + 1, MinHashIndex::compareMatches);
+        for (int band = 0; band < this.bands && candidates < MAX_CANDIDATES; band++) {
+            long[] table = this.bandTables[band];
+            long hash = bandHash(signature, band, this.rows);
+            for (int i = lowerBound(table, hash << 32); i < table.length && table[i] >> 32 == hash
+                    && candidates < MAX_CANDIDATES; i++) {
+                int candidate = (int) table[i];
+                if (seen.get(candidate)) {
+                    continue;
+                }
+                seen.set(candidate);
+                candidates++;
+
+                int shared = this.credits.overlap(index, candidate);
+                best.add(new int[]{shared, this.credits.count(candidate), this.credits.movieId(candidate)});
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+
+        List<Integer> ids = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            ids.add(best.poll()[2]);
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    /**
+     * Returns the number of bands the index was built with.
+     *
+     * @return the number of bands
+     */
+    public int getBands() {
+        return this.bands;
+    }
+
+    /**
+     * Returns the approximate size of the signature table and credits, in bytes.
+     *
+     * @return the approximate size in bytes
+     */
+    public long sizeInBytes() {
+        return 8L * this.bands * this.credits.size() + this.credits.sizeInBytes();
+    }
+
+    /**
+     * Orders matches from worst to best: fewer shared people first, then more
+     * unshared people, then higher movie id.
+     */
+    private static int compareMatches(int[] a, int[] b) {
+        if (a[0] != b[0]) {
+            return Integer.compare(a[0], b[0]);
+        }
+        if (a[1] != b[1]) {
+            return Integer.compare(b[1], a[1]);
+        }
+        return Integer.compare(b[2], a[2]);
+    }
+
+    /**
+     * Computes the MinHash signature of a movie's people.
+     */
+    private static int[] signature(Credits credits, int index, int length) {
+        int[] signature = new int[length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int p = credits.start(index); p < credits.end(index); p++) {
+            long person = credits.person(p);
+            for (int h = 0; h < length; h++) {
+                int value = (int) (mix(person * 0x9E3779B97F4A7C15L + h * 0xC2B2AE3D27D4EB4FL) >>> 33);
+                if (value < signature[h]) {
+                    signature[h] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Hashes the values of one band of a signature into 32 bits.
+     */
+    private static int bandHash(int[] signature, int band, int rows) {
+        long hash = band;
+        for (int r = band * rows; r < (band + 1) * rows; r++) {
+            hash = mix(hash * 31 + signature[r]);
+        }
+        return (int) hash;
+    }
+
+    /**
+     * The SplitMix64 finaliser, used as a family of cheap independent hash functions.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns the first position in the sorted table that is not less than key.
+     */
+    private static int lowerBound(long[] table, long key) {
+        int low = 0;
+        int high = table.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (table[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,50 @@
+package com.flickfinder.jfr;
+
+import com.flickfinder.util.Defaults;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A flight recorder event for one lookup in a cache, and for where the value
+ * came from in the end.
+ * <p>
+ * The event is only recorded while a recording has it enabled, and then only
+ * for lookups slower than its threshold, which by default leaves out hits.
+ */
+@Name("com.flickfinder.Cache")
+@Label("Cache Lookup")
+@Description("A lookup in a cache, and where its value came from")
+@Category({"FlickFinder", "Cache"})
+@Threshold(Defaults.JFR_CACHE_THRESHOLD)
+@StackTrace(false)
+public class CacheEvent extends jdk.jfr.Event {
+
+    /**
+     * The cache, such as {@code peer.movie}.
+     */
+    @Label("Cache")
+    public String cache;
+
+    /**
+     * The key looked up.
+     */
+    @Label("Key")
+    public String key;
+
+    /**
+     * Where the value came from: {@code hit}, {@code load}, {@code fetch} or
+     * {@code fallback} when the owner could not be reached.
+     */
+    @Label("Outcome")
+    public String outcome;
+
+    /**
+     * Whether the key had a value.
+     */
+    @Label("Found")
+    public boolean found;
+}
@@ -0,0 +1,130 @@
+package com.flickfinder.jfr;
+
+import com.flickfinder.trace.Span;
+import com.flickfinder.trace.Trace;
+import com.flickfinder.util.Defaults;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.sql.SQLException;
+import java.util.Collection;
+
+/**
+ * A flight recorder event for one DAO query, with its SQL and the number of
+ * rows it returned.
+ * <p>
+ * The event is only recorded while a recording has it enabled, and then only
+ * for queries slower than its threshold. When it is not enabled, timing a
+ * query costs one check.
+ */
+@Name("com.flickfinder.Query")
+@Label("DAO Query")
+@Description("A query run by a DAO")
+@Category({"FlickFinder", "Database"})
+@Threshold(Defaults.JFR_QUERY_THRESHOLD)
+@StackTrace(false)
+public class QueryEvent extends jdk.jfr.Event {
+
+    /**
+     * Runs a query.
+     *
+     * @param <V> the type of the result
+     * @param <E> the exception the query may throw besides a database error
+     */
+    @FunctionalInterface
+    public interface Query<V, E extends Exception> {
+        /**
+         * Runs the query.
+         *
+         * @return the result
+         * @throws SQLException if a database error occurs
+         * @throws E            if the query fails otherwise
+         */
+        V run() throws SQLException, E;
+    }
+
+    /**
+     * The DAO method that ran the query, such as {@code MovieDAO.getMovieById}.
+     */
+    @Label("Method")
+    public String method;
+
+    /**
+     * The SQL of the query.
+     */
+    @Label("SQL")
+    public String sql;
+
+    /**
+     * The number of rows the query returned, or -1 if it failed.
+     */
+    @Label("Rows")
+    public int rows;
+
+    /**
+     * Runs a query, recording it as an event if it is slower than the threshold,
+     * and as a span of the current thread's trace, if it has one.
+     * The rows are counted from the result: the size of a collection, the
+     * value of an Integer row count, 0 for null and 1 for anything else.
+     *
+     * @param method the DAO method that runs the query
+     * @param sql    the SQL of the query
+     * @param query  runs the query
+     * @param <V>    the type of the result
+     * @param <E>    the exception the query may throw besides a database error
+     * @return the result of the query
+     * @throws SQLException if a database error occurs
+     * @throws E            if the query fails otherwise
+     */
+    public static <V, E extends Exception> V time(String method, String sql, Query<V, E> query) throws SQLException, E {
+        try (Span span = Trace.span(method)) {
+            span.attribute("db.statement", sql);
+            V result = record(method, sql, query);
+            span.attribute("db.rows", rows(result));
+            return result;
+        }
+    }
+
+    /**
+     * Runs a query, recording it as an event if it is slower than the threshold.
+     */
+    private static <V, E extends Exception> V record(String method, String sql, Query<V, E> query) throws SQLException, E {
+        QueryEvent event = new QueryEvent();
+        if (!event.isEnabled()) {
+            return query.run();
+        }
+        event.begin();
+        V result = null;
+        boolean failed = true;
+        try {
+            result = query.run();
+            failed = false;
+            return result;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.method = method;
+                event.sql = sql;
+                event.rows = failed ? -1 : rows(result);
+                event.commit();
+            }
+        }
+    }
+
+    private static int rows(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Integer count) {
+            return count;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,49 @@
+package com.flickfinder.jfr;
+
+import com.flickfinder.util.Defaults;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A flight recorder event for one HTTP request, from the moment it is matched
+ * to a route until its response is complete.
+ * <p>
+ * The event is only recorded while a recording has it enabled, and then only
+ * for requests slower than its threshold.
+ */
+@Name("com.flickfinder.Request")
+@Label("HTTP Request")
+@Description("An API request, from matching its route to completing its response")
+@Category({"FlickFinder", "HTTP"})
+@Threshold(Defaults.JFR_REQUEST_THRESHOLD)
+@StackTrace(false)
+public class RequestEvent extends jdk.jfr.Event {
+
+    /**
+     * The HTTP method of the request.
+     */
+    @Label("Method")
+    public String method;
+
+    /**
+     * The route the request matched, such as {@code /movies/{id}}.
+     */
+    @Label("Route")
+    public String route;
+
+    /**
+     * The path of the request.
+     */
+    @Label("Path")
+    public String path;
+
+    /**
+     * The status code of the response.
+     */
+    @Label("Status")
+    public int status;
+}
@@ -0,0 +1,41 @@
+package com.flickfinder.json;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Map;
+
+/**
+ * A model written together with related rows included in it, such as a movie
+ * with its stars. The model's own fields come first, narrowed to the given
+ * fields, followed by each included relation under its name: a list of rows, a
+ * single row, or null.
+ * <p>
+ * {@link ModelJsonMapper} writes it directly; Jackson, which writes the binary
+ * encodings, writes it through {@link #toTree()}.
+ *
+ * @param model    the model
+ * @param fields   the fields of the model to write
+ * @param included the related rows, by the name they are included under, in order
+ */
+public record Expanded(Object model, Fields fields, Map<String, Object> included) {
+
+    /**
+     * Converts the models into trees for Jackson.
+     */
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Returns the row as a tree, for encodings written by Jackson.
+     *
+     * @return the fields of the model followed by the included rows
+     */
+    @JsonValue
+    public ObjectNode toTree() {
+        ObjectNode tree = mapper.valueToTree(this.model);
+        this.fields.retain(tree);
+        this.included.forEach((name, value) -> tree.set(name, mapper.valueToTree(value)));
+        return tree;
+    }
+}
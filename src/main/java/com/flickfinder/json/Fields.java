@@ -0,0 +1,197 @@
+package com.flickfinder.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.MovieRating;
+import com.flickfinder.model.Person;
+import com.flickfinder.model.Star;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fields of a model a response is narrowed to, as asked for by the
+ * {@code fields} query parameter, such as {@code fields=id,title}.
+ * <p>
+ * A model has at most a handful of fields, so every subset of them is compiled
+ * once, when the class is loaded, into a bit mask and the list of its names. A
+ * request only splits its parameter and looks its projection up by mask;
+ * {@link ModelJsonMapper} then tests one bit per field as it writes a row.
+ */
+public final class Fields {
+
+    /**
+     * The fields of each model, in the order they are written.
+     */
+    private static final Map<Class<?>, List<String>> MODELS = Map.of(
+            Movie.class, List.of("id", "title", "year"),
+            MovieRating.class, List.of("id", "title", "year", "rating", "votes"),
+            Person.class, List.of("id", "name", "birth"),
+            Star.class, List.of("movieId", "personId"));
+
+    /**
+     * Every projection of each model, by its mask.
+     */
+    private static final Map<Class<?>, Fields[]> COMPILED = compile();
+
+    private final Class<?> model;
+    private final int mask;
+    private final List<String> names;
+    private final boolean all;
+
+    private Fields(Class<?> model, int mask, List<String> names, boolean all) {
+        this.model = model;
+        this.mask = mask;
+        this.names = names;
+        this.all = all;
+    }
+
+    private static Map<Class<?>, Fields[]> compile() {
+        Map<Class<?>, Fields[]> compiled = new HashMap<>();
+        MODELS.forEach((model, fields) -> {
+            Fields[] byMask = new Fields[1 << fields.size()];
+            for (int mask = 1; mask < byMask.length; mask++) {
+                List<String> names = new ArrayList<>(fields.size());
+                for (int i = 0; i < fields.size(); i++) {
+                    if ((mask & 1 << i) != 0) {
+                        names.add(fields.get(i));
+                    }
+                }
+                byMask[mask] = new Fields(model, mask, List.copyOf(names), mask == byMask.length - 1);
+            }
+            compiled.put(model, byMask);
+        });
+        return Map.copyOf(compiled);
+    }
+
+    /**
+     * Returns the projection onto every field of a model.
+     *
+     * @param model the model class
+     * @return the projection
+     */
+    public static Fields all(Class<?> model) {
+        Fields[] byMask = COMPILED.get(model);
+        return byMask[byMask.length - 1];
+    }
+
+    /**
+     * Parses a comma-separated list of field names.
+     *
+     * @param model the model class the fields belong to
+     * @param value the field names, or null for every field
+     * @return the projection, or null if a name is empty or not a field of the model
+     */
+    public static Fields parse(Class<?> model, String value) {
+        if (value == null) {
+            return all(model);
+        }
+        List<String> fields = MODELS.get(model);
+        int mask = 0;
+        int start = 0;
+        while (start <= value.length()) {
+            int end = value.indexOf(',', start);
+            if (end < 0) {
+                end = value.length();
+            }
+            int field = indexOf(fields, value, start, end);
+            if (field < 0) {
+                return null;
+            }
+            mask |= 1 << field;
+            start = end + 1;
+        }
+        return COMPILED.get(model)[mask];
+    }
+
+    /**
+     * Finds the field whose name is the given part of a string, without copying it.
+     */
+    private static int indexOf(List<String> fields, String value, int start, int end) {
+        for (int i = 0; i < fields.size(); i++) {
+            String name = fields.get(i);
+            if (name.length() == end - start && value.startsWith(name, start)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether a field is included, by its position in the model's fields.
+     *
+     * @param field the position of the field
+     * @return true if the field is written
+     */
+    public boolean has(int field) {
+        return (this.mask & 1 << field) != 0;
+    }
+
+    /**
+     * Returns whether every field of the model is included.
+     *
+     * @return true if nothing is left out
+     */
+    public boolean isAll() {
+        return this.all;
+    }
+
+    /**
+     * Returns the names of the included fields.
+     *
+     * @return the names, in the order they are written
+     */
+    public List<String> names() {
+        return this.names;
+    }
+
+    /**
+     * Removes the fields that are left out from a model, or an array of models,
+     * that has already been converted to a tree.
+     *
+     * @param node the object or array
+     */
+    public void retain(JsonNode node) {
+        if (node.isArray()) {
+            node.forEach(this::retain);
+        } else if (node instanceof ObjectNode object) {
+            object.retain(this.names);
+        }
+    }
+
+    /**
+     * Removes the fields that are left out from a tree, as {@link #retain(JsonNode)},
+     * but keeps some other names too, such as the relations included in each row.
+     *
+     * @param node the object or array
+     * @param also the other names to keep
+     */
+    public void retain(JsonNode node, List<String> also) {
+        if (also.isEmpty()) {
+            retain(node);
+        } else if (node.isArray()) {
+            node.forEach(row -> retain(row, also));
+        } else if (node instanceof ObjectNode object) {
+            List<String> names = new ArrayList<>(this.names);
+            names.addAll(also);
+            object.retain(names);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.model.getSimpleName() + this.names;
+    }
+
+    /**
+     * A payload to be written with only some of its fields.
+     *
+     * @param payload the model, or list of models
+     * @param fields  the fields to write
+     */
+    public record Projected(Object payload, Fields fields) {
+    }
+}
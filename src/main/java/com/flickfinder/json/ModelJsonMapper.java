@@ -0,0 +1,428 @@
+package com.flickfinder.json;
+
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.MovieRating;
+import com.flickfinder.model.Person;
+import com.flickfinder.model.Star;
+import io.javalin.json.JavalinJackson;
+import io.javalin.json.JsonMapper;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A Javalin JSON mapper with hand-written serialisers for the model classes.
+ * <p>
+ * Jackson introspects each bean through reflection and builds a generator and
+ * intermediate buffers for every response. The models served by the list
+ * endpoints are flat, so this mapper writes them directly into a
+ * {@link StringBuilder} that is reused by each thread. The output is byte for
+ * byte what Jackson produces for the same objects.
+ * <p>
+ * A payload wrapped in {@link Fields.Projected} is written with only the
+ * fields asked for, in the same order as a full row, and an {@link Expanded}
+ * row is followed by the rows included in it.
+ * <p>
+ * Anything that is not a model, or a list of models, is handed to Jackson.
+ */
+public class ModelJsonMapper implements JsonMapper {
+
+    /**
+     * Buffers larger than this are not kept for reuse, so that one huge response
+     * does not pin its buffer to the thread forever.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    /**
+     * The upper-case hex digits Jackson uses in unicode escapes.
+     */
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * The buffer each thread writes into.
+     */
+    private static final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(8192));
+
+    /**
+     * The mapper used for everything that is not a model.
+     */
+    private final JavalinJackson fallback;
+
+    /**
+     * Constructs a ModelJsonMapper that falls back to Javalin's default Jackson mapper.
+     */
+    public ModelJsonMapper() {
+        this(new JavalinJackson());
+    }
+
+    /**
+     * Constructs a ModelJsonMapper with the given fallback mapper.
+     *
+     * @param fallback the mapper for objects that are not models
+     */
+    public ModelJsonMapper(JavalinJackson fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public String toJsonString(Object obj, Type type) {
+        if (!isModel(obj)) {
+            return this.fallback.toJsonString(obj, type);
+        }
+        StringBuilder out = buffers.get();
+        out.setLength(0);
+        try {
+            if (obj instanceof Fields.Projected projected) {
+                writeValue(out, projected.payload(), projected.fields());
+            } else {
+                writeValue(out, obj, null);
+            }
+            return out.toString();
+        } finally {
+            if (out.capacity() > MAX_RETAINED_CAPACITY) {
+                buffers.remove();
+            }
+        }
+    }
+
+    @Override
+    public InputStream toJsonStream(Object obj, Type type) {
+        return this.fallback.toJsonStream(obj, type);
+    }
+
+    @Override
+    public void writeToOutputStream(Stream<?> stream, OutputStream outputStream) {
+        this.fallback.writeToOutputStream(stream, outputStream);
+    }
+
+    @Override
+    public <T> T fromJsonString(String json, Type targetType) {
+        return this.fallback.fromJsonString(json, targetType);
+    }
+
+    @Override
+    public <T> T fromJsonStream(InputStream json, Type targetType) {
+        return this.fallback.fromJsonStream(json, targetType);
+    }
+
+    /**
+     * Returns whether the object is a model, or a list holding only models, and
+     * can therefore be written without Jackson.
+     */
+    private static boolean isModel(Object obj) {
+        if (obj instanceof Fields.Projected projected) {
+            return isModel(projected.payload());
+        }
+        if (isSingleModel(obj)) {
+            return true;
+        }
+        if (obj instanceof List<?> list) {
+            for (Object item : list) {
+                if (!isSingleModel(item)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the object is one model.
+     */
+    private static boolean isSingleModel(Object obj) {
+        return obj instanceof Movie || obj instanceof MovieRating || obj instanceof Person || obj instanceof Star
+                || obj instanceof Expanded;
+    }
+
+    /**
+     * Writes a model, or a list of models, with the given fields or all of them.
+     */
+    private static void writeValue(StringBuilder out, Object obj, Fields fields) {
+        if (obj == null) {
+            out.append("null");
+        } else if (obj instanceof Expanded expanded) {
+            writeExpanded(out, expanded);
+        } else if (obj instanceof List<?> list) {
+            out.append('[');
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                writeValue(out, list.get(i), fields);
+            }
+            out.append(']');
+        } else if (fields != null && !fields.isAll()) {
+            writeProjected(out, obj, fields);
+        } else if (obj instanceof MovieRating rating) {
+            writeMovieRating(out, rating);
+        } else if (obj instanceof Movie movie) {
+            writeMovie(out, movie);
+        } else if (obj instanceof Star star) {
+            writeStar(out, star);
+        } else {
+            writePerson(out, (Person) obj);
+        }
+    }
+
+    /**
+     * Writes a model followed by the rows included in it, by reopening the
+     * object the model was written as.
+     */
+    private static void writeExpanded(StringBuilder out, Expanded expanded) {
+        writeValue(out, expanded.model(), expanded.fields());
+        out.setLength(out.length() - 1);
+        boolean empty = out.charAt(out.length() - 1) == '{';
+        for (Map.Entry<String, Object> include : expanded.included().entrySet()) {
+            if (!empty) {
+                out.append(',');
+            }
+            empty = false;
+            writeString(out, include.getKey());
+            out.append(':');
+            writeValue(out, include.getValue(), null);
+        }
+        out.append('}');
+    }
+
+    /**
+     * Writes only some fields of a model.
+     */
+    private static void writeProjected(StringBuilder out, Object obj, Fields fields) {
+        if (obj instanceof MovieRating rating) {
+            writeMovieRating(out, rating, fields);
+        } else if (obj instanceof Movie movie) {
+            writeMovie(out, movie, fields);
+        } else if (obj instanceof Star star) {
+            writeStar(out, star, fields);
+        } else {
+            writePerson(out, (Person) obj, fields);
+        }
+    }
+
+    /**
+     * Writes a movie with only the given fields.
+     *
+     * @param out    the buffer to write to
+     * @param movie  the movie
+     * @param fields the fields of {@link Movie} to write
+     */
+    public static void writeMovie(StringBuilder out, Movie movie, Fields fields) {
+        char next = '{';
+        if (fields.has(0)) {
+            out.append(next).append("\"id\":").append(movie.getId());
+            next = ',';
+        }
+        if (fields.has(1)) {
+            out.append(next).append("\"title\":");
+            writeString(out, movie.getTitle());
+            next = ',';
+        }
+        if (fields.has(2)) {
+            out.append(next).append("\"year\":").append(movie.getYear());
+            next = ',';
+        }
+        close(out, next);
+    }
+
+    /**
+     * Writes a movie rating with only the given fields.
+     *
+     * @param out    the buffer to write to
+     * @param rating the movie rating
+     * @param fields the fields of {@link MovieRating} to write
+     */
+    public static void writeMovieRating(StringBuilder out, MovieRating rating, Fields fields) {
+        char next = '{';
+        if (fields.has(0)) {
+            out.append(next).append("\"id\":").append(rating.getId());
+            next = ',';
+        }
+        if (fields.has(1)) {
+            out.append(next).append("\"title\":");
+            writeString(out, rating.getTitle());
+            next = ',';
+        }
+        if (fields.has(2)) {
+            out.append(next).append("\"year\":").append(rating.getYear());
+            next = ',';
+        }
+        if (fields.has(3)) {
+            out.append(next).append("\"rating\":");
+            writeDouble(out, rating.getRating());
+            next = ',';
+        }
+        if (fields.has(4)) {
+            out.append(next).append("\"votes\":").append(rating.getVotes());
+            next = ',';
+        }
+        close(out, next);
+    }
+
+    /**
+     * Writes a person with only the given fields.
+     *
+     * @param out    the buffer to write to
+     * @param person the person
+     * @param fields the fields of {@link Person} to write
+     */
+    public static void writePerson(StringBuilder out, Person person, Fields fields) {
+        char next = '{';
+        if (fields.has(0)) {
+            out.append(next).append("\"id\":").append(person.getId());
+            next = ',';
+        }
+        if (fields.has(1)) {
+            out.append(next).append("\"name\":");
+            writeString(out, person.getName());
+            next = ',';
+        }
+        if (fields.has(2)) {
+            out.append(next).append("\"birth\":").append(person.getBirth());
+            next = ',';
+        }
+        close(out, next);
+    }
+
+    /**
+     * Writes a star with only the given fields.
+     *
+     * @param out    the buffer to write to
+     * @param star   the star
+     * @param fields the fields of {@link Star} to write
+     */
+    public static void writeStar(StringBuilder out, Star star, Fields fields) {
+        char next = '{';
+        if (fields.has(0)) {
+            out.append(next).append("\"movieId\":").append(star.getMovieId());
+            next = ',';
+        }
+        if (fields.has(1)) {
+            out.append(next).append("\"personId\":").append(star.getPersonId());
+            next = ',';
+        }
+        close(out, next);
+    }
+
+    /**
+     * Ends an object, opening it first if no field was written.
+     */
+    private static void close(StringBuilder out, char next) {
+        if (next == '{') {
+            out.append('{');
+        }
+        out.append('}');
+    }
+
+    /**
+     * Writes a movie as {@code {"id":..,"title":..,"year":..}}.
+     *
+     * @param out   the buffer to write to
+     * @param movie the movie
+     */
+    public static void writeMovie(StringBuilder out, Movie movie) {
+        out.append("{\"id\":").append(movie.getId());
+        out.append(",\"title\":");
+        writeString(out, movie.getTitle());
+        out.append(",\"year\":").append(movie.getYear());
+        out.append('}');
+    }
+
+    /**
+     * Writes a movie rating as {@code {"id":..,"title":..,"year":..,"rating":..,"votes":..}}.
+     *
+     * @param out    the buffer to write to
+     * @param rating the movie rating
+     */
+    public static void writeMovieRating(StringBuilder out, MovieRating rating) {
+        out.append("{\"id\":").append(rating.getId());
+        out.append(",\"title\":");
+        writeString(out, rating.getTitle());
+        out.append(",\"year\":").append(rating.getYear());
+        out.append(",\"rating\":");
+        writeDouble(out, rating.getRating());
+        out.append(",\"votes\":").append(rating.getVotes());
+        out.append('}');
+    }
+
+    /**
+     * Writes a person as {@code {"id":..,"name":..,"birth":..}}.
+     *
+     * @param out    the buffer to write to
+     * @param person the person
+     */
+    public static void writePerson(StringBuilder out, Person person) {
+        out.append("{\"id\":").append(person.getId());
+        out.append(",\"name\":");
+        writeString(out, person.getName());
+        out.append(",\"birth\":").append(person.getBirth());
+        out.append('}');
+    }
+
+    /**
+     * Writes a star as {@code {"movieId":..,"personId":..}}.
+     *
+     * @param out  the buffer to write to
+     * @param star the star
+     */
+    public static void writeStar(StringBuilder out, Star star) {
+        out.append("{\"movieId\":").append(star.getMovieId());
+        out.append(",\"personId\":").append(star.getPersonId());
+        out.append('}');
+    }
+
+    /**
+     * Writes a double the way Jackson does: in {@link Double#toString(double)}
+     * form, with NaN and the infinities quoted.
+     *
+     * @param out   the buffer to write to
+     * @param value the value
+     */
+    public static void writeDouble(StringBuilder out, double value) {
+        if (Double.isFinite(value)) {
+            out.append(value);
+        } else {
+            out.append('"').append(value).append('"');
+        }
+    }
+
+    /**
+     * Writes a quoted, escaped string the way Jackson does: quotes, backslashes
+     * and control characters are escaped and everything else is written as is.
+     *
+     * @param out   the buffer to write to
+     * @param value the string, or null
+     */
+    public static void writeString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\b' -> out.append("\\b");
+                case '\t' -> out.append("\\t");
+                case '\n' -> out.append("\\n");
+                case '\f' -> out.append("\\f");
+                case '\r' -> out.append("\\r");
+                default -> out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        out.append(value, start, length).append('"');
+    }
+}
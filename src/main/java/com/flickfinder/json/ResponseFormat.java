@@ -0,0 +1,203 @@
+package com.flickfinder.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.flickfinder.trace.Span;
+import com.flickfinder.trace.Trace;
+import io.javalin.http.Context;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The encodings a response body can be sent in, chosen from the request's
+ * {@code Accept} header.
+ * <p>
+ * JSON stays the default and responses in it are written through the app's
+ * JSON mapper. The binary encodings carry the same fields as the JSON, written
+ * by Jackson with one cached {@link ObjectWriter} per encoding and payload
+ * type, so internal callers can skip JSON parsing entirely. {@link #encode}
+ * and {@link #decode} work for every encoding, JSON included.
+ */
+public enum ResponseFormat {
+
+    JSON("application/json", new JsonFactory()),
+    CBOR("application/cbor", new CBORFactory()),
+    SMILE("application/x-jackson-smile", new SmileFactory()),
+    MSGPACK("application/msgpack", new MessagePackFactory());
+
+    /**
+     * The media type sent in the Content-Type header.
+     */
+    private final String contentType;
+
+    /**
+     * The mapper that encodes and decodes payloads.
+     */
+    private final ObjectMapper mapper;
+
+    /**
+     * The writers already built by this encoding, by payload type.
+     */
+    private final Map<JavaType, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    ResponseFormat(String contentType, JsonFactory factory) {
+        this.contentType = contentType;
+        this.mapper = new ObjectMapper(factory);
+    }
+
+    /**
+     * Returns the media type of the encoding.
+     *
+     * @return the media type
+     */
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    /**
+     * Encodes a payload.
+     *
+     * @param payload the payload to encode
+     * @return the encoded bytes
+     * @throws JsonProcessingException if the payload cannot be encoded
+     */
+    public byte[] encode(Object payload) throws JsonProcessingException {
+        return writerFor(payload).writeValueAsBytes(payload);
+    }
+
+    /**
+     * Decodes a payload previously produced by {@link #encode(Object)}.
+     *
+     * @param bytes the encoded bytes
+     * @param type  the type to decode into
+     * @param <T>   the type to decode into
+     * @return the decoded payload
+     * @throws IOException if the bytes cannot be decoded
+     */
+    public <T> T decode(byte[] bytes, Class<T> type) throws IOException {
+        return this.mapper.readValue(bytes, type);
+    }
+
+    /**
+     * Returns the cached writer for the payload's type. Lists are keyed by the
+     * type of their first element so that the element serialiser is resolved once.
+     */
+    private ObjectWriter writerFor(Object payload) {
+        JavaType type;
+        if (payload instanceof List<?> list && !list.isEmpty()) {
+            type = this.mapper.getTypeFactory().constructCollectionType(List.class, list.get(0).getClass());
+        } else {
+            type = this.mapper.constructType(payload.getClass());
+        }
+        return this.writers.computeIfAbsent(type, this.mapper::writerFor);
+    }
+
+    /**
+     * Picks the encoding for a request from its Accept header.
+     * <p>
+     * The supported media type with the highest quality wins, and the earliest
+     * one wins a tie. A missing header, a wildcard or only unsupported types
+     * fall back to JSON.
+     *
+     * @param accept the Accept header, or null
+     * @return the encoding to respond with
+     */
+    public static ResponseFormat negotiate(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return JSON;
+        }
+        ResponseFormat best = null;
+        double bestQuality = 0;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            ResponseFormat format = forMediaType(parts[0].trim().toLowerCase(Locale.ROOT));
+            double quality = quality(parts);
+            if (format != null && quality > bestQuality) {
+                best = format;
+                bestQuality = quality;
+            }
+        }
+        return best == null ? JSON : best;
+    }
+
+    /**
+     * Returns the encoding for a media type, or null if it is not supported.
+     */
+    private static ResponseFormat forMediaType(String mediaType) {
+        return switch (mediaType) {
+            case "application/json", "*/*", "application/*" -> JSON;
+            case "application/cbor" -> CBOR;
+            case "application/x-jackson-smile", "application/smile" -> SMILE;
+            case "application/msgpack", "application/x-msgpack", "application/vnd.msgpack" -> MSGPACK;
+            default -> null;
+        };
+    }
+
+    /**
+     * Returns the quality of a media range, 1 if it has none.
+     */
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Sends a payload in the encoding the client asked for.
+     *
+     * @param ctx     the Javalin context
+     * @param payload the payload to send
+     */
+    public static void send(Context ctx, Object payload) {
+        send(ctx, payload, null);
+    }
+
+    /**
+     * Sends a payload of models in the encoding the client asked for, with only
+     * the given fields of each.
+     *
+     * @param ctx     the Javalin context
+     * @param payload the model, or list of models, to send
+     * @param fields  the fields to send, or null for all of them
+     */
+    public static void send(Context ctx, Object payload, Fields fields) {
+        ResponseFormat format = negotiate(ctx.header("Accept"));
+        ctx.header("Vary", "Accept");
+        boolean projected = fields != null && !fields.isAll();
+        try (Span span = Trace.span("serialize")) {
+            span.attribute("format", format.name().toLowerCase());
+            if (format == JSON) {
+                ctx.json(projected ? new Fields.Projected(payload, fields) : payload);
+                return;
+            }
+            ctx.contentType(format.getContentType());
+            if (projected) {
+                JsonNode tree = format.mapper.valueToTree(payload);
+                fields.retain(tree);
+                payload = tree;
+            }
+            ctx.result(format.encode(payload));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode response as " + format, e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.flickfinder.model;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out one shared instance of each movie and person.
+ * <p>
+ * Models are immutable, so an instance read once can be shared by every
+ * cache, list and request that needs the same entity; a person credited on a
+ * hundred movies is then held in memory once rather than a hundred times. The
+ * DAOs ask the pool for each row they read. The pool holds its instances
+ * weakly, so an entity nothing else refers to any more is dropped from it, and
+ * a row whose values have changed since, such as after a reload, replaces the
+ * shared instance for the rows read from then on.
+ */
+public final class ModelPool {
+
+    private static final Pool<Movie> movies = new Pool<>();
+    private static final Pool<Person> people = new Pool<>();
+
+    private ModelPool() {
+    }
+
+    /**
+     * Returns the shared instance of a movie.
+     *
+     * @param id    the unique identifier of the movie
+     * @param title the title of the movie
+     * @param year  the release year of the movie
+     * @return the movie
+     */
+    public static Movie movie(int id, String title, int year) {
+        Movie shared = movies.get(id);
+        if (shared != null && shared.getYear() == year && Objects.equals(shared.getTitle(), title)) {
+            return shared;
+        }
+        return movies.put(id, new Movie(id, title, year));
+    }
+
+    /**
+     * Returns the shared instance of a person.
+     *
+     * @param id    the unique id of the person
+     * @param name  the name of the person
+     * @param birth the birth year of the person
+     * @return the person
+     */
+    public static Person person(int id, String name, int birth) {
+        Person shared = people.get(id);
+        if (shared != null && shared.getBirth() == birth && Objects.equals(shared.getName(), name)) {
+            return shared;
+        }
+        return people.put(id, new Person(id, name, birth));
+    }
+
+    /**
+     * Returns how many movies and people the pool currently holds, including
+     * ones that are no longer used but not yet collected.
+     *
+     * @return the number of pooled instances
+     */
+    public static int size() {
+        return movies.size() + people.size();
+    }
+
+    /**
+     * Weak references to instances, by id.
+     */
+    private static final class Pool<T> {
+
+        private final Map<Integer, Entry<T>> entries = new ConcurrentHashMap<>();
+        private final ReferenceQueue<T> collected = new ReferenceQueue<>();
+
+        T get(int id) {
+            Entry<T> entry = this.entries.get(id);
+            return entry == null ? null : entry.get();
+        }
+
+        T put(int id, T value) {
+            expunge();
+            this.entries.put(id, new Entry<>(id, value, this.collected));
+            return value;
+        }
+
+        int size() {
+            expunge();
+            return this.entries.size();
+        }
+
+        /**
+         * Removes the entries whose instances have been collected.
+         */
+        private void expunge() {
+            for (Reference<? extends T> ref = this.collected.poll(); ref != null; ref = this.collected.poll()) {
+                Entry<?> entry = (Entry<?>) ref;
+                this.entries.remove(entry.id, entry);
+            }
+        }
+    }
+
+    /**
+     * A weak reference that remembers the id it is filed under.
+     */
+    private static final class Entry<T> extends WeakReference<T> {
+
+        private final int id;
+
+        Entry(int id, T value, ReferenceQueue<T> queue) {
+            super(value, queue);
+            this.id = id;
+        }
+    }
+}
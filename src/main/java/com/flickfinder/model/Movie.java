@@ -1,13 +1,18 @@
 package com.flickfinder.model;
 
+import java.util.Objects;
+
 /**
  * Represents a movie with its unique identifier, title, and release year.
+ * <p>
+ * Movies are immutable, so one instance can be shared by every cache and
+ * request; {@link ModelPool} hands out the shared instance of each movie.
  */
-public class Movie {
+public final class Movie {
 
-    private int id;
-    private String title;
-    private int year;
+    private final int id;
+    private final String title;
+    private final int year;
 
     /**
      * Constructs a Movie object with the specified id, title, and year.
@@ -31,15 +36,6 @@ public class Movie {
         return this.id;
     }
 
-    /**
-     * Sets the unique identifier of the movie.
-     *
-     * @param id the id to set
-     */
-    public void setId(int id) {
-        this.id = id;
-    }
-
     /**
      * Returns the title of the movie.
      *
@@ -50,30 +46,36 @@ public class Movie {
     }
 
     /**
-     * Sets the title of the movie.
+     * Returns the release year of the movie.
      *
-     * @param title the title to set
+     * @return the release year of the movie
      */
-    public void setTitle(String title) {
-        this.title = title;
+    public int getYear() {
+        return this.year;
     }
 
     /**
-     * Returns the release year of the movie.
+     * Returns whether another object is a movie with the same values.
      *
-     * @return the release year of the movie
+     * @param obj the object to compare with
+     * @return true if the values are equal
      */
-    public int getYear() {
-        return this.year;
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Movie other
+                && this.id == other.id
+                && Objects.equals(this.title, other.title)
+                && this.year == other.year;
     }
 
     /**
-     * Sets the release year of the movie.
+     * Returns a hash code of the values.
      *
-     * @param year the release year to set
+     * @return the hash code
      */
-    public void setYear(int year) {
-        this.year = year;
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.id, this.title, this.year);
     }
 
     /**
@@ -1,14 +1,39 @@
 package com.flickfinder.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.Objects;
+
 /**
  * Represents a movie with its unique identifier, title, release year, rating and votes.
+ * <p>
+ * A rating holds the movie it rates rather than extending it, so the movie can
+ * be the shared instance from {@link ModelPool}. It is still written as one
+ * flat object, with the movie's fields first.
  */
-public class MovieRating extends Movie {
-    private double rating;
-    private int votes;
+@JsonPropertyOrder({"id", "title", "year", "rating", "votes"})
+public final class MovieRating {
+    private final Movie movie;
+    private final double rating;
+    private final int votes;
+
+    /**
+     * Constructs a MovieRating object for the specified movie.
+     *
+     * @param movie  the movie
+     * @param rating the rating of the movie
+     * @param votes  the votes of the movie
+     */
+    public MovieRating(Movie movie, double rating, int votes) {
+        this.movie = movie;
+        this.rating = rating;
+        this.votes = votes;
+    }
 
     /**
-     * Constructs a Movie object with the specified id, title, and year.
+     * Constructs a MovieRating object with the specified id, title, and year,
+     * sharing the movie through the pool.
      *
      * @param id     the unique identifier of the movie
      * @param title  the title of the movie
@@ -17,27 +42,53 @@ public class MovieRating extends Movie {
      * @param votes  the votes of the movie
      */
     public MovieRating(int id, String title, int year, double rating, int votes) {
-        super(id, title, year);
-        this.rating = rating;
-        this.votes = votes;
+        this(ModelPool.movie(id, title, year), rating, votes);
     }
 
     /**
-     * Returns the rating of the movie.
+     * Returns the movie that is rated.
      *
-     * @return the rating of the movie
+     * @return the movie
      */
-    public double getRating() {
-        return this.rating;
+    @JsonIgnore
+    public Movie getMovie() {
+        return this.movie;
     }
 
     /**
-     * Sets the rating of the movie.
+     * Returns the unique identifier of the movie.
      *
-     * @param rating the rating to set
+     * @return the id of the movie
      */
-    public void setRating(double rating) {
-        this.rating = rating;
+    public int getId() {
+        return this.movie.getId();
+    }
+
+    /**
+     * Returns the title of the movie.
+     *
+     * @return the title of the movie
+     */
+    public String getTitle() {
+        return this.movie.getTitle();
+    }
+
+    /**
+     * Returns the release year of the movie.
+     *
+     * @return the release year of the movie
+     */
+    public int getYear() {
+        return this.movie.getYear();
+    }
+
+    /**
+     * Returns the rating of the movie.
+     *
+     * @return the rating of the movie
+     */
+    public double getRating() {
+        return this.rating;
     }
 
     /**
@@ -50,12 +101,27 @@ public class MovieRating extends Movie {
     }
 
     /**
-     * Sets the number of votes for the movie.
+     * Returns whether another object is a rating of an equal movie with the same values.
      *
-     * @param votes the number of votes to set
+     * @param obj the object to compare with
+     * @return true if the values are equal
      */
-    public void setVotes(int votes) {
-        this.votes = votes;
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof MovieRating other
+                && this.movie.equals(other.movie)
+                && Double.compare(this.rating, other.rating) == 0
+                && this.votes == other.votes;
+    }
+
+    /**
+     * Returns a hash code of the values.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.movie, this.rating, this.votes);
     }
 
     /**
@@ -67,6 +133,6 @@ public class MovieRating extends Movie {
     @Override
     public String toString() {
         return String.format("MovieRating [id=%d, title=%s, year=%d, rating=%.2f, votes=%d]",
-                super.getId(), super.getTitle(), super.getYear(), this.rating, this.votes);
+                getId(), getTitle(), getYear(), this.rating, this.votes);
     }
 }
@@ -1,13 +1,18 @@
 package com.flickfinder.model;
 
+import java.util.Objects;
+
 /**
  * Represents a person with its unique id, name, and birth year.
+ * <p>
+ * People are immutable, so one instance can be shared by every cache and
+ * request; {@link ModelPool} hands out the shared instance of each person.
  */
-public class Person {
+public final class Person {
 
-    private int id;
-    private String name;
-    private int birth;
+    private final int id;
+    private final String name;
+    private final int birth;
 
     /**
      * Constructs a Person object with the specified id, name, and birth.
@@ -31,15 +36,6 @@ public class Person {
         return this.id;
     }
 
-    /**
-     * Sets the unique id of the person.
-     *
-     * @param id the id to set
-     */
-    public void setId(int id) {
-        this.id = id;
-    }
-
     /**
      * Returns the name of the person.
      *
@@ -50,30 +46,36 @@ public class Person {
     }
 
     /**
-     * Sets the name of the person.
+     * Returns the birth year of the person.
      *
-     * @param name the name to set
+     * @return the birth year of the person
      */
-    public void setName(String name) {
-        this.name = name;
+    public int getBirth() {
+        return this.birth;
     }
 
     /**
-     * Returns the birth year of the person.
+     * Returns whether another object is a person with the same values.
      *
-     * @return the birth year of the person
+     * @param obj the object to compare with
+     * @return true if the values are equal
      */
-    public int getBirth() {
-        return this.birth;
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Person other
+                && this.id == other.id
+                && Objects.equals(this.name, other.name)
+                && this.birth == other.birth;
     }
 
     /**
-     * Sets the birth year of the person.
+     * Returns a hash code of the values.
      *
-     * @param birth the birth year to set
+     * @return the hash code
      */
-    public void setBirth(int birth) {
-        this.birth = birth;
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.id, this.name, this.birth);
     }
 
     /**
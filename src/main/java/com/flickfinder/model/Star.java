@@ -0,0 +1,75 @@
+package com.flickfinder.model;
+
+import java.util.Objects;
+
+/**
+ * Represents a person starring in a movie, as a pair of their unique identifiers.
+ */
+public final class Star {
+
+    private final int movieId;
+    private final int personId;
+
+    /**
+     * Constructs a Star object with the specified movie id and person id.
+     *
+     * @param movieId  the unique identifier of the movie
+     * @param personId the unique identifier of the person starring in the movie
+     */
+    public Star(int movieId, int personId) {
+        this.movieId = movieId;
+        this.personId = personId;
+    }
+
+    /**
+     * Returns the unique identifier of the movie.
+     *
+     * @return the id of the movie
+     */
+    public int getMovieId() {
+        return this.movieId;
+    }
+
+    /**
+     * Returns the unique identifier of the person.
+     *
+     * @return the id of the person
+     */
+    public int getPersonId() {
+        return this.personId;
+    }
+
+    /**
+     * Returns whether another object is a star with the same values.
+     *
+     * @param obj the object to compare with
+     * @return true if the values are equal
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Star other
+                && this.movieId == other.movieId
+                && this.personId == other.personId;
+    }
+
+    /**
+     * Returns a hash code of the values.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.movieId, this.personId);
+    }
+
+    /**
+     * Returns a string representation of the Star object.
+     * This is primarily used for debugging purposes.
+     *
+     * @return a string representation of the Star object
+     */
+    @Override
+    public String toString() {
+        return String.format("Star[movieId=%d, personId=%d]", this.movieId, this.personId);
+    }
+}
@@ -0,0 +1,132 @@
+package com.flickfinder.peer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.flickfinder.json.ResponseFormat;
+import com.flickfinder.model.ModelPool;
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.Person;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Encodes cached values for the trip between peers.
+ * <p>
+ * Values travel as Smile, the same binary encoding the API offers, and are
+ * rebuilt from the decoded fields since the models have no default
+ * constructors.
+ *
+ * @param <V> the type of value
+ */
+public interface Codec<V> {
+
+    Codec<Movie> MOVIE = of(node -> ModelPool.movie(node.get("id").asInt(), node.get("title").textValue(),
+            node.get("year").asInt()));
+    Codec<Person> PERSON = of(node -> ModelPool.person(node.get("id").asInt(), node.get("name").textValue(),
+            node.get("birth").asInt()));
+    Codec<List<Movie>> MOVIES = listOf(MOVIE);
+    Codec<List<Person>> PEOPLE = listOf(PERSON);
+
+    /**
+     * Encodes a value.
+     *
+     * @param value the value
+     * @return the encoded bytes
+     * @throws IOException if the value cannot be encoded
+     */
+    byte[] encode(V value) throws IOException;
+
+    /**
+     * Decodes a value produced by {@link #encode(Object)}.
+     *
+     * @param bytes the encoded bytes
+     * @return the value
+     * @throws IOException if the bytes cannot be decoded
+     */
+    V decode(byte[] bytes) throws IOException;
+
+    /**
+     * Decodes a value from its encoded fields.
+     *
+     * @param value the decoded fields
+     * @return the value
+     */
+    V fromNode(JsonNode value);
+
+    /**
+     * Returns whether the values are lists. A list is never missing, only
+     * empty, so an owner that answers it has no list for a key could not
+     * look the key up.
+     *
+     * @return true if the values are lists
+     */
+    default boolean isList() {
+        return false;
+    }
+
+    /**
+     * Creates a codec for a model that is rebuilt from its fields.
+     *
+     * @param build builds the model from its fields
+     * @param <V>   the type of model
+     * @return the codec
+     */
+    static <V> Codec<V> of(Function<JsonNode, V> build) {
+        return new Codec<>() {
+            @Override
+            public byte[] encode(V value) throws IOException {
+                return ResponseFormat.SMILE.encode(value);
+            }
+
+            @Override
+            public V decode(byte[] bytes) throws IOException {
+                return fromNode(ResponseFormat.SMILE.decode(bytes, JsonNode.class));
+            }
+
+            @Override
+            public V fromNode(JsonNode value) {
+                return build.apply(value);
+            }
+        };
+    }
+
+    /**
+     * Creates a codec for a list of values.
+     *
+     * @param element the codec of the elements
+     * @param <V>     the type of element
+     * @return the codec
+     */
+    static <V> Codec<List<V>> listOf(Codec<V> element) {
+        Codec<List<V>> list = of(node -> {
+            List<V> values = new ArrayList<>(node.size());
+            for (JsonNode value : node) {
+                values.add(element.fromNode(value));
+            }
+            return values;
+        });
+        return new Codec<>() {
+            @Override
+            public byte[] encode(List<V> value) throws IOException {
+                return list.encode(value);
+            }
+
+            @Override
+            public List<V> decode(byte[] bytes) throws IOException {
+                return list.decode(bytes);
+            }
+
+            @Override
+            public List<V> fromNode(JsonNode value) {
+                return list.fromNode(value);
+            }
+
+            @Override
+            public boolean isList() {
+                return true;
+            }
+        };
+    }
+}
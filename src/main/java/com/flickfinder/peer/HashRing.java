@@ -0,0 +1,70 @@
+package com.flickfinder.peer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A consistent hash ring that assigns keys to nodes.
+ * <p>
+ * Each node is placed on the ring at a number of points, and a key belongs to
+ * the node at the first point at or after the key's hash. Adding or removing a
+ * node only moves the keys next to its points, so the other nodes keep the
+ * keys, and the cached values, they already own.
+ *
+ * @param <T> the type of node
+ */
+public class HashRing<T> {
+
+    /**
+     * The nodes by their points on the ring.
+     */
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+
+    /**
+     * Constructs a HashRing.
+     *
+     * @param nodes    the nodes, identified by their string form
+     * @param replicas how many points each node is placed at; more points spread the keys more evenly
+     */
+    public HashRing(Collection<T> nodes, int replicas) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        for (T node : nodes) {
+            for (int i = 0; i < replicas; i++) {
+                this.ring.put(hash(i + "#" + node), node);
+            }
+        }
+    }
+
+    /**
+     * Returns the node a key belongs to.
+     *
+     * @param key the key
+     * @return the owning node
+     */
+    public T owner(String key) {
+        Map.Entry<Long, T> entry = this.ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : this.ring.firstEntry().getValue();
+    }
+
+    /**
+     * Hashes a string with 64-bit FNV-1a followed by a finalising mix, so that
+     * keys differing in one character land far apart on the ring.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
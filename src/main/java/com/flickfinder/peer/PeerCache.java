@@ -0,0 +1,334 @@
+package com.flickfinder.peer;
+
+import com.flickfinder.jfr.CacheEvent;
+import com.flickfinder.json.ResponseFormat;
+import com.flickfinder.trace.Span;
+import com.flickfinder.trace.Trace;
+import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Metrics;
+import com.flickfinder.util.SingleFlight;
+import io.javalin.http.Context;
+import io.javalin.util.JavalinLogger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache shared between replicas, in the manner of groupcache.
+ * <p>
+ * Each key is owned by one replica, chosen by the {@link PeerGroup}. A replica
+ * caches the keys it owns, loading them from its own database on a miss. On a
+ * miss for a key owned by another replica it asks that replica first, so each
+ * key is read from a database once across the whole group rather than once per
+ * replica. Keys fetched from a peer often enough are also kept in a small
+ * local hot cache, so a key every replica wants does not send all of them to
+ * its owner. If the owner cannot be reached the value is read locally instead.
+ * <p>
+ * A cache belongs to one generation of the data and is discarded with it.
+ * During a reload the replicas may briefly serve each other values of
+ * different generations.
+ */
+public class PeerCache {
+
+    /**
+     * Loads the value of a key from the local database.
+     *
+     * @param <V> the type of value
+     */
+    @FunctionalInterface
+    public interface Getter<V> {
+        /**
+         * Loads the value of a key.
+         *
+         * @param key the key
+         * @return the value, or null if the key has none
+         * @throws SQLException if a database error occurs
+         */
+        V get(String key) throws SQLException;
+    }
+
+    private final PeerGroup peers;
+
+    /**
+     * The groups of keys, by name.
+     */
+    private final Map<String, Group<?>> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a PeerCache.
+     *
+     * @param peers the replicas sharing the cache
+     */
+    public PeerCache(PeerGroup peers) {
+        this.peers = peers;
+    }
+
+    /**
+     * Creates a group of keys whose values are loaded and encoded the same way.
+     *
+     * @param name   the name of the group, the same on every replica
+     * @param codec  encodes the values between peers
+     * @param getter loads a value from the local database
+     * @param <V>    the type of value
+     * @return the group
+     */
+    public <V> Group<V> group(String name, Codec<V> codec, Getter<V> getter) {
+        Group<V> group = new Group<>(name, codec, getter);
+        this.groups.put(name, group);
+        return group;
+    }
+
+    /**
+     * Returns the group with a name.
+     *
+     * @param name the name of the group
+     * @return the group, or null if there is none
+     */
+    public Group<?> getGroup(String name) {
+        return this.groups.get(name);
+    }
+
+    /**
+     * Answers a peer asking for the value of a key this replica owns.
+     *
+     * @param ctx the Javalin context
+     */
+    public void handle(Context ctx) {
+        Group<?> group = this.groups.get(ctx.pathParam("group"));
+        if (group == null) {
+            ctx.status(404);
+            ctx.result("No such cache group");
+            return;
+        }
+        try {
+            byte[] value = group.serve(ctx.pathParam("key"));
+            if (value == null) {
+                ctx.status(404);
+                ctx.result("Not found");
+                return;
+            }
+            ctx.contentType(ResponseFormat.SMILE.getContentType());
+            ctx.result(value);
+        } catch (NumberFormatException e) {
+            ctx.status(404);
+            ctx.result("Not found");
+        } catch (SQLException | IOException e) {
+            ctx.status(500);
+            ctx.result("Database error");
+            JavalinLogger.error("Database error", e);
+        }
+    }
+
+    /**
+     * A map with a bounded number of entries that drops the least recently used.
+     */
+    private static <K, V> Map<K, V> lru(int capacity) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * A group of keys whose values are loaded and encoded the same way, such as
+     * movies by id.
+     *
+     * @param <V> the type of value
+     */
+    public class Group<V> {
+
+        private final String name;
+        private final Codec<V> codec;
+        private final Getter<V> getter;
+
+        /**
+         * The values of the keys this replica owns; guarded by itself.
+         */
+        private final Map<String, V> owned = lru(Defaults.PEER_CACHE_ENTRIES);
+
+        /**
+         * The values of hot keys owned by other replicas; guarded by itself.
+         */
+        private final Map<String, V> hot = lru(Defaults.PEER_HOT_ENTRIES);
+
+        /**
+         * How often each key owned by another replica has been fetched; guarded by itself.
+         */
+        private final Map<String, Integer> fetches = lru(Defaults.PEER_CACHE_ENTRIES);
+
+        /**
+         * Coalesces concurrent misses for the same key.
+         */
+        private final SingleFlight flights;
+
+        private Group(String name, Codec<V> codec, Getter<V> getter) {
+            this.name = name;
+            this.codec = codec;
+            this.getter = getter;
+            this.flights = new SingleFlight("peer." + name);
+        }
+
+        /**
+         * Returns the value of a key, from the local cache, the owning peer or
+         * the local database, in that order.
+         *
+         * @param key the key
+         * @return the value, or null if the key has none
+         * @throws SQLException if the value has to be read locally and a database error occurs
+         */
+        public V get(String key) throws SQLException {
+            CacheEvent event = new CacheEvent();
+            event.begin();
+            V value = cached(key);
+            if (value != null) {
+                Metrics.counter("peer.hits").increment();
+                return record(event, "hit", key, value);
+            }
+            URI owner = PeerCache.this.peers.owner(this.name, key);
+            if (PeerCache.this.peers.isSelf(owner)) {
+                return record(event, "load", key, load(key));
+            }
+            return record(event, "fetch", key, this.flights.execute(key, () -> fetch(owner, key, event)));
+        }
+
+        /**
+         * Records a lookup as a flight recorder event, if it is enabled and
+         * slower than the threshold.
+         */
+        private V record(CacheEvent event, String outcome, String key, V value) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.cache = "peer." + this.name;
+                event.key = key;
+                if (event.outcome == null) {
+                    event.outcome = outcome;
+                }
+                event.found = value != null;
+                event.commit();
+            }
+            return value;
+        }
+
+        /**
+         * Returns the encoded value of a key for a peer, loading it if needed.
+         * Keys asked for by a peer are cached as owned even if this replica's
+         * view of the ring differs, since the peer will keep asking for them.
+         */
+        byte[] serve(String key) throws SQLException, IOException {
+            V value = cached(key);
+            if (value == null) {
+                value = load(key);
+            }
+            return value == null ? null : this.codec.encode(value);
+        }
+
+        /**
+         * Loads a value from the local database and caches it as owned.
+         */
+        private V load(String key) throws SQLException {
+            return this.flights.execute(key, () -> {
+                Metrics.counter("peer.loads").increment();
+                V value = this.getter.get(key);
+                if (value != null) {
+                    synchronized (this.owned) {
+                        this.owned.put(key, value);
+                    }
+                }
+                return value;
+            });
+        }
+
+        /**
+         * Fetches a value from its owner, keeping it locally once it is hot. Falls
+         * back to the local database if the owner cannot be reached, or has no
+         * list for a key, which is marked on the lookup's event.
+         */
+        private V fetch(URI owner, String key, CacheEvent event) throws SQLException {
+            byte[] bytes;
+            try (Span span = Trace.span("peer fetch")) {
+                span.attribute("peer", owner.toString());
+                bytes = PeerCache.this.peers.fetch(owner, this.name, key);
+                Metrics.counter("peer.fetches").increment();
+            } catch (IOException e) {
+                Metrics.counter("peer.failures").increment();
+                JavalinLogger.warn("Could not fetch " + this.name + "/" + key + " from " + owner + ": " + e);
+                event.outcome = "fallback";
+                return this.getter.get(key);
+            }
+            if (bytes == null) {
+                if (!this.codec.isList()) {
+                    return null;
+                }
+                Metrics.counter("peer.failures").increment();
+                JavalinLogger.warn("Owner " + owner + " has no " + this.name + "/" + key);
+                event.outcome = "fallback";
+                return this.getter.get(key);
+            }
+
+            V value;
+            try {
+                value = this.codec.decode(bytes);
+            } catch (IOException e) {
+                Metrics.counter("peer.failures").increment();
+                JavalinLogger.error("Could not decode " + this.name + "/" + key + " from " + owner, e);
+                event.outcome = "fallback";
+                return this.getter.get(key);
+            }
+            int fetched;
+            synchronized (this.fetches) {
+                fetched = this.fetches.merge(key, 1, Integer::sum);
+            }
+            if (fetched >= Defaults.PEER_HOT_THRESHOLD) {
+                synchronized (this.hot) {
+                    this.hot.put(key, value);
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Returns the cached value of a key, owned or hot.
+         */
+        private V cached(String key) {
+            synchronized (this.owned) {
+                V value = this.owned.get(key);
+                if (value != null) {
+                    return value;
+                }
+            }
+            synchronized (this.hot) {
+                return this.hot.get(key);
+            }
+        }
+
+        /**
+         * Returns whether a key is cached as owned by this replica.
+         *
+         * @param key the key
+         * @return true if the key's value is in the owned cache
+         */
+        public boolean isOwnedCached(String key) {
+            synchronized (this.owned) {
+                return this.owned.containsKey(key);
+            }
+        }
+
+        /**
+         * Returns whether a key owned by another replica is cached as hot.
+         *
+         * @param key the key
+         * @return true if the key's value is in the hot cache
+         */
+        public boolean isHotCached(String key) {
+            synchronized (this.hot) {
+                return this.hot.containsKey(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.flickfinder.peer;
+
+import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Deadline;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The replicas sharing a cache, and which of them owns each key.
+ * <p>
+ * Every replica is started with the same list of peers, so they all agree on
+ * the owner of each key without talking to each other. The group outlives
+ * reloads: each generation builds its own {@link PeerCache} on the same group.
+ */
+public class PeerGroup {
+
+    /**
+     * The path peers fetch values from, followed by the group and the key.
+     */
+    public static final String PATH = "/peer/";
+
+    /**
+     * The address this replica is reached at by its peers.
+     */
+    private final URI self;
+
+    private final HashRing<URI> ring;
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(Defaults.PEER_TIMEOUT_MILLIS))
+            .build();
+
+    /**
+     * Constructs a PeerGroup.
+     *
+     * @param self  the address this replica is reached at
+     * @param peers the addresses of all the replicas; this replica is added if missing
+     */
+    public PeerGroup(URI self, List<URI> peers) {
+        List<URI> members = new ArrayList<>(peers);
+        if (!members.contains(self)) {
+            members.add(self);
+        }
+        this.self = self;
+        this.ring = new HashRing<>(members, Defaults.PEER_RING_REPLICAS);
+    }
+
+    /**
+     * Returns the replica that owns a key.
+     *
+     * @param group the cache group the key is in
+     * @param key   the key
+     * @return the address of the owning replica
+     */
+    public URI owner(String group, String key) {
+        return this.ring.owner(group + "/" + key);
+    }
+
+    /**
+     * Returns whether an address is this replica.
+     *
+     * @param peer the address
+     * @return true if it is this replica
+     */
+    public boolean isSelf(URI peer) {
+        return this.self.equals(peer);
+    }
+
+    /**
+     * Fetches the encoded value of a key from the replica that owns it. The
+     * fetch gives up at the deadline of the request on the current thread, if
+     * that comes first.
+     *
+     * @param peer  the owning replica
+     * @param group the cache group the key is in
+     * @param key   the key
+     * @return the encoded value, or null if the key has no value
+     * @throws IOException if the peer cannot be reached or fails
+     */
+    byte[] fetch(URI peer, String group, String key) throws IOException {
+        long timeout = Math.min(Defaults.PEER_TIMEOUT_MILLIS, TimeUnit.NANOSECONDS.toMillis(Deadline.remainingNanos()));
+        if (timeout <= 0) {
+            throw new HttpTimeoutException("No time left to ask " + peer);
+        }
+        HttpRequest request = HttpRequest.newBuilder(peer.resolve(PATH + group + "/" + key))
+                .timeout(Duration.ofMillis(timeout))
+                .build();
+        HttpResponse<byte[]> response;
+        try {
+            response = this.client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while asking " + peer, e);
+        }
+        if (response.statusCode() == 404) {
+            return null;
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Peer " + peer + " answered " + response.statusCode());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,41 @@
+package com.flickfinder.shard;
+
+/**
+ * The range of ids owned by one shard, from first to last inclusive.
+ * <p>
+ * The same range applies to movie ids and person ids. A shard holds the movies
+ * in its range together with their ratings, stars and directors, and the
+ * people in its range together with every person its movies credit.
+ *
+ * @param first the lowest id owned
+ * @param last  the highest id owned
+ */
+public record Partition(int first, int last) {
+
+    /**
+     * The partition of a server that holds all the data.
+     */
+    public static final Partition ALL = new Partition(Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+    /**
+     * Constructs a Partition.
+     *
+     * @param first the lowest id owned
+     * @param last  the highest id owned
+     */
+    public Partition {
+        if (first > last) {
+            throw new IllegalArgumentException("Empty partition " + first + ".." + last);
+        }
+    }
+
+    /**
+     * Returns whether an id falls in the partition.
+     *
+     * @param id the movie or person id
+     * @return true if the partition owns the id
+     */
+    public boolean owns(int id) {
+        return id >= this.first && id <= this.last;
+    }
+}
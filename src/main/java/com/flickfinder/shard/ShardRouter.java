@@ -0,0 +1,350 @@
+package com.flickfinder.shard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.flickfinder.controller.IntParam;
+import com.flickfinder.controller.Params;
+import com.flickfinder.include.Include;
+import com.flickfinder.json.Fields;
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.MovieRating;
+import com.flickfinder.model.Person;
+import com.flickfinder.util.Defaults;
+import com.flickfinder.util.KWayMerge;
+import com.flickfinder.util.Metrics;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.util.JavalinLogger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.flickfinder.util.Utils.coalesce;
+
+/**
+ * The front of a sharded deployment.
+ * <p>
+ * The router holds no data. Requests for one movie or person are forwarded to
+ * the shard that owns the id, and their responses are relayed unchanged.
+ * Requests whose results can come from any shard, such as the lists, the
+ * ratings and the movies a person starred in, are sent to every shard at once
+ * and the results are merged in the order a single server would return them.
+ * <p>
+ * A merged result needs every shard. If any shard cannot be reached, the router
+ * answers 502 rather than a partial result; if any shard rejects the request,
+ * its response is relayed. Merged results are always sent as JSON.
+ */
+public class ShardRouter {
+
+    /**
+     * A shard: the address of a FlickFinder server and the ids it owns.
+     *
+     * @param base      the address of the server
+     * @param partition the ids it owns
+     */
+    public record Shard(URI base, Partition partition) {
+    }
+
+    /**
+     * Orders movies and people as the list endpoints return them.
+     */
+    private static final Comparator<JsonNode> BY_ID = Comparator.comparingInt(node -> node.get("id").asInt());
+
+    /**
+     * Orders movie ratings as the ratings endpoints return them.
+     */
+    private static final Comparator<JsonNode> BY_RATING = Comparator.comparingDouble(
+            (JsonNode node) -> node.get("rating").asDouble()).reversed();
+
+    /**
+     * The id a request is forwarded by.
+     */
+    private static final IntParam ID = IntParam.path("id");
+
+    /**
+     * The limit of a merged list; the shards have already rejected a bad one.
+     */
+    private static final IntParam LIMIT = IntParam.query("limit", Defaults.LIMIT);
+
+    /**
+     * The shards, in id order.
+     */
+    private final List<Shard> shards;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(Defaults.SHARD_TIMEOUT_MILLIS))
+            .build();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Constructs a ShardRouter over shards whose partitions between them cover
+     * every id exactly once.
+     *
+     * @param shards the shards
+     */
+    public ShardRouter(List<Shard> shards) {
+        List<Shard> sorted = new ArrayList<>(shards);
+        sorted.sort(Comparator.comparingInt(shard -> shard.partition().first()));
+        if (sorted.isEmpty() || sorted.get(0).partition().first() != Integer.MIN_VALUE
+                || sorted.get(sorted.size() - 1).partition().last() != Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The shards do not cover every id");
+        }
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i).partition().first() != sorted.get(i - 1).partition().last() + 1) {
+                throw new IllegalArgumentException("Shards " + sorted.get(i - 1).base() + " and "
+                        + sorted.get(i).base() + " leave a gap or overlap");
+            }
+        }
+        this.shards = List.copyOf(sorted);
+    }
+
+    /**
+     * Builds a router by asking each server which ids it owns.
+     *
+     * @param bases the addresses of the shard servers
+     * @return the router
+     * @throws IOException          if a shard cannot be reached
+     * @throws InterruptedException if interrupted while waiting for a shard
+     */
+    public static ShardRouter discover(List<URI> bases) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        ObjectMapper mapper = new ObjectMapper();
+        List<Shard> shards = new ArrayList<>(bases.size());
+        for (URI base : bases) {
+            HttpRequest request = HttpRequest.newBuilder(base.resolve("/shard"))
+                    .timeout(Duration.ofMillis(Defaults.SHARD_TIMEOUT_MILLIS))
+                    .build();
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                throw new IOException("Shard " + base + " answered " + response.statusCode());
+            }
+            shards.add(new Shard(base, mapper.readValue(response.body(), Partition.class)));
+        }
+        return new ShardRouter(shards);
+    }
+
+    /**
+     * Returns the shard that owns an id.
+     *
+     * @param id the movie or person id
+     * @return the owning shard
+     */
+    public Shard owner(int id) {
+        for (Shard shard : this.shards) {
+            if (shard.partition().owns(id)) {
+                return shard;
+            }
+        }
+        throw new IllegalStateException("No shard owns " + id);
+    }
+
+    /**
+     * Starts the router on a port.
+     *
+     * @param port the port to listen on
+     * @return the running server
+     */
+    public Javalin start(int port) {
+        Javalin app = Javalin.create().start(port);
+
+        app.get("/movies/ratings", ctx -> scatter(ctx, MovieRating.class, BY_RATING, false, true));
+        app.get("/movies/ratings/{year}", ctx -> scatter(ctx, MovieRating.class, BY_RATING, false, true));
+        app.get("/movies", ctx -> scatter(ctx, Movie.class, BY_ID, true, true));
+        app.get("/movies/{id}", this::forward);
+        app.get("/movies/{id}/stars", this::forward);
+        app.get("/movies/{id}/similar", this::forward);
+
+        app.get("/people", ctx -> scatter(ctx, Person.class, BY_ID, true, true));
+        app.get("/people/{id}", this::forward);
+        app.get("/people/{id}/movies", ctx -> scatter(ctx, Movie.class, BY_ID, false, false));
+
+        app.get("/shards", ctx -> ctx.json(describe()));
+        app.get("/metrics", ctx -> ctx.json(Metrics.snapshot()));
+
+        JavalinLogger.info("Routing to " + this.shards.size() + " shards");
+        return app;
+    }
+
+    /**
+     * Forwards a request for one movie or person to the shard that owns it.
+     *
+     * @param ctx the Javalin context
+     */
+    void forward(Context ctx) {
+        Params params = new Params(ctx);
+        int id = params.get(ID);
+        if (params.rejected()) {
+            return;
+        }
+        Metrics.counter("router.forwarded").increment();
+        try {
+            HttpResponse<byte[]> response = send(owner(id), ctx.path(), ctx.queryString(), coalesce(ctx.header("Accept"), "application/json")).join();
+            relay(ctx, response);
+        } catch (CompletionException e) {
+            unavailable(ctx, e);
+        }
+    }
+
+    /**
+     * Sends a request to every shard and merges the results. Each shard returns
+     * its results sorted by order, so they are merged rather than sorted. The
+     * merge needs the fields the results are ordered by, so the shards are asked
+     * for every field and the results are narrowed to the requested fields here.
+     * Related rows the request includes are expanded by each shard and kept.
+     *
+     * @param ctx         the Javalin context
+     * @param model       the model the results are made of
+     * @param order       the order of the results
+     * @param distinctIds whether to drop results with an id already seen, as people may be held by several shards
+     * @param limited     whether the results are cut to the request's limit
+     */
+    void scatter(Context ctx, Class<?> model, Comparator<JsonNode> order, boolean distinctIds, boolean limited) {
+        Params params = new Params(ctx);
+        Fields fields = params.fields(model);
+        Include include = params.include(model);
+        if (params.rejected()) {
+            return;
+        }
+        Metrics.counter("router.scattered").increment();
+        String query = withoutFields(ctx.queryString());
+        List<CompletableFuture<HttpResponse<byte[]>>> pending = new ArrayList<>(this.shards.size());
+        for (Shard shard : this.shards) {
+            pending.add(send(shard, ctx.path(), query, "application/json"));
+        }
+
+        List<HttpResponse<byte[]>> responses = new ArrayList<>(pending.size());
+        try {
+            for (CompletableFuture<HttpResponse<byte[]>> future : pending) {
+                responses.add(future.join());
+            }
+        } catch (CompletionException e) {
+            unavailable(ctx, e);
+            return;
+        }
+
+        List<KWayMerge.Run<JsonNode>> runs = new ArrayList<>(responses.size());
+        int total = 0;
+        HttpResponse<byte[]> notFound = null;
+        for (HttpResponse<byte[]> response : responses) {
+            if (response.statusCode() == 404) {
+                notFound = response;
+                continue;
+            }
+            if (response.statusCode() != 200) {
+                relay(ctx, response);
+                return;
+            }
+            try {
+                JsonNode results = this.mapper.readTree(response.body());
+                total += results.size();
+                runs.add(KWayMerge.Run.of(results.iterator()));
+            } catch (IOException e) {
+                unavailable(ctx, e);
+                return;
+            }
+        }
+        if (runs.isEmpty()) {
+            relay(ctx, notFound);
+            return;
+        }
+
+        ArrayNode merged = this.mapper.createArrayNode();
+        int limit = limited ? new Params(ctx).get(LIMIT) : total;
+        Set<Integer> seen = new HashSet<>();
+        try {
+            for (JsonNode result : KWayMerge.merge(runs, order, total)) {
+                if (merged.size() == limit) {
+                    break;
+                }
+                if (!distinctIds || seen.add(result.get("id").asInt())) {
+                    merged.add(result);
+                }
+            }
+        } catch (SQLException e) {
+            // the runs are in memory and cannot fail
+            throw new IllegalStateException(e);
+        }
+        fields.retain(merged, include.names());
+        ctx.json(merged);
+    }
+
+    /**
+     * Sends a copy of a request to a shard.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> send(Shard shard, String path, String query, String accept) {
+        HttpRequest request = HttpRequest.newBuilder(shard.base().resolve(path + (query == null ? "" : "?" + query)))
+                .timeout(Duration.ofMillis(Defaults.SHARD_TIMEOUT_MILLIS))
+                .header("Accept", accept)
+                .build();
+        return this.client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Removes the fields parameter from a query string.
+     */
+    static String withoutFields(String query) {
+        if (query == null) {
+            return null;
+        }
+        StringJoiner kept = new StringJoiner("&");
+        for (String parameter : query.split("&")) {
+            if (!parameter.equals("fields") && !parameter.startsWith("fields=")) {
+                kept.add(parameter);
+            }
+        }
+        return kept.length() == 0 ? null : kept.toString();
+    }
+
+    /**
+     * Relays a shard's response to the client unchanged.
+     */
+    private static void relay(Context ctx, HttpResponse<byte[]> response) {
+        ctx.status(response.statusCode());
+        response.headers().firstValue("Content-Type").ifPresent(ctx::contentType);
+        response.headers().firstValue("Retry-After").ifPresent(value -> ctx.header("Retry-After", value));
+        ctx.result(response.body());
+    }
+
+    /**
+     * Answers a request that needed a shard that could not be reached.
+     */
+    private static void unavailable(Context ctx, Exception e) {
+        Metrics.counter("router.shardFailures").increment();
+        ctx.status(502);
+        ctx.result("Shard unavailable");
+        JavalinLogger.error("Shard unavailable", e);
+    }
+
+    /**
+     * Describes the shards and the ids each owns.
+     *
+     * @return the address and partition of each shard
+     */
+    public List<Map<String, Object>> describe() {
+        List<Map<String, Object>> described = new ArrayList<>(this.shards.size());
+        for (Shard shard : this.shards) {
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("base", shard.base().toString());
+            description.put("first", shard.partition().first());
+            description.put("last", shard.partition().last());
+            described.add(description);
+        }
+        return described;
+    }
+}
@@ -0,0 +1,195 @@
+package com.flickfinder.shard;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits the movies database into one database per shard.
+ * <p>
+ * This runs offline, like the snapshot compiler:
+ * <pre>
+ * java -cp target/classes:... com.flickfinder.shard.ShardSplitter src/main/resources/movies.db shards 4
+ * </pre>
+ * The id ranges are chosen so that every shard holds about the same number of
+ * movies. Each shard database has the same schema as the original, plus a
+ * {@code shard_partition} table recording the range it owns, which the server
+ * reports on {@code /shard} so the router can find it. Each file is written
+ * under a temporary name and moved into place once complete.
+ */
+public class ShardSplitter {
+
+    /**
+     * The tables copied into every shard.
+     */
+    private static final String[] TABLES = {"movies", "people", "ratings", "stars", "directors"};
+
+    /**
+     * The name of a table or index in a CREATE statement, so that the statement
+     * can be pointed at the attached shard database.
+     */
+    private static final Pattern CREATE = Pattern.compile(
+            "^(CREATE\\s+(?:UNIQUE\\s+)?(?:TABLE|INDEX)\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?)",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Splits a database file into shards.
+     *
+     * @param args the path to the database file, the directory to write the shards to and the number of shards
+     * @throws Exception if the database cannot be read or a shard cannot be written
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("Usage: ShardSplitter <movies.db> <directory> <shards>");
+            System.exit(2);
+        }
+        long started = System.nanoTime();
+        List<Path> files;
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + args[0])) {
+            files = split(connection, Path.of(args[1]), Integer.parseInt(args[2]));
+        }
+        for (Path file : files) {
+            System.out.printf("Wrote %s (%d bytes)%n", file, Files.size(file));
+        }
+        System.out.printf("Split %s into %d shards in %d ms%n", args[0], files.size(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Splits the database behind a connection into shard files named
+     * {@code shard-0.db}, {@code shard-1.db} and so on.
+     *
+     * @param connection the connection to the database
+     * @param directory  the directory to write the shards to
+     * @param count      the number of shards
+     * @return the shard files, in id order
+     * @throws SQLException if the database cannot be read or a shard cannot be written
+     * @throws IOException  if a shard cannot be moved into place
+     */
+    public static List<Path> split(Connection connection, Path directory, int count) throws SQLException, IOException {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        Files.createDirectories(directory);
+        List<Partition> partitions = partition(connection, count);
+        List<String> schema = schema(connection);
+
+        List<Path> files = new ArrayList<>(partitions.size());
+        for (int i = 0; i < partitions.size(); i++) {
+            Path target = directory.resolve("shard-" + i + ".db");
+            Path temp = directory.resolve("shard-" + i + ".db.tmp");
+            Files.deleteIfExists(temp);
+            write(connection, schema, partitions.get(i), temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            files.add(target);
+        }
+        return files;
+    }
+
+    /**
+     * Chooses the id ranges so that each holds about the same number of movies.
+     * The first range starts at the lowest int and the last ends at the highest,
+     * so every id has an owner. Fewer ranges are returned if there are fewer
+     * movies than shards.
+     */
+    static List<Partition> partition(Connection connection, int count) throws SQLException {
+        int movies;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM movies")) {
+            movies = rs.getInt(1);
+        }
+
+        List<Integer> boundaries = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT id FROM movies ORDER BY id LIMIT 1 OFFSET ?")) {
+            for (int i = 1; i < count; i++) {
+                ps.setLong(1, (long) movies * i / count);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next() && (boundaries.isEmpty() || rs.getInt(1) > boundaries.get(boundaries.size() - 1))) {
+                        boundaries.add(rs.getInt(1));
+                    }
+                }
+            }
+        }
+
+        List<Partition> partitions = new ArrayList<>(boundaries.size() + 1);
+        int first = Integer.MIN_VALUE;
+        for (int boundary : boundaries) {
+            partitions.add(new Partition(first, boundary - 1));
+            first = boundary;
+        }
+        partitions.add(new Partition(first, Integer.MAX_VALUE));
+        return partitions;
+    }
+
+    /**
+     * Reads the statements that create the copied tables and their indexes.
+     */
+    private static List<String> schema(Connection connection) throws SQLException {
+        List<String> schema = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT sql FROM sqlite_master" +
+                " WHERE tbl_name = ? AND sql IS NOT NULL ORDER BY type DESC")) {
+            for (String table : TABLES) {
+                ps.setString(1, table);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        schema.add(rs.getString("sql"));
+                    }
+                }
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Writes one shard by attaching a new database and copying its rows into it.
+     */
+    private static void write(Connection connection, List<String> schema, Partition partition, Path file)
+            throws SQLException {
+        try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS shard")) {
+            attach.setString(1, file.toString());
+            attach.execute();
+        }
+        boolean autoCommit = connection.getAutoCommit();
+        try (Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            for (String create : schema) {
+                Matcher matcher = CREATE.matcher(create);
+                if (!matcher.find()) {
+                    throw new SQLException("Cannot copy schema statement: " + create);
+                }
+                statement.execute(matcher.replaceFirst("$1shard."));
+            }
+            statement.execute("CREATE TABLE shard.shard_partition (first_id INTEGER NOT NULL, last_id INTEGER NOT NULL)");
+            statement.execute("INSERT INTO shard.shard_partition VALUES (" + partition.first() + ", " + partition.last() + ")");
+
+            String range = " BETWEEN " + partition.first() + " AND " + partition.last();
+            statement.execute("INSERT INTO shard.movies SELECT * FROM main.movies WHERE id" + range);
+            statement.execute("INSERT INTO shard.ratings SELECT * FROM main.ratings WHERE movie_id" + range);
+            statement.execute("INSERT INTO shard.stars SELECT * FROM main.stars WHERE movie_id" + range);
+            statement.execute("INSERT INTO shard.directors SELECT * FROM main.directors WHERE movie_id" + range);
+            // a shard also holds everyone its movies credit, so that cast lookups stay local
+            statement.execute("INSERT INTO shard.people SELECT * FROM main.people WHERE id" + range +
+                    " OR id IN (SELECT person_id FROM shard.stars UNION SELECT person_id FROM shard.directors)");
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DETACH DATABASE shard");
+            }
+        }
+    }
+}
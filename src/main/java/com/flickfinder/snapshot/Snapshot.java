@@ -0,0 +1,499 @@
+package com.flickfinder.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only, memory-mapped snapshot of the movies database.
+ * <p>
+ * A snapshot is produced offline by {@link SnapshotCompiler}. Opening one maps
+ * its sections with {@link FileChannel#map} and reads nothing else, so startup
+ * takes the same few milliseconds whatever the size of the data, nothing is
+ * copied onto the heap, and every process on the host shares the same pages
+ * of the OS page cache.
+ * <p>
+ * The file is a header followed by sections:
+ * <ul>
+ * <li>{@code MOVIES} and {@code PEOPLE}: fixed-width records sorted by id,
+ * each {@code (id, year or birth, string reference)}.</li>
+ * <li>{@code RATINGS}: fixed-width {@code (movie, year, rating, votes)}
+ * records sorted by year and then by rating, best first.</li>
+ * <li>{@code STARS_*} and {@code DIRECTORS_*}: compressed sparse row
+ * adjacency lists from movies to people and from people to movies, holding
+ * record positions rather than ids.</li>
+ * <li>{@code STRINGS}: a heap of length-prefixed UTF-8 strings.</li>
+ * </ul>
+ * All values are big-endian. Reads use absolute positions only, so a snapshot
+ * can be shared freely between threads.
+ */
+public class Snapshot implements Closeable {
+
+    /**
+     * The bytes every snapshot starts with.
+     */
+    static final byte[] MAGIC = "FLIKSNAP".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The version of the file format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The size of a movie or person record: id, year and string reference.
+     */
+    static final int ENTITY_RECORD = 12;
+
+    /**
+     * The size of a rating record: movie position, year, rating and votes.
+     */
+    static final int RATING_RECORD = 20;
+
+    /**
+     * The sections of a snapshot, in file order.
+     */
+    public enum Section {
+        MOVIES, PEOPLE, RATINGS, STARS_BY_MOVIE, STARS_BY_PERSON, DIRECTORS_BY_MOVIE, DIRECTORS_BY_PERSON, STRINGS
+    }
+
+    /**
+     * An adjacency list in compressed sparse row form: the neighbours of row i
+     * are the values from {@code start(i)} (inclusive) to {@code end(i)}.
+     */
+    public static class Adjacency {
+
+        private final IntBuffer offsets;
+        private final IntBuffer values;
+
+        private Adjacency(ByteBuffer section) {
+            int rows = section.getInt(0);
+            int count = section.getInt(4);
+            this.offsets = section.slice(8, (rows + 1) * 4).asIntBuffer();
+            this.values = section.slice(8 + (rows + 1) * 4, count * 4).asIntBuffer();
+        }
+
+        /**
+         * Returns the position of the first neighbour of a row.
+         *
+         * @param row the row
+         * @return the position of its first neighbour
+         */
+        public int start(int row) {
+            return this.offsets.get(row);
+        }
+
+        /**
+         * Returns the position after the last neighbour of a row.
+         *
+         * @param row the row
+         * @return the position after its last neighbour
+         */
+        public int end(int row) {
+            return this.offsets.get(row + 1);
+        }
+
+        /**
+         * Returns the neighbour at a position.
+         *
+         * @param position the position, between start and end of a row
+         * @return the record position of the neighbour
+         */
+        public int value(int position) {
+            return this.values.get(position);
+        }
+    }
+
+    /**
+     * The file the snapshot was mapped from.
+     */
+    private final Path path;
+
+    /**
+     * The channel the sections are mapped from; kept open for the life of the snapshot.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Every mapped section, for pre-touching.
+     */
+    private final List<ByteBuffer> sections;
+
+    private final ByteBuffer movies;
+    private final ByteBuffer people;
+    private final ByteBuffer ratings;
+    private final ByteBuffer strings;
+    private final Adjacency starsByMovie;
+    private final Adjacency starsByPerson;
+    private final Adjacency directorsByMovie;
+    private final Adjacency directorsByPerson;
+    private final int movieCount;
+    private final int personCount;
+    private final int ratingCount;
+
+    private Snapshot(Path path, FileChannel channel, Map<Section, ByteBuffer> sections) {
+        this.path = path;
+        this.channel = channel;
+        this.sections = List.copyOf(sections.values());
+        this.movies = sections.get(Section.MOVIES);
+        this.people = sections.get(Section.PEOPLE);
+        this.ratings = sections.get(Section.RATINGS);
+        this.strings = sections.get(Section.STRINGS);
+        this.starsByMovie = new Adjacency(sections.get(Section.STARS_BY_MOVIE));
+        this.starsByPerson = new Adjacency(sections.get(Section.STARS_BY_PERSON));
+        this.directorsByMovie = new Adjacency(sections.get(Section.DIRECTORS_BY_MOVIE));
+        this.directorsByPerson = new Adjacency(sections.get(Section.DIRECTORS_BY_PERSON));
+        this.movieCount = this.movies.capacity() / ENTITY_RECORD;
+        this.personCount = this.people.capacity() / ENTITY_RECORD;
+        this.ratingCount = this.ratings.capacity() / RATING_RECORD;
+    }
+
+    /**
+     * Maps a snapshot file.
+     *
+     * @param path the snapshot file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static Snapshot open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            int headerSize = MAGIC.length + 8 + Section.values().length * 20;
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Not a snapshot: " + path);
+                }
+            }
+            header.flip();
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a snapshot: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + path);
+            }
+            int sectionCount = header.getInt();
+            if (sectionCount != Section.values().length) {
+                throw new IOException("Corrupt snapshot header: " + path);
+            }
+
+            Map<Section, ByteBuffer> sections = new EnumMap<>(Section.class);
+            for (int i = 0; i < sectionCount; i++) {
+                int id = header.getInt();
+                long offset = header.getLong();
+                long length = header.getLong();
+                if (id < 0 || id >= sectionCount || offset + length > channel.size() || length > Integer.MAX_VALUE) {
+                    throw new IOException("Corrupt snapshot section table: " + path);
+                }
+                MappedByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                sections.put(Section.values()[id], section);
+            }
+            if (sections.size() != sectionCount) {
+                throw new IOException("Corrupt snapshot section table: " + path);
+            }
+            return new Snapshot(path, channel, sections);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Faults every page of the snapshot into memory, so that the first requests
+     * served from it do not wait on the disk.
+     */
+    public void touch() {
+        for (ByteBuffer section : this.sections) {
+            if (section instanceof MappedByteBuffer mapped) {
+                mapped.load();
+            }
+        }
+    }
+
+    /**
+     * Returns whether a file starts like a snapshot, without mapping it.
+     *
+     * @param path the file
+     * @return true if the file starts with the snapshot magic bytes
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isSnapshot(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    /**
+     * Returns the file the snapshot was mapped from.
+     *
+     * @return the snapshot file
+     */
+    public Path getPath() {
+        return this.path;
+    }
+
+    /**
+     * Returns the number of movies.
+     *
+     * @return the number of movies
+     */
+    public int movieCount() {
+        return this.movieCount;
+    }
+
+    /**
+     * Returns the position of the movie with the given id.
+     *
+     * @param id the id of the movie
+     * @return the position of its record, or -1 if there is no such movie
+     */
+    public int findMovie(int id) {
+        return find(this.movies, this.movieCount, id);
+    }
+
+    /**
+     * Returns the id of the movie at a position.
+     *
+     * @param position the position of the movie's record
+     * @return the id of the movie
+     */
+    public int movieId(int position) {
+        return this.movies.getInt(position * ENTITY_RECORD);
+    }
+
+    /**
+     * Returns the release year of the movie at a position.
+     *
+     * @param position the position of the movie's record
+     * @return the release year, or 0 if it is unknown
+     */
+    public int movieYear(int position) {
+        return this.movies.getInt(position * ENTITY_RECORD + 4);
+    }
+
+    /**
+     * Returns the title of the movie at a position.
+     *
+     * @param position the position of the movie's record
+     * @return the title of the movie
+     */
+    public String movieTitle(int position) {
+        return string(this.movies.getInt(position * ENTITY_RECORD + 8));
+    }
+
+    /**
+     * Returns the number of people.
+     *
+     * @return the number of people
+     */
+    public int personCount() {
+        return this.personCount;
+    }
+
+    /**
+     * Returns the position of the person with the given id.
+     *
+     * @param id the id of the person
+     * @return the position of their record, or -1 if there is no such person
+     */
+    public int findPerson(int id) {
+        return find(this.people, this.personCount, id);
+    }
+
+    /**
+     * Returns the id of the person at a position.
+     *
+     * @param position the position of the person's record
+     * @return the id of the person
+     */
+    public int personId(int position) {
+        return this.people.getInt(position * ENTITY_RECORD);
+    }
+
+    /**
+     * Returns the birth year of the person at a position.
+     *
+     * @param position the position of the person's record
+     * @return the birth year, or 0 if it is unknown
+     */
+    public int personBirth(int position) {
+        return this.people.getInt(position * ENTITY_RECORD + 4);
+    }
+
+    /**
+     * Returns the name of the person at a position.
+     *
+     * @param position the position of the person's record
+     * @return the name of the person
+     */
+    public String personName(int position) {
+        return string(this.people.getInt(position * ENTITY_RECORD + 8));
+    }
+
+    /**
+     * Returns the number of ratings.
+     *
+     * @return the number of ratings
+     */
+    public int ratingCount() {
+        return this.ratingCount;
+    }
+
+    /**
+     * Returns the position of the first rating for a movie released in or after
+     * the given year; ratings of the same year follow it, best first.
+     *
+     * @param year the year
+     * @return the position of the first rating of that year or later
+     */
+    public int firstRatingOfYear(int year) {
+        int low = 0;
+        int high = this.ratingCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ratingYear(mid) < year) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the position of the rated movie's record.
+     *
+     * @param position the position of the rating
+     * @return the position of the movie
+     */
+    public int ratingMovie(int position) {
+        return this.ratings.getInt(position * RATING_RECORD);
+    }
+
+    /**
+     * Returns the release year of the rated movie.
+     *
+     * @param position the position of the rating
+     * @return the release year of the movie
+     */
+    public int ratingYear(int position) {
+        return this.ratings.getInt(position * RATING_RECORD + 4);
+    }
+
+    /**
+     * Returns the rating.
+     *
+     * @param position the position of the rating
+     * @return the rating of the movie
+     */
+    public double ratingValue(int position) {
+        return this.ratings.getDouble(position * RATING_RECORD + 8);
+    }
+
+    /**
+     * Returns the number of votes behind the rating.
+     *
+     * @param position the position of the rating
+     * @return the number of votes
+     */
+    public int ratingVotes(int position) {
+        return this.ratings.getInt(position * RATING_RECORD + 16);
+    }
+
+    /**
+     * Returns the people starring in each movie, by movie position.
+     *
+     * @return the stars adjacency list
+     */
+    public Adjacency starsByMovie() {
+        return this.starsByMovie;
+    }
+
+    /**
+     * Returns the movies each person stars in, by person position. Each
+     * person's movies are in id order.
+     *
+     * @return the filmography adjacency list
+     */
+    public Adjacency starsByPerson() {
+        return this.starsByPerson;
+    }
+
+    /**
+     * Returns the directors of each movie, by movie position.
+     *
+     * @return the directors adjacency list
+     */
+    public Adjacency directorsByMovie() {
+        return this.directorsByMovie;
+    }
+
+    /**
+     * Returns the movies each person directed, by person position.
+     *
+     * @return the directed movies adjacency list
+     */
+    public Adjacency directorsByPerson() {
+        return this.directorsByPerson;
+    }
+
+    /**
+     * Reads a string from the heap.
+     */
+    private String string(int reference) {
+        if (reference < 0) {
+            return null;
+        }
+        int length = this.strings.getInt(reference);
+        byte[] bytes = new byte[length];
+        this.strings.get(reference + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Binary searches records sorted by the id in their first four bytes.
+     */
+    private static int find(ByteBuffer records, int count, int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = records.getInt(mid * ENTITY_RECORD);
+            if (value < id) {
+                low = mid + 1;
+            } else if (value > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Closes the file. The mappings stay valid until they are garbage collected.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
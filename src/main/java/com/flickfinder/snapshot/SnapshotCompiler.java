@@ -0,0 +1,255 @@
+package com.flickfinder.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Compiles the movies database into a {@link Snapshot} file.
+ * <p>
+ * This runs offline, for example after the nightly database refresh:
+ * <pre>
+ * java -cp target/classes:... com.flickfinder.snapshot.SnapshotCompiler src/main/resources/movies.db movies.snap
+ * </pre>
+ * The snapshot is written to a temporary file next to the target and moved
+ * into place once complete, so a running server never maps a half-written file.
+ */
+public class SnapshotCompiler {
+
+    /**
+     * Compiles a database file into a snapshot.
+     *
+     * @param args the path to the database file and the path of the snapshot to write
+     * @throws Exception if the database cannot be read or the snapshot cannot be written
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: SnapshotCompiler <movies.db> <snapshot file>");
+            System.exit(2);
+        }
+        long started = System.nanoTime();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + args[0])) {
+            compile(connection, Path.of(args[1]));
+        }
+        System.out.printf("Wrote %s (%d bytes) in %d ms%n", args[1], Files.size(Path.of(args[1])),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Compiles the database behind a connection into a snapshot file.
+     *
+     * @param connection the connection to the database
+     * @param target     the snapshot file to write
+     * @throws SQLException if the database cannot be read
+     * @throws IOException  if the snapshot cannot be written
+     */
+    public static void compile(Connection connection, Path target) throws SQLException, IOException {
+        StringHeap strings = new StringHeap();
+
+        int[] movieIds = ids(connection, "SELECT id FROM movies ORDER BY id");
+        byte[] movies = entities(connection, "SELECT id, year, title FROM movies ORDER BY id", movieIds.length, strings);
+
+        int[] personIds = ids(connection, "SELECT id FROM people ORDER BY id");
+        byte[] people = entities(connection, "SELECT id, birth, name FROM people ORDER BY id", personIds.length, strings);
+
+        byte[] ratings = ratings(connection, movieIds);
+
+        byte[] starsByMovie = adjacency(connection, "SELECT movie_id, person_id FROM stars ORDER BY movie_id, rowid",
+                movieIds, personIds);
+        byte[] starsByPerson = adjacency(connection, "SELECT person_id, movie_id FROM stars ORDER BY person_id, movie_id",
+                personIds, movieIds);
+        byte[] directorsByMovie = adjacency(connection,
+                "SELECT movie_id, person_id FROM directors ORDER BY movie_id, rowid", movieIds, personIds);
+        byte[] directorsByPerson = adjacency(connection,
+                "SELECT person_id, movie_id FROM directors ORDER BY person_id, rowid", personIds, movieIds);
+
+        byte[][] sections = {movies, people, ratings, starsByMovie, starsByPerson, directorsByMovie,
+                directorsByPerson, strings.toByteArray()};
+        write(sections, target);
+    }
+
+    /**
+     * Writes the header and the sections, each aligned to 8 bytes.
+     */
+    private static void write(byte[][] sections, Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream file = Files.newOutputStream(temporary);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                int headerSize = Snapshot.MAGIC.length + 8 + sections.length * 20;
+                out.write(Snapshot.MAGIC);
+                out.writeInt(Snapshot.VERSION);
+                out.writeInt(sections.length);
+
+                long offset = align(headerSize);
+                for (int i = 0; i < sections.length; i++) {
+                    out.writeInt(i);
+                    out.writeLong(offset);
+                    out.writeLong(sections[i].length);
+                    offset = align(offset + sections[i].length);
+                }
+
+                long written = headerSize;
+                for (byte[] section : sections) {
+                    for (; written < align(written); written++) {
+                        out.write(0);
+                    }
+                    out.write(section);
+                    written += section.length;
+                }
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * Reads a sorted column of ids.
+     */
+    private static int[] ids(Connection connection, String sql) throws SQLException {
+        int[] ids = new int[1024];
+        int count = 0;
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = rs.getInt(1);
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Writes (id, number, string reference) records for movies or people.
+     */
+    private static byte[] entities(Connection connection, String sql, int count, StringHeap strings)
+            throws SQLException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(count * Snapshot.ENTITY_RECORD);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                out.writeInt(rs.getInt(1));
+                out.writeInt(rs.getInt(2));
+                out.writeInt(strings.add(rs.getString(3)));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes (movie position, year, rating, votes) records, sorted by year and then
+     * by rating, best first. Ratings of movies that do not exist are dropped, as
+     * the join in the DAO would drop them.
+     */
+    private static byte[] ratings(Connection connection, int[] movieIds) throws SQLException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try (PreparedStatement ps = connection.prepareStatement("SELECT movies.id, movies.year, ratings.rating," +
+                " ratings.votes FROM movies, ratings WHERE movies.id = ratings.movie_id" +
+                " ORDER BY movies.year, ratings.rating DESC, movies.id")) {
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                out.writeInt(Arrays.binarySearch(movieIds, rs.getInt(1)));
+                out.writeInt(rs.getInt(2));
+                out.writeDouble(rs.getDouble(3));
+                out.writeInt(rs.getInt(4));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes an adjacency list from (row id, neighbour id) pairs sorted by row id.
+     * Ids are replaced by record positions; pairs naming a row or neighbour that
+     * does not exist are dropped, as the joins in the DAOs would drop them.
+     */
+    private static byte[] adjacency(Connection connection, String sql, int[] rowIds, int[] neighbourIds)
+            throws SQLException, IOException {
+        int[] offsets = new int[rowIds.length + 1];
+        int[] values = new int[1024];
+        int count = 0;
+        int row = 0;
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                int rowPosition = Arrays.binarySearch(rowIds, rs.getInt(1));
+                int neighbour = Arrays.binarySearch(neighbourIds, rs.getInt(2));
+                if (rowPosition < 0 || neighbour < 0) {
+                    continue;
+                }
+                while (row < rowPosition) {
+                    offsets[++row] = count;
+                }
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, count * 2);
+                }
+                values[count++] = neighbour;
+            }
+        }
+        while (row < rowIds.length) {
+            offsets[++row] = count;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + 4 * (offsets.length + count));
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(rowIds.length);
+        out.writeInt(count);
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        for (int i = 0; i < count; i++) {
+            out.writeInt(values[i]);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Collects length-prefixed UTF-8 strings into one heap.
+     */
+    private static class StringHeap {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        /**
+         * Adds a string to the heap.
+         *
+         * @return the offset of the string, or -1 for null
+         */
+        int add(String value) throws IOException {
+            if (value == null) {
+                return -1;
+            }
+            int reference = this.bytes.size();
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            this.out.writeInt(utf8.length);
+            this.out.write(utf8);
+            return reference;
+        }
+
+        byte[] toByteArray() {
+            return this.bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.flickfinder.trace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One timed phase of a traced request, such as a DAO query or writing the
+ * response.
+ * <p>
+ * A span is opened by {@link Trace#span(String)} as a child of the span open on
+ * the same thread, and becomes the open span itself until it is closed. Spans
+ * are closed in the reverse order they were opened, most easily with
+ * try-with-resources.
+ */
+public final class Span implements AutoCloseable {
+
+    /**
+     * The span handed out when the current thread has no trace, which records nothing.
+     */
+    static final Span NOOP = new Span(null, null, null, null, 0);
+
+    private final Trace trace;
+    private final String spanId;
+    private final String parentId;
+    private volatile String name;
+    private final long startNanos;
+    private volatile long endNanos;
+    private final Map<String, Object> attributes = new LinkedHashMap<>(4);
+
+    /**
+     * The span that was open on the thread before this one.
+     */
+    private Span previous;
+
+    Span(Trace trace, String spanId, String parentId, String name, long startNanos) {
+        this.trace = trace;
+        this.spanId = spanId;
+        this.parentId = parentId;
+        this.name = name;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Adds an attribute to the span.
+     *
+     * @param key   the name of the attribute
+     * @param value the value, a string, number or boolean
+     * @return this span
+     */
+    public Span attribute(String key, Object value) {
+        if (this.trace != null) {
+            synchronized (this.attributes) {
+                this.attributes.put(key, value);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Renames the span, such as a request's span once its route is known.
+     *
+     * @param name the new name
+     * @return this span
+     */
+    public Span rename(String name) {
+        if (this.trace != null) {
+            this.name = name;
+        }
+        return this;
+    }
+
+    /**
+     * Ends the span and makes the span it was opened under the open one again.
+     */
+    @Override
+    public void close() {
+        if (this.trace == null) {
+            return;
+        }
+        end(Trace.now());
+        Trace.restore(this.previous);
+    }
+
+    void end(long nanos) {
+        if (this.endNanos == 0) {
+            this.endNanos = nanos;
+        }
+    }
+
+    void opened(Span previous) {
+        this.previous = previous;
+    }
+
+    Trace getTrace() {
+        return this.trace;
+    }
+
+    /**
+     * Returns the id of the span, 16 hex digits.
+     *
+     * @return the span id
+     */
+    public String getSpanId() {
+        return this.spanId;
+    }
+
+    /**
+     * Returns the id of the span this one was opened under.
+     *
+     * @return the parent's span id, or null for the root span of a trace that started here
+     */
+    public String getParentId() {
+        return this.parentId;
+    }
+
+    /**
+     * Returns the name of the span.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns when the span started.
+     *
+     * @return nanoseconds since the epoch
+     */
+    public long getStartNanos() {
+        return this.startNanos;
+    }
+
+    /**
+     * Returns when the span ended.
+     *
+     * @return nanoseconds since the epoch, or 0 if it is still open
+     */
+    public long getEndNanos() {
+        return this.endNanos;
+    }
+
+    /**
+     * Returns how long the span took.
+     *
+     * @return the duration in nanoseconds, or 0 if it is still open
+     */
+    public long getDurationNanos() {
+        return this.endNanos == 0 ? 0 : this.endNanos - this.startNanos;
+    }
+
+    /**
+     * Returns a copy of the attributes of the span.
+     *
+     * @return the attributes, in the order they were added
+     */
+    public Map<String, Object> getAttributes() {
+        synchronized (this.attributes) {
+            return new LinkedHashMap<>(this.attributes);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.flickfinder.trace;
+
+import com.flickfinder.util.Defaults;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The spans of one request, under one trace id.
+ * <p>
+ * A trace is started when a request is matched to a route, with a root span
+ * covering the whole request, and the root is made the open span of the
+ * request's thread. Code further down opens child spans through
+ * {@link #span(String)} without being handed the trace: a thread with no open
+ * span gets a span that records nothing, so tracing costs next to nothing off
+ * the request path. A request that moves to another thread, such as onto a
+ * bulkhead, takes its open span along with {@link #detach()} and
+ * {@link #attach(Span)}, as it does its deadline.
+ * <p>
+ * Ids follow the W3C trace context: a trace id of 32 hex digits and span ids
+ * of 16, so that a trace can be continued from, and exported to, other tools.
+ */
+public final class Trace {
+
+    /**
+     * The open span of each thread.
+     */
+    private static final ThreadLocal<Span> open = new ThreadLocal<>();
+
+    /**
+     * The wall clock at a fixed point of the monotonic clock, so that spans get
+     * timestamps since the epoch with the monotonic clock's resolution.
+     */
+    private static final long EPOCH_NANOS = System.currentTimeMillis() * 1_000_000L;
+    private static final long NANO_BASE = System.nanoTime();
+
+    private final String traceId;
+    private final Span root;
+    private final boolean sampled;
+
+    /**
+     * Every span of the trace, the root first; guarded by itself.
+     */
+    private final List<Span> spans = new ArrayList<>();
+
+    /**
+     * The spans not recorded because the trace already had too many.
+     */
+    private int dropped;
+
+    private Trace(String traceId, String parentId, String name, boolean sampled) {
+        this.traceId = traceId;
+        this.sampled = sampled;
+        this.root = new Span(this, randomId(16), parentId, name, now());
+        this.spans.add(this.root);
+    }
+
+    /**
+     * Starts a trace and makes its root span the open span of the current thread.
+     * The trace continues the one in a W3C {@code traceparent} header if it is
+     * valid, and starts a new trace otherwise.
+     *
+     * @param name        the name of the root span
+     * @param traceparent the traceparent header of the request, or null
+     * @param sampled     whether the trace was chosen to be kept whatever its outcome
+     * @return the trace
+     */
+    public static Trace start(String name, String traceparent, boolean sampled) {
+        Trace trace;
+        if (isValidParent(traceparent)) {
+            // an upstream service that sampled the trace wants all of it
+            trace = new Trace(traceparent.substring(3, 35), traceparent.substring(36, 52), name,
+                    sampled || (Integer.parseInt(traceparent.substring(53), 16) & 1) == 1);
+        } else {
+            trace = new Trace(randomId(32), null, name, sampled);
+        }
+        open.set(trace.root);
+        return trace;
+    }
+
+    /**
+     * Opens a span under the open span of the current thread.
+     *
+     * @param name the name of the span
+     * @return the span, to be closed when the phase ends
+     */
+    public static Span span(String name) {
+        return span(name, 0);
+    }
+
+    /**
+     * Opens a span under the open span of the current thread that started
+     * earlier, such as a wait that is only known to have ended once it has.
+     *
+     * @param name       the name of the span
+     * @param startNanos when the span started, from {@link #now()}, or 0 for now
+     * @return the span, to be closed when the phase ends
+     */
+    public static Span span(String name, long startNanos) {
+        Span parent = open.get();
+        if (parent == null) {
+            return Span.NOOP;
+        }
+        Trace trace = parent.getTrace();
+        Span span = new Span(trace, randomId(16), parent.getSpanId(), name, startNanos == 0 ? now() : startNanos);
+        synchronized (trace.spans) {
+            if (trace.spans.size() >= Defaults.TRACE_MAX_SPANS) {
+                trace.dropped++;
+                return Span.NOOP;
+            }
+            trace.spans.add(span);
+        }
+        span.opened(parent);
+        open.set(span);
+        return span;
+    }
+
+    /**
+     * Takes the open span off the current thread, to be carried to another thread.
+     *
+     * @return the open span, or null if the thread has none
+     */
+    public static Span detach() {
+        Span span = open.get();
+        open.remove();
+        return span;
+    }
+
+    /**
+     * Makes a span carried from another thread the open span of the current thread.
+     *
+     * @param span the span, or null to leave the thread without one
+     */
+    public static void attach(Span span) {
+        if (span == null) {
+            open.remove();
+        } else {
+            open.set(span);
+        }
+    }
+
+    /**
+     * Returns the trace of the open span of the current thread.
+     *
+     * @return the trace, or null if the thread has none
+     */
+    public static Trace current() {
+        Span span = open.get();
+        return span == null ? null : span.getTrace();
+    }
+
+    /**
+     * Returns the current time for spans.
+     *
+     * @return nanoseconds since the epoch
+     */
+    public static long now() {
+        return EPOCH_NANOS + (System.nanoTime() - NANO_BASE);
+    }
+
+    static void restore(Span previous) {
+        attach(previous);
+    }
+
+    /**
+     * Ends the root span, and with it the trace, and takes the trace off the
+     * current thread if it is still open there.
+     */
+    public void finish() {
+        this.root.end(now());
+        Span span = open.get();
+        if (span != null && span.getTrace() == this) {
+            open.remove();
+        }
+    }
+
+    /**
+     * Returns the trace id, 32 hex digits.
+     *
+     * @return the trace id
+     */
+    public String getTraceId() {
+        return this.traceId;
+    }
+
+    /**
+     * Returns the span covering the whole request.
+     *
+     * @return the root span
+     */
+    public Span getRoot() {
+        return this.root;
+    }
+
+    /**
+     * Returns whether the trace was chosen to be kept whatever its outcome.
+     *
+     * @return true if the trace was sampled when it started
+     */
+    public boolean isSampled() {
+        return this.sampled;
+    }
+
+    /**
+     * Returns a copy of the spans of the trace.
+     *
+     * @return the spans, the root first and the others in the order they opened
+     */
+    public List<Span> getSpans() {
+        synchronized (this.spans) {
+            return new ArrayList<>(this.spans);
+        }
+    }
+
+    /**
+     * Returns how many spans were not recorded because the trace had too many.
+     *
+     * @return the number of dropped spans
+     */
+    public int getDropped() {
+        synchronized (this.spans) {
+            return this.dropped;
+        }
+    }
+
+    /**
+     * Returns the W3C traceparent header naming the root span of this trace.
+     *
+     * @return the header value
+     */
+    public String traceparent() {
+        return "00-" + this.traceId + "-" + this.root.getSpanId() + (this.sampled ? "-01" : "-00");
+    }
+
+    /**
+     * Returns whether a traceparent header is well formed and names a trace.
+     */
+    private static boolean isValidParent(String traceparent) {
+        if (traceparent == null || traceparent.length() != 55 || !traceparent.startsWith("00-")
+                || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-') {
+            return false;
+        }
+        String traceId = traceparent.substring(3, 35);
+        String spanId = traceparent.substring(36, 52);
+        return isHex(traceId) && isHex(spanId) && isHex(traceparent.substring(53))
+                && !traceId.matches("0+") && !spanId.matches("0+");
+    }
+
+    private static boolean isHex(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a random, non-zero id of the given number of hex digits.
+     */
+    private static String randomId(int digits) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder id = new StringBuilder(digits);
+        for (int i = 0; i < digits; i += 16) {
+            long bits = random.nextLong();
+            if (bits == 0) {
+                bits = 1;
+            }
+            String hex = Long.toHexString(bits);
+            id.append("0".repeat(16 - hex.length())).append(hex);
+        }
+        return id.substring(0, digits);
+    }
+}
@@ -0,0 +1,220 @@
+package com.flickfinder.trace;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flickfinder.util.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts a trace for each request and keeps the interesting ones.
+ * <p>
+ * Every request is traced, since whether a trace is worth keeping is only known
+ * once it ends. A finished trace is kept if it was sampled when it started, at
+ * the sample rate or by the service that called this one; if it took longer
+ * than the slow threshold; or if it failed with a server error. Kept traces go
+ * into a ring of fixed size, so the newest replace the oldest and memory use
+ * never grows. The ring can be exported as OTLP JSON, which an OpenTelemetry
+ * collector or a tracing UI can import.
+ */
+public class Tracer {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final double sampleRate;
+    private final long slowNanos;
+
+    /**
+     * The kept traces, oldest first once the ring has wrapped; guarded by itself.
+     */
+    private final Trace[] ring;
+
+    /**
+     * Where the next kept trace goes in the ring.
+     */
+    private int next;
+
+    /**
+     * Constructs a Tracer.
+     *
+     * @param sampleRate the share of traces kept whatever their outcome, between 0 and 1
+     * @param slowMillis how long a request must take for its trace to be kept
+     * @param capacity   how many traces the ring holds
+     */
+    public Tracer(double sampleRate, long slowMillis, int capacity) {
+        this.sampleRate = sampleRate;
+        this.slowNanos = slowMillis * 1_000_000;
+        this.ring = new Trace[capacity];
+    }
+
+    /**
+     * Starts a trace for a request on the current thread.
+     *
+     * @param name        the name of the root span
+     * @param traceparent the traceparent header of the request, or null
+     * @return the trace
+     */
+    public Trace start(String name, String traceparent) {
+        return Trace.start(name, traceparent, ThreadLocalRandom.current().nextDouble() < this.sampleRate);
+    }
+
+    /**
+     * Finishes a trace and keeps it if it was sampled, slow or failed.
+     *
+     * @param trace  the trace
+     * @param status the status code of the response
+     * @return true if the trace was kept
+     */
+    public boolean finish(Trace trace, int status) {
+        trace.getRoot().attribute("http.status_code", status);
+        trace.finish();
+        boolean keep = trace.isSampled() || trace.getRoot().getDurationNanos() >= this.slowNanos || status >= 500;
+        if (!keep) {
+            Metrics.counter("traces.dropped").increment();
+            return false;
+        }
+        Metrics.counter("traces.kept").increment();
+        synchronized (this.ring) {
+            this.ring[this.next] = trace;
+            this.next = (this.next + 1) % this.ring.length;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the kept traces.
+     *
+     * @return the traces, newest first
+     */
+    public List<Trace> recent() {
+        List<Trace> traces = new ArrayList<>(this.ring.length);
+        synchronized (this.ring) {
+            for (int i = 1; i <= this.ring.length; i++) {
+                Trace trace = this.ring[(this.next - i + this.ring.length) % this.ring.length];
+                if (trace != null) {
+                    traces.add(trace);
+                }
+            }
+        }
+        return traces;
+    }
+
+    /**
+     * Finds a kept trace.
+     *
+     * @param traceId the trace id
+     * @return the trace, or null if it was not kept or has been replaced
+     */
+    public Trace find(String traceId) {
+        for (Trace trace : recent()) {
+            if (trace.getTraceId().equals(traceId)) {
+                return trace;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Summarises the kept traces for the admin endpoint.
+     *
+     * @return the id, root span, duration and span count of each trace, newest first
+     */
+    public List<Map<String, Object>> describe() {
+        List<Map<String, Object>> traces = new ArrayList<>();
+        for (Trace trace : recent()) {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("traceId", trace.getTraceId());
+            summary.put("name", trace.getRoot().getName());
+            summary.put("status", trace.getRoot().getAttributes().get("http.status_code"));
+            summary.put("durationMillis", trace.getRoot().getDurationNanos() / 1e6);
+            summary.put("spans", trace.getSpans().size());
+            summary.put("sampled", trace.isSampled());
+            traces.add(summary);
+        }
+        return traces;
+    }
+
+    /**
+     * Writes every kept trace to a file as OTLP JSON.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void export(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            writeOtlp(recent(), out);
+        }
+    }
+
+    /**
+     * Writes traces as an OTLP JSON export request, the format the OTLP/HTTP
+     * protocol posts to {@code /v1/traces}.
+     *
+     * @param traces the traces
+     * @param out    where to write them
+     * @throws IOException if the output fails
+     */
+    public static void writeOtlp(Collection<Trace> traces, OutputStream out) throws IOException {
+        List<Object> spans = new ArrayList<>();
+        for (Trace trace : traces) {
+            for (Span span : trace.getSpans()) {
+                spans.add(otlpSpan(trace, span));
+            }
+        }
+        Map<String, Object> scopeSpans = new LinkedHashMap<>();
+        scopeSpans.put("scope", Map.of("name", "com.flickfinder.trace"));
+        scopeSpans.put("spans", spans);
+        Map<String, Object> resourceSpans = new LinkedHashMap<>();
+        resourceSpans.put("resource", Map.of("attributes", List.of(otlpAttribute("service.name", "flickfinder"))));
+        resourceSpans.put("scopeSpans", List.of(scopeSpans));
+        mapper.writeValue(out, Map.of("resourceSpans", List.of(resourceSpans)));
+    }
+
+    private static Map<String, Object> otlpSpan(Trace trace, Span span) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("traceId", trace.getTraceId());
+        json.put("spanId", span.getSpanId());
+        if (span.getParentId() != null) {
+            json.put("parentSpanId", span.getParentId());
+        }
+        json.put("name", span.getName());
+        // SPAN_KIND_SERVER for the request, SPAN_KIND_INTERNAL for its phases
+        json.put("kind", span == trace.getRoot() ? 2 : 1);
+        // 64-bit integers are strings in the JSON encoding of protobuf
+        json.put("startTimeUnixNano", Long.toString(span.getStartNanos()));
+        json.put("endTimeUnixNano", Long.toString(span.getEndNanos() == 0 ? span.getStartNanos() : span.getEndNanos()));
+        List<Object> attributes = new ArrayList<>();
+        span.getAttributes().forEach((key, value) -> attributes.add(otlpAttribute(key, value)));
+        if (span == trace.getRoot() && trace.getDropped() > 0) {
+            attributes.add(otlpAttribute("spans.dropped", trace.getDropped()));
+        }
+        json.put("attributes", attributes);
+        Object status = span.getAttributes().get("http.status_code");
+        if (status instanceof Integer code && code >= 500) {
+            json.put("status", Map.of("code", 2));
+        }
+        return json;
+    }
+
+    private static Map<String, Object> otlpAttribute(String key, Object value) {
+        Map<String, Object> any;
+        if (value instanceof Integer || value instanceof Long) {
+            any = Map.of("intValue", value.toString());
+        } else if (value instanceof Number number) {
+            any = Map.of("doubleValue", number.doubleValue());
+        } else if (value instanceof Boolean bool) {
+            any = Map.of("boolValue", bool);
+        } else {
+            any = Map.of("stringValue", String.valueOf(value));
+        }
+        return Map.of("key", key, "value", any);
+    }
+}
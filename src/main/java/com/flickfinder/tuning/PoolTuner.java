@@ -0,0 +1,210 @@
+package com.flickfinder.tuning;
+
+import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Metrics;
+import io.javalin.http.Context;
+import io.javalin.util.JavalinLogger;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Resizes a worker pool from what it observes while the server runs.
+ * <p>
+ * At every interval the tuner looks at how long jobs waited for a thread and
+ * how saturated the database is. Jobs waiting while the database has room
+ * means the pool is too small, so it grows. Jobs waiting while the database is
+ * saturated means the threads would only queue on the database instead, so
+ * the pool is left alone and admission control sheds the excess. A pool that is
+ * mostly idle with no waiting shrinks back. Each change, and each time growth
+ * is held back, is logged, counted and kept for {@code /admin/tuning}.
+ */
+public class PoolTuner {
+
+    /**
+     * One decision the tuner made.
+     *
+     * @param at          when the decision was made
+     * @param fromThreads the pool's maximum before
+     * @param toThreads   the pool's maximum after
+     * @param waitMicros  the average wait for a thread over the interval, in microseconds
+     * @param saturation  how saturated the database was, from 0 to 1
+     * @param reason      why the decision was made
+     */
+    public record Decision(Instant at, int fromThreads, int toThreads, long waitMicros, double saturation,
+                           String reason) {
+    }
+
+    private final TimedThreadPool pool;
+    private final DoubleSupplier saturation;
+    private final ServerTuning tuning;
+
+    /**
+     * The latest decisions, oldest first; guarded by itself.
+     */
+    private final Deque<Decision> decisions = new ArrayDeque<>();
+
+    private ScheduledExecutorService timer;
+    private long lastJobs;
+    private long lastWaitNanos;
+    private volatile long lastWaitMicros;
+
+    /**
+     * Constructs a PoolTuner and publishes the pool's state as metrics.
+     *
+     * @param pool       the pool to resize
+     * @param tuning     the settings the pool was created with
+     * @param saturation how saturated the database is, from 0 to 1
+     */
+    public PoolTuner(TimedThreadPool pool, ServerTuning tuning, DoubleSupplier saturation) {
+        this.pool = pool;
+        this.tuning = tuning;
+        this.saturation = saturation;
+        Metrics.gauge("server.threads.max", pool::getMaxThreads);
+        Metrics.gauge("server.threads.busy", pool::getBusyThreads);
+        Metrics.gauge("server.queue.size", pool::getQueueSize);
+        Metrics.gauge("server.queue.waitMicros", () -> this.lastWaitMicros);
+    }
+
+    /**
+     * Starts tuning at a fixed interval, if the settings ask for adaptive mode.
+     */
+    public synchronized void start() {
+        if (!this.tuning.isAdaptive() || this.timer != null) {
+            return;
+        }
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pool-tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.scheduleWithFixedDelay(this::tune, Defaults.TUNING_INTERVAL_MILLIS,
+                Defaults.TUNING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops tuning.
+     */
+    public synchronized void stop() {
+        if (this.timer != null) {
+            this.timer.shutdownNow();
+            this.timer = null;
+        }
+    }
+
+    /**
+     * Looks at the interval since the last call and resizes the pool if needed.
+     *
+     * @return the decision, or null if the pool was left as it is for no notable reason
+     */
+    public synchronized Decision tune() {
+        long jobs = this.pool.getJobs();
+        long waitNanos = this.pool.getWaitNanos();
+        long started = jobs - this.lastJobs;
+        long waitMicros = started == 0 ? 0 : (waitNanos - this.lastWaitNanos) / started / 1000;
+        this.lastJobs = jobs;
+        this.lastWaitNanos = waitNanos;
+        this.lastWaitMicros = waitMicros;
+        return decide(waitMicros, this.saturation.getAsDouble(), this.pool.getBusyThreads());
+    }
+
+    /**
+     * Decides on the pool's size from one interval's observations.
+     */
+    Decision decide(long waitMicros, double saturation, int busy) {
+        int current = this.pool.getMaxThreads();
+        boolean waiting = waitMicros > Defaults.TUNING_WAIT_HIGH_MICROS;
+        if (waiting && saturation >= Defaults.TUNING_SATURATED) {
+            return record(current, current, waitMicros, saturation,
+                    "threads are waiting but the database is saturated; more threads would queue on it");
+        }
+        if (waiting && current < Defaults.TUNING_MAX_THREADS) {
+            int next = Math.min(Defaults.TUNING_MAX_THREADS, current + Math.max(4, current / 4));
+            return record(current, next, waitMicros, saturation, "threads are waiting and the database has room");
+        }
+        if (waitMicros < Defaults.TUNING_WAIT_LOW_MICROS && busy < current / 2 && current > Defaults.TUNING_MIN_THREADS) {
+            int next = Math.max(Math.max(Defaults.TUNING_MIN_THREADS, this.pool.getMinThreads()),
+                    Math.max(busy * 2, current - Math.max(1, current / 10)));
+            if (next < current) {
+                return record(current, next, waitMicros, saturation, "the pool is mostly idle");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Applies and records a decision.
+     */
+    private Decision record(int from, int to, long waitMicros, double saturation, String reason) {
+        if (to != from) {
+            this.pool.setMaxThreads(to);
+            Metrics.counter("tuning.resized").increment();
+        } else {
+            Metrics.counter("tuning.held").increment();
+        }
+        Decision decision = new Decision(Instant.now(), from, to, waitMicros, saturation, reason);
+        synchronized (this.decisions) {
+            // a held decision repeats every interval while the database stays saturated; keep only the latest
+            Decision last = this.decisions.peekLast();
+            if (last != null && last.fromThreads() == last.toThreads() && from == to
+                    && last.reason().equals(reason)) {
+                this.decisions.pollLast();
+            } else {
+                JavalinLogger.info(String.format("Worker pool %d -> %d threads: %s (wait %d us, database %.0f%% busy)",
+                        from, to, reason, waitMicros, saturation * 100));
+            }
+            this.decisions.addLast(decision);
+            while (this.decisions.size() > Defaults.TUNING_HISTORY) {
+                this.decisions.pollFirst();
+            }
+        }
+        return decision;
+    }
+
+    /**
+     * Handles a request for the settings, the pool's state and the latest decisions.
+     *
+     * @param ctx the Javalin context
+     */
+    public void handleStatus(Context ctx) {
+        ctx.json(status());
+    }
+
+    /**
+     * Returns the settings, the pool's state and the latest decisions.
+     *
+     * @return the state of the tuner
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("settings", this.tuning.describe());
+        status.put("maxThreads", this.pool.getMaxThreads());
+        status.put("busyThreads", this.pool.getBusyThreads());
+        status.put("queueSize", this.pool.getQueueSize());
+        status.put("waitMicros", this.lastWaitMicros);
+        List<Map<String, Object>> decisions = new ArrayList<>();
+        synchronized (this.decisions) {
+            for (Decision decision : this.decisions) {
+                Map<String, Object> described = new LinkedHashMap<>();
+                described.put("at", decision.at().toString());
+                described.put("fromThreads", decision.fromThreads());
+                described.put("toThreads", decision.toThreads());
+                described.put("waitMicros", decision.waitMicros());
+                described.put("saturation", decision.saturation());
+                described.put("reason", decision.reason());
+                decisions.add(described);
+            }
+        }
+        status.put("decisions", decisions);
+        return status;
+    }
+}
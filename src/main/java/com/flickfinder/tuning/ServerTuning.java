@@ -0,0 +1,185 @@
+package com.flickfinder.tuning;
+
+import com.flickfinder.util.Defaults;
+import io.javalin.config.JavalinConfig;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.ServerConnector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The settings of the Jetty server a FlickFinder server runs on.
+ * <p>
+ * The defaults match the ones Javalin uses on its own: up to 250 worker
+ * threads, the operating system's accept queue, a 30 second idle timeout and
+ * HTTP/1.1 only. Turning on HTTP/2 cleartext lets clients that know the server
+ * speaks it, such as other services, multiplex their requests over one
+ * connection; HTTP/1.1 is still served on the same port. Turning on adaptive
+ * mode lets a {@link PoolTuner} resize the worker pool while the server runs.
+ */
+public class ServerTuning {
+
+    private int maxThreads = Defaults.SERVER_MAX_THREADS;
+    private int minThreads = Defaults.SERVER_MIN_THREADS;
+    private int acceptQueue = Defaults.SERVER_ACCEPT_QUEUE;
+    private int idleTimeoutMillis = Defaults.SERVER_IDLE_TIMEOUT_MILLIS;
+    private boolean h2c;
+    private boolean adaptive;
+
+    /**
+     * Parses the server settings from command line arguments, ignoring any
+     * argument that is not a server setting.
+     *
+     * @param args the command line arguments
+     * @return the settings
+     * @throws NumberFormatException if a setting is not a number
+     */
+    public static ServerTuning parse(String[] args) {
+        ServerTuning tuning = new ServerTuning();
+        for (String arg : args) {
+            if (arg.startsWith("--max-threads=")) {
+                tuning.maxThreads(Integer.parseInt(arg.substring("--max-threads=".length())));
+            } else if (arg.startsWith("--min-threads=")) {
+                tuning.minThreads(Integer.parseInt(arg.substring("--min-threads=".length())));
+            } else if (arg.startsWith("--accept-queue=")) {
+                tuning.acceptQueue(Integer.parseInt(arg.substring("--accept-queue=".length())));
+            } else if (arg.startsWith("--idle-timeout=")) {
+                tuning.idleTimeoutMillis(Integer.parseInt(arg.substring("--idle-timeout=".length())));
+            } else if (arg.equals("--h2c")) {
+                tuning.h2c(true);
+            } else if (arg.equals("--adaptive-threads")) {
+                tuning.adaptive(true);
+            }
+        }
+        return tuning;
+    }
+
+    /**
+     * Sets the most worker threads; in adaptive mode, the size the pool starts at.
+     *
+     * @param maxThreads the most worker threads
+     * @return these settings
+     */
+    public ServerTuning maxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+        return this;
+    }
+
+    /**
+     * Sets the worker threads kept even when idle.
+     *
+     * @param minThreads the fewest worker threads
+     * @return these settings
+     */
+    public ServerTuning minThreads(int minThreads) {
+        this.minThreads = minThreads;
+        return this;
+    }
+
+    /**
+     * Sets how many connections may wait to be accepted; 0 leaves it to the operating system.
+     *
+     * @param acceptQueue the accept queue length
+     * @return these settings
+     */
+    public ServerTuning acceptQueue(int acceptQueue) {
+        this.acceptQueue = acceptQueue;
+        return this;
+    }
+
+    /**
+     * Sets how long an idle connection, or a worker thread above the minimum, is kept.
+     *
+     * @param idleTimeoutMillis the idle timeout in milliseconds
+     * @return these settings
+     */
+    public ServerTuning idleTimeoutMillis(int idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Sets whether HTTP/2 cleartext is served alongside HTTP/1.1.
+     *
+     * @param h2c true to serve HTTP/2 cleartext
+     * @return these settings
+     */
+    public ServerTuning h2c(boolean h2c) {
+        this.h2c = h2c;
+        return this;
+    }
+
+    /**
+     * Sets whether the worker pool is resized while the server runs.
+     *
+     * @param adaptive true to resize the pool
+     * @return these settings
+     */
+    public ServerTuning adaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+        return this;
+    }
+
+    /**
+     * Returns whether the worker pool is resized while the server runs.
+     *
+     * @return true in adaptive mode
+     */
+    public boolean isAdaptive() {
+        return this.adaptive;
+    }
+
+    /**
+     * Creates the worker pool for one server.
+     *
+     * @return a new pool with these settings
+     * @throws IllegalArgumentException if the thread counts are inconsistent
+     */
+    public TimedThreadPool threadPool() {
+        if (this.minThreads < 1 || this.maxThreads < this.minThreads) {
+            throw new IllegalArgumentException("Invalid thread counts: min " + this.minThreads
+                    + ", max " + this.maxThreads);
+        }
+        return new TimedThreadPool(this.maxThreads, this.minThreads, this.idleTimeoutMillis);
+    }
+
+    /**
+     * Applies the settings to a Javalin configuration: the worker pool and one
+     * connector on the port.
+     *
+     * @param config the configuration
+     * @param port   the port to listen on
+     * @param pool   the worker pool, from {@link #threadPool()}
+     */
+    public void apply(JavalinConfig config, int port, TimedThreadPool pool) {
+        config.jetty.threadPool = pool;
+        config.jetty.addConnector((server, httpConfiguration) -> {
+            HttpConnectionFactory http1 = new HttpConnectionFactory(httpConfiguration);
+            ServerConnector connector = this.h2c
+                    ? new ServerConnector(server, http1, new HTTP2CServerConnectionFactory(httpConfiguration))
+                    : new ServerConnector(server, http1);
+            connector.setPort(port);
+            connector.setAcceptQueueSize(this.acceptQueue);
+            connector.setIdleTimeout(this.idleTimeoutMillis);
+            return connector;
+        });
+    }
+
+    /**
+     * Describes the settings for the admin endpoint.
+     *
+     * @return the settings by name
+     */
+    public Map<String, Object> describe() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("maxThreads", this.maxThreads);
+        settings.put("minThreads", this.minThreads);
+        settings.put("acceptQueue", this.acceptQueue);
+        settings.put("idleTimeoutMillis", this.idleTimeoutMillis);
+        settings.put("h2c", this.h2c);
+        settings.put("adaptive", this.adaptive);
+        return settings;
+    }
+}
@@ -0,0 +1,59 @@
+package com.flickfinder.tuning;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Jetty thread pool that measures how long jobs wait for a thread.
+ * <p>
+ * Every job Jetty hands to the pool, whether reading a connection or running a
+ * request, is timed from the moment it is queued to the moment a thread picks
+ * it up. The waits are summed so that a {@link PoolTuner} can take the average
+ * over each of its intervals.
+ */
+public class TimedThreadPool extends QueuedThreadPool {
+
+    private final AtomicLong jobs = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * Constructs a TimedThreadPool.
+     *
+     * @param maxThreads        the most threads the pool may run
+     * @param minThreads        the threads the pool keeps even when idle
+     * @param idleTimeoutMillis how long a thread above the minimum may stay idle
+     */
+    public TimedThreadPool(int maxThreads, int minThreads, int idleTimeoutMillis) {
+        super(maxThreads, minThreads, idleTimeoutMillis);
+        setName("JettyServerThreadPool");
+    }
+
+    @Override
+    public void execute(Runnable job) {
+        long queued = System.nanoTime();
+        super.execute(() -> {
+            this.waitNanos.addAndGet(System.nanoTime() - queued);
+            this.jobs.incrementAndGet();
+            job.run();
+        });
+    }
+
+    /**
+     * Returns the number of jobs that have started since the pool was created.
+     *
+     * @return the jobs started
+     */
+    public long getJobs() {
+        return this.jobs.get();
+    }
+
+    /**
+     * Returns the total time jobs have waited for a thread.
+     *
+     * @return the total wait in nanoseconds
+     */
+    public long getWaitNanos() {
+        return this.waitNanos.get();
+    }
+}
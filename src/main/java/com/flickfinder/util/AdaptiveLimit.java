@@ -0,0 +1,163 @@
+package com.flickfinder.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrency limit that adapts to the latency it observes.
+ * <p>
+ * The limit follows the gradient between the long-term average latency and
+ * the latency of the latest request. While requests complete about as fast as
+ * they usually do, the limit grows by a small queue allowance; once they slow
+ * down, which means work is queueing somewhere behind the server, the limit
+ * shrinks in proportion. Requests over the limit are turned away at once
+ * rather than left to wait.
+ * <p>
+ * Requests come in two priorities. Cheap requests may use the whole limit;
+ * expensive ones only a share of it, so under pressure the expensive requests
+ * are shed first and the cheap ones keep being served.
+ */
+public class AdaptiveLimit {
+
+    /**
+     * The priority of a request.
+     */
+    public enum Priority {
+        CHEAP, EXPENSIVE
+    }
+
+    /**
+     * How much slower than the long-term average a request may be before the
+     * limit starts to shrink.
+     */
+    private static final double TOLERANCE = 1.5;
+
+    /**
+     * How far each sample moves the limit towards its new estimate.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * How many samples the long-term average latency spans.
+     */
+    private static final int LONG_WINDOW = 600;
+
+    /**
+     * How much the limit shrinks when a request fails.
+     */
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double expensiveShare;
+
+    /**
+     * The requests currently admitted.
+     */
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    /**
+     * The current limit. Written under the lock and read without it.
+     */
+    private volatile double limit;
+
+    /**
+     * The long-term average latency in nanoseconds, or 0 before the first sample.
+     */
+    private double longRtt;
+
+    /**
+     * Constructs an AdaptiveLimit and publishes its state as metrics.
+     *
+     * @param name           the prefix of the metrics
+     * @param initialLimit   the limit to start from
+     * @param minLimit       the lowest the limit may fall
+     * @param maxLimit       the highest the limit may grow
+     * @param expensiveShare the share of the limit expensive requests may use
+     */
+    public AdaptiveLimit(String name, int initialLimit, int minLimit, int maxLimit, double expensiveShare) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.expensiveShare = expensiveShare;
+        Metrics.gauge(name + ".limit", this::getLimit);
+        Metrics.gauge(name + ".inflight", this::getInflight);
+    }
+
+    /**
+     * Admits a request if the limit for its priority allows it.
+     * Every successful call must be followed by a call to {@link #release}.
+     *
+     * @param priority the priority of the request
+     * @return true if the request was admitted
+     */
+    public boolean tryAcquire(Priority priority) {
+        int cap = priority == Priority.CHEAP ? getLimit() : Math.max(1, (int) (getLimit() * this.expensiveShare));
+        while (true) {
+            int current = this.inflight.get();
+            if (current >= cap) {
+                return false;
+            }
+            if (this.inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases an admitted request and updates the limit from its latency.
+     *
+     * @param rttNanos how long the request took, in nanoseconds
+     * @param failed   whether the request failed on the server
+     */
+    public void release(long rttNanos, boolean failed) {
+        int inflightBefore = this.inflight.getAndDecrement();
+        update(Math.max(rttNanos, 1), inflightBefore, failed);
+    }
+
+    /**
+     * Moves the limit towards the estimate given by one sample.
+     */
+    private synchronized void update(long rtt, int inflightBefore, boolean failed) {
+        double current = this.limit;
+        double next;
+        if (failed) {
+            next = current * BACKOFF;
+        } else {
+            if (this.longRtt == 0) {
+                this.longRtt = rtt;
+            } else {
+                this.longRtt += (rtt - this.longRtt) / LONG_WINDOW;
+            }
+            // the average drifts up under sustained overload; let it recover towards fresh samples
+            if (this.longRtt > 2 * rtt) {
+                this.longRtt = (this.longRtt + rtt) / 2;
+            }
+            // a server using less than half its limit tells nothing about whether the limit is too low
+            if (inflightBefore < current / 2 && rtt <= TOLERANCE * this.longRtt) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * this.longRtt / rtt));
+            double queue = Math.sqrt(current);
+            next = current * (1 - SMOOTHING) + (current * gradient + queue) * SMOOTHING;
+        }
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, next));
+    }
+
+    /**
+     * Returns the current limit.
+     *
+     * @return the number of requests that may run at once
+     */
+    public int getLimit() {
+        return (int) this.limit;
+    }
+
+    /**
+     * Returns the number of requests admitted and not yet released.
+     *
+     * @return the requests in flight
+     */
+    public int getInflight() {
+        return this.inflight.get();
+    }
+}
@@ -0,0 +1,142 @@
+package com.flickfinder.util;
+
+import com.flickfinder.trace.Span;
+import com.flickfinder.trace.Trace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of threads that one class of work runs on, apart from the rest.
+ * <p>
+ * Each bulkhead has a fixed number of threads and a bounded queue in front of
+ * them. Work that finds the queue full is refused at once instead of waiting,
+ * so a class of work that falls behind fills only its own queue and never ties
+ * up the threads another class runs on. The deadline of the request handing
+ * over the work is carried to the thread that runs it.
+ */
+public class Bulkhead {
+
+    /**
+     * Work run on a bulkhead.
+     */
+    @FunctionalInterface
+    public interface Task {
+        /**
+         * Runs the work.
+         *
+         * @throws Exception if the work fails
+         */
+        void run() throws Exception;
+    }
+
+    private final String name;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructs a Bulkhead and publishes its state as metrics.
+     *
+     * @param name          the name of the threads and the prefix of the metrics
+     * @param threads       how many tasks may run at once
+     * @param queueCapacity how many tasks may wait for a thread
+     */
+    public Bulkhead(String name, int threads, int queueCapacity) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "bulkhead-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Metrics.gauge("bulkhead." + name + ".queued", this::getQueued);
+        Metrics.gauge("bulkhead." + name + ".active", this::getActive);
+    }
+
+    /**
+     * Queues a task, taking the deadline and the open trace span of the current
+     * thread along with it. The time the task waits in the queue is recorded as a
+     * span of its own.
+     *
+     * @param task the task
+     * @return completes when the task has run, exceptionally if it failed
+     * @throws RejectedExecutionException if the queue is full or the bulkhead is closed
+     */
+    public CompletableFuture<Void> submit(Task task) {
+        Deadline deadline = Deadline.detach();
+        Span span = Trace.detach();
+        long queuedAt = Trace.now();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            this.executor.execute(() -> {
+                Deadline.attach(deadline);
+                Trace.attach(span);
+                Trace.span("bulkhead." + this.name + ".queue", queuedAt).close();
+                try {
+                    task.run();
+                    done.complete(null);
+                } catch (Throwable e) {
+                    done.completeExceptionally(e);
+                } finally {
+                    Deadline.detach();
+                    Trace.detach();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Deadline.attach(deadline);
+            Trace.attach(span);
+            Metrics.counter("bulkhead." + this.name + ".rejected").increment();
+            throw e;
+        }
+        return done;
+    }
+
+    /**
+     * Returns how many tasks are waiting for a thread.
+     *
+     * @return the queue depth
+     */
+    public int getQueued() {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * Returns how many tasks are running.
+     *
+     * @return the busy threads
+     */
+    public int getActive() {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * Describes the bulkhead for the admin endpoint.
+     *
+     * @return the threads, the queue and the tasks run and refused
+     */
+    public Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("threads", this.executor.getMaximumPoolSize());
+        description.put("active", getActive());
+        description.put("queued", getQueued());
+        description.put("queueCapacity", this.queueCapacity);
+        description.put("completed", this.executor.getCompletedTaskCount());
+        description.put("rejected", Metrics.counter("bulkhead." + this.name + ".rejected").sum());
+        return description;
+    }
+
+    /**
+     * Stops taking tasks; the tasks already queued still run.
+     */
+    public void close() {
+        this.executor.shutdown();
+    }
+}
@@ -0,0 +1,364 @@
+package com.flickfinder.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The deadline of the request being handled on the current thread.
+ * <p>
+ * A deadline is started before a request's handler runs and ended after it.
+ * The DAOs register each statement they run with {@link #watch(Statement)}.
+ * If the deadline passes, or the client hangs up, while a statement is
+ * registered, the statement is cancelled, which interrupts SQLite mid-query
+ * and makes it fail with an SQLException. A statement prepared after the
+ * deadline has passed fails straight away.
+ * <p>
+ * Cancelling a statement interrupts everything running on its connection,
+ * which the lanes and an in-memory database share between requests. The
+ * statements open on each connection are therefore tracked, whatever their
+ * deadline, and a statement is only cancelled while it is the only one open
+ * on its connection; otherwise it runs to the end and the request is cut
+ * short after it. A statement registered while another on its connection is
+ * being cancelled waits for that one to be closed, so that it is not
+ * interrupted along with it.
+ * <p>
+ * A request handed to another thread, such as a bulkhead's worker, takes its
+ * deadline along with {@link #detach()} and {@link #attach(Deadline)}, and is
+ * ended with {@link #finish()} on whichever thread completes it.
+ * <p>
+ * Threads that have no deadline, such as warm-up and exports, are not
+ * affected.
+ */
+public class Deadline {
+
+    /**
+     * Why a request was cut short.
+     */
+    public enum Outcome {
+        TIMED_OUT, CANCELLED
+    }
+
+    /**
+     * How long a statement waits for one being cancelled on its connection to
+     * be closed, in milliseconds.
+     */
+    private static final long INTERRUPT_WAIT_MILLIS = 100;
+
+    /**
+     * The statements registered on each connection.
+     */
+    private static final Map<Connection, Running> connections = new ConcurrentHashMap<>();
+
+    /**
+     * The deadline of the request on each thread.
+     */
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+    /**
+     * Fires the timeouts.
+     */
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * When the deadline passes, in nanoseconds.
+     */
+    private final long expiresAt;
+
+    /**
+     * The statements currently registered; guarded by this.
+     */
+    private final List<Statement> statements = new ArrayList<>(4);
+
+    private ScheduledFuture<?> timeout;
+    private volatile Outcome outcome;
+    private boolean ended;
+
+    private Deadline(long millis) {
+        this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Schedules the timeout. Done after construction so that it cannot fire on
+     * a half-built deadline.
+     */
+    private synchronized void schedule(long millis) {
+        this.timeout = timer.schedule(() -> cancel(Outcome.TIMED_OUT), millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a deadline for the request on the current thread, replacing any
+     * deadline left over on it.
+     *
+     * @param millis how long the request may take, in milliseconds
+     * @return the deadline
+     */
+    public static Deadline start(long millis) {
+        end();
+        Deadline deadline = new Deadline(millis);
+        deadline.schedule(millis);
+        current.set(deadline);
+        return deadline;
+    }
+
+    /**
+     * Ends the deadline of the current thread, if it has one. Statements are
+     * no longer cancelled once their deadline has ended.
+     *
+     * @return why the request was cut short, or null if it was not
+     */
+    public static Outcome end() {
+        Deadline deadline = current.get();
+        return deadline == null ? null : deadline.finish();
+    }
+
+    /**
+     * Ends this deadline, from any thread, and takes it off the current thread
+     * if it is there. Statements are no longer cancelled once their deadline has
+     * ended; ending a deadline twice does nothing more.
+     *
+     * @return why the request was cut short, or null if it was not
+     */
+    public Outcome finish() {
+        if (current.get() == this) {
+            current.remove();
+        }
+        synchronized (this) {
+            this.timeout.cancel(false);
+            this.ended = true;
+            this.statements.clear();
+        }
+        return this.outcome;
+    }
+
+    /**
+     * Takes the deadline off the current thread without ending it, so that the
+     * request can carry on on another thread.
+     *
+     * @return the deadline, or null if the thread has none
+     */
+    public static Deadline detach() {
+        Deadline deadline = current.get();
+        current.remove();
+        return deadline;
+    }
+
+    /**
+     * Puts a detached deadline on the current thread, or clears the thread's
+     * deadline if it is null.
+     *
+     * @param deadline the deadline of the request the thread now works on
+     */
+    public static void attach(Deadline deadline) {
+        if (deadline == null) {
+            current.remove();
+        } else {
+            current.set(deadline);
+        }
+    }
+
+    /**
+     * Registers a statement with its connection and with the deadline of the
+     * current thread, so that it is cancelled if the deadline passes or the
+     * client hangs up. A thread without a deadline registers its statements
+     * too, so that they are not interrupted along with another request's.
+     *
+     * @param statement the statement about to be run
+     * @param <T>       the type of statement
+     * @return the statement
+     * @throws SQLTimeoutException if the deadline has already passed
+     * @throws SQLException        if the statement has been closed
+     */
+    public static <T extends Statement> T watch(T statement) throws SQLException {
+        Deadline deadline = current.get();
+        if (deadline != null) {
+            deadline.check();
+        }
+        running(statement.getConnection()).add(statement);
+        if (deadline != null) {
+            deadline.add(statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Fails if the request has been cut short or has run out of time.
+     */
+    private synchronized void check() throws SQLTimeoutException {
+        if (this.outcome == null && System.nanoTime() - this.expiresAt >= 0) {
+            this.outcome = Outcome.TIMED_OUT;
+        }
+        if (this.outcome != null) {
+            count(this.outcome);
+            throw new SQLTimeoutException("Request " + this.outcome.name().toLowerCase().replace('_', ' '));
+        }
+    }
+
+    /**
+     * Registers a statement with this deadline, unless the request was cut
+     * short while it was being registered with its connection.
+     */
+    private synchronized void add(Statement statement) throws SQLTimeoutException {
+        check();
+        this.statements.add(statement);
+    }
+
+    /**
+     * Returns the statements registered on a connection. Connections are only
+     * opened when data is loaded, so that is when the closed ones are dropped.
+     */
+    private static Running running(Connection connection) {
+        Running statements = connections.get(connection);
+        if (statements == null) {
+            connections.keySet().removeIf(Deadline::isClosed);
+            statements = connections.computeIfAbsent(connection, c -> new Running());
+        }
+        return statements;
+    }
+
+    /**
+     * Returns how long the request on the current thread has left.
+     *
+     * @return the time left in nanoseconds, or Long.MAX_VALUE if the thread has no deadline
+     */
+    public static long remainingNanos() {
+        Deadline deadline = current.get();
+        return deadline == null ? Long.MAX_VALUE : Math.max(0, deadline.expiresAt - System.nanoTime());
+    }
+
+    /**
+     * Records that the request on the current thread ran out of time while
+     * waiting rather than querying, for example for a coalesced query.
+     *
+     * @return the exception to throw
+     */
+    public static SQLTimeoutException expired() {
+        Deadline deadline = current.get();
+        if (deadline != null) {
+            synchronized (deadline) {
+                if (deadline.outcome == null) {
+                    deadline.outcome = Outcome.TIMED_OUT;
+                }
+            }
+        }
+        count(Outcome.TIMED_OUT);
+        return new SQLTimeoutException("Request timed out");
+    }
+
+    /**
+     * Returns whether the request on the current thread was cut short.
+     *
+     * @return the outcome, or null if the request is still within its deadline
+     */
+    public static Outcome outcome() {
+        Deadline deadline = current.get();
+        return deadline == null ? null : deadline.outcome;
+    }
+
+    /**
+     * Cuts the request short because its client has hung up, cancelling the
+     * statements registered with it. Does nothing once the request has ended
+     * or been cut short already.
+     */
+    public void clientGone() {
+        cancel(Outcome.CANCELLED);
+    }
+
+    /**
+     * Cancels the registered statements, unless the request has already ended.
+     */
+    private synchronized void cancel(Outcome outcome) {
+        if (this.ended || this.outcome != null) {
+            return;
+        }
+        this.outcome = outcome;
+        if (this.timeout != null) {
+            this.timeout.cancel(false);
+        }
+        for (Statement statement : this.statements) {
+            try {
+                if (running(statement.getConnection()).interrupt(statement)) {
+                    count(outcome);
+                }
+            } catch (SQLException e) {
+                // closed in the meantime; nothing left to cancel
+            }
+        }
+    }
+
+    private static void count(Outcome outcome) {
+        Metrics.counter(outcome == Outcome.TIMED_OUT ? "queries.timedOut" : "queries.cancelled").increment();
+    }
+
+    private static boolean isClosed(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static boolean isClosed(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * The statements open on one connection, and the one being cancelled.
+     */
+    private static final class Running {
+
+        private final List<Statement> open = new ArrayList<>(4);
+        private Statement interrupted;
+
+        /**
+         * Registers a statement about to be run, once any statement being
+         * cancelled on the connection has been closed.
+         */
+        synchronized void add(Statement statement) {
+            long waitUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(INTERRUPT_WAIT_MILLIS);
+            while (this.interrupted != null && !isClosed(this.interrupted) && System.nanoTime() - waitUntil < 0) {
+                try {
+                    wait(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            this.interrupted = null;
+            this.open.removeIf(Deadline::isClosed);
+            this.open.add(statement);
+        }
+
+        /**
+         * Cancels a statement if it is the only one open on the connection.
+         *
+         * @return whether the statement was cancelled
+         */
+        synchronized boolean interrupt(Statement statement) throws SQLException {
+            this.open.removeIf(Deadline::isClosed);
+            if (this.open.size() != 1 || this.open.get(0) != statement) {
+                return false;
+            }
+            this.interrupted = statement;
+            statement.cancel();
+            return true;
+        }
+    }
+}
@@ -3,4 +3,59 @@ package com.flickfinder.util;
 public class Defaults {
     public static final int LIMIT = 50;
     public static final int VOTES = 1000;
+    public static final int MAX_YEAR_SPAN = 200;
+    public static final int SIMILAR_LIMIT = 10;
+    public static final int SIMILARITY_BANDS = 16;
+    public static final int SIMILARITY_ROWS = 2;
+    public static final long SIMILARITY_MEMORY_BUDGET = 64L * 1024 * 1024;
+    public static final int EXPORT_CONCURRENCY = 2;
+    public static final int EXPORT_FLUSH_ROWS = 1000;
+    public static final int EXPORT_ROWS_PER_SECOND = 200_000;
+    public static final int WARMUP_ROUNDS = 20;
+    public static final int WARMUP_SAMPLE = 25;
+    public static final int ADMISSION_INITIAL_LIMIT = 20;
+    public static final int ADMISSION_MIN_LIMIT = 4;
+    public static final int ADMISSION_MAX_LIMIT = 200;
+    public static final double ADMISSION_EXPENSIVE_SHARE = 0.5;
+    public static final long DEADLINE_MILLIS = 2000;
+    public static final long DEADLINE_LOOKUP_MILLIS = 1000;
+    public static final long DEADLINE_RATINGS_MILLIS = 5000;
+    public static final long SHARD_TIMEOUT_MILLIS = 6000;
+    public static final long PEER_TIMEOUT_MILLIS = 500;
+    public static final int PEER_RING_REPLICAS = 64;
+    public static final int PEER_CACHE_ENTRIES = 10_000;
+    public static final int PEER_HOT_ENTRIES = 1000;
+    public static final int PEER_HOT_THRESHOLD = 3;
+    public static final int SERVER_MAX_THREADS = 250;
+    public static final int SERVER_MIN_THREADS = 8;
+    public static final int SERVER_ACCEPT_QUEUE = 0;
+    public static final int SERVER_IDLE_TIMEOUT_MILLIS = 30_000;
+    public static final long TUNING_INTERVAL_MILLIS = 5000;
+    public static final long TUNING_WAIT_HIGH_MICROS = 2000;
+    public static final long TUNING_WAIT_LOW_MICROS = 200;
+    public static final double TUNING_SATURATED = 0.9;
+    public static final int TUNING_MIN_THREADS = 32;
+    public static final int TUNING_MAX_THREADS = 500;
+    public static final int TUNING_HISTORY = 20;
+    public static final int BULKHEAD_LOOKUP_THREADS = 4;
+    public static final int BULKHEAD_LOOKUP_QUEUE = 128;
+    public static final int BULKHEAD_LIST_THREADS = 2;
+    public static final int BULKHEAD_LIST_QUEUE = 32;
+    public static final int BULKHEAD_RATINGS_THREADS = 1;
+    public static final int BULKHEAD_RATINGS_QUEUE = 8;
+    public static final int NEGATIVE_CACHE_ENTRIES = 10_000;
+    public static final int ID_FILTER_MAX_DENSE_BITS = 16;
+    public static final int ID_FILTER_BLOOM_BITS = 10;
+    public static final String JFR_REQUEST_THRESHOLD = "20 ms";
+    public static final String JFR_QUERY_THRESHOLD = "10 ms";
+    public static final String JFR_CACHE_THRESHOLD = "1 ms";
+    public static final long JFR_MAX_AGE_MINUTES = 30;
+    public static final double TRACE_SAMPLE_RATE = 0.01;
+    public static final long TRACE_SLOW_MILLIS = 250;
+    public static final int TRACE_RING_SIZE = 512;
+    public static final int TRACE_MAX_SPANS = 256;
+    public static final int ERROR_LOG_QUEUE = 1024;
+    public static final int ERROR_LOG_PER_SECOND = 5;
+    public static final int INCLUDE_MAX_DEPTH = 2;
+    public static final int INCLUDE_MAX_ROWS = 1000;
 }
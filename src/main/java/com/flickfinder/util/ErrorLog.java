@@ -0,0 +1,195 @@
+package com.flickfinder.util;
+
+import io.javalin.util.JavalinLogger;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Logs errors from the request path without making the request wait for the log.
+ * <p>
+ * A message is put in a bounded queue and written by a background thread, so a
+ * request never blocks on log I/O; if the queue is full the message is dropped
+ * and counted instead. Each message is also rate limited on its own: once a
+ * message has been logged {@value com.flickfinder.util.Defaults#ERROR_LOG_PER_SECOND}
+ * times within a second, further copies are only counted, and the writer logs
+ * how many were suppressed. A client sending junk parameters then costs a few
+ * log lines a second, however fast it sends them.
+ */
+public class ErrorLog {
+
+    /**
+     * The log shared by the controllers, written to the Javalin logger.
+     */
+    private static final ErrorLog shared = new ErrorLog(Defaults.ERROR_LOG_QUEUE,
+            Defaults.ERROR_LOG_PER_SECOND, JavalinLogger::error);
+
+    static {
+        Metrics.gauge("log.queued", shared.queue::size);
+        Thread writer = new Thread(shared::run, "error-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * The messages waiting to be written.
+     */
+    private final BlockingQueue<Entry> queue;
+
+    /**
+     * How often each message may be logged within a second.
+     */
+    private final int perSecond;
+
+    /**
+     * Where the messages are written.
+     */
+    private final BiConsumer<String, Throwable> sink;
+
+    /**
+     * The rate limit of each message, by the message.
+     */
+    private final Map<String, Throttle> throttles = new ConcurrentHashMap<>();
+
+    /**
+     * When the suppressed counts were last reported, in nanoseconds.
+     */
+    private long reportedAt = System.nanoTime();
+
+    /**
+     * Constructs an ErrorLog. Nothing is written until {@link #drain()} is called.
+     *
+     * @param capacity  the most messages that can wait to be written
+     * @param perSecond how often each message may be logged within a second
+     * @param sink      where the messages are written
+     */
+    ErrorLog(int capacity, int perSecond, BiConsumer<String, Throwable> sink) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.perSecond = perSecond;
+        this.sink = sink;
+    }
+
+    /**
+     * Logs an error that has no exception, such as a malformed parameter.
+     *
+     * @param message the message
+     */
+    public static void error(String message) {
+        shared.log(message, null);
+    }
+
+    /**
+     * Logs an error with the exception that caused it.
+     *
+     * @param message the message
+     * @param e       the exception
+     */
+    public static void error(String message, Throwable e) {
+        shared.log(message, e);
+    }
+
+    /**
+     * Queues a message unless it is over its rate limit or the queue is full.
+     *
+     * @param message the message
+     * @param e       the exception, or null
+     * @return true if the message was queued
+     */
+    boolean log(String message, Throwable e) {
+        Throttle throttle = this.throttles.computeIfAbsent(message, m -> new Throttle());
+        if (!throttle.tryAcquire(System.nanoTime(), this.perSecond)) {
+            Metrics.counter("log.suppressed").increment();
+            return false;
+        }
+        if (!this.queue.offer(new Entry(message, e))) {
+            Metrics.counter("log.dropped").increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the queued messages, then how many copies of each were suppressed.
+     */
+    void drain() {
+        for (Entry entry = this.queue.poll(); entry != null; entry = this.queue.poll()) {
+            write(entry.message(), entry.e());
+        }
+        this.throttles.forEach((message, throttle) -> {
+            long suppressed = throttle.takeSuppressed();
+            if (suppressed > 0) {
+                write(message + " (" + suppressed + " similar messages suppressed)", null);
+            }
+        });
+    }
+
+    /**
+     * Writes messages as they arrive, reporting suppressed counts about once a second.
+     */
+    private void run() {
+        while (true) {
+            try {
+                Entry entry = this.queue.poll(1, TimeUnit.SECONDS);
+                if (entry != null) {
+                    write(entry.message(), entry.e());
+                }
+                long now = System.nanoTime();
+                if (now - this.reportedAt >= TimeUnit.SECONDS.toNanos(1)) {
+                    this.reportedAt = now;
+                    drain();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void write(String message, Throwable e) {
+        try {
+            this.sink.accept(message, e);
+        } catch (RuntimeException failure) {
+            // a failing logger must not stop the writer
+            Metrics.counter("log.failed").increment();
+        }
+    }
+
+    /**
+     * A message waiting to be written.
+     */
+    private record Entry(String message, Throwable e) {
+    }
+
+    /**
+     * The rate limit of one message: a count of the copies logged in the current
+     * second, and of the copies suppressed since they were last reported.
+     */
+    private static final class Throttle {
+
+        private long windowStart = Long.MIN_VALUE;
+        private int count;
+        private long suppressed;
+
+        synchronized boolean tryAcquire(long now, int perSecond) {
+            if (this.windowStart == Long.MIN_VALUE || now - this.windowStart >= TimeUnit.SECONDS.toNanos(1)) {
+                this.windowStart = now;
+                this.count = 0;
+            }
+            if (this.count < perSecond) {
+                this.count++;
+                return true;
+            }
+            this.suppressed++;
+            return false;
+        }
+
+        synchronized long takeSuppressed() {
+            long taken = this.suppressed;
+            this.suppressed = 0;
+            return taken;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.flickfinder.util;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges several individually sorted runs into a single sorted list.
+ * <p>
+ * Only the head of each run is held in a bounded heap, so producing the first
+ * {@code limit} items costs O(limit * log runs) comparisons and never reads
+ * more than {@code limit} items from any one run.
+ */
+public class KWayMerge {
+
+    /**
+     * A forward-only source of items that is already sorted in merge order.
+     *
+     * @param <T> the type of item in the run
+     */
+    @FunctionalInterface
+    public interface Run<T> {
+        /**
+         * Returns the next item of the run.
+         *
+         * @return the next item, or null once the run is exhausted
+         * @throws SQLException if the run is backed by a database cursor that fails
+         */
+        T next() throws SQLException;
+
+        /**
+         * Adapts an in-memory iterator into a run.
+         *
+         * @param iterator the sorted iterator
+         * @param <T>      the type of item in the run
+         * @return a run that yields the iterator's items
+         */
+        static <T> Run<T> of(Iterator<T> iterator) {
+            return () -> iterator.hasNext() ? iterator.next() : null;
+        }
+    }
+
+    /**
+     * The current head of a run, ordered in the heap by its item and then by the
+     * position of its run so that ties are resolved deterministically.
+     */
+    private record Head<T>(T item, int run) {
+    }
+
+    /**
+     * Merges the runs, stopping after limit items.
+     *
+     * @param runs  the sorted runs
+     * @param order the order that every run is sorted in
+     * @param limit the maximum number of items to return
+     * @param <T>   the type of item
+     * @return at most limit items, sorted by order
+     * @throws SQLException if reading a run fails
+     */
+    public static <T> List<T> merge(List<? extends Run<T>> runs, Comparator<? super T> order, int limit)
+            throws SQLException {
+        List<T> merged = new ArrayList<>(Math.min(limit, 1024));
+        if (limit <= 0 || runs.isEmpty()) {
+            return merged;
+        }
+
+        Comparator<Head<T>> byItem = (a, b) -> order.compare(a.item(), b.item());
+        PriorityQueue<Head<T>> heap = new PriorityQueue<>(runs.size(),
+                byItem.thenComparingInt(Head::run));
+
+        for (int i = 0; i < runs.size(); i++) {
+            T first = runs.get(i).next();
+            if (first != null) {
+                heap.add(new Head<>(first, i));
+            }
+        }
+
+        while (!heap.isEmpty() && merged.size() < limit) {
+            Head<T> head = heap.poll();
+            merged.add(head.item());
+            if (merged.size() == limit) {
+                break;
+            }
+            T next = runs.get(head.run()).next();
+            if (next != null) {
+                heap.add(new Head<>(next, head.run()));
+            }
+        }
+        return merged;
+    }
+}
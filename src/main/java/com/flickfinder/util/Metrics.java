@@ -0,0 +1,59 @@
+package com.flickfinder.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A process-wide registry of named counters and gauges.
+ * <p>
+ * Counters are cheap to increment from many threads at once. Gauges are read
+ * only when a snapshot is taken, so registering one costs nothing on the
+ * request path. The snapshot is served as JSON from {@code /metrics}.
+ */
+public class Metrics {
+
+    /**
+     * The counters, by name.
+     */
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * The gauges, by name.
+     */
+    private static final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the counter with the given name, creating it if needed.
+     *
+     * @param name the name of the counter
+     * @return the counter
+     */
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge already registered with the same name.
+     *
+     * @param name  the name of the gauge
+     * @param value supplies the current value of the gauge
+     */
+    public static void gauge(String name, Supplier<Number> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Returns the current value of every counter and gauge, sorted by name.
+     *
+     * @return the metric values by name
+     */
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.get()));
+        return values;
+    }
+}
@@ -0,0 +1,64 @@
+package com.flickfinder.util;
+
+/**
+ * A token bucket that paces work to a fixed number of permits per second.
+ * <p>
+ * Callers that take more than the bucket holds are made to sleep until the
+ * tokens they used have been earned back, which spreads bulk work out evenly
+ * instead of letting it run in bursts.
+ */
+public class RateLimiter {
+
+    /**
+     * The number of permits earned per second.
+     */
+    private final double permitsPerSecond;
+
+    /**
+     * The largest number of permits that can be saved up; one second's worth.
+     */
+    private final double capacity;
+
+    /**
+     * The permits currently available. May go negative, which is paid back by sleeping.
+     */
+    private double available;
+
+    /**
+     * When the permits were last topped up, in nanoseconds.
+     */
+    private long refilledAt;
+
+    /**
+     * Constructs a RateLimiter.
+     *
+     * @param permitsPerSecond the number of permits earned per second
+     */
+    public RateLimiter(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = permitsPerSecond;
+        this.available = permitsPerSecond;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Takes permits, sleeping for as long as it takes to earn them.
+     *
+     * @param permits the number of permits to take
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(int permits) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            this.available = Math.min(this.capacity,
+                    this.available + (now - this.refilledAt) / 1e9 * this.permitsPerSecond);
+            this.refilledAt = now;
+            this.available -= permits;
+            waitNanos = this.available >= 0 ? 0 : (long) (-this.available / this.permitsPerSecond * 1e9);
+        }
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.flickfinder.util;
+
+import com.flickfinder.trace.Span;
+import com.flickfinder.trace.Trace;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces identical concurrent calls into a single execution.
+ * <p>
+ * The first caller for a key runs the call; every caller that arrives with the
+ * same key while it is still running waits for, and shares, its result or its
+ * exception. Once the call finishes the key is forgotten, so this is not a
+ * cache: a later caller runs the call again.
+ * <p>
+ * A call cut short by the deadline of the caller running it failed for that
+ * caller alone, so the callers waiting for it run the call again instead of
+ * sharing the failure.
+ * <p>
+ * Shared results are handed to every waiting caller. A list is therefore
+ * handed out unmodifiable, so that no caller can change what the others see.
+ */
+public class SingleFlight {
+
+    /**
+     * A call that may fail with a database error.
+     *
+     * @param <V> the type of the result
+     */
+    @FunctionalInterface
+    public interface Call<V> {
+        /**
+         * Runs the call.
+         *
+         * @return the result
+         * @throws SQLException if a database error occurs
+         */
+        V call() throws SQLException;
+    }
+
+    /**
+     * Tells the waiting callers that the call was cut short by the deadline of
+     * the caller running it.
+     */
+    private static final Object CUT_SHORT = new Object();
+
+    /**
+     * The calls currently running, by key.
+     */
+    private final Map<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * The number of calls made, shared by every SingleFlight with the same name.
+     */
+    private final LongAdder calls;
+
+    /**
+     * The number of calls that were actually executed, shared like the calls.
+     */
+    private final LongAdder executions;
+
+    /**
+     * Constructs a SingleFlight and registers its metrics under the given name.
+     * <p>
+     * Each copy of the data has its own DAOs, one per lane, and each DAO its
+     * own SingleFlight. The counts are therefore kept in counters shared by
+     * every SingleFlight with the same name, so that the metrics cover all of
+     * them and hold on to none once their data is discarded.
+     *
+     * @param name the prefix of the metric names
+     */
+    public SingleFlight(String name) {
+        LongAdder calls = Metrics.counter(name + ".calls");
+        LongAdder executions = Metrics.counter(name + ".executions");
+        this.calls = calls;
+        this.executions = executions;
+        Metrics.gauge(name + ".coalescingRatio", () -> ratio(calls.sum(), executions.sum()));
+    }
+
+    /**
+     * Runs the call, or waits for an identical call that is already running.
+     *
+     * @param key  identifies the call; equal keys share one execution
+     * @param call the call to run
+     * @param <V>  the type of the result
+     * @return the result of the call
+     * @throws SQLException if the shared execution fails with a database error
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V execute(Object key, Call<V> call) throws SQLException {
+        this.calls.increment();
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running;
+        while ((running = this.inFlight.putIfAbsent(key, mine)) != null) {
+            Object result;
+            try (Span span = Trace.span("coalesced wait")) {
+                span.attribute("flight.key", key.toString());
+                result = await(running);
+            }
+            // the caller running it ran out of time, which this one may not have
+            if (result != CUT_SHORT) {
+                return (V) result;
+            }
+        }
+
+        this.executions.increment();
+        try {
+            V result = readOnly(call.call());
+            mine.complete(result);
+            return result;
+        } catch (SQLException | RuntimeException | Error e) {
+            if (Deadline.outcome() != null) {
+                mine.complete(CUT_SHORT);
+            } else {
+                mine.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            this.inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Wraps a list result so that the callers sharing it cannot change it.
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> V readOnly(V result) {
+        return result instanceof List<?> list ? (V) Collections.unmodifiableList(list) : result;
+    }
+
+    /**
+     * Waits for a running call, rethrowing its failure unchanged. The wait is
+     * bounded by the caller's own deadline, if it has one.
+     */
+    private static Object await(CompletableFuture<Object> running) throws SQLException {
+        try {
+            long remaining = Deadline.remainingNanos();
+            return remaining == Long.MAX_VALUE ? running.get() : running.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw Deadline.expired();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a coalesced query", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    /**
+     * Returns the number of calls that shared another call's execution, across
+     * every SingleFlight with this one's name.
+     *
+     * @return the number of coalesced calls
+     */
+    public long getCoalesced() {
+        return this.calls.sum() - this.executions.sum();
+    }
+
+    /**
+     * Returns the fraction of calls that shared another call's execution, across
+     * every SingleFlight with this one's name.
+     *
+     * @return the coalescing ratio, between 0 and 1
+     */
+    public double getCoalescingRatio() {
+        return ratio(this.calls.sum(), this.executions.sum());
+    }
+
+    /**
+     * Returns the fraction of calls that were not executed.
+     */
+    private static double ratio(long calls, long executions) {
+        return calls == 0 ? 0 : (double) (calls - executions) / calls;
+    }
+}
@@ -1,6 +1,15 @@
 package com.flickfinder.util;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 public class Utils {
+    /**
+     * Returned by {@link #parseInt(CharSequence, int)} for a value that is not an int.
+     */
+    public static final long NOT_AN_INT = Long.MIN_VALUE;
+
     /**
      * Returns the first non-null value.
      * Equivalent to the JS ?? operator.
@@ -12,4 +21,57 @@ public class Utils {
     public static <T> T coalesce(T one, T two) {
         return one != null ? one : two;
     }
+
+    /**
+     * Parses a decimal int without throwing, so that a malformed parameter
+     * costs no more than a well formed one.
+     *
+     * @param value   the text to parse, or null if the parameter is missing
+     * @param missing the value of a missing parameter
+     * @return the int, missing if value is null, or {@link #NOT_AN_INT} if value is not an int
+     */
+    public static long parseInt(CharSequence value, int missing) {
+        if (value == null) {
+            return missing;
+        }
+        int length = value.length();
+        if (length == 0 || length > 11) {
+            return NOT_AN_INT;
+        }
+        int i = 0;
+        boolean negative = value.charAt(0) == '-';
+        if (negative || value.charAt(0) == '+') {
+            i++;
+            if (length == 1) {
+                return NOT_AN_INT;
+            }
+        }
+        long result = 0;
+        for (; i < length; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_AN_INT;
+            }
+            result = result * 10 + digit;
+        }
+        result = negative ? -result : result;
+        return result < Integer.MIN_VALUE || result > Integer.MAX_VALUE ? NOT_AN_INT : result;
+    }
+
+    /**
+     * Splits values into consecutive batches of at most the given size, such as
+     * the ids of an {@code IN (...)} list too long for one statement.
+     *
+     * @param values the values to split
+     * @param size   the largest batch
+     * @return the batches, in order; none if there are no values
+     */
+    public static <T> List<List<T>> batches(Collection<T> values, int size) {
+        List<T> all = List.copyOf(values);
+        List<List<T>> batches = new ArrayList<>((all.size() + size - 1) / size);
+        for (int from = 0; from < all.size(); from += size) {
+            batches.add(all.subList(from, Math.min(all.size(), from + size)));
+        }
+        return batches;
+    }
 }
@@ -1,15 +1,24 @@
 package com.flickfinder;
 
 import com.flickfinder.util.Database;
+import com.flickfinder.util.Metrics;
 import com.flickfinder.util.Seeder;
 import io.javalin.Javalin;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.sql.SQLException;
+
 import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.notNullValue;
 
 /**
  * These are our integration tests.
@@ -100,6 +109,42 @@ class IntegrationTests {
                 .body("votes", hasItems(2200000));
     }
 
+    /**
+     * Test that the application retrieves ratings across a range of years,
+     * best rated first.
+     */
+    @Test
+    void retrievesRatingsByYearRange() {
+        given().when().get(baseURL + "/movies/ratings?from=1970&to=1999&votes=0").then().assertThat().statusCode(200)
+                .body("id", contains(1, 2, 3))
+                .body("rating", contains(9.3f, 9.2f, 9.0f));
+    }
+
+    /**
+     * Test that the application retrieves similar movies, with the movie sharing
+     * both its star and its director first.
+     */
+    @Test
+    void retrievesSimilarMovies() {
+        given().when().get(baseURL + "/movies/2/similar").then().assertThat().statusCode(200)
+                .body("id[0]", equalTo(3))
+                .body("title[0]", equalTo("The Godfather: Part II"));
+    }
+
+    /**
+     * Test that the application answers in CBOR when asked for it, and in JSON
+     * otherwise.
+     */
+    @Test
+    void retrievesMoviesInBinaryFormat() {
+        given().header("Accept", "application/cbor").when().get(baseURL + "/movies/1").then().assertThat()
+                .statusCode(200)
+                .contentType("application/cbor");
+        given().when().get(baseURL + "/movies/1").then().assertThat()
+                .statusCode(200)
+                .contentType("application/json");
+    }
+
     /**
      * Test that the application retrieves all people.
      */
@@ -134,6 +179,167 @@ class IntegrationTests {
                 .body("year", hasItems(1972, 1974));
     }
 
+    /**
+     * Test that the application exports every movie as one JSON object per line.
+     */
+    @Test
+    void exportsMoviesAsNdjson() {
+        String body = given().when().get(baseURL + "/export/movies").then().assertThat()
+                .statusCode(200)
+                .contentType("application/x-ndjson")
+                .extract().asString();
+        String[] lines = body.split("\n");
+        assertEquals(5, lines.length);
+        assertEquals("{\"id\":1,\"title\":\"The Shawshank Redemption\",\"year\":1994}", lines[0]);
+    }
+
+    /**
+     * Test that exports are gzip compressed when the client accepts it.
+     */
+    @Test
+    void exportsStarsWithGzip() {
+        String body = given().header("Accept-Encoding", "gzip").when().get(baseURL + "/export/stars").then()
+                .assertThat()
+                .statusCode(200)
+                .header("Content-Encoding", "gzip")
+                .extract().asString();
+        assertEquals(5, body.split("\n").length);
+        assertTrue(body.startsWith("{\"movieId\":1,\"personId\":1}"));
+    }
+
+    /**
+     * Test that the application reports the query coalescing metrics.
+     */
+    @Test
+    void retrievesMetrics() {
+        given().when().get(baseURL + "/movies/1");
+        given().when().get(baseURL + "/metrics").then().assertThat().statusCode(200)
+                .body("'dao.movies.calls'", greaterThanOrEqualTo(1))
+                .body("'dao.movies.coalescingRatio'", notNullValue())
+                .body("'admission.limit'", greaterThanOrEqualTo(4))
+                .body("'admission.inflight'", equalTo(0));
+    }
+
+    /**
+     * Test that the server reports ready when warm-up is skipped.
+     */
+    @Test
+    void reportsReadyWithoutWarmUp() throws InterruptedException {
+        for (int i = 0; i < 50 && given().get(baseURL + "/ready").statusCode() != 200; i++) {
+            Thread.sleep(20);
+        }
+        given().when().get(baseURL + "/ready").then().assertThat().statusCode(200)
+                .body("ready", equalTo(true))
+                .body("phase", equalTo("ready"));
+    }
+
+    /**
+     * Test that a server started on an ephemeral port warms up against the port
+     * it was given, without failed requests.
+     */
+    @Test
+    void warmsUpOnEphemeralPort() throws SQLException, InterruptedException {
+        long failures = Metrics.counter("warmup.failures").sum();
+        Javalin ephemeral = AppConfig.startServer(0, Generation.of(1, seeder.getConnection()), 1, false);
+        try {
+            String ready = "http://localhost:" + ephemeral.port() + "/ready";
+            for (int i = 0; i < 250 && given().get(ready).statusCode() != 200; i++) {
+                Thread.sleep(20);
+            }
+            given().when().get(ready).then().assertThat().statusCode(200).body("ready", equalTo(true));
+            assertEquals(failures, Metrics.counter("warmup.failures").sum());
+        } finally {
+            ephemeral.stop();
+        }
+    }
+
+    /**
+     * Test that a warm-up replays its request mix against the server and then
+     * reports ready.
+     */
+    @Test
+    void warmUpReplaysRequestsBeforeReady() throws SQLException {
+        WarmUp warmUp = new WarmUp(port, Generation.of(1, seeder.getConnection()), 2);
+        assertEquals(false, warmUp.isReady());
+        warmUp.run();
+        assertTrue(warmUp.isReady());
+        assertEquals(1.0, warmUp.getProgress());
+        // 3 list requests, 5 per movie and 2 per person, for each of 2 rounds
+        assertEquals(2 * (3 + 5 * 5 + 2 * 5), warmUp.status().get("requests"));
+    }
+
+    /**
+     * Test that every response names the data generation it was served from,
+     * and that the generation can be inspected.
+     */
+    @Test
+    void reportsDataGeneration() {
+        given().when().get(baseURL + "/movies/1").then().assertThat().statusCode(200)
+                .header("X-Data-Generation", "1");
+        given().when().get(baseURL + "/admin/generation").then().assertThat().statusCode(200)
+                .body("generation", equalTo(1))
+                .body("reloading", equalTo(false));
+    }
+
+    /**
+     * Test that a request continues the trace it was sent with, and that the
+     * trace can be read back with a span for each phase of the request.
+     */
+    @Test
+    void tracesRequests() {
+        String traceId = "4bf92f3577b34da6a3ce929d0e0e4736";
+        given().header("traceparent", "00-" + traceId + "-00f067aa0ba902b7-01")
+                .when().get(baseURL + "/movies/1/stars").then().assertThat().statusCode(200)
+                .header("X-Trace-Id", traceId);
+        given().when().get(baseURL + "/admin/traces/" + traceId).then().assertThat().statusCode(200)
+                .body("resourceSpans[0].scopeSpans[0].spans.name", hasItems("GET /movies/{id}/stars",
+                        "bulkhead.lookup.queue", "controller", "MovieDAO.getPeopleByMovieId", "map rows", "serialize"))
+                .body("resourceSpans[0].scopeSpans[0].spans[0].parentSpanId", equalTo("00f067aa0ba902b7"));
+        given().when().get(baseURL + "/admin/traces/0123").then().assertThat().statusCode(404);
+    }
+
+    /**
+     * Test that the fields parameter narrows each row, and that unknown fields
+     * are rejected.
+     */
+    @Test
+    void narrowsFields() {
+        given().when().get(baseURL + "/movies/ratings/1994?votes=0&fields=title,rating").then().assertThat()
+                .statusCode(200).body("[0].keySet()", contains("title", "rating"));
+        String body = given().when().get(baseURL + "/export/people?fields=id").then().assertThat()
+                .statusCode(200).extract().asString();
+        assertTrue(body.startsWith("{\"id\":1}\n"), body);
+        given().when().get(baseURL + "/movies?fields=id,rating").then().assertThat().statusCode(400)
+                .body(equalTo("Invalid fields parameter"));
+    }
+
+    /**
+     * Test that the include parameter nests related rows in each row.
+     */
+    @Test
+    void includesRelatedRows() {
+        given().when().get(baseURL + "/movies/1?include=stars,rating&fields=title").then().assertThat()
+                .statusCode(200).body("keySet()", contains("title", "stars", "rating"))
+                .body("stars.name", contains("Tim Robbins", "Morgan Freeman"))
+                .body("rating.votes", equalTo(2200000));
+        given().when().get(baseURL + "/movies?include=stars").then().assertThat()
+                .statusCode(200).body("find { it.id == 4 }.stars", hasSize(0));
+        given().when().get(baseURL + "/people?include=movies.stars").then().assertThat()
+                .statusCode(200).body("find { it.id == 4 }.movies.title", contains("The Godfather", "The Godfather: Part II"))
+                .body("find { it.id == 2 }.movies[0].stars.name", contains("Tim Robbins", "Morgan Freeman"));
+        given().when().get(baseURL + "/people?include=rating").then().assertThat().statusCode(400)
+                .body(equalTo("Invalid include parameter"));
+        given().when().get(baseURL + "/people?include=movies.stars.movies").then().assertThat().statusCode(400);
+    }
+
+    /**
+     * Test that an in-memory database, which has no file, cannot be reloaded.
+     */
+    @Test
+    void refusesReloadWithoutFile() {
+        given().when().post(baseURL + "/admin/reload").then().assertThat().statusCode(400);
+    }
+
     /**
      * Tears down the application after each test.
      * We want to make sure that each test runs in isolation.
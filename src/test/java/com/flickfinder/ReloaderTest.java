@@ -0,0 +1,115 @@
+package com.flickfinder;
+
+import com.flickfinder.snapshot.SnapshotCompiler;
+import com.flickfinder.util.Seeder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for swapping the data being served without a restart.
+ */
+class ReloaderTest {
+
+    /**
+     * Writes a seeded database file, optionally with a sixth movie.
+     */
+    private static Path seed(Path file, boolean withExtraMovie) throws SQLException {
+        Seeder seeder = new Seeder("jdbc:sqlite:" + file);
+        if (withExtraMovie) {
+            try (Statement statement = seeder.getConnection().createStatement()) {
+                statement.execute("INSERT INTO movies (id, title, year) VALUES (6, 'Pulp Fiction', 1994)");
+            }
+        }
+        seeder.closeConnection();
+        return file;
+    }
+
+    /**
+     * Test that a reload switches new requests to the new file while requests
+     * already running finish on the old one, which is closed afterwards.
+     */
+    @Test
+    void testSwitchesGenerationAndDrainsOld(@TempDir Path directory) throws Exception {
+        Path file = seed(directory.resolve("movies.db"), false);
+        Reloader reloader = new Reloader(Generation.load(1, file));
+        Generation first = reloader.current();
+        assertNull(first.getMovieDao().getMovieById(6));
+
+        // a request in flight on the first generation
+        assertTrue(first.acquire());
+
+        Path refreshed = seed(directory.resolve("movies-new.db"), true);
+        Files.move(refreshed, file, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        Generation second = reloader.reload(file);
+
+        assertEquals(2, second.getNumber());
+        assertSame(second, reloader.current());
+        assertEquals("Pulp Fiction", reloader.current().getMovieDao().getMovieById(6).getTitle());
+
+        // the request in flight still reads its own copy
+        assertFalse(first.isClosed());
+        assertNull(first.getMovieDao().getMovieById(6));
+        assertEquals(1, ((List<?>) reloader.status().get("draining")).size());
+
+        first.release();
+        assertTrue(first.isClosed());
+        assertFalse(first.acquire());
+    }
+
+    /**
+     * Test that a file that fails validation leaves the current generation in place.
+     */
+    @Test
+    void testKeepsServingWhenReloadFails(@TempDir Path directory) throws Exception {
+        Path file = seed(directory.resolve("movies.db"), false);
+        Reloader reloader = new Reloader(Generation.load(1, file));
+
+        Path empty = directory.resolve("empty.db");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + empty);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE movies (id INTEGER, title TEXT, year INTEGER)");
+        }
+        assertThrows(SQLException.class, () -> reloader.reload(empty));
+
+        Path garbage = Files.writeString(directory.resolve("garbage.db"), "this is not a database");
+        assertThrows(SQLException.class, () -> reloader.reload(garbage));
+        assertThrows(IOException.class, () -> reloader.reload(directory.resolve("missing.db")));
+
+        assertEquals(1, reloader.current().getNumber());
+        assertNotNull(reloader.current().getMovieDao().getMovieById(1));
+        assertNotNull(reloader.status().get("lastError"));
+    }
+
+    /**
+     * Test that opening a snapshot does not build the similarity index, that the
+     * first lookup builds it, and that a reload builds it before switching.
+     */
+    @Test
+    void testBuildsSimilarityIndexOnFirstUse(@TempDir Path directory) throws Exception {
+        Path database = seed(directory.resolve("movies.db"), false);
+        Path file = directory.resolve("movies.snap");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database)) {
+            SnapshotCompiler.compile(connection, file);
+        }
+        Reloader reloader = new Reloader(Generation.load(1, file));
+        Generation first = reloader.current();
+        assertFalse(first.isSimilarityIndexBuilt());
+        assertFalse(first.getSimilarityIndex().similar(1, 5).isEmpty());
+        assertTrue(first.isSimilarityIndexBuilt());
+
+        Generation second = reloader.reload(file);
+        assertTrue(second.isSimilarityIndexBuilt());
+        first.release();
+    }
+}
@@ -0,0 +1,77 @@
+package com.flickfinder.controller;
+
+import io.javalin.http.Context;
+import io.javalin.http.ForbiddenResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test for the admin controller.
+ */
+class AdminControllerTest {
+
+    /**
+     * The context object, later we will mock it.
+     */
+    private Context ctx;
+
+    /**
+     * The request the context wraps.
+     */
+    private HttpServletRequest req;
+
+    @BeforeEach
+    void setUp() {
+        ctx = mock(Context.class);
+        req = mock(HttpServletRequest.class);
+        when(ctx.req()).thenReturn(req);
+    }
+
+    /**
+     * Tests that without a token only clients on this machine are served.
+     */
+    @Test
+    void testServesOnlyLocalClientsWithoutToken() {
+        AdminController admin = new AdminController(null);
+        for (String local : new String[]{"127.0.0.1", "127.0.1.1", "0:0:0:0:0:0:0:1", "[::1]"}) {
+            when(req.getRemoteAddr()).thenReturn(local);
+            assertDoesNotThrow(() -> admin.check(ctx), local);
+        }
+        for (String remote : new String[]{"203.0.113.5", "10.0.0.1", "2001:db8::1"}) {
+            when(req.getRemoteAddr()).thenReturn(remote);
+            assertThrows(ForbiddenResponse.class, () -> admin.check(ctx), remote);
+        }
+    }
+
+    /**
+     * Tests that with a token every client must carry it, local or not.
+     */
+    @Test
+    void testRequiresTokenWhenConfigured() {
+        AdminController admin = new AdminController("s3cret");
+        when(req.getRemoteAddr()).thenReturn("127.0.0.1");
+        assertThrows(ForbiddenResponse.class, () -> admin.check(ctx));
+
+        when(ctx.header(AdminController.TOKEN_HEADER)).thenReturn("s3cre");
+        assertThrows(ForbiddenResponse.class, () -> admin.check(ctx));
+
+        when(req.getRemoteAddr()).thenReturn("203.0.113.5");
+        when(ctx.header(AdminController.TOKEN_HEADER)).thenReturn("s3cret");
+        assertDoesNotThrow(() -> admin.check(ctx));
+    }
+
+    /**
+     * Tests that an empty token is treated as no token.
+     */
+    @Test
+    void testEmptyTokenServesLocalClients() {
+        AdminController admin = new AdminController("");
+        when(req.getRemoteAddr()).thenReturn("127.0.0.1");
+        assertDoesNotThrow(() -> admin.check(ctx));
+    }
+}
@@ -0,0 +1,162 @@
+package com.flickfinder.controller;
+
+import com.flickfinder.AppConfig;
+import com.flickfinder.util.AdaptiveLimit;
+import com.flickfinder.util.AdaptiveLimit.Priority;
+import com.flickfinder.util.Database;
+import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Seeder;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sqlite.Function;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+class AdmissionControllerTest {
+    /**
+     * The context object, later we will mock it.
+     */
+    private Context ctx;
+
+    /**
+     * The limit, with room for two requests.
+     */
+    private AdaptiveLimit limit;
+
+    /**
+     * The admission controller.
+     */
+    private AdmissionController admissionController;
+
+    @BeforeEach
+    void setUp() {
+        ctx = mock(Context.class);
+        limit = new AdaptiveLimit("test.admission", 2, 2, 2, 0.5);
+        admissionController = new AdmissionController(limit)
+                .classify("/movies/{id}", Priority.CHEAP)
+                .classify("/movies/ratings/{year}", Priority.EXPENSIVE);
+    }
+
+    /**
+     * Tests that an admitted request holds a slot until it completes.
+     */
+    @Test
+    void testAdmitsAndReleases() {
+        when(ctx.endpointHandlerPath()).thenReturn("/movies/{id}");
+        admissionController.admit(ctx);
+        verify(ctx, never()).status(503);
+        assertEquals(1, limit.getInflight());
+
+        when(ctx.attribute("admission.started")).thenReturn(System.nanoTime());
+        when(ctx.statusCode()).thenReturn(200);
+        admissionController.complete(ctx);
+        assertEquals(0, limit.getInflight());
+    }
+
+    /**
+     * Tests that a running server sheds expensive requests over their share of
+     * the limit with a 503 and Retry-After. The database is held by a query that
+     * waits for the test, so the admitted requests keep their slots until the
+     * others have been shed. The trace of a shed request must still be kept.
+     */
+    @Test
+    void testShedsOnRunningServer() throws Exception {
+        int share = (int) (Defaults.ADMISSION_INITIAL_LIMIT * Defaults.ADMISSION_EXPENSIVE_SHARE);
+        Seeder seeder = new Seeder("jdbc:sqlite::memory:");
+        Database.getInstance(seeder.getConnection());
+        Javalin app = AppConfig.startServer(6400);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Function.create(seeder.getConnection(), "hold", new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                holding.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                result(1);
+            }
+        });
+        Thread holder = new Thread(() -> {
+            try (Statement stmt = seeder.getConnection().createStatement()) {
+                stmt.executeQuery("SELECT hold()").close();
+            } catch (SQLException e) {
+                // only the hold matters
+            }
+        });
+        try {
+            holder.start();
+            assertTrue(holding.await(10, TimeUnit.SECONDS));
+
+            HttpClient client = HttpClient.newHttpClient();
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:6400/movies")).build();
+            CountDownLatch shed = new CountDownLatch(Defaults.ADMISSION_INITIAL_LIMIT - share);
+            Queue<String> shedTraces = new ConcurrentLinkedQueue<>();
+            List<CompletableFuture<HttpResponse<Void>>> pending = new ArrayList<>();
+            for (int i = 0; i < Defaults.ADMISSION_INITIAL_LIMIT; i++) {
+                pending.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, e) -> {
+                    if (response != null && response.statusCode() == 503
+                            && "1".equals(response.headers().firstValue("Retry-After").orElse(null))) {
+                        response.headers().firstValue("X-Trace-Id").ifPresent(shedTraces::add);
+                        shed.countDown();
+                    }
+                }));
+            }
+            // no admitted request completes before the release, so every one past the share is shed
+            assertTrue(shed.await(10, TimeUnit.SECONDS));
+
+            release.countDown();
+            int admitted = 0;
+            for (CompletableFuture<HttpResponse<Void>> response : pending) {
+                if (response.get(10, TimeUnit.SECONDS).statusCode() == 200) {
+                    admitted++;
+                }
+            }
+            assertEquals(share, admitted);
+
+            // a shed request still finishes its trace, and failed traces are always kept
+            assertEquals(Defaults.ADMISSION_INITIAL_LIMIT - share, shedTraces.size());
+            HttpRequest trace = HttpRequest.newBuilder(
+                    URI.create("http://localhost:6400/admin/traces/" + shedTraces.peek())).build();
+            assertEquals(200, client.send(trace, HttpResponse.BodyHandlers.discarding()).statusCode());
+        } finally {
+            release.countDown();
+            holder.join();
+            app.stop();
+            seeder.closeConnection();
+        }
+    }
+
+    /**
+     * Tests that routes without a priority are never shed.
+     */
+    @Test
+    void testIgnoresUnclassifiedRoutes() {
+        when(ctx.endpointHandlerPath()).thenReturn("/ready");
+        for (int i = 0; i < 5; i++) {
+            admissionController.admit(ctx);
+        }
+        verify(ctx, never()).status(503);
+        assertEquals(0, limit.getInflight());
+    }
+}
@@ -0,0 +1,127 @@
+package com.flickfinder.controller;
+
+import com.flickfinder.AppConfig;
+import com.flickfinder.util.Database;
+import com.flickfinder.util.Deadline;
+import com.flickfinder.util.Metrics;
+import com.flickfinder.util.Seeder;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+class DeadlineControllerTest {
+    /**
+     * The context object, later we will mock it.
+     */
+    private Context ctx;
+
+    /**
+     * The deadline controller.
+     */
+    private DeadlineController deadlineController;
+
+    @BeforeEach
+    void setUp() {
+        ctx = mock(Context.class);
+        deadlineController = new DeadlineController().route("/movies/ratings/{year}", 1);
+    }
+
+    /**
+     * Tests that a request that ran out of time gets a 504.
+     */
+    @Test
+    void testReturns504WhenDeadlinePassed() throws Exception {
+        when(ctx.endpointHandlerPath()).thenReturn("/movies/ratings/{year}");
+        deadlineController.start(ctx);
+        Thread.sleep(20);
+        assertThrows(SQLTimeoutException.class, () -> Deadline.watch(null));
+        deadlineController.finish(ctx);
+        verify(ctx).status(504);
+    }
+
+    /**
+     * Tests that routes without a deadline are left alone.
+     */
+    @Test
+    void testIgnoresRoutesWithoutDeadline() {
+        when(ctx.endpointHandlerPath()).thenReturn("/movies/{id}");
+        deadlineController.start(ctx);
+        assertEquals(Long.MAX_VALUE, Deadline.remainingNanos());
+        deadlineController.finish(ctx);
+        verify(ctx, never()).status(504);
+    }
+
+    /**
+     * Tests that a route is found by its path before its handler has been
+     * matched, when Javalin reports every route as {@code *}.
+     */
+    @Test
+    void testMatchesRouteByPath() {
+        when(ctx.endpointHandlerPath()).thenReturn("*");
+        when(ctx.path()).thenReturn("/movies/ratings/1994/");
+        deadlineController.start(ctx);
+        assertTrue(Deadline.remainingNanos() < Long.MAX_VALUE);
+        Deadline.end();
+
+        when(ctx.path()).thenReturn("/movies/3");
+        deadlineController.start(ctx);
+        assertEquals(Long.MAX_VALUE, Deadline.remainingNanos());
+    }
+
+    /**
+     * Tests that a running server cancels the query of a request whose client
+     * hangs up. The movies are swapped for a view that never finishes reading,
+     * so the request's query is still running when the socket is closed, long
+     * before its deadline passes.
+     */
+    @Test
+    void testCancelsQueryWhenClientHangsUp() throws Exception {
+        Seeder seeder = new Seeder("jdbc:sqlite::memory:");
+        Database.getInstance(seeder.getConnection());
+        Javalin app = AppConfig.startServer(6500);
+        try {
+            try (Statement stmt = seeder.getConnection().createStatement()) {
+                stmt.execute("ALTER TABLE movies RENAME TO all_movies");
+                stmt.execute("CREATE VIEW movies AS SELECT * FROM all_movies WHERE"
+                        + " (WITH RECURSIVE n(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM n)"
+                        + " SELECT count(*) FROM n) > 0");
+            }
+            long cancelled = Metrics.counter("queries.cancelled").sum();
+            long timedOut = Metrics.counter("queries.timedOut").sum();
+            try (Socket socket = new Socket("localhost", 6500)) {
+                OutputStream out = socket.getOutputStream();
+                out.write("GET /movies HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                Thread.sleep(200);
+            }
+            long waited = System.nanoTime();
+            while (Metrics.counter("queries.cancelled").sum() == cancelled
+                    && System.nanoTime() - waited < 1_000_000_000L) {
+                Thread.sleep(10);
+            }
+            assertEquals(cancelled + 1, Metrics.counter("queries.cancelled").sum());
+            assertEquals(timedOut, Metrics.counter("queries.timedOut").sum());
+        } finally {
+            app.stop();
+            seeder.closeConnection();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        Deadline.end();
+    }
+}
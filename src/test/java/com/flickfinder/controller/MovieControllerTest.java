@@ -1,6 +1,8 @@
 package com.flickfinder.controller;
 
 import com.flickfinder.dao.MovieDAO;
+import com.flickfinder.index.Credits;
+import com.flickfinder.index.MinHashIndex;
 import com.flickfinder.util.Defaults;
 import io.javalin.http.Context;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,6 +10,7 @@ import org.junit.jupiter.api.Test;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.mockito.Mockito.*;
 
@@ -135,6 +138,17 @@ class MovieControllerTest {
         verify(ctx).status(400);
     }
 
+    /**
+     * Test that an id too large for an int is rejected without reaching the DAO.
+     */
+    @Test
+    void testThrows400ExceptionWhenIdOverflows() throws SQLException {
+        when(ctx.pathParam("id")).thenReturn("2147483648");
+        movieController.getMovieById(ctx);
+        verify(ctx).status(400);
+        verify(movieDAO, never()).getMovieById(anyInt());
+    }
+
     /**
      * Tests the getRatingsByYear method.
      * We expect to get a list of movies released in the specified year.
@@ -213,6 +227,71 @@ class MovieControllerTest {
         verify(ctx).status(400);
     }
 
+    /**
+     * Tests the getRatingsByYearRange method.
+     * We expect the range and the default limit and votes to be passed to the DAO.
+     */
+    @Test
+    void testGetRatingsByYearRange() {
+        when(ctx.queryParam("from")).thenReturn("1990");
+        when(ctx.queryParam("to")).thenReturn("1999");
+        movieController.getRatingsByYearRange(ctx);
+        try {
+            verify(movieDAO).getRatingsByYearRange(Defaults.LIMIT, Defaults.VOTES, 1990, 1999);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Test that the controller returns a 400 status code when the range is missing.
+     */
+    @Test
+    void testThrows400ExceptionWhenMissingYearRange() {
+        when(ctx.queryParam("from")).thenReturn("1990");
+        movieController.getRatingsByYearRange(ctx);
+        verify(ctx).status(400);
+    }
+
+    /**
+     * Test that the controller returns a 400 status code when the range is
+     * reversed.
+     */
+    @Test
+    void testThrows400ExceptionWhenReversedYearRange() {
+        when(ctx.queryParam("from")).thenReturn("1999");
+        when(ctx.queryParam("to")).thenReturn("1990");
+        movieController.getRatingsByYearRange(ctx);
+        verify(ctx).status(400);
+    }
+
+    /**
+     * Test that the controller returns a 400 status code when the range is
+     * wider than an int can hold.
+     */
+    @Test
+    void testThrows400ExceptionWhenYearRangeOverflows() {
+        when(ctx.queryParam("from")).thenReturn(Integer.toString(Integer.MIN_VALUE));
+        when(ctx.queryParam("to")).thenReturn("0");
+        movieController.getRatingsByYearRange(ctx);
+        verify(ctx).status(400);
+    }
+
+    /**
+     * Test that the controller returns a 500 status code when a database error
+     * occurs
+     *
+     * @throws SQLException
+     */
+    @Test
+    void testThrows500ExceptionWhenGetRatingsByYearRangeDatabaseError() throws SQLException {
+        when(ctx.queryParam("from")).thenReturn("1990");
+        when(ctx.queryParam("to")).thenReturn("1999");
+        when(movieDAO.getRatingsByYearRange(Defaults.LIMIT, Defaults.VOTES, 1990, 1999)).thenThrow(new SQLException());
+        movieController.getRatingsByYearRange(ctx);
+        verify(ctx).status(500);
+    }
+
     /**
      * Tests the getPeopleByMovieId method.
      * We expect to get a list of people who worked on the movie with the specified id.
@@ -266,4 +345,40 @@ class MovieControllerTest {
         movieController.getPeopleByMovieId(ctx);
         verify(ctx).status(400);
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests the getSimilarMovies method.
+     * Movies 2 and 3 share all of their people, so the similar movie of 2 is
+     * looked up as movie 3.
+     */
+    @Test
+    void testGetSimilarMovies() throws SQLException {
+        Credits credits = new Credits.Builder().add(2, 3).add(2, 4).add(3, 3).add(3, 4).build();
+        movieController = new MovieController(movieDAO, MinHashIndex.build(credits, 4, 2, 1024));
+        when(ctx.pathParam("id")).thenReturn("2");
+        movieController.getSimilarMovies(ctx);
+        verify(movieDAO).getMoviesByIds(List.of(3));
+    }
+
+    /**
+     * Test that the controller returns a 404 status code when there are no
+     * similar movies.
+     */
+    @Test
+    void testThrows404ExceptionWhenNoSimilarMovies() {
+        when(ctx.pathParam("id")).thenReturn("1");
+        movieController.getSimilarMovies(ctx);
+        verify(ctx).status(404);
+    }
+
+    /**
+     * Test that the controller returns a 400 status code when an invalid id is
+     * passed.
+     */
+    @Test
+    void testThrows400ExceptionWhenInvalidIdSimilarMovies() {
+        when(ctx.pathParam("id")).thenReturn("<non-numeric>");
+        movieController.getSimilarMovies(ctx);
+        verify(ctx).status(400);
+    }
+}
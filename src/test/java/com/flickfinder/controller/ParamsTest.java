@@ -0,0 +1,76 @@
+package com.flickfinder.controller;
+
+import io.javalin.http.Context;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test for binding request parameters.
+ */
+class ParamsTest {
+
+    private static final IntParam ID = IntParam.path("id");
+    private static final IntParam FROM = IntParam.query("from");
+    private static final IntParam LIMIT = IntParam.query("limit", 50).min(1).max(100);
+
+    /**
+     * The context object, later we will mock it.
+     */
+    private Context ctx;
+
+    @BeforeEach
+    void setUp() {
+        ctx = mock(Context.class);
+    }
+
+    /**
+     * Test that valid and left out parameters bind to their values.
+     */
+    @Test
+    void testBindsValuesAndDefaults() {
+        when(ctx.pathParam("id")).thenReturn("42");
+        when(ctx.queryParam("from")).thenReturn("-5");
+        Params params = new Params(ctx);
+        assertEquals(42, params.get(ID));
+        assertEquals(-5, params.get(FROM));
+        assertEquals(50, params.get(LIMIT));
+        assertFalse(params.rejected());
+        verify(ctx, never()).status(anyInt());
+    }
+
+    /**
+     * Test that a missing, malformed or out of range parameter is rejected with a
+     * 400 naming it, and that only the first rejection is sent.
+     */
+    @Test
+    void testRejectsFirstBadParameter() {
+        assertRejects("Missing from parameter", FROM, null);
+        assertRejects("Invalid id parameter", ID, "1e3");
+        assertRejects("Invalid limit parameter", LIMIT, "0");
+        assertRejects("Invalid limit parameter", LIMIT, "101");
+
+        ctx = mock(Context.class);
+        when(ctx.pathParam("id")).thenReturn("x");
+        Params params = new Params(ctx);
+        params.get(ID);
+        params.get(FROM);
+        params.reject("Invalid year range");
+        verify(ctx, times(1)).status(400);
+        verify(ctx).result("Invalid id parameter");
+        verify(ctx, never()).queryParam("from");
+    }
+
+    private void assertRejects(String message, IntParam param, String value) {
+        ctx = mock(Context.class);
+        when(ctx.pathParam(param.getName())).thenReturn(value);
+        when(ctx.queryParam(param.getName())).thenReturn(value);
+        Params params = new Params(ctx);
+        assertEquals(0, params.get(param));
+        assertTrue(params.rejected());
+        verify(ctx).status(400);
+        verify(ctx).result(message);
+    }
+}
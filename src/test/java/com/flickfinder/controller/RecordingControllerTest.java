@@ -0,0 +1,113 @@
+package com.flickfinder.controller;
+
+import com.flickfinder.dao.MovieDAO;
+import com.flickfinder.jfr.RequestEvent;
+import com.flickfinder.util.Seeder;
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test for the flight recorder events and the recording endpoints.
+ */
+class RecordingControllerTest {
+
+    private Context ctx;
+    private RecordingController recordingController;
+    private Seeder seeder;
+
+    @BeforeEach
+    void setUp() {
+        ctx = mock(Context.class);
+        recordingController = new RecordingController();
+        seeder = new Seeder("jdbc:sqlite::memory:");
+    }
+
+    /**
+     * Tests that requests and queries are recorded with their route and SQL.
+     */
+    @Test
+    void testRecordsRequestsAndQueries() throws Exception {
+        Path file = Files.createTempFile("recording-test-", ".jfr");
+        try (Recording recording = RecordingController.start(Configuration.create(new StringReader(
+                "<configuration version=\"2.0\"></configuration>")), Duration.ZERO)) {
+            when(ctx.method()).thenReturn(HandlerType.GET);
+            when(ctx.endpointHandlerPath()).thenReturn("/movies/{id}");
+            when(ctx.path()).thenReturn("/movies/1");
+            when(ctx.statusCode()).thenReturn(200);
+            recordingController.begin(ctx);
+            ArgumentCaptor<RequestEvent> event = ArgumentCaptor.forClass(RequestEvent.class);
+            verify(ctx).attribute(eq("jfr.request"), event.capture());
+            when(ctx.<RequestEvent>attribute("jfr.request")).thenReturn(event.getValue());
+
+            assertNotNull(new MovieDAO(seeder.getConnection()).getMovieById(1));
+            recordingController.commit(ctx);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        RecordedEvent query = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.flickfinder.Query"))
+                .findFirst().orElseThrow();
+        assertEquals("MovieDAO.getMovieById", query.getString("method"));
+        assertTrue(query.getString("sql").contains("FROM movies WHERE id = ?"));
+        assertEquals(1, query.getInt("rows"));
+        RecordedEvent request = events.stream()
+                .filter(e -> e.getEventType().getName().equals("com.flickfinder.Request"))
+                .findFirst().orElseThrow();
+        assertEquals("/movies/{id}", request.getString("route"));
+        assertEquals(200, request.getInt("status"));
+    }
+
+    /**
+     * Tests that requests are not timed while no recording is running.
+     */
+    @Test
+    void testNothingRecordedWhenOff() {
+        recordingController.begin(ctx);
+        verify(ctx, never()).attribute(eq("jfr.request"), any());
+    }
+
+    /**
+     * Tests that a recording can be started once, stopped and then dumped.
+     */
+    @Test
+    void testStartStopAndDump() {
+        recordingController.handleDump(ctx);
+        verify(ctx).status(404);
+
+        recordingController.handleStart(ctx);
+        verify(ctx).status(201);
+        recordingController.handleStart(ctx);
+        verify(ctx).status(409);
+
+        recordingController.handleStop(ctx);
+        assertEquals("STOPPED", recordingController.status().get("state"));
+        recordingController.handleDump(ctx);
+        verify(ctx).contentType("application/octet-stream");
+    }
+
+    @AfterEach
+    void tearDown() {
+        recordingController.close();
+        seeder.closeConnection();
+    }
+}
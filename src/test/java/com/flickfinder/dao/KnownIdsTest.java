@@ -0,0 +1,86 @@
+package com.flickfinder.dao;
+
+import com.flickfinder.index.IdFilter;
+import com.flickfinder.util.Seeder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test that lookups of ids the database does not hold skip the database.
+ * The connection is closed part way through, so any query after that fails.
+ */
+class KnownIdsTest {
+
+    Seeder seeder;
+    Connection connection;
+
+    @BeforeEach
+    void setUp() {
+        seeder = new Seeder("jdbc:sqlite::memory:");
+        connection = seeder.getConnection();
+    }
+
+    /**
+     * Test that ids rejected by the filters are answered without a query.
+     */
+    @Test
+    void testFilteredIdsSkipDatabase() throws SQLException {
+        KnownIds known = KnownIds.load(connection);
+        MovieDAO movieDAO = new MovieDAO(connection, known);
+        PersonDAO personDAO = new PersonDAO(connection, known);
+        assertNotNull(movieDAO.getMovieById(1));
+        connection.close();
+
+        assertNull(movieDAO.getMovieById(99));
+        assertTrue(movieDAO.getPeopleByMovieId(99).isEmpty());
+        assertNull(personDAO.getPersonById(-3));
+        assertTrue(personDAO.getMoviesByPersonId(99).isEmpty());
+        assertThrows(SQLException.class, () -> movieDAO.getMovieById(2));
+    }
+
+    /**
+     * Test that joins the relationship bitmaps know to be empty skip the database.
+     */
+    @Test
+    void testEmptyJoinsSkipDatabase() throws SQLException {
+        KnownIds known = KnownIds.load(connection);
+        MovieDAO movieDAO = new MovieDAO(connection, known);
+        PersonDAO personDAO = new PersonDAO(connection, known);
+        Relations relations = known.getRelations();
+        assertTrue(relations.hasDirected(3));
+        assertFalse(relations.hasDirected(1));
+        assertTrue(relations.isRated(4));
+        assertNotNull(movieDAO.getMovieById(4));
+        connection.close();
+
+        // The Dark Knight has no stars and Christopher Nolan only directs
+        assertTrue(movieDAO.getPeopleByMovieId(4).isEmpty());
+        assertTrue(personDAO.getMoviesByPersonId(3).isEmpty());
+        assertThrows(SQLException.class, () -> movieDAO.getPeopleByMovieId(1));
+    }
+
+    /**
+     * Test that an id the filter let through but the database lacks is not
+     * queried a second time.
+     */
+    @Test
+    void testNegativeCache() throws SQLException {
+        PersonDAO personDAO = new PersonDAO(connection, new KnownIds(IdFilter.ALL, IdFilter.ALL));
+        assertNull(personDAO.getPersonById(99));
+        connection.close();
+
+        assertNull(personDAO.getPersonById(99));
+        assertThrows(SQLException.class, () -> personDAO.getPersonById(98));
+    }
+
+    @AfterEach
+    void tearDown() {
+        seeder.closeConnection();
+    }
+}
@@ -1,16 +1,23 @@
 package com.flickfinder.dao;
 
+import com.flickfinder.index.Credits;
+import com.flickfinder.json.Fields;
 import com.flickfinder.model.Movie;
 import com.flickfinder.model.MovieRating;
 import com.flickfinder.model.Person;
+import com.flickfinder.model.Star;
 import com.flickfinder.util.Database;
 import com.flickfinder.util.Seeder;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -111,6 +118,40 @@ class MovieDAOTest {
         }
     }
 
+    /**
+     * Tests the getMoviesByIds method.
+     * We expect the movies in the order of the ids, skipping ids with no movie.
+     */
+    @Test
+    void testGetMoviesByIds() {
+        try {
+            List<Movie> movies = movieDAO.getMoviesByIds(List.of(3, 1000, 1));
+            assertEquals(2, movies.size());
+            assertEquals(3, movies.get(0).getId());
+            assertEquals(1, movies.get(1).getId());
+        } catch (SQLException e) {
+            fail("SQLException thrown");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tests the getCredits method.
+     * Every seeded movie has a director, so we expect all 5 movies, with the stars
+     * and the director of movie 1 credited on it.
+     */
+    @Test
+    void testGetCredits() {
+        try {
+            Credits credits = movieDAO.getCredits();
+            assertEquals(5, credits.size());
+            assertEquals(3, credits.count(credits.indexOf(1)));
+        } catch (SQLException e) {
+            fail("SQLException thrown");
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Tests the getRatingsByYear method.
      * We expect to get a list of all movies in the database with the specified year.
@@ -128,6 +169,41 @@ class MovieDAOTest {
         }
     }
 
+    /**
+     * Tests the getRatingsByYearRange method.
+     * Movies from 1972, 1974 and 1994 fall inside the range, so we expect them
+     * back merged in descending order of rating.
+     */
+    @Test
+    void testGetRatingsByYearRange() {
+        try {
+            List<MovieRating> movies = movieDAO.getRatingsByYearRange(10, 0, 1970, 1999);
+            assertEquals(3, movies.size());
+            assertEquals(1, movies.get(0).getId());
+            assertEquals(2, movies.get(1).getId());
+            assertEquals(3, movies.get(2).getId());
+        } catch (SQLException e) {
+            fail("SQLException thrown");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tests the getRatingsByYearRange method stops once the limit is reached.
+     */
+    @Test
+    void testGetRatingsByYearRangeWithLimit() {
+        try {
+            List<MovieRating> movies = movieDAO.getRatingsByYearRange(2, 0, 1950, 2010);
+            assertEquals(2, movies.size());
+            assertEquals(9.3, movies.get(0).getRating());
+            assertEquals(9.2, movies.get(1).getRating());
+        } catch (SQLException e) {
+            fail("SQLException thrown");
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Tests the getPeopleByMovieId method.
      * We expect to get a list of all people in the database with the specified movie id.
@@ -145,6 +221,97 @@ class MovieDAOTest {
         }
     }
 
+    /**
+     * Tests the getPeopleByMovieIds method.
+     * The stars of several movies are read at once and grouped by movie;
+     * movie 4 has no stars and an unknown id has none either.
+     */
+    @Test
+    void testGetPeopleByMovieIds() {
+        try {
+            Map<Integer, List<Person>> people = movieDAO.getPeopleByMovieIds(List.of(1, 2, 4, 1000));
+            assertEquals(2, people.get(1).size());
+            assertEquals(4, people.get(2).get(0).getId());
+            assertNull(people.get(4));
+            assertNull(people.get(1000));
+        } catch (SQLException e) {
+            fail("SQLException thrown");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tests that the relations of more movies than SQLite takes parameters in one
+     * statement are read in batches, each movie once.
+     */
+    @Test
+    void testGetRelationsOfManyMovies() throws SQLException {
+        int count = 300_000;
+        try (Statement stmt = seeder.getConnection().createStatement()) {
+            stmt.execute("WITH RECURSIVE n(value) AS (SELECT 1 UNION ALL SELECT value + 1 FROM n WHERE value < "
+                    + count + ") INSERT INTO movies (id, title, year) SELECT 100 + value, 'Movie ' || value, 2000 FROM n");
+            stmt.execute("INSERT INTO stars (movie_id, person_id) SELECT id, 1 FROM movies WHERE id > 100");
+            stmt.execute("INSERT INTO ratings (movie_id, rating, votes) SELECT id, 5.0, 10 FROM movies WHERE id > 100");
+            // without indexes every batch would scan both tables
+            stmt.execute("CREATE INDEX stars_movie ON stars (movie_id)");
+            stmt.execute("CREATE INDEX ratings_movie ON ratings (movie_id)");
+        }
+        movieDAO = new MovieDAO();
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= 100 + count; id++) {
+            ids.add(id);
+        }
+
+        Map<Integer, List<Person>> people = movieDAO.getPeopleByMovieIds(ids);
+        assertEquals(count + 4, people.size());
+        assertEquals(1, people.get(100 + count).size());
+        assertEquals(count + 5, movieDAO.getRatingsByMovieIds(ids).size());
+    }
+
+    /**
+     * Tests that a person starring in several movies is read as one shared instance.
+     * Person 4 stars in movies 2 and 3.
+     */
+    @Test
+    void testSharesPeopleAcrossMovies() throws SQLException {
+        Person inSecond = movieDAO.getPeopleByMovieId(2).get(0);
+        Person inThird = movieDAO.getPeopleByMovieId(3).get(0);
+        assertEquals(4, inSecond.getId());
+        assertSame(inSecond, inThird);
+    }
+
+    /**
+     * Tests the export methods.
+     * We expect every seeded row to be streamed, in id order for movies.
+     */
+    @Test
+    void testExports() {
+        try {
+            List<Movie> movies = new ArrayList<>();
+            assertEquals(5, movieDAO.exportMovies(movies::add, Fields.all(Movie.class)));
+            assertEquals(1, movies.get(0).getId());
+            assertEquals(5, movies.get(4).getId());
+            assertEquals(5, movieDAO.exportRatings(rating -> { }, Fields.all(MovieRating.class)));
+            assertEquals(5, movieDAO.exportStars(star -> { }, Fields.all(Star.class)));
+        } catch (SQLException | IOException e) {
+            fail("Exception thrown");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tests that an export asked for some fields leaves the others unread.
+     */
+    @Test
+    void testExportReadsOnlyRequestedFields() throws SQLException, IOException {
+        List<Movie> movies = new ArrayList<>();
+        assertEquals(5, movieDAO.exportMovies(movies::add, Fields.parse(Movie.class, "id")));
+        assertEquals(1, movies.get(0).getId());
+        assertEquals(5, movies.get(4).getId());
+        assertNull(movies.get(0).getTitle());
+        assertEquals(0, movies.get(0).getYear());
+    }
+
     /**
      * Closes the database connection.
      */
@@ -1,13 +1,19 @@
 package com.flickfinder.dao;
 
+import com.flickfinder.json.Fields;
 import com.flickfinder.model.Movie;
 import com.flickfinder.model.Person;
 import com.flickfinder.util.Database;
+import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Metrics;
 import com.flickfinder.util.Seeder;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -119,6 +125,73 @@ class PersonDAOTest {
         }
     }
 
+    /**
+     * Tests that a person's movies come back in id order whatever order the
+     * stars were added in, as the shard router merges them by id.
+     */
+    @Test
+    void testGetMoviesStarringPersonInIdOrder() throws Exception {
+        try (Statement stmt = seeder.getConnection().createStatement()) {
+            stmt.execute("INSERT INTO stars (movie_id, person_id) VALUES (1, 4)");
+        }
+        List<Integer> ids = new ArrayList<>();
+        personDAO.getMoviesByPersonId(4).forEach(movie -> ids.add(movie.getId()));
+        assertEquals(List.of(1, 2, 3), ids);
+
+        ids.clear();
+        personDAO.getMoviesByPersonIds(List.of(4)).get(4).forEach(movie -> ids.add(movie.getId()));
+        assertEquals(List.of(1, 2, 3), ids);
+    }
+
+    /**
+     * Tests that the movies of more people than SQLite takes parameters in one
+     * statement are read in batches, each person once.
+     */
+    @Test
+    void testGetMoviesOfManyPeople() throws Exception {
+        int count = 300_000;
+        try (Statement stmt = seeder.getConnection().createStatement()) {
+            stmt.execute("WITH RECURSIVE n(value) AS (SELECT 1 UNION ALL SELECT value + 1 FROM n WHERE value < "
+                    + count + ") INSERT INTO people (id, name, birth) SELECT 100 + value, 'Person ' || value, 1970 FROM n");
+            stmt.execute("INSERT INTO stars (movie_id, person_id) SELECT 1, id FROM people WHERE id > 100");
+            // without an index every batch would scan the stars
+            stmt.execute("CREATE INDEX stars_person ON stars (person_id)");
+        }
+        personDAO = new PersonDAO();
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= 100 + count; id++) {
+            ids.add(id);
+        }
+
+        Map<Integer, List<Movie>> movies = personDAO.getMoviesByPersonIds(ids);
+        assertEquals(count + 4, movies.size());
+        assertEquals(1, movies.get(100 + count).get(0).getId());
+    }
+
+    /**
+     * Tests that the movies of many people stop being read once more movies
+     * than asked for have been, after the batch that went over.
+     */
+    @Test
+    void testGetMoviesOfManyPeopleStopsAtMaxRows() throws Exception {
+        int count = 3 * Defaults.INCLUDE_MAX_ROWS;
+        try (Statement stmt = seeder.getConnection().createStatement()) {
+            stmt.execute("WITH RECURSIVE n(value) AS (SELECT 1 UNION ALL SELECT value + 1 FROM n WHERE value < "
+                    + count + ") INSERT INTO people (id, name, birth) SELECT 100 + value, 'Person ' || value, 1970 FROM n");
+            stmt.execute("INSERT INTO stars (movie_id, person_id) SELECT 1, id FROM people WHERE id > 100");
+        }
+        personDAO = new PersonDAO();
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 101; id <= 100 + count; id++) {
+            ids.add(id);
+        }
+        long queries = Metrics.counter("include.queries").sum();
+
+        Map<Integer, List<Movie>> movies = personDAO.getMoviesByPersonIds(ids, 10);
+        assertEquals(Defaults.INCLUDE_MAX_ROWS, movies.size());
+        assertEquals(queries + 1, Metrics.counter("include.queries").sum());
+    }
+
     /**
      * Tests the getMovieById method with an invalid id. Empty list should be returned.
      */
@@ -132,4 +205,20 @@ class PersonDAOTest {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests the exportPeople method.
+     * We expect all 5 seeded people to be streamed in id order.
+     */
+    @Test
+    void testExportPeople() {
+        try {
+            List<Person> people = new ArrayList<>();
+            assertEquals(5, personDAO.exportPeople(people::add, Fields.all(Person.class)));
+            assertEquals("Tim Robbins", people.get(0).getName());
+        } catch (Exception e) {
+            fail("SQLException was thrown.");
+            e.printStackTrace();
+        }
+    }
+}
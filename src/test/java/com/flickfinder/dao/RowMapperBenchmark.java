@@ -0,0 +1,98 @@
+package com.flickfinder.dao;
+
+import com.flickfinder.model.Movie;
+import com.flickfinder.util.Seeder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Per-row cost benchmark for the row mappers. It is not part of the unit
+ * tests; run it with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class RowMapperBenchmark {
+
+    /**
+     * How many movies are added to the seeded ones.
+     */
+    private static final int ROWS = 100_000;
+
+    Seeder seeder;
+    Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        seeder = new Seeder("jdbc:sqlite::memory:");
+        connection = seeder.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("WITH RECURSIVE n(value) AS (SELECT 1 UNION ALL SELECT value + 1 FROM n WHERE value < "
+                    + ROWS + ") INSERT INTO movies (id, title, year) SELECT 100 + value, 'Movie ' || value,"
+                    + " 1900 + value % 120 FROM n");
+        }
+    }
+
+    /**
+     * Reading a large table with the mapper must cost no more than looking
+     * every column up by name, allowing for timing noise.
+     */
+    @Test
+    void costsNoMoreThanLookupByName(TestReporter reporter) throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            byName();
+            byMapper();
+        }
+        long nameNanos = Long.MAX_VALUE;
+        long mapperNanos = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long started = System.nanoTime();
+            int named = byName();
+            nameNanos = Math.min(nameNanos, System.nanoTime() - started);
+            started = System.nanoTime();
+            int mapped = byMapper();
+            mapperNanos = Math.min(mapperNanos, System.nanoTime() - started);
+            assertEquals(named, mapped);
+        }
+        int total = ROWS + 5;
+        reporter.publishEntry("by name ns per row", Long.toString(nameNanos / total));
+        reporter.publishEntry("mapper ns per row", Long.toString(mapperNanos / total));
+        assertTrue(mapperNanos < nameNanos * 1.5,
+                "mapper took " + mapperNanos / total + " ns a row, by name " + nameNanos / total);
+    }
+
+    private int byName() throws SQLException {
+        int sum = 0;
+        try (PreparedStatement ps = connection.prepareStatement("SELECT * FROM movies")) {
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                Movie movie = new Movie(rs.getInt("id"), rs.getString("title"), rs.getInt("year"));
+                sum += movie.getYear();
+            }
+        }
+        return sum;
+    }
+
+    private int byMapper() throws SQLException {
+        int[] sum = {0};
+        try (PreparedStatement ps = connection.prepareStatement("SELECT " + RowMapper.MOVIE.columns() + " FROM movies")) {
+            RowMapper.MOVIE.bind(ps.executeQuery()).forEach(movie -> sum[0] += movie.getYear());
+        }
+        return sum[0];
+    }
+
+    @AfterEach
+    void tearDown() {
+        seeder.closeConnection();
+    }
+}
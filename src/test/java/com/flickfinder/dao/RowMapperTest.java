@@ -0,0 +1,111 @@
+package com.flickfinder.dao;
+
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.MovieRating;
+import com.flickfinder.util.Seeder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the row mappers the DAOs read their results with.
+ */
+class RowMapperTest {
+
+    Seeder seeder;
+    Connection connection;
+
+    @BeforeEach
+    void setUp() {
+        seeder = new Seeder("jdbc:sqlite::memory:");
+        connection = seeder.getConnection();
+    }
+
+    /**
+     * Test that rows are mapped by the positions of the selected columns,
+     * whatever order they are selected in.
+     */
+    @Test
+    void testMapsByColumnPosition() throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT ratings.votes, movies.title, ratings.rating,"
+                + " movies.year, movies.id FROM movies, ratings WHERE movies.id = ratings.movie_id ORDER BY movies.id")) {
+            List<MovieRating> ratings = RowMapper.MOVIE_RATING.list(ps.executeQuery(), 5);
+            assertEquals(5, ratings.size());
+            assertEquals("The Shawshank Redemption", ratings.get(0).getTitle());
+            assertEquals(1994, ratings.get(0).getYear());
+            assertEquals(9.3, ratings.get(0).getRating());
+            assertEquals(5, ratings.get(4).getId());
+        }
+    }
+
+    /**
+     * Test that a result lacking one of the mapper's columns fails when it is
+     * bound, not when a row is read.
+     */
+    @Test
+    void testFailsOnMissingColumn() throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT id, title FROM movies")) {
+            ResultSet rs = ps.executeQuery();
+            assertThrows(SQLException.class, () -> RowMapper.MOVIE.bind(rs));
+        }
+    }
+
+    /**
+     * Test that the first row is mapped, or null when there is none.
+     */
+    @Test
+    void testFirst() throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT " + RowMapper.MOVIE.columns()
+                + " FROM movies WHERE id = ?")) {
+            ps.setInt(1, 2);
+            assertEquals("The Godfather", RowMapper.MOVIE.first(ps.executeQuery()).getTitle());
+            ps.setInt(1, 99);
+            assertNull(RowMapper.MOVIE.first(ps.executeQuery()));
+        }
+    }
+
+    /**
+     * Test that reading a table with the mapper gives the same rows as looking
+     * every column up by name. How long each takes is compared in
+     * {@link RowMapperBenchmark}.
+     */
+    @Test
+    void testMatchesLookupByName() throws SQLException {
+        List<Movie> mapped = byMapper();
+        assertEquals(5, mapped.size());
+        assertEquals(byName(), mapped);
+    }
+
+    private List<Movie> byName() throws SQLException {
+        List<Movie> movies = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT * FROM movies")) {
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                movies.add(new Movie(rs.getInt("id"), rs.getString("title"), rs.getInt("year")));
+            }
+        }
+        return movies;
+    }
+
+    private List<Movie> byMapper() throws SQLException {
+        List<Movie> movies = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT " + RowMapper.MOVIE.columns() + " FROM movies")) {
+            RowMapper.MOVIE.bind(ps.executeQuery()).forEach(movies::add);
+        }
+        return movies;
+    }
+
+    @AfterEach
+    void tearDown() {
+        seeder.closeConnection();
+    }
+}
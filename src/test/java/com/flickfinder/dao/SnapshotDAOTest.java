@@ -0,0 +1,189 @@
+package com.flickfinder.dao;
+
+import com.flickfinder.json.Fields;
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.MovieRating;
+import com.flickfinder.model.Person;
+import com.flickfinder.model.Star;
+import com.flickfinder.snapshot.Snapshot;
+import com.flickfinder.snapshot.SnapshotCompiler;
+import com.flickfinder.util.Database;
+import com.flickfinder.util.Seeder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the snapshot Data Access Objects.
+ * The seeded in-memory database is compiled into a snapshot, and every query is
+ * expected to give the same answer from the snapshot as from the database.
+ */
+class SnapshotDAOTest {
+
+    /**
+     * Seeder
+     */
+    Seeder seeder;
+
+    /**
+     * The snapshot compiled from the seeded database.
+     */
+    private Snapshot snapshot;
+
+    private MovieDAO movieDAO;
+    private PersonDAO personDAO;
+    private MovieDAO snapshotMovieDAO;
+    private PersonDAO snapshotPersonDAO;
+
+    @BeforeEach
+    void setUp(@TempDir Path directory) throws SQLException, IOException {
+        seeder = new Seeder("jdbc:sqlite::memory:");
+        Database.getInstance(seeder.getConnection());
+        movieDAO = new MovieDAO();
+        personDAO = new PersonDAO();
+
+        Path file = directory.resolve("movies.snap");
+        SnapshotCompiler.compile(seeder.getConnection(), file);
+        snapshot = Snapshot.open(file);
+        snapshotMovieDAO = new SnapshotMovieDAO(snapshot);
+        snapshotPersonDAO = new SnapshotPersonDAO(snapshot);
+    }
+
+    /**
+     * Tests that the snapshot holds every record.
+     */
+    @Test
+    void testCounts() {
+        assertEquals(5, snapshot.movieCount());
+        assertEquals(5, snapshot.personCount());
+        assertEquals(5, snapshot.ratingCount());
+    }
+
+    /**
+     * Tests that the movie queries match the database.
+     */
+    @Test
+    void testMovieQueriesMatchDatabase() {
+        try {
+            assertEquals(movieDAO.getAllMovies().toString(), snapshotMovieDAO.getAllMovies().toString());
+            assertEquals(movieDAO.getAllMovies(3).toString(), snapshotMovieDAO.getAllMovies(3).toString());
+            assertEquals(movieDAO.getMovieById(2).toString(), snapshotMovieDAO.getMovieById(2).toString());
+            assertNull(snapshotMovieDAO.getMovieById(1000));
+            assertEquals(movieDAO.getMoviesByIds(List.of(4, 1000, 2)).toString(),
+                    snapshotMovieDAO.getMoviesByIds(List.of(4, 1000, 2)).toString());
+            assertEquals(movieDAO.getPeopleByMovieId(1).toString(), snapshotMovieDAO.getPeopleByMovieId(1).toString());
+            assertTrue(snapshotMovieDAO.getPeopleByMovieId(1000).isEmpty());
+        } catch (SQLException e) {
+            fail("SQLException thrown");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tests that the rating queries match the database.
+     */
+    @Test
+    void testRatingQueriesMatchDatabase() {
+        try {
+            assertEquals(movieDAO.getRatingsByYear(1994).toString(), snapshotMovieDAO.getRatingsByYear(1994).toString());
+            assertEquals(movieDAO.getRatingsByYear(1000, 1994).toString(),
+                    snapshotMovieDAO.getRatingsByYear(1000, 1994).toString());
+            assertTrue(snapshotMovieDAO.getRatingsByYear(3_000_000, 1994).isEmpty());
+            assertEquals(movieDAO.getRatingsByYearRange(10, 1000, 1950, 2010).toString(),
+                    snapshotMovieDAO.getRatingsByYearRange(10, 1000, 1950, 2010).toString());
+            assertEquals(movieDAO.getRatingsByYearRange(2, 1000, 1970, 1975).toString(),
+                    snapshotMovieDAO.getRatingsByYearRange(2, 1000, 1970, 1975).toString());
+        } catch (SQLException e) {
+            fail("SQLException thrown");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tests that the person queries match the database.
+     */
+    @Test
+    void testPersonQueriesMatchDatabase() {
+        try {
+            assertEquals(personDAO.getAllPeople().toString(), snapshotPersonDAO.getAllPeople().toString());
+            assertEquals(personDAO.getPersonById(3).toString(), snapshotPersonDAO.getPersonById(3).toString());
+            assertNull(snapshotPersonDAO.getPersonById(1000));
+            assertEquals(personDAO.getMoviesByPersonId(4).toString(), snapshotPersonDAO.getMoviesByPersonId(4).toString());
+        } catch (SQLException e) {
+            fail("SQLException thrown");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tests that a person's movies are compiled in id order, as the database
+     * returns them, whatever order the stars were added in.
+     */
+    @Test
+    void testMoviesOfPersonInIdOrder(@TempDir Path directory) throws Exception {
+        try (Statement stmt = seeder.getConnection().createStatement()) {
+            stmt.execute("INSERT INTO stars (movie_id, person_id) VALUES (1, 4)");
+        }
+        Path file = directory.resolve("reordered.snap");
+        SnapshotCompiler.compile(seeder.getConnection(), file);
+        try (Snapshot reordered = Snapshot.open(file)) {
+            assertEquals(personDAO.getMoviesByPersonId(4).toString(),
+                    new SnapshotPersonDAO(reordered).getMoviesByPersonId(4).toString());
+        }
+    }
+
+    /**
+     * Tests that the credits and exports match the database.
+     */
+    @Test
+    void testCreditsAndExportsMatchDatabase() {
+        try {
+            assertEquals(movieDAO.getCredits().size(), snapshotMovieDAO.getCredits().size());
+            assertEquals(movieDAO.getCredits().count(0), snapshotMovieDAO.getCredits().count(0));
+
+            List<Object> expected = new ArrayList<>();
+            List<Object> actual = new ArrayList<>();
+            movieDAO.exportMovies(expected::add, Fields.all(Movie.class));
+            movieDAO.exportRatings(expected::add, Fields.all(MovieRating.class));
+            personDAO.exportPeople(expected::add, Fields.all(Person.class));
+            snapshotMovieDAO.exportMovies(actual::add, Fields.all(Movie.class));
+            snapshotMovieDAO.exportRatings(actual::add, Fields.all(MovieRating.class));
+            snapshotPersonDAO.exportPeople(actual::add, Fields.all(Person.class));
+            assertEquals(expected.toString(), actual.toString());
+            assertEquals(movieDAO.exportStars(star -> { }, Fields.all(Star.class)), snapshotMovieDAO.exportStars(star -> { }, Fields.all(Star.class)));
+        } catch (SQLException | IOException e) {
+            fail("Exception thrown");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tests that a file that is not a snapshot is rejected.
+     */
+    @Test
+    void testOpenRejectsOtherFiles(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("not.snap");
+        Files.writeString(file, "not a snapshot at all, just some text");
+        assertThrows(IOException.class, () -> Snapshot.open(file));
+    }
+
+    /**
+     * Closes the snapshot and the database connection.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        snapshot.close();
+        seeder.closeConnection();
+    }
+}
@@ -0,0 +1,86 @@
+package com.flickfinder.include;
+
+import com.flickfinder.dao.MovieDAO;
+import com.flickfinder.dao.PersonDAO;
+import com.flickfinder.json.Fields;
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.Person;
+import com.flickfinder.util.Database;
+import com.flickfinder.util.Metrics;
+import com.flickfinder.util.Seeder;
+import io.javalin.http.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test for including related rows.
+ */
+class ExpanderTest {
+
+    Seeder seeder;
+
+    /**
+     * The context object, later we will mock it.
+     */
+    private Context ctx;
+
+    private MovieDAO movieDAO;
+    private PersonDAO personDAO;
+
+    @BeforeEach
+    void setUp() {
+        seeder = new Seeder("jdbc:sqlite::memory:");
+        Database.getInstance(seeder.getConnection());
+        movieDAO = new MovieDAO();
+        personDAO = new PersonDAO();
+        ctx = mock(Context.class);
+    }
+
+    /**
+     * Tests that a request is refused as soon as it is over the bound, without
+     * reading the next level. The five movies the seeded people starred in are
+     * over a bound of one row, so their stars are never read.
+     */
+    @Test
+    void testStopsReadingOnceOverBound() throws SQLException {
+        Expander expander = new Expander(movieDAO, personDAO, 1);
+        List<Person> people = personDAO.getAllPeople(50);
+        long queries = Metrics.counter("include.queries").sum();
+        long refused = Metrics.counter("include.refused").sum();
+
+        expander.send(ctx, people, Fields.all(Person.class), Include.parse(Person.class, "movies.stars"));
+
+        verify(ctx).status(400);
+        assertEquals(queries + 1, Metrics.counter("include.queries").sum());
+        assertEquals(refused + 1, Metrics.counter("include.refused").sum());
+    }
+
+    /**
+     * Tests that ratings over the bound are refused before they are read, since
+     * each movie includes one, and that the relations after them are not read
+     * either.
+     */
+    @Test
+    void testRefusesRatingsBeforeReading() throws SQLException {
+        Expander expander = new Expander(movieDAO, personDAO, 1);
+        long queries = Metrics.counter("include.queries").sum();
+
+        expander.send(ctx, movieDAO.getAllMovies(50), Fields.all(Movie.class),
+                Include.parse(Movie.class, "rating,stars"));
+
+        verify(ctx).status(400);
+        assertEquals(queries, Metrics.counter("include.queries").sum());
+    }
+
+    @AfterEach
+    void tearDown() {
+        seeder.closeConnection();
+    }
+}
@@ -0,0 +1,62 @@
+package com.flickfinder.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the roaring-style id bitmap.
+ */
+class IdBitmapTest {
+
+    /**
+     * Test that sparse and dense chunks hold exactly their ids.
+     */
+    @Test
+    void testContains() {
+        int count = 10_000 + 3;
+        int[] ids = new int[count + 1];
+        // a dense chunk, held as a bitmap
+        for (int i = 0; i < 10_000; i++) {
+            ids[i] = 65_536 + i * 2;
+        }
+        // a sparse chunk, held as an array, and a repeated id
+        ids[10_000] = 7;
+        ids[10_001] = 3;
+        ids[10_002] = 7;
+        ids[10_003] = 1 << 30;
+        IdBitmap bitmap = IdBitmap.of(ids, count + 1);
+
+        assertEquals(10_003, bitmap.cardinality());
+        assertTrue(bitmap.contains(3));
+        assertTrue(bitmap.contains(7));
+        assertFalse(bitmap.contains(5));
+        assertTrue(bitmap.contains(65_536));
+        assertTrue(bitmap.contains(65_536 + 19_998));
+        assertFalse(bitmap.contains(65_537));
+        assertTrue(bitmap.contains(1 << 30));
+        assertFalse(bitmap.contains(-1));
+        assertTrue(bitmap.sizeInBytes() < 10_003 * 2);
+    }
+
+    /**
+     * Test that the ids are iterated in order and intersected exactly.
+     */
+    @Test
+    void testForEachAndIntersection() {
+        IdBitmap odd = IdBitmap.of(new int[]{9, 1, 3, 70_001, 5, 7}, 6);
+        IdBitmap small = IdBitmap.of(new int[]{3, 4, 70_001, 200_000}, 4);
+
+        List<Integer> ids = new ArrayList<>();
+        odd.forEach(ids::add);
+        assertEquals(List.of(1, 3, 5, 7, 9, 70_001), ids);
+
+        List<Integer> both = new ArrayList<>();
+        odd.and(small).forEach(both::add);
+        assertEquals(List.of(3, 70_001), both);
+        assertEquals(0, IdBitmap.EMPTY.and(odd).cardinality());
+    }
+}
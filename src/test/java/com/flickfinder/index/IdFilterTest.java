@@ -0,0 +1,61 @@
+package com.flickfinder.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the id existence filters.
+ */
+class IdFilterTest {
+
+    /**
+     * Test that dense ids are held exactly in a bitset.
+     */
+    @Test
+    void testDenseIdsAreExact() {
+        int[] ids = {5, 6, 7, 9, 12};
+        IdFilter filter = IdFilter.build(ids, ids.length, 16, 10);
+        assertEquals("bitset", filter.kind());
+        for (int id : ids) {
+            assertTrue(filter.mightContain(id));
+        }
+        for (int id : new int[]{Integer.MIN_VALUE, -1, 0, 4, 8, 10, 11, 13, Integer.MAX_VALUE}) {
+            assertFalse(filter.mightContain(id));
+        }
+    }
+
+    /**
+     * Test that sparse ids go to a Bloom filter that never rejects an id it
+     * holds and lets few others through.
+     */
+    @Test
+    void testSparseIdsUseBloomFilter() {
+        int count = 100_000;
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i * 1000;
+        }
+        IdFilter filter = IdFilter.build(ids, count, 16, 10);
+        assertEquals("bloom", filter.kind());
+        for (int id : ids) {
+            assertTrue(filter.mightContain(id));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < count; i++) {
+            if (filter.mightContain(i * 1000 + 500)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < count * 0.02, falsePositives + " false positives in " + count);
+    }
+
+    /**
+     * Test that a filter over no ids rejects everything.
+     */
+    @Test
+    void testEmpty() {
+        assertFalse(IdFilter.build(new int[0], 0, 16, 10).mightContain(1));
+        assertTrue(IdFilter.ALL.mightContain(1));
+    }
+}
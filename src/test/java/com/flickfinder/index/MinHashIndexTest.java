@@ -0,0 +1,78 @@
+package com.flickfinder.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the MinHash similarity index.
+ */
+class MinHashIndexTest {
+
+    /**
+     * The credits the index is built from.
+     */
+    private Credits credits;
+
+    /**
+     * Builds a small set of credits where movie 1 and movie 2 share all of their
+     * people, movie 3 shares one person with them and movie 4 shares nobody.
+     */
+    @BeforeEach
+    void setUp() {
+        credits = new Credits.Builder()
+                .add(1, 10).add(1, 11).add(1, 12)
+                .add(2, 10).add(2, 11).add(2, 12)
+                .add(3, 12).add(3, 13)
+                .add(4, 20)
+                .build();
+    }
+
+    /**
+     * Test that the credits are grouped per movie and that overlaps are exact.
+     */
+    @Test
+    void testCreditsOverlap() {
+        assertEquals(4, credits.size());
+        assertEquals(3, credits.overlap(credits.indexOf(1), credits.indexOf(2)));
+        assertEquals(1, credits.overlap(credits.indexOf(1), credits.indexOf(3)));
+        assertEquals(0, credits.overlap(credits.indexOf(1), credits.indexOf(4)));
+        assertTrue(credits.indexOf(99) < 0);
+    }
+
+    /**
+     * Test that movies with identical credits are always found and ranked first,
+     * and that the movie itself is never returned.
+     */
+    @Test
+    void testSimilarFindsIdenticalCredits() {
+        MinHashIndex index = MinHashIndex.build(credits, 16, 2, 1024 * 1024);
+        List<Integer> similar = index.similar(1, 10);
+        assertFalse(similar.isEmpty());
+        assertEquals(2, similar.get(0));
+        assertFalse(similar.contains(1));
+        assertFalse(similar.contains(4));
+    }
+
+    /**
+     * Test that unknown movies have no similar movies.
+     */
+    @Test
+    void testSimilarUnknownMovie() {
+        MinHashIndex index = MinHashIndex.build(credits, 16, 2, 1024 * 1024);
+        assertTrue(index.similar(99, 10).isEmpty());
+        assertTrue(MinHashIndex.EMPTY.similar(1, 10).isEmpty());
+    }
+
+    /**
+     * Test that the number of bands is reduced to fit the memory budget.
+     */
+    @Test
+    void testBandsFitMemoryBudget() {
+        MinHashIndex index = MinHashIndex.build(credits, 16, 2, 8L * 4 * 3);
+        assertEquals(3, index.getBands());
+    }
+}
@@ -0,0 +1,77 @@
+package com.flickfinder.json;
+
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.MovieRating;
+import io.javalin.json.JavalinJackson;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Allocation benchmark for the model JSON mapper. It is not part of the unit
+ * tests; run it with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class ModelJsonMapperBenchmark {
+
+    /**
+     * Javalin's default Jackson mapper, which the mapper is compared against.
+     */
+    private final JavalinJackson jackson = new JavalinJackson();
+
+    /**
+     * The mapper under test.
+     */
+    private final ModelJsonMapper mapper = new ModelJsonMapper(jackson);
+
+    /**
+     * Serialising a full page of movies must allocate less than Jackson does,
+     * and little more than the returned string itself.
+     */
+    @Test
+    void allocatesLessThanJackson(TestReporter reporter) {
+        List<Object> page = movies(50);
+        for (int i = 0; i < 2_000; i++) {
+            mapper.toJsonString(page, List.class);
+            jackson.toJsonString(page, List.class);
+        }
+
+        long modelBytes = allocatedBytes(() -> mapper.toJsonString(page, List.class));
+        long jacksonBytes = allocatedBytes(() -> jackson.toJsonString(page, List.class));
+        reporter.publishEntry("mapper bytes per page", Long.toString(modelBytes));
+        reporter.publishEntry("jackson bytes per page", Long.toString(jacksonBytes));
+        assertTrue(modelBytes < jacksonBytes,
+                "mapper allocated " + modelBytes + " bytes, jackson " + jacksonBytes);
+        int payload = mapper.toJsonString(page, List.class).length();
+        assertTrue(modelBytes < payload + 256, "mapper allocated " + modelBytes + " bytes for " + payload + " chars");
+    }
+
+    private static List<Object> movies(int count) {
+        List<Object> movies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            movies.add(i % 2 == 0 ? new Movie(i, "Movie \"" + i + "\"", 1950 + i)
+                    : new MovieRating(i, "Rated " + i, 1950 + i, 5 + i / 10.0, i * 1000));
+        }
+        return movies;
+    }
+
+    /**
+     * Returns the average number of bytes the current thread allocates per run.
+     */
+    private static long allocatedBytes(Runnable run) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int runs = 1_000;
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < runs; i++) {
+            run.run();
+        }
+        return (threads.getThreadAllocatedBytes(thread) - before) / runs;
+    }
+}
@@ -0,0 +1,126 @@
+package com.flickfinder.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.MovieRating;
+import com.flickfinder.model.Person;
+import com.flickfinder.model.Star;
+import io.javalin.json.JavalinJackson;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the model JSON mapper.
+ * The mapper must produce exactly what Jackson produces.
+ */
+class ModelJsonMapperTest {
+
+    /**
+     * Javalin's default Jackson mapper, which the output is compared against.
+     */
+    private final JavalinJackson jackson = new JavalinJackson();
+
+    /**
+     * The mapper under test.
+     */
+    private final ModelJsonMapper mapper = new ModelJsonMapper(jackson);
+
+    /**
+     * Test that each model is written exactly as Jackson writes it.
+     */
+    @Test
+    void testModelsMatchJackson() {
+        assertSameAsJackson(new Movie(1, "The Shawshank Redemption", 1994));
+        assertSameAsJackson(new Person(2, "Morgan Freeman", 1937));
+        assertSameAsJackson(new MovieRating(3, "The Godfather", 1972, 9.2, 1500000));
+        assertSameAsJackson(new MovieRating(4, null, 0, 1e10, 0));
+        assertSameAsJackson(new MovieRating(5, "Unrated", 2024, Double.NaN, 0));
+        assertSameAsJackson(new Person(6, null, 0));
+        assertSameAsJackson(new Star(7, 8));
+    }
+
+    /**
+     * Test that every character that might need escaping is escaped as Jackson
+     * escapes it.
+     */
+    @Test
+    void testEscapingMatchesJackson() {
+        StringBuilder title = new StringBuilder();
+        for (char c = 0; c < 0x100; c++) {
+            title.append(c);
+        }
+        title.append(" \u00e9 \u2028 \uD83C\uDFAC </script>");
+        assertSameAsJackson(new Movie(1, title.toString(), 2000));
+    }
+
+    /**
+     * Test that lists of models, including mixed and empty lists, match Jackson.
+     */
+    @Test
+    void testListsMatchJackson() {
+        assertSameAsJackson(movies(50));
+        assertSameAsJackson(List.of());
+        assertSameAsJackson(List.of(new Movie(1, "A", 2000), new MovieRating(2, "B", 2001, 7.5, 10),
+                new Person(3, "C", 1970)));
+    }
+
+    /**
+     * Test that every projection of a model writes what Jackson writes once the
+     * other fields are removed, and that unknown or empty field names are refused.
+     */
+    @Test
+    void testProjectionsMatchJackson() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<String> names = Fields.all(MovieRating.class).names();
+        List<MovieRating> ratings = List.of(new MovieRating(3, "The \"Godfather\"", 1972, 9.2, 1500000),
+                new MovieRating(4, null, 0, Double.NaN, 0));
+        for (int mask = 1; mask < 1 << names.size(); mask++) {
+            StringJoiner value = new StringJoiner(",");
+            for (int i = 0; i < names.size(); i++) {
+                if ((mask & 1 << i) != 0) {
+                    value.add(names.get(i));
+                }
+            }
+            Fields fields = Fields.parse(MovieRating.class, value.toString());
+            JsonNode expected = objectMapper.readTree(jackson.toJsonString(ratings, List.class));
+            fields.retain(expected);
+            assertEquals(expected.toString(), mapper.toJsonString(new Fields.Projected(ratings, fields), List.class));
+        }
+
+        assertEquals(List.of("id", "title"), Fields.parse(Movie.class, "title,id").names());
+        assertEquals("{\"personId\":8}",
+                mapper.toJsonString(new Fields.Projected(new Star(7, 8), Fields.parse(Star.class, "personId")), Star.class));
+        for (String bad : new String[]{"", "id,", "rating", "ID", "id,,title"}) {
+            assertNull(Fields.parse(Movie.class, bad), bad);
+        }
+    }
+
+    /**
+     * Test that anything that is not a model is handed to Jackson.
+     */
+    @Test
+    void testOtherObjectsUseJackson() {
+        assertSameAsJackson(Map.of("calls", 1));
+        assertSameAsJackson(List.of("a", "b"));
+    }
+
+    private void assertSameAsJackson(Object value) {
+        assertEquals(jackson.toJsonString(value, value.getClass()), mapper.toJsonString(value, value.getClass()));
+    }
+
+    private static List<Object> movies(int count) {
+        List<Object> movies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            movies.add(i % 2 == 0 ? new Movie(i, "Movie \"" + i + "\"", 1950 + i)
+                    : new MovieRating(i, "Rated " + i, 1950 + i, 5 + i / 10.0, i * 1000));
+        }
+        return movies;
+    }
+}
@@ -0,0 +1,64 @@
+package com.flickfinder.json;
+
+import com.flickfinder.model.MovieRating;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Size and throughput benchmark for the response encodings. It is not part of
+ * the unit tests; run it with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class ResponseFormatBenchmark {
+
+    /**
+     * Reports the size of a full page of ratings, the largest list payload, in
+     * each encoding and how many pages a second each encodes.
+     */
+    @Test
+    void comparesSizeAndThroughput(TestReporter reporter) throws Exception {
+        List<MovieRating> page = ratings(50);
+        ModelJsonMapper json = new ModelJsonMapper();
+        reporter.publishEntry("JSON", String.format("%d bytes, %.0f pages/s",
+                json.toJsonString(page, List.class).getBytes().length,
+                throughput(() -> json.toJsonString(page, List.class))));
+
+        for (ResponseFormat format : List.of(ResponseFormat.CBOR, ResponseFormat.SMILE, ResponseFormat.MSGPACK)) {
+            reporter.publishEntry(format.name(), String.format("%d bytes, %.0f pages/s",
+                    format.encode(page).length, throughput(() -> {
+                        try {
+                            format.encode(page);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    })));
+        }
+    }
+
+    private static List<MovieRating> ratings(int count) {
+        List<MovieRating> ratings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ratings.add(new MovieRating(i, "Movie number " + i, 1990 + i % 10, 9.0 - i / 100.0, 1000 + i));
+        }
+        return ratings;
+    }
+
+    /**
+     * Returns how many times per second the task runs, after a short warm-up.
+     */
+    private static double throughput(Runnable task) {
+        for (int i = 0; i < 2_000; i++) {
+            task.run();
+        }
+        int runs = 5_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        return runs / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,86 @@
+package com.flickfinder.json;
+
+import com.flickfinder.model.MovieRating;
+import com.flickfinder.model.Person;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the response encodings and their negotiation.
+ */
+class ResponseFormatTest {
+
+    /**
+     * Test that the Accept header picks the right encoding.
+     */
+    @Test
+    void testNegotiate() {
+        assertEquals(ResponseFormat.JSON, ResponseFormat.negotiate(null));
+        assertEquals(ResponseFormat.JSON, ResponseFormat.negotiate("*/*"));
+        assertEquals(ResponseFormat.JSON, ResponseFormat.negotiate("text/html"));
+        assertEquals(ResponseFormat.CBOR, ResponseFormat.negotiate("application/cbor"));
+        assertEquals(ResponseFormat.SMILE, ResponseFormat.negotiate("application/x-jackson-smile, */*;q=0.1"));
+        assertEquals(ResponseFormat.MSGPACK, ResponseFormat.negotiate("application/json;q=0.5, application/x-msgpack"));
+        assertEquals(ResponseFormat.JSON, ResponseFormat.negotiate("application/cbor;q=0, application/json"));
+    }
+
+    /**
+     * Test that every binary encoding carries the same fields as the JSON.
+     */
+    @Test
+    void testBinaryEncodingsRoundTrip() throws Exception {
+        for (ResponseFormat format : binaryFormats()) {
+            byte[] bytes = format.encode(new Person(1, "Tim Robbins", 1958));
+            Map<?, ?> decoded = format.decode(bytes, Map.class);
+            assertEquals(Map.of("id", 1, "name", "Tim Robbins", "birth", 1958), decoded, format.name());
+
+            List<?> list = format.decode(format.encode(ratings(3)), List.class);
+            assertEquals(3, list.size(), format.name());
+            assertEquals(9.0, ((Map<?, ?>) list.get(0)).get("rating"), format.name());
+        }
+    }
+
+    /**
+     * Test that JSON can be encoded and decoded like the other encodings, with
+     * the same output as the app's JSON mapper.
+     */
+    @Test
+    void testJsonEncodesLikeTheMapper() throws Exception {
+        List<MovieRating> page = ratings(3);
+        byte[] bytes = ResponseFormat.JSON.encode(page);
+        assertEquals(new ModelJsonMapper().toJsonString(page, List.class), new String(bytes, StandardCharsets.UTF_8));
+        assertEquals(3, ResponseFormat.JSON.decode(bytes, List.class).size());
+    }
+
+    /**
+     * Test that every binary encoding of a full page of ratings, the largest
+     * list payload, is smaller than the JSON.
+     */
+    @Test
+    void testBinaryEncodingsAreSmaller() throws Exception {
+        List<MovieRating> page = ratings(50);
+        int jsonSize = new ModelJsonMapper().toJsonString(page, List.class).getBytes().length;
+        for (ResponseFormat format : binaryFormats()) {
+            int size = format.encode(page).length;
+            assertTrue(size < jsonSize, format + " was " + size + " bytes, JSON " + jsonSize);
+        }
+    }
+
+    private static List<ResponseFormat> binaryFormats() {
+        return List.of(ResponseFormat.CBOR, ResponseFormat.SMILE, ResponseFormat.MSGPACK);
+    }
+
+    private static List<MovieRating> ratings(int count) {
+        List<MovieRating> ratings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ratings.add(new MovieRating(i, "Movie number " + i, 1990 + i % 10, 9.0 - i / 100.0, 1000 + i));
+        }
+        return ratings;
+    }
+}
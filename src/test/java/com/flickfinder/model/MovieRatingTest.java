@@ -3,7 +3,7 @@ package com.flickfinder.model;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Test for the MovieRating Model.
@@ -36,19 +36,12 @@ public class MovieRatingTest {
     }
 
     /**
-     * Test the MovieRated object is updated with the correct value setters.
+     * Test that a rating holds the shared movie it rates rather than being one.
      */
     @Test
-    public void testMovieSetters() {
-        movieRating.setId(2);
-        movieRating.setTitle("The Matrix Reloaded");
-        movieRating.setYear(2003);
-        movieRating.setRating(7.2);
-        movieRating.setVotes(20000);
-        assertEquals(2, movieRating.getId());
-        assertEquals("The Matrix Reloaded", movieRating.getTitle());
-        assertEquals(2003, movieRating.getYear());
-        assertEquals(7.2, movieRating.getRating());
-        assertEquals(20000, movieRating.getVotes());
+    public void testMovieRatingComposesSharedMovie() {
+        assertSame(ModelPool.movie(1, "The Matrix", 1999), movieRating.getMovie());
+        assertEquals(new MovieRating(new Movie(1, "The Matrix", 1999), 8.7, 15000), movieRating);
+        assertNotEquals(new MovieRating(movieRating.getMovie(), 7.2, 15000), movieRating);
     }
 }
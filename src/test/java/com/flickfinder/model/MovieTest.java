@@ -3,7 +3,7 @@ package com.flickfinder.model;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Test for the Movie Model.
@@ -34,15 +34,26 @@ public class MovieTest {
     }
 
     /**
-     * Test the movie object is updated with the correct value setters.
+     * Test that movies with the same values are equal, and that the pool hands
+     * out one shared instance of each.
      */
     @Test
-    public void testMovieSetters() {
-        movie.setId(2);
-        movie.setTitle("The Matrix Reloaded");
-        movie.setYear(2003);
-        assertEquals(2, movie.getId());
-        assertEquals("The Matrix Reloaded", movie.getTitle());
-        assertEquals(2003, movie.getYear());
+    public void testMovieEqualityAndPooling() {
+        assertEquals(new Movie(1, "The Matrix", 1999), movie);
+        assertEquals(movie.hashCode(), new Movie(1, "The Matrix", 1999).hashCode());
+        assertNotEquals(new Movie(1, "The Matrix Reloaded", 2003), movie);
+        assertSame(ModelPool.movie(1, "The Matrix", 1999), ModelPool.movie(1, "The Matrix", 1999));
+        assertEquals("The Matrix Reloaded", ModelPool.movie(1, "The Matrix Reloaded", 2003).getTitle());
+    }
+
+    /**
+     * Test that a movie with no title, as read from a NULL column, is pooled
+     * like any other when its row is read again.
+     */
+    @Test
+    public void testPoolsMovieWithoutTitle() {
+        Movie first = ModelPool.movie(1_000_001, null, 2000);
+        assertSame(first, ModelPool.movie(1_000_001, null, 2000));
+        assertEquals("Untitled", ModelPool.movie(1_000_001, "Untitled", 2000).getTitle());
     }
 }
@@ -3,7 +3,7 @@ package com.flickfinder.model;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Test for the Person Model.
@@ -34,15 +34,25 @@ class PersonTest {
     }
 
     /**
-     * Test the person object is updated with the correct value setters.
+     * Test that people with the same values are equal, and that the pool hands
+     * out one shared instance of each.
      */
     @Test
-    public void testPersonSetters() {
-        person.setId(2);
-        person.setName("Jane Doe");
-        person.setBirth(2003);
-        assertEquals(2, person.getId());
-        assertEquals("Jane Doe", person.getName());
-        assertEquals(2003, person.getBirth());
+    public void testPersonEqualityAndPooling() {
+        assertEquals(new Person(person.getId(), person.getName(), person.getBirth()), person);
+        assertNotEquals(new Person(person.getId(), "Jane Doe", 2003), person);
+        assertSame(ModelPool.person(7, "Jane Doe", 2003), ModelPool.person(7, "Jane Doe", 2003));
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that a person with no name, as read from a NULL column, is pooled
+     * like any other when their row is read again.
+     */
+    @Test
+    public void testPoolsPersonWithoutName() {
+        Person first = ModelPool.person(1_000_001, null, 1970);
+        assertSame(first, ModelPool.person(1_000_001, null, 1970));
+        ModelPool.person(1_000_002, "Jane Doe", 1970);
+        assertNull(ModelPool.person(1_000_002, null, 1970).getName());
+    }
+}
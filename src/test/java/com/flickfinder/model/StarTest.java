@@ -0,0 +1,43 @@
+package com.flickfinder.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the Star Model.
+ */
+class StarTest {
+
+    /**
+     * The star object to be tested.
+     */
+    private Star star;
+
+    /**
+     * Set up the star object before each test.
+     */
+    @BeforeEach
+    public void setUp() {
+        star = new Star(1, 2);
+    }
+
+    /**
+     * Test the star object is created with the correct values.
+     */
+    @Test
+    public void testStarCreated() {
+        assertEquals(1, star.getMovieId());
+        assertEquals(2, star.getPersonId());
+    }
+
+    /**
+     * Test that stars with the same ids are equal.
+     */
+    @Test
+    public void testStarEquality() {
+        assertEquals(new Star(1, 2), star);
+        assertNotEquals(new Star(2, 1), star);
+    }
+}
@@ -0,0 +1,166 @@
+package com.flickfinder.peer;
+
+import com.flickfinder.AppConfig;
+import com.flickfinder.Generation;
+import com.flickfinder.model.Movie;
+import com.flickfinder.model.Person;
+import com.flickfinder.util.Defaults;
+import com.flickfinder.util.Seeder;
+import io.javalin.Javalin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the cache shared between replicas, with two replicas of the test
+ * database on local ports.
+ */
+class PeerCacheTest {
+
+    URI first = URI.create("http://localhost:6201");
+    URI second = URI.create("http://localhost:6202");
+
+    List<Javalin> servers = new ArrayList<>();
+    Generation firstGeneration;
+    Generation secondGeneration;
+
+    /**
+     * Starts two replicas of the seeded database sharing a cache.
+     */
+    @BeforeEach
+    void setUp(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("movies.db");
+        new Seeder("jdbc:sqlite:" + file).closeConnection();
+
+        List<URI> peers = List.of(first, second);
+        firstGeneration = Generation.load(1, file, new PeerGroup(first, peers));
+        secondGeneration = Generation.load(1, file, new PeerGroup(second, peers));
+        servers.add(AppConfig.startServer(first.getPort(), firstGeneration, 0, false));
+        servers.add(AppConfig.startServer(second.getPort(), secondGeneration, 0, false));
+    }
+
+    /**
+     * Returns a movie id whose key is owned by the second replica.
+     */
+    private int ownedBySecond() {
+        PeerGroup group = firstGeneration.getPeers();
+        for (int id = 1; id <= 5; id++) {
+            if (group.owner("movie", Integer.toString(id)).equals(second)) {
+                return id;
+            }
+        }
+        return fail("The second replica owns none of the movies");
+    }
+
+    /**
+     * Test that a miss for a key owned by a peer is loaded and cached by the
+     * owner only, and that the key is kept locally once it is hot.
+     */
+    @Test
+    void testFetchesFromOwnerAndReplicatesHotKeys() {
+        int id = ownedBySecond();
+        String key = Integer.toString(id);
+        PeerCache.Group<?> local = firstGeneration.getPeerCache().getGroup("movie");
+        PeerCache.Group<?> owner = secondGeneration.getPeerCache().getGroup("movie");
+
+        given().when().get(first + "/movies/" + id).then().statusCode(200).body("id", equalTo(id));
+        assertTrue(owner.isOwnedCached(key));
+        assertFalse(local.isOwnedCached(key));
+        assertFalse(local.isHotCached(key));
+
+        for (int i = 1; i < Defaults.PEER_HOT_THRESHOLD; i++) {
+            given().when().get(first + "/movies/" + id).then().statusCode(200);
+        }
+        assertTrue(local.isHotCached(key));
+    }
+
+    /**
+     * Test that lists of people and movies survive the trip between peers.
+     */
+    @Test
+    void testSharesLists() {
+        for (int id = 1; id <= 5; id++) {
+            given().when().get(first + "/people/" + id).then().statusCode(200).body("id", equalTo(id));
+        }
+        given().when().get(first + "/movies/1/stars").then().statusCode(200).body("name[1]", equalTo("Morgan Freeman"));
+        given().when().get(second + "/movies/1/stars").then().statusCode(200).body("name[1]", equalTo("Morgan Freeman"));
+        given().when().get(first + "/people/4/movies").then().statusCode(200).body("size()", equalTo(2));
+        given().when().get(second + "/people/4/movies").then().statusCode(200).body("size()", equalTo(2));
+        given().when().get(first + "/movies/9").then().statusCode(404);
+    }
+
+    /**
+     * Test that a replica reads from its own database when the owner is down.
+     */
+    @Test
+    void testFallsBackWhenOwnerIsDown() {
+        int id = ownedBySecond();
+        servers.get(1).stop();
+        given().when().get(first + "/movies/" + id).then().statusCode(200).body("id", equalTo(id));
+    }
+
+    /**
+     * Test that a replica reads a list from its own database when the owner
+     * answers that it has none, rather than serving no list at all.
+     */
+    @Test
+    void testFallsBackWhenOwnerHasNoList() {
+        URI owner = firstGeneration.getPeers().owner("person-movies", "1");
+        URI asker = owner.equals(first) ? second : first;
+        servers.get(owner.equals(first) ? 0 : 1).stop();
+        servers.add(Javalin.create().start(owner.getPort()));
+        given().when().get(asker + "/people/1/movies").then().statusCode(200).body("size()", greaterThan(0));
+    }
+
+    /**
+     * Test that a missing name or title survives the trip between peers as a
+     * null rather than as the text "null".
+     */
+    @Test
+    void testKeepsMissingText() throws Exception {
+        assertNull(Codec.MOVIE.decode(Codec.MOVIE.encode(new Movie(7, null, 1999))).getTitle());
+        assertNull(Codec.PERSON.decode(Codec.PERSON.encode(new Person(7, null, 1970))).getName());
+    }
+
+    /**
+     * Test that the ring spreads keys over the nodes and that adding a node
+     * only moves keys to the new node.
+     */
+    @Test
+    void testRingIsBalancedAndStable() {
+        HashRing<String> three = new HashRing<>(List.of("a", "b", "c"), Defaults.PEER_RING_REPLICAS);
+        HashRing<String> four = new HashRing<>(List.of("a", "b", "c", "d"), Defaults.PEER_RING_REPLICAS);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 30_000; i++) {
+            String key = "movie/" + i;
+            String before = three.owner(key);
+            String after = four.owner(key);
+            counts.merge(before, 1, Integer::sum);
+            assertTrue(after.equals(before) || after.equals("d"));
+        }
+        for (int count : counts.values()) {
+            assertTrue(count > 6_000 && count < 14_000, "Unbalanced ring: " + counts);
+        }
+    }
+
+    /**
+     * Stops the replicas after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        servers.forEach(Javalin::stop);
+    }
+}
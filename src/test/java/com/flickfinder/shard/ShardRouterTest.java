@@ -0,0 +1,161 @@
+package com.flickfinder.shard;
+
+import com.flickfinder.AppConfig;
+import com.flickfinder.Generation;
+import com.flickfinder.util.Seeder;
+import io.javalin.Javalin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for a sharded deployment: two shard servers split from the test
+ * database and a router in front of them, all on local ports.
+ */
+class ShardRouterTest {
+
+    /**
+     * The ports of the shards and the router.
+     */
+    int[] shardPorts = {6101, 6102};
+    int routerPort = 6100;
+
+    String baseURL = "http://localhost:" + routerPort;
+
+    List<Javalin> servers;
+    List<Generation> generations;
+
+    /**
+     * Splits the seeded database into two shards and starts a server for each
+     * and a router in front of them.
+     */
+    @BeforeEach
+    void setUp(@TempDir Path directory) throws Exception {
+        Seeder seeder = new Seeder("jdbc:sqlite:" + directory.resolve("movies.db"));
+        List<Path> files = ShardSplitter.split(seeder.getConnection(), directory.resolve("shards"), 2);
+        seeder.closeConnection();
+        assertEquals(2, files.size());
+
+        generations = List.of(Generation.load(1, files.get(0)), Generation.load(1, files.get(1)));
+        Javalin first = AppConfig.startServer(shardPorts[0], generations.get(0), 0, false);
+        Javalin second = AppConfig.startServer(shardPorts[1], generations.get(1), 0, false);
+        Javalin router = ShardRouter.discover(List.of(URI.create("http://localhost:" + shardPorts[0]),
+                URI.create("http://localhost:" + shardPorts[1]))).start(routerPort);
+        servers = List.of(router, first, second);
+    }
+
+    /**
+     * Test that the movies are split evenly and that each shard also holds the
+     * people its movies credit.
+     */
+    @Test
+    void testSplitsByMovieId() throws Exception {
+        assertEquals(new Partition(Integer.MIN_VALUE, 2), generations.get(0).getPartition());
+        assertEquals(new Partition(3, Integer.MAX_VALUE), generations.get(1).getPartition());
+
+        assertEquals(2, generations.get(0).getMovieDao().getAllMovies().size());
+        assertEquals(3, generations.get(1).getMovieDao().getAllMovies().size());
+        // shard 0 owns people 1 and 2, and holds 3 and 4 because its movies credit them
+        assertEquals(4, generations.get(0).getPersonDao().getAllPeople().size());
+        assertEquals(3, generations.get(1).getPersonDao().getAllPeople().size());
+
+        given().when().get("http://localhost:" + shardPorts[1] + "/shard").then().statusCode(200)
+                .body("first", equalTo(3));
+    }
+
+    /**
+     * Test that lookups by id are forwarded to the owning shard.
+     */
+    @Test
+    void testForwardsLookupsToOwner() {
+        given().when().get(baseURL + "/movies/1").then().statusCode(200)
+                .body("title", equalTo("The Shawshank Redemption"));
+        given().when().get(baseURL + "/movies/4").then().statusCode(200)
+                .body("title", equalTo("The Dark Knight"));
+        given().when().get(baseURL + "/movies/1/stars").then().statusCode(200)
+                .body("id", contains(1, 2));
+        given().when().get(baseURL + "/people/5").then().statusCode(200)
+                .body("name", equalTo("Henry Fonda"));
+        given().when().get(baseURL + "/movies/9").then().statusCode(404);
+        given().when().get(baseURL + "/movies/abc").then().statusCode(400);
+    }
+
+    /**
+     * Test that lists are gathered from every shard, merged in id order and cut
+     * to the limit, without the people held by more than one shard repeated.
+     */
+    @Test
+    void testGathersLists() {
+        given().when().get(baseURL + "/movies").then().statusCode(200)
+                .body("id", contains(1, 2, 3, 4, 5));
+        given().when().get(baseURL + "/movies?limit=3").then().statusCode(200)
+                .body("id", contains(1, 2, 3));
+        given().when().get(baseURL + "/people").then().statusCode(200)
+                .body("id", contains(1, 2, 3, 4, 5));
+        given().when().get(baseURL + "/people?limit=0").then().statusCode(400);
+    }
+
+    /**
+     * Test that ratings from every shard are merged by rating.
+     */
+    @Test
+    void testGathersRatings() {
+        given().when().get(baseURL + "/movies/ratings?from=1970&to=1980").then().statusCode(200)
+                .body("id", contains(2, 3));
+        given().when().get(baseURL + "/movies/ratings?from=1950&to=2010&limit=3").then().statusCode(200)
+                .body("id", contains(1, 2, 3));
+        given().when().get(baseURL + "/movies/ratings/1994").then().statusCode(200)
+                .body("id", contains(1));
+        given().when().get(baseURL + "/movies/ratings/2020").then().statusCode(404);
+    }
+
+    /**
+     * Test that the movies a person starred in are gathered across shards.
+     */
+    @Test
+    void testGathersMoviesOfPerson() {
+        given().when().get(baseURL + "/people/4/movies").then().statusCode(200)
+                .body("id", contains(2, 3));
+        given().when().get(baseURL + "/people/3/movies").then().statusCode(404);
+    }
+
+    /**
+     * Test that a gathered result is refused when a shard is down, rather than
+     * returned incomplete.
+     */
+    @Test
+    void testRefusesPartialResults() {
+        servers.get(2).stop();
+        given().when().get(baseURL + "/movies").then().statusCode(502);
+        given().when().get(baseURL + "/movies/1").then().statusCode(200);
+    }
+
+    /**
+     * Test that shards leaving ids without an owner are refused.
+     */
+    @Test
+    void testRejectsGaps() {
+        assertThrows(IllegalArgumentException.class, () -> new ShardRouter(List.of(
+                new ShardRouter.Shard(URI.create("http://localhost:1"), new Partition(Integer.MIN_VALUE, 2)),
+                new ShardRouter.Shard(URI.create("http://localhost:2"), new Partition(4, Integer.MAX_VALUE)))));
+    }
+
+    /**
+     * Stops the servers after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        servers.forEach(Javalin::stop);
+    }
+}
@@ -0,0 +1,112 @@
+package com.flickfinder.trace;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flickfinder.util.Bulkhead;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for tracing requests and keeping their traces.
+ */
+class TracerTest {
+
+    /**
+     * Test that spans nest under the span open on their thread, including
+     * across a bulkhead.
+     */
+    @Test
+    void testSpansNest() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("trace-test", 1, 1);
+        Trace trace = Trace.start("GET /movies/{id}", null, false);
+        Span daoSpan = Trace.span("dao");
+        Trace.span("map rows").close();
+        assertSame(trace, Trace.current());
+        bulkhead.submit(() -> Trace.span("worker").close()).get();
+        daoSpan.close();
+        trace.finish();
+        bulkhead.close();
+        assertNull(Trace.current());
+
+        List<Span> spans = trace.getSpans();
+        assertEquals(List.of("GET /movies/{id}", "dao", "map rows", "bulkhead.trace-test.queue", "worker"),
+                spans.stream().map(Span::getName).toList());
+        String root = spans.get(0).getSpanId();
+        String dao = spans.get(1).getSpanId();
+        assertNull(spans.get(0).getParentId());
+        assertEquals(root, spans.get(1).getParentId());
+        assertEquals(dao, spans.get(2).getParentId());
+        assertEquals(dao, spans.get(3).getParentId());
+        assertEquals(dao, spans.get(4).getParentId());
+        assertTrue(spans.get(0).getDurationNanos() >= spans.get(1).getDurationNanos());
+    }
+
+    /**
+     * Test that spans opened with no trace record nothing.
+     */
+    @Test
+    void testNoTrace() {
+        try (Span span = Trace.span("dao")) {
+            span.attribute("rows", 1);
+            assertTrue(span.getAttributes().isEmpty());
+        }
+        assertNull(Trace.current());
+    }
+
+    /**
+     * Test that only sampled, slow and failed traces are kept, and that the ring
+     * keeps the newest.
+     */
+    @Test
+    void testKeepsSampledSlowAndFailed() throws Exception {
+        Tracer tracer = new Tracer(0, 20, 2);
+        assertFalse(tracer.finish(tracer.start("fast", null), 200));
+        assertTrue(tracer.finish(tracer.start("failed", null), 500));
+        Trace slow = tracer.start("slow", null);
+        Thread.sleep(25);
+        assertTrue(tracer.finish(slow, 200));
+        assertTrue(tracer.finish(tracer.start("sampled upstream",
+                "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01"), 200));
+
+        assertEquals(List.of("sampled upstream", "slow"),
+                tracer.recent().stream().map(t -> t.getRoot().getName()).toList());
+        assertNotNull(tracer.find("4bf92f3577b34da6a3ce929d0e0e4736"));
+        assertNotNull(tracer.find(slow.getTraceId()));
+    }
+
+    /**
+     * Test that traces are exported in the OTLP JSON layout.
+     */
+    @Test
+    void testExportsOtlpJson() throws Exception {
+        Trace trace = Trace.start("GET /people/{id}", "not a traceparent", true);
+        try (Span span = Trace.span("PersonDAO.getPersonById")) {
+            span.attribute("db.rows", 1);
+        }
+        trace.finish();
+        assertEquals(32, trace.getTraceId().length());
+        assertTrue(trace.traceparent().matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Tracer.writeOtlp(List.of(trace), out);
+        JsonNode spans = new ObjectMapper().readTree(out.toByteArray())
+                .at("/resourceSpans/0/scopeSpans/0/spans");
+        assertEquals(2, spans.size());
+        assertEquals(2, spans.get(0).get("kind").asInt());
+        assertEquals(trace.getTraceId(), spans.get(1).get("traceId").asText());
+        assertEquals(spans.get(0).get("spanId"), spans.get(1).get("parentSpanId"));
+        assertTrue(spans.get(1).get("startTimeUnixNano").isTextual());
+        assertEquals("db.rows", spans.get(1).at("/attributes/0/key").asText());
+        assertEquals("1", spans.get(1).at("/attributes/0/value/intValue").asText());
+    }
+
+    @AfterEach
+    void tearDown() {
+        Trace.detach();
+    }
+}
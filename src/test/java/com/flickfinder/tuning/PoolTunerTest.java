@@ -0,0 +1,76 @@
+package com.flickfinder.tuning;
+
+import com.flickfinder.util.Defaults;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the adaptive resizing of the worker pool.
+ */
+class PoolTunerTest {
+
+    private TimedThreadPool pool;
+    private PoolTuner tuner;
+
+    @BeforeEach
+    void setUp() {
+        ServerTuning tuning = new ServerTuning().maxThreads(100).adaptive(true);
+        pool = tuning.threadPool();
+        tuner = new PoolTuner(pool, tuning, () -> 0);
+    }
+
+    /**
+     * Test that the pool grows while jobs wait and the database has room.
+     */
+    @Test
+    void testGrowsWhenThreadsWait() {
+        PoolTuner.Decision decision = tuner.decide(Defaults.TUNING_WAIT_HIGH_MICROS * 5, 0.3, 100);
+        assertEquals(100, decision.fromThreads());
+        assertEquals(125, decision.toThreads());
+        assertEquals(125, pool.getMaxThreads());
+    }
+
+    /**
+     * Test that the pool is held while jobs wait on a saturated database, and
+     * that repeated holds are reported once.
+     */
+    @Test
+    void testHoldsWhenDatabaseSaturated() {
+        tuner.decide(Defaults.TUNING_WAIT_HIGH_MICROS * 5, 1.0, 100);
+        PoolTuner.Decision decision = tuner.decide(Defaults.TUNING_WAIT_HIGH_MICROS * 5, 0.95, 100);
+        assertEquals(decision.fromThreads(), decision.toThreads());
+        assertTrue(decision.reason().contains("saturated"));
+        assertEquals(100, pool.getMaxThreads());
+        assertEquals(1, ((List<?>) tuner.status().get("decisions")).size());
+    }
+
+    /**
+     * Test that an idle pool shrinks, but never below the floor.
+     */
+    @Test
+    void testShrinksWhenIdle() {
+        assertEquals(90, tuner.decide(0, 0.1, 5).toThreads());
+        for (int i = 0; i < 50; i++) {
+            tuner.decide(0, 0.1, 5);
+        }
+        assertEquals(Defaults.TUNING_MIN_THREADS, pool.getMaxThreads());
+        assertNull(tuner.decide(0, 0.1, 5));
+    }
+
+    /**
+     * Test that a pool in steady use is left alone without a decision.
+     */
+    @Test
+    void testLeavesSteadyPoolAlone() {
+        assertNull(tuner.decide(Defaults.TUNING_WAIT_LOW_MICROS * 2, 0.5, 60));
+        assertEquals(100, pool.getMaxThreads());
+        Map<String, Object> status = tuner.status();
+        assertEquals(100, status.get("maxThreads"));
+        assertTrue(((List<?>) status.get("decisions")).isEmpty());
+    }
+}
@@ -0,0 +1,65 @@
+package com.flickfinder.tuning;
+
+import com.flickfinder.AppConfig;
+import com.flickfinder.Generation;
+import com.flickfinder.util.Seeder;
+import io.javalin.Javalin;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the settings of the Jetty server.
+ */
+class ServerTuningTest {
+
+    /**
+     * Test that the settings are read from the command line.
+     */
+    @Test
+    void testParsesArguments() {
+        ServerTuning tuning = ServerTuning.parse(new String[]{"--max-threads=64", "--min-threads=4",
+                "--accept-queue=128", "--idle-timeout=5000", "--h2c", "--adaptive-threads", "--watch"});
+        Map<String, Object> settings = tuning.describe();
+        assertEquals(64, settings.get("maxThreads"));
+        assertEquals(4, settings.get("minThreads"));
+        assertEquals(128, settings.get("acceptQueue"));
+        assertEquals(5000, settings.get("idleTimeoutMillis"));
+        assertEquals(true, settings.get("h2c"));
+        assertTrue(tuning.isAdaptive());
+        assertThrows(IllegalArgumentException.class, () -> new ServerTuning().maxThreads(2).minThreads(4).threadPool());
+    }
+
+    /**
+     * Test that a server with HTTP/2 cleartext turned on answers HTTP/2 clients
+     * and HTTP/1.1 clients on the same port, with the pool it was given.
+     */
+    @Test
+    void testServesHttp2Cleartext() throws Exception {
+        int port = 6300;
+        Seeder seeder = new Seeder("jdbc:sqlite::memory:");
+        Javalin app = AppConfig.startServer(port, Generation.of(1, seeder.getConnection()), 0, false,
+                new ServerTuning().maxThreads(40).h2c(true));
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + port + "/movies/1")).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertEquals(HttpClient.Version.HTTP_2, response.version());
+
+            given().when().get("http://localhost:" + port + "/admin/tuning").then().statusCode(200)
+                    .body("settings.h2c", equalTo(true))
+                    .body("maxThreads", equalTo(40));
+        } finally {
+            app.stop();
+        }
+    }
+}
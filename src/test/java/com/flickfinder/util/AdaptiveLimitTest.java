@@ -0,0 +1,77 @@
+package com.flickfinder.util;
+
+import com.flickfinder.util.AdaptiveLimit.Priority;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the latency-driven concurrency limit.
+ */
+class AdaptiveLimitTest {
+
+    /**
+     * Test that requests over the limit are refused until one is released.
+     */
+    @Test
+    void testRefusesRequestsOverTheLimit() {
+        AdaptiveLimit limit = new AdaptiveLimit("test.refuse", 4, 4, 4, 0.5);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limit.tryAcquire(Priority.CHEAP));
+        }
+        assertFalse(limit.tryAcquire(Priority.CHEAP));
+        limit.release(1_000_000, false);
+        assertTrue(limit.tryAcquire(Priority.CHEAP));
+    }
+
+    /**
+     * Test that expensive requests are shed before cheap ones.
+     */
+    @Test
+    void testShedsExpensiveRequestsFirst() {
+        AdaptiveLimit limit = new AdaptiveLimit("test.priority", 10, 10, 10, 0.5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limit.tryAcquire(Priority.EXPENSIVE));
+        }
+        assertFalse(limit.tryAcquire(Priority.EXPENSIVE));
+        assertTrue(limit.tryAcquire(Priority.CHEAP));
+        assertEquals(6, limit.getInflight());
+    }
+
+    /**
+     * Test that the limit grows while latency is steady and the limit is in use,
+     * and shrinks when latency rises.
+     */
+    @Test
+    void testLimitFollowsLatency() {
+        AdaptiveLimit limit = new AdaptiveLimit("test.gradient", 20, 4, 200, 0.5);
+        for (int i = 0; i < 200; i++) {
+            while (limit.tryAcquire(Priority.CHEAP)) {
+                // fill the limit so that samples count
+            }
+            limit.release(1_000_000, false);
+        }
+        int grown = limit.getLimit();
+        assertTrue(grown > 20, "limit should grow, was " + grown);
+
+        for (int i = 0; i < 50; i++) {
+            limit.tryAcquire(Priority.CHEAP);
+            limit.release(10_000_000, false);
+        }
+        assertTrue(limit.getLimit() < grown, "limit should shrink, was " + limit.getLimit());
+    }
+
+    /**
+     * Test that failures back the limit off, but never below the minimum.
+     */
+    @Test
+    void testFailuresBackOffToMinimum() {
+        AdaptiveLimit limit = new AdaptiveLimit("test.backoff", 20, 4, 200, 0.5);
+        for (int i = 0; i < 100; i++) {
+            limit.tryAcquire(Priority.CHEAP);
+            limit.release(1_000_000, true);
+        }
+        assertEquals(4, limit.getLimit());
+        assertEquals(4, Metrics.snapshot().get("test.backoff.limit"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.flickfinder.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the bulkheads the API lanes run on.
+ */
+class BulkheadTest {
+
+    private final Bulkhead slow = new Bulkhead("test-slow", 1, 1);
+    private final Bulkhead fast = new Bulkhead("test-fast", 1, 1);
+
+    /**
+     * Test that a full bulkhead refuses work at once while another one still runs.
+     */
+    @Test
+    void testRefusesWorkOnceFullWithoutBlockingOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> running = slow.submit(release::await);
+        CompletableFuture<Void> queued = slow.submit(() -> { });
+        assertThrows(RejectedExecutionException.class, () -> slow.submit(() -> { }));
+        assertEquals(1, slow.getQueued());
+        assertEquals(1L, slow.describe().get("rejected"));
+
+        fast.submit(() -> { }).get(5, TimeUnit.SECONDS);
+
+        release.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+        assertEquals(0, slow.getQueued());
+    }
+
+    /**
+     * Test that the deadline of the submitting thread moves to the worker.
+     */
+    @Test
+    void testCarriesDeadlineToWorker() throws Exception {
+        Deadline deadline = Deadline.start(1);
+        Thread.sleep(20);
+        CompletableFuture<Void> done = slow.submit(() -> Deadline.watch(null));
+        assertEquals(Long.MAX_VALUE, Deadline.remainingNanos());
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> done.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(SQLTimeoutException.class, failure.getCause());
+        assertEquals(Deadline.Outcome.TIMED_OUT, deadline.finish());
+    }
+
+    @AfterEach
+    void tearDown() {
+        Deadline.end();
+        slow.close();
+        fast.close();
+    }
+}
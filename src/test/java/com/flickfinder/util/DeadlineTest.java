@@ -0,0 +1,134 @@
+package com.flickfinder.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for request deadlines and the query cancellation they drive.
+ */
+class DeadlineTest {
+
+    /**
+     * A query that never finishes on its own.
+     */
+    private static final String ENDLESS = "WITH RECURSIVE n(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM n)" +
+            " SELECT count(*) FROM n";
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+    }
+
+    /**
+     * Test that a query still running when the deadline passes is cancelled.
+     */
+    @Test
+    void testCancelsQueryWhenDeadlinePasses() throws SQLException {
+        long before = Metrics.counter("queries.timedOut").sum();
+        Deadline.start(100);
+        try (PreparedStatement ps = connection.prepareStatement(ENDLESS)) {
+            Deadline.watch(ps);
+            assertThrows(SQLException.class, ps::executeQuery);
+        }
+        assertEquals(Deadline.Outcome.TIMED_OUT, Deadline.end());
+        assertEquals(before + 1, Metrics.counter("queries.timedOut").sum());
+    }
+
+    /**
+     * Test that a query is cancelled when the client goes away.
+     */
+    @Test
+    void testCancelsQueryWhenClientGoes() throws Exception {
+        long before = Metrics.counter("queries.cancelled").sum();
+        Deadline deadline = Deadline.start(60_000);
+        Thread hangUp = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            deadline.clientGone();
+        });
+        hangUp.start();
+        try (PreparedStatement ps = connection.prepareStatement(ENDLESS)) {
+            Deadline.watch(ps);
+            assertThrows(SQLException.class, ps::executeQuery);
+        }
+        hangUp.join();
+        assertEquals(Deadline.Outcome.CANCELLED, Deadline.end());
+        assertEquals(before + 1, Metrics.counter("queries.cancelled").sum());
+    }
+
+    /**
+     * Test that a query is not cancelled while another statement is open on its
+     * connection, since cancelling would interrupt that one too. The query runs
+     * to the end, the other statement can still be read, and the request is
+     * cut short after it.
+     */
+    @Test
+    void testLeavesSharedConnectionAlone() throws Exception {
+        long before = Metrics.counter("queries.timedOut").sum();
+        try (PreparedStatement other = connection.prepareStatement(
+                "WITH RECURSIVE n(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM n LIMIT 3) SELECT x FROM n")) {
+            ResultSet rows = Deadline.watch(other).executeQuery();
+            assertTrue(rows.next());
+
+            Deadline.start(10);
+            try (PreparedStatement ps = connection.prepareStatement("WITH RECURSIVE n(x) AS"
+                    + " (SELECT 1 UNION ALL SELECT x + 1 FROM n LIMIT 2000000) SELECT count(*) FROM n")) {
+                Deadline.watch(ps);
+                assertEquals(2_000_000, ps.executeQuery().getInt(1));
+            }
+            assertTrue(rows.next());
+            assertEquals(2, rows.getInt(1));
+        }
+        assertEquals(Deadline.Outcome.TIMED_OUT, Deadline.end());
+        assertEquals(before, Metrics.counter("queries.timedOut").sum());
+    }
+
+    /**
+     * Test that no query is started once the deadline has passed.
+     */
+    @Test
+    void testRefusesQueriesAfterDeadline() throws Exception {
+        Deadline.start(1);
+        Thread.sleep(20);
+        try (PreparedStatement ps = connection.prepareStatement("SELECT 1")) {
+            assertThrows(SQLTimeoutException.class, () -> Deadline.watch(ps));
+        }
+        assertEquals(Deadline.Outcome.TIMED_OUT, Deadline.end());
+    }
+
+    /**
+     * Test that queries within their deadline, or without one, are untouched.
+     */
+    @Test
+    void testLeavesQueriesWithinDeadlineAlone() throws SQLException {
+        Deadline.start(60_000);
+        try (PreparedStatement ps = connection.prepareStatement("SELECT 1")) {
+            Deadline.watch(ps);
+            assertTrue(ps.executeQuery().next());
+        }
+        assertNull(Deadline.end());
+        assertNull(Deadline.end());
+        assertEquals(Long.MAX_VALUE, Deadline.remainingNanos());
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        Deadline.end();
+        connection.close();
+    }
+}
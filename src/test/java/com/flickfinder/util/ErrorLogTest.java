@@ -0,0 +1,62 @@
+package com.flickfinder.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the asynchronous, rate limited error log.
+ */
+class ErrorLogTest {
+
+    /**
+     * Test that copies of a message over its rate limit are counted rather than
+     * logged, without holding back other messages.
+     */
+    @Test
+    void testSuppressesRepeatedMessages() {
+        List<String> written = new ArrayList<>();
+        ErrorLog log = new ErrorLog(16, 2, (message, e) -> written.add(message));
+        for (int i = 0; i < 5; i++) {
+            log.log("Non numeric id parameter", null);
+        }
+        assertTrue(log.log("Database error", new RuntimeException()));
+        assertTrue(written.isEmpty());
+
+        log.drain();
+        assertEquals(List.of("Non numeric id parameter", "Non numeric id parameter", "Database error",
+                "Non numeric id parameter (3 similar messages suppressed)"), written);
+        written.clear();
+        log.drain();
+        assertTrue(written.isEmpty());
+    }
+
+    /**
+     * Test that messages are dropped rather than waited on once the queue is full.
+     */
+    @Test
+    void testDropsWhenFull() {
+        ErrorLog log = new ErrorLog(1, 10, (message, e) -> {
+        });
+        assertTrue(log.log("first", null));
+        assertFalse(log.log("second", null));
+    }
+
+    /**
+     * Test that ints are parsed without exceptions, and that malformed and out
+     * of range values are told apart from missing ones.
+     */
+    @Test
+    void testParseInt() {
+        assertEquals(42, Utils.parseInt("42", 0));
+        assertEquals(-7, Utils.parseInt("-7", 0));
+        assertEquals(Integer.MIN_VALUE, Utils.parseInt("-2147483648", 0));
+        assertEquals(50, Utils.parseInt(null, 50));
+        for (String bad : new String[]{"", "-", "+", "4x", " 4", "2147483648", "99999999999999"}) {
+            assertEquals(Utils.NOT_AN_INT, Utils.parseInt(bad, 0), bad);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.flickfinder.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for the SingleFlight call coalescer.
+ */
+class SingleFlightTest {
+
+    /**
+     * Test that concurrent calls with the same key share a single execution.
+     */
+    @Test
+    void testConcurrentCallsShareOneExecution() throws Exception {
+        SingleFlight flights = new SingleFlight("test.shared");
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> leader = pool.submit(() -> flights.execute("key", () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                awaitQuietly(release);
+                return "result";
+            }));
+            started.await();
+
+            Future<String> follower = pool.submit(() -> flights.execute("key", () -> {
+                executions.incrementAndGet();
+                return "other";
+            }));
+            while (flights.getCoalesced() == 0) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+            assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+            assertEquals(1, executions.get());
+            assertEquals(0.5, flights.getCoalescingRatio());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Test that calls are not cached once the execution has finished.
+     */
+    @Test
+    void testSequentialCallsExecuteAgain() throws SQLException {
+        SingleFlight flights = new SingleFlight("test.sequential");
+        AtomicInteger executions = new AtomicInteger();
+        flights.execute("key", executions::incrementAndGet);
+        flights.execute("key", executions::incrementAndGet);
+        assertEquals(2, executions.get());
+        assertEquals(0, flights.getCoalesced());
+    }
+
+    /**
+     * Test that every SingleFlight with the same name counts into the same
+     * metrics, so that the DAOs of every lane and every copy of the data are
+     * reported together.
+     */
+    @Test
+    void testSameNameSharesMetrics() throws SQLException {
+        SingleFlight first = new SingleFlight("test.named");
+        SingleFlight second = new SingleFlight("test.named");
+        first.execute("key", () -> 1);
+        second.execute("key", () -> 2);
+        assertEquals(2, Metrics.snapshot().get("test.named.calls").longValue());
+        assertEquals(2, Metrics.snapshot().get("test.named.executions").longValue());
+        assertEquals(0.0, Metrics.snapshot().get("test.named.coalescingRatio").doubleValue());
+    }
+
+    /**
+     * Test that a call cut short by the deadline of the caller running it is
+     * run again by a caller that was waiting for it, rather than failing it.
+     */
+    @Test
+    void testWaitingCallerRunsCallCutShortAgain() throws Exception {
+        SingleFlight flights = new SingleFlight("test.cutShort");
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = pool.submit(() -> {
+                Deadline.start(1);
+                try {
+                    return flights.execute("key", () -> {
+                        executions.incrementAndGet();
+                        started.countDown();
+                        awaitQuietly(release);
+                        Deadline.watch(null);
+                        return "late";
+                    });
+                } finally {
+                    Deadline.end();
+                }
+            });
+            started.await();
+
+            Future<String> follower = pool.submit(() -> flights.execute("key", () -> {
+                executions.incrementAndGet();
+                return "again";
+            }));
+            while (flights.getCoalesced() == 0) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            Exception cutShort = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(SQLTimeoutException.class, cutShort.getCause());
+            assertEquals("again", follower.get(5, TimeUnit.SECONDS));
+            assertEquals(2, executions.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Test that a failure is passed on to the caller unchanged.
+     */
+    @Test
+    void testFailureIsRethrown() {
+        SingleFlight flights = new SingleFlight("test.failure");
+        SQLException failure = new SQLException("boom");
+        SQLException thrown = assertThrows(SQLException.class, () -> flights.execute("key", () -> {
+            throw failure;
+        }));
+        assertSame(failure, thrown);
+    }
+
+    /**
+     * Test that a shared list cannot be changed by one of the callers sharing it.
+     */
+    @Test
+    void testSharedListIsReadOnly() throws SQLException {
+        SingleFlight flights = new SingleFlight("test.readOnly");
+        List<String> shared = flights.execute("key", () -> new ArrayList<>(List.of("result")));
+        assertThrows(UnsupportedOperationException.class, () -> shared.add("other"));
+        assertEquals(List.of("result"), shared);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}